@@ -0,0 +1,138 @@
+package ru.practicum.datasource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * Replica pool behind the read-only side of {@link ReplicaRoutingConfiguration}. Hands out replica connections while
+ * the last lag check found the replica at most {@code max-lag} behind the primary, and primary connections
+ * otherwise, so a lagging or unreachable replica costs load on the primary, never failed reads.
+ */
+@Slf4j
+public class ReplicaDataSource extends DelegatingDataSource {
+
+    /**
+     * Seconds since the last replayed transaction, or 0 while the replica has replayed everything it received,
+     * so an idle primary does not read as lag.
+     */
+    public static final String POSTGRES_LAG_QUERY = "SELECT CASE WHEN NOT pg_is_in_recovery()" +
+            " OR pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0" +
+            " ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+
+    private final DataSource primary;
+    private final String lagQuery;
+    private final Duration maxLag;
+    private final JdbcTemplate replicaJdbcTemplate;
+    private volatile boolean available;
+    private volatile double lagSeconds = Double.NaN;
+
+    /**
+     * @param metricPrefix prefix of the {@code .lag} and {@code .available} gauges, the service's replica property
+     *                     prefix
+     */
+    public ReplicaDataSource(DataSource replica, DataSource primary, String lagQuery, Duration maxLag,
+                             MeterRegistry meterRegistry, String metricPrefix) {
+        super(replica);
+        this.primary = primary;
+        this.lagQuery = lagQuery;
+        this.maxLag = maxLag;
+        replicaJdbcTemplate = new JdbcTemplate(replica);
+        Gauge.builder(metricPrefix + ".lag", this, ReplicaDataSource::getLagSeconds)
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        Gauge.builder(metricPrefix + ".available", this, source -> source.isAvailable() ? 1 : 0)
+                .register(meterRegistry);
+        checkLag();
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public double getLagSeconds() {
+        return lagSeconds;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (available) {
+            try {
+                return super.getConnection();
+            } catch (SQLException e) {
+                markUnavailable("unreachable: " + e.getMessage());
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (available) {
+            try {
+                return super.getConnection(username, password);
+            } catch (SQLException e) {
+                markUnavailable("unreachable: " + e.getMessage());
+            }
+        }
+        return primary.getConnection(username, password);
+    }
+
+    public void checkLag() {
+        Double lag;
+        try {
+            lag = replicaJdbcTemplate.queryForObject(lagQuery, Double.class);
+        } catch (RuntimeException e) {
+            lagSeconds = Double.NaN;
+            markUnavailable("lag check failed: " + e.getMessage());
+            return;
+        }
+        lagSeconds = lag != null ? lag : Double.NaN;
+        if (lag == null || lag * 1000 > maxLag.toMillis()) {
+            markUnavailable("lag " + lag + " s is over " + maxLag);
+        } else if (!available) {
+            available = true;
+            log.info("Replica is back within {}, read-only transactions use it again", maxLag);
+        }
+    }
+
+    /**
+     * Waits, for at most {@code max-lag}, until {@code caughtUp} holds on the replica. A replica that does not
+     * catch up in time is taken out of rotation until the next lag check passes.
+     */
+    public void awaitReplay(Predicate<JdbcTemplate> caughtUp) {
+        long deadline = System.nanoTime() + maxLag.toNanos();
+        while (available) {
+            try {
+                if (caughtUp.test(replicaJdbcTemplate)) {
+                    return;
+                }
+            } catch (RuntimeException e) {
+                markUnavailable("unreachable: " + e.getMessage());
+                return;
+            }
+            if (System.nanoTime() > deadline) {
+                markUnavailable("did not catch up within " + maxLag);
+                return;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+        }
+    }
+
+    private void markUnavailable(String reason) {
+        if (available) {
+            available = false;
+            log.warn("Replica {}, read-only transactions use the primary", reason);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.practicum.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Sends read-only transactions to a replica and everything else to the primary. The lazy proxy fetches a
+ * connection on the first statement, after the transaction manager has marked it read-only, and only then picks
+ * the pool. Each service extends this in a {@code @Configuration} conditional on {@code <prefix>.enabled} and
+ * passes the prefix of its replica properties: {@code url}, {@code username}, {@code password}, {@code max-lag},
+ * {@code lag-query}, {@code lag-check-interval-ms} and the {@code hikari} pool settings. The lag check needs
+ * scheduling enabled.
+ */
+public abstract class ReplicaRoutingConfiguration {
+
+    private final String prefix;
+
+    protected ReplicaRoutingConfiguration(String prefix) {
+        this.prefix = prefix;
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public HikariDataSource replicaPoolDataSource(DataSourceProperties properties, Environment environment) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class)
+                .url(environment.getRequiredProperty(prefix + ".url"))
+                .build();
+        String username = environment.getProperty(prefix + ".username", "");
+        if (!username.isEmpty()) {
+            dataSource.setUsername(username);
+            dataSource.setPassword(environment.getProperty(prefix + ".password", ""));
+        }
+        Binder.get(environment).bind(prefix + ".hikari", Bindable.ofInstance(dataSource));
+        dataSource.setPoolName("replica");
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaDataSource replicaDataSource(@Qualifier("replicaPoolDataSource") DataSource replicaPool,
+                                               @Qualifier("primaryDataSource") DataSource primary,
+                                               Environment environment, MeterRegistry meterRegistry) {
+        String lagQuery = environment.getProperty(prefix + ".lag-query", "");
+        Duration maxLag = Binder.get(environment).bind(prefix + ".max-lag", Duration.class)
+                .orElse(Duration.ofSeconds(5));
+        return new ReplicaDataSource(replicaPool, primary,
+                lagQuery.isBlank() ? ReplicaDataSource.POSTGRES_LAG_QUERY : lagQuery, maxLag, meterRegistry, prefix);
+    }
+
+    @Bean
+    public SchedulingConfigurer replicaLagCheck(ReplicaDataSource replicaDataSource, Environment environment) {
+        Duration interval = Duration.ofMillis(environment.getProperty(prefix + ".lag-check-interval-ms",
+                Long.class, 1000L));
+        return registrar -> registrar.addFixedDelayTask(replicaDataSource::checkLag, interval);
+    }
+
+    @Bean
+    @Primary
+    public LazyConnectionDataSourceProxy dataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                                    ReplicaDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primary);
+        dataSource.setReadOnlyDataSource(replicaDataSource);
+        return dataSource;
+    }
+}
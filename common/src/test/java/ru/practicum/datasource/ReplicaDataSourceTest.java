@@ -0,0 +1,92 @@
+package ru.practicum.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicaDataSourceTest {
+
+    private JdbcTemplate primaryJdbc;
+    private JdbcTemplate replicaJdbc;
+    private ReplicaDataSource replica;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readOnly;
+    private TransactionTemplate readWrite;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource primaryDb = h2("primary");
+        JdbcDataSource replicaDb = h2("replica");
+        primaryJdbc = new JdbcTemplate(primaryDb);
+        replicaJdbc = new JdbcTemplate(replicaDb);
+        for (JdbcTemplate db : new JdbcTemplate[]{primaryJdbc, replicaJdbc}) {
+            db.execute("DROP ALL OBJECTS");
+            db.execute("CREATE TABLE node (name VARCHAR(16))");
+        }
+        primaryJdbc.update("INSERT INTO node VALUES ('primary')");
+        replicaJdbc.update("INSERT INTO node VALUES ('replica')");
+        replicaJdbc.execute("CREATE TABLE replica_lag (seconds DOUBLE)");
+        replicaJdbc.update("INSERT INTO replica_lag VALUES (0.5)");
+
+        replica = new ReplicaDataSource(replicaDb, primaryDb, "SELECT seconds FROM replica_lag",
+                Duration.ofSeconds(2), new SimpleMeterRegistry(), "test.datasource.replica");
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(primaryDb);
+        dataSource.setReadOnlyDataSource(replica);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readWrite = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void readOnlyTransactions_ShouldUseReplicaWhileItKeepsUp() {
+        assertEquals("replica", readOnly.execute(status -> node()));
+        assertEquals("primary", readWrite.execute(status -> node()));
+        assertEquals("primary", node());
+
+        replicaJdbc.update("UPDATE replica_lag SET seconds = 30");
+        replica.checkLag();
+        assertFalse(replica.isAvailable());
+        assertEquals("primary", readOnly.execute(status -> node()));
+
+        replicaJdbc.update("UPDATE replica_lag SET seconds = 1");
+        replica.checkLag();
+        assertEquals("replica", readOnly.execute(status -> node()));
+
+        replicaJdbc.execute("DROP TABLE replica_lag");
+        replica.checkLag();
+        assertEquals("primary", readOnly.execute(status -> node()));
+    }
+
+    @Test
+    void awaitReplay_ShouldTakeReplicaOutOfRotationWhenItDoesNotCatchUp() {
+        replica.awaitReplay(db -> "replica".equals(db.queryForObject("SELECT name FROM node", String.class)));
+        assertTrue(replica.isAvailable());
+
+        long started = System.nanoTime();
+        replica.awaitReplay(db -> "primary".equals(db.queryForObject("SELECT name FROM node", String.class)));
+        assertFalse(replica.isAvailable());
+        assertTrue(Duration.ofNanos(System.nanoTime() - started).compareTo(Duration.ofSeconds(2)) >= 0);
+        assertEquals("primary", readOnly.execute(status -> node()));
+    }
+
+    private String node() {
+        return jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    private static JdbcDataSource h2(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        return dataSource;
+    }
+}
@@ -0,0 +1,46 @@
+package ru.practicum.loadgen;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Ids the traffic can refer to: everything seeded up front plus what the run itself creates. Published events are
+ * kept in popularity order, so a Zipf rank indexes them directly.
+ */
+final class Catalog {
+
+    final List<Long> users = new CopyOnWriteArrayList<>();
+    final List<Long> categories = new CopyOnWriteArrayList<>();
+    final List<Long> compilations = new CopyOnWriteArrayList<>();
+    final List<Long> events = new CopyOnWriteArrayList<>();
+    private final Map<Long, List<Long>> eventsByInitiator = new ConcurrentHashMap<>();
+    private final Map<Long, Queue<Long>> requestsByUser = new ConcurrentHashMap<>();
+
+    void addEvent(long initiator, long event) {
+        events.add(event);
+        eventsByInitiator.computeIfAbsent(initiator, user -> new CopyOnWriteArrayList<>()).add(event);
+    }
+
+    Long eventOf(long initiator, Random random) {
+        List<Long> own = eventsByInitiator.get(initiator);
+        return own == null || own.isEmpty() ? null : own.get(random.nextInt(own.size()));
+    }
+
+    void addRequest(long user, long request) {
+        requestsByUser.computeIfAbsent(user, id -> new ConcurrentLinkedQueue<>()).add(request);
+    }
+
+    Long takeRequest(long user) {
+        Queue<Long> requests = requestsByUser.get(user);
+        return requests == null ? null : requests.poll();
+    }
+
+    static <T> T any(List<T> ids, Random random) {
+        return ids.get(random.nextInt(ids.size()));
+    }
+}
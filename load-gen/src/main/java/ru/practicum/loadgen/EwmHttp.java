@@ -0,0 +1,114 @@
+package ru.practicum.loadgen;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * JDK HTTP client on virtual threads for both services. {@link #call} records every response, or the failure to
+ * get one, in the {@link LatencyRecorder} under a templated endpoint name such as {@code GET /events/{id}}.
+ */
+final class EwmHttp implements AutoCloseable {
+
+    static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(executor)
+            .build();
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final LatencyRecorder recorder;
+
+    EwmHttp(LatencyRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Sends a request that was due at {@code dueNanos} and returns the parsed body of a 2xx response, or null for
+     * any other outcome, which is only recorded.
+     */
+    JsonNode call(String endpoint, String method, String url, Object body, String forwardedFor, long dueNanos) {
+        int status = 0;
+        try {
+            HttpResponse<String> response = client.send(request(method, url, body, forwardedFor),
+                    HttpResponse.BodyHandlers.ofString());
+            status = response.statusCode();
+            return status / 100 == 2 && !response.body().isEmpty() ? objectMapper.readTree(response.body()) : null;
+        } catch (IOException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            recorder.record(endpoint, dueNanos, status);
+        }
+    }
+
+    /**
+     * Sends a setup request outside the measurements and fails unless it succeeds.
+     */
+    JsonNode require(String method, String url, Object body) {
+        try {
+            HttpResponse<String> response = client.send(request(method, url, body, null),
+                    HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() / 100 != 2) {
+                throw new IllegalStateException(method + " " + url + " returned " + response.statusCode() + ": "
+                        + response.body());
+            }
+            return response.body().isEmpty() ? null : objectMapper.readTree(response.body());
+        } catch (IOException e) {
+            throw new IllegalStateException(method + " " + url + " failed: " + e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted", e);
+        }
+    }
+
+    static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    static String format(LocalDateTime dateTime) {
+        return encode(DATE_TIME.format(dateTime));
+    }
+
+    private HttpRequest request(String method, String url, Object body, String forwardedFor)
+            throws JsonProcessingException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url)).timeout(TIMEOUT);
+        if (forwardedFor != null) {
+            builder.header("X-Forwarded-For", forwardedFor);
+        }
+        if (body == null) {
+            return builder.method(method, HttpRequest.BodyPublishers.noBody()).build();
+        }
+        return builder.header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+    }
+
+    @Override
+    public void close() {
+        client.close();
+        executor.close();
+    }
+}
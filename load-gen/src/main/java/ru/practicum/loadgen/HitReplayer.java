@@ -0,0 +1,185 @@
+package ru.practicum.loadgen;
+
+import ru.practicum.EndpointHit;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Replays an export of endpoint_hits in its recorded rhythm, {@code -replay-speed} times faster, either as
+ * {@code POST /hits} batches to the stats server or as {@code GET} of each uri on the main service, which then
+ * records the hit itself. Hits are sent with the time they are replayed at, so the server treats them as live.
+ * The export is CSV with a header naming app, uri, ip and timestamp columns, for example from PostgreSQL:
+ * <pre>
+ * \copy (SELECT a.name AS app, u.name AS uri, encode(h.ip, 'hex') AS ip, h.timestamp
+ *        FROM endpoint_hits h JOIN hit_apps a ON a.id = h.app_id JOIN hit_uris u ON u.id = h.uri_id
+ *        ORDER BY h.timestamp) TO 'hits.csv' CSV HEADER
+ * </pre>
+ * The ip column may hold addresses as text or as the hex of the stored bytes. Replay ends with the file or after
+ * {@code -duration}, whichever comes first.
+ */
+final class HitReplayer {
+
+    private static final int MAX_BATCH = 500;
+    private static final long BATCH_NANOS = Duration.ofMillis(100).toNanos();
+
+    private final EwmHttp http;
+    private final LoadOptions options;
+    private final Launcher launcher;
+
+    HitReplayer(EwmHttp http, LoadOptions options, Launcher launcher) {
+        this.http = http;
+        this.options = options;
+        this.launcher = launcher;
+    }
+
+    void run() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(open(), StandardCharsets.UTF_8))) {
+            List<String> header = parseCsvLine(reader.readLine());
+            int app = column(header, "app");
+            int uri = column(header, "uri");
+            int ip = column(header, "ip");
+            int timestamp = column(header, "timestamp");
+
+            long started = System.nanoTime();
+            long stop = started + options.duration().toNanos();
+            LocalDateTime first = null;
+            List<EndpointHit> batch = new ArrayList<>();
+            long batchDue = 0;
+            long lastDue = 0;
+            long replayed = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                List<String> row = parseCsvLine(line);
+                LocalDateTime recorded = LocalDateTime.parse(row.get(timestamp).replace(' ', 'T'));
+                if (first == null) {
+                    first = recorded;
+                }
+                long due = started + (long) (Duration.between(first, recorded).toNanos() / options.replaySpeed());
+                if (due > stop) {
+                    break;
+                }
+                if (!batch.isEmpty() && (batch.size() >= MAX_BATCH || due - batchDue >= BATCH_NANOS)) {
+                    sendBatch(batch, lastDue);
+                    batch = new ArrayList<>();
+                }
+                Launcher.parkUntil(due);
+                String address = address(row.get(ip));
+                if (options.replayTarget().equals("main")) {
+                    String path = row.get(uri);
+                    launcher.launch(due, dueNanos -> http.call("GET " + template(path), "GET",
+                            options.mainUrl() + path, null, address, dueNanos));
+                } else {
+                    if (batch.isEmpty()) {
+                        batchDue = due;
+                    }
+                    batch.add(new EndpointHit(null, row.get(app), row.get(uri), address, LocalDateTime.now()));
+                    lastDue = due;
+                }
+                replayed++;
+            }
+            if (!batch.isEmpty()) {
+                sendBatch(batch, lastDue);
+            }
+            System.out.printf("Replayed %d hits recorded from %s in %d s%n", replayed, first,
+                    Duration.ofNanos(System.nanoTime() - started).toSeconds());
+        }
+    }
+
+    private void sendBatch(List<EndpointHit> batch, long due) {
+        launcher.launch(due, dueNanos -> http.call("POST /hits", "POST", options.statsUrl() + "/hits", batch, null,
+                dueNanos));
+    }
+
+    private InputStream open() throws IOException {
+        InputStream in = Files.newInputStream(options.replay());
+        return options.replay().toString().endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+    }
+
+    private static int column(List<String> header, String name) {
+        for (int i = 0; i < header.size(); i++) {
+            if (header.get(i).trim().equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Replay file has no " + name + " column, header is " + header);
+    }
+
+    /**
+     * Groups numeric path segments, so {@code /events/42} is reported as {@code /events/{id}}.
+     */
+    static String template(String path) {
+        return path.replaceAll("/\\d+(?=/|$)", "/{id}");
+    }
+
+    /**
+     * Address as text, also from the hex of the stored form: 4 or 16 address bytes, or a 0xFF tag followed by
+     * the UTF-8 of a value that was not an address.
+     */
+    static String address(String ip) {
+        if (ip.indexOf('.') >= 0 || ip.indexOf(':') >= 0 || ip.length() % 2 != 0 || !ip.matches("[0-9a-fA-F]+")) {
+            return ip;
+        }
+        byte[] bytes = HexFormat.of().parseHex(ip);
+        if (bytes.length == 4 || bytes.length == 16) {
+            try {
+                return InetAddress.getByAddress(bytes).getHostAddress();
+            } catch (IOException e) {
+                return ip;
+            }
+        }
+        if (bytes.length > 1 && bytes[0] == (byte) 0xFF) {
+            int end = bytes.length;
+            while (end > 1 && bytes[end - 1] == 0) {
+                end--;
+            }
+            return new String(Arrays.copyOfRange(bytes, 1, end), StandardCharsets.UTF_8);
+        }
+        return ip;
+    }
+
+    static List<String> parseCsvLine(String line) {
+        if (line == null) {
+            throw new IllegalArgumentException("Replay file is empty");
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,100 @@
+package ru.practicum.loadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-endpoint latency histograms in microseconds with status counts. Latency runs from the moment a request
+ * was due, not from when it was sent, so a stalled server shows up in the percentiles instead of silently
+ * lowering the request rate.
+ */
+final class LatencyRecorder {
+
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(5);
+
+    private final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+    private final LongAdder dropped = new LongAdder();
+
+    void record(String endpoint, long dueNanos, int status) {
+        Endpoint stats = endpoints.computeIfAbsent(endpoint, name -> new Endpoint());
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - dueNanos);
+        stats.histogram.recordValue(Math.max(1, Math.min(micros, MAX_MICROS)));
+        if (status <= 0) {
+            stats.failed.increment();
+        } else {
+            stats.byStatusClass[Math.min(status / 100, 5)].increment();
+        }
+    }
+
+    void recordDropped() {
+        dropped.increment();
+    }
+
+    long total() {
+        return endpoints.values().stream().mapToLong(stats -> stats.histogram.getTotalCount()).sum();
+    }
+
+    long failures() {
+        return endpoints.values().stream()
+                .mapToLong(stats -> stats.failed.sum() + stats.byStatusClass[5].sum()).sum();
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    void printSummary(PrintStream out) {
+        out.printf("%-50s %8s %7s %7s %7s %7s %9s %9s %9s %9s %9s%n", "endpoint", "count", "2xx", "4xx", "5xx",
+                "failed", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        new TreeMap<>(endpoints).forEach((name, stats) -> {
+            Histogram histogram = stats.histogram;
+            out.printf("%-50s %8d %7d %7d %7d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, histogram.getTotalCount(),
+                    stats.byStatusClass[2].sum(), stats.byStatusClass[4].sum(), stats.byStatusClass[5].sum(),
+                    stats.failed.sum(), millis(histogram, 50), millis(histogram, 90), millis(histogram, 99),
+                    millis(histogram, 99.9), histogram.getMaxValue() / 1000.0);
+        });
+        if (dropped.sum() > 0) {
+            out.printf("%d requests dropped at the in-flight limit%n", dropped.sum());
+        }
+    }
+
+    /**
+     * Writes one HdrHistogram percentile distribution per endpoint, in milliseconds, for plotting with the
+     * HdrHistogram plotter or comparing runs.
+     */
+    void writeDistributions(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        for (Map.Entry<String, Endpoint> entry : endpoints.entrySet()) {
+            String file = entry.getKey().replaceAll("[^A-Za-z0-9]+", "_").replaceAll("^_|_$", "") + ".hgrm";
+            try (PrintStream out = new PrintStream(Files.newOutputStream(dir.resolve(file)))) {
+                entry.getValue().histogram.outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    private static final class Endpoint {
+        final Histogram histogram = new ConcurrentHistogram(MAX_MICROS, 3);
+        final LongAdder[] byStatusClass = new LongAdder[6];
+        final LongAdder failed = new LongAdder();
+
+        Endpoint() {
+            for (int i = 0; i < byStatusClass.length; i++) {
+                byStatusClass[i] = new LongAdder();
+            }
+        }
+    }
+}
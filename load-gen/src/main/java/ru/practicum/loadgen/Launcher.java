@@ -0,0 +1,58 @@
+package ru.practicum.loadgen;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongConsumer;
+
+/**
+ * Starts every request on its own virtual thread at the time it is due, without waiting for earlier ones, so a
+ * slow server gets more concurrent requests rather than fewer arrivals. Past {@code -max-in-flight} a request is
+ * dropped and counted instead of queued.
+ */
+final class Launcher {
+
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+    private final LatencyRecorder recorder;
+
+    Launcher(int maxInFlight, LatencyRecorder recorder) {
+        this.maxInFlight = maxInFlight;
+        this.recorder = recorder;
+        inFlight = new Semaphore(maxInFlight);
+    }
+
+    void launch(long dueNanos, LongConsumer request) {
+        if (!inFlight.tryAcquire()) {
+            recorder.recordDropped();
+            return;
+        }
+        Thread.ofVirtual().name("load").start(() -> {
+            try {
+                request.accept(dueNanos);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    int inFlight() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    /**
+     * Waits for the requests still running, for at most {@code timeout}.
+     */
+    void drain(Duration timeout) throws InterruptedException {
+        if (inFlight.tryAcquire(maxInFlight, timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            inFlight.release(maxInFlight);
+        }
+    }
+
+    static void parkUntil(long dueNanos) {
+        for (long wait = dueNanos - System.nanoTime(); wait > 0; wait = dueNanos - System.nanoTime()) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+}
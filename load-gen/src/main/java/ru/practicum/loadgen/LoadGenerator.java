@@ -0,0 +1,124 @@
+package ru.practicum.loadgen;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synthetic or replayed traffic against a running main service and stats server, reported as latency
+ * percentiles per endpoint. Synthetic traffic is an open model: requests arrive as a Poisson process at
+ * {@code -rate} regardless of how fast the services answer, and every {@code -publish-every} an admin publishes a
+ * new event that then draws a burst of {@code -burst-views} extra views, most of them in the first
+ * {@code -burst-decay}. See {@link LoadOptions#USAGE} for all options.
+ */
+public final class LoadGenerator {
+
+    private static final Duration PROGRESS_EVERY = Duration.ofSeconds(10);
+    private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(60);
+
+    private final LoadOptions options;
+    private final LatencyRecorder recorder;
+    private final Launcher launcher;
+
+    private LoadGenerator(LoadOptions options, LatencyRecorder recorder) {
+        this.options = options;
+        this.recorder = recorder;
+        launcher = new Launcher(options.maxInFlight(), recorder);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && args[0].matches("--?help")) {
+            System.out.print(LoadOptions.USAGE);
+            return;
+        }
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadOptions.USAGE);
+            System.exit(2);
+            return;
+        }
+        LatencyRecorder recorder = new LatencyRecorder();
+        new LoadGenerator(options, recorder).run();
+        recorder.printSummary(System.out);
+        if (options.out() != null) {
+            recorder.writeDistributions(options.out());
+            System.out.println("Percentile distributions written to " + options.out().toAbsolutePath());
+        }
+    }
+
+    private void run() throws Exception {
+        ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor();
+        long started = System.nanoTime();
+        timers.scheduleAtFixedRate(() -> progress(started), PROGRESS_EVERY.toSeconds(), PROGRESS_EVERY.toSeconds(),
+                TimeUnit.SECONDS);
+        try (EwmHttp http = new EwmHttp(recorder)) {
+            if (options.replay() != null) {
+                new HitReplayer(http, options, launcher).run();
+            } else {
+                TrafficMix mix = new TrafficMix(http, new Seeder(http, options).seed(), options);
+                generate(mix, timers);
+            }
+            launcher.drain(DRAIN_TIMEOUT);
+        } finally {
+            timers.shutdownNow();
+        }
+    }
+
+    private void generate(TrafficMix mix, ScheduledExecutorService timers) {
+        Random arrivals = new Random(options.seed());
+        long started = System.nanoTime();
+        long end = started + options.duration().toNanos();
+        long publishEvery = options.publishEvery().toNanos();
+        long nextPublish = started + publishEvery;
+        double meanGap = TimeUnit.SECONDS.toNanos(1) / options.rate();
+        long due = started;
+        while (true) {
+            due += (long) (-Math.log(1 - arrivals.nextDouble()) * meanGap);
+            if (publishEvery > 0 && nextPublish <= due && nextPublish < end) {
+                long publishDue = nextPublish;
+                Launcher.parkUntil(publishDue);
+                launcher.launch(publishDue, dueNanos -> {
+                    Long event = mix.publish(ThreadLocalRandom.current(), dueNanos);
+                    if (event != null) {
+                        burst(mix, event, timers, end);
+                    }
+                });
+                nextPublish += publishEvery;
+            }
+            if (due >= end) {
+                break;
+            }
+            Launcher.parkUntil(due);
+            launcher.launch(due, dueNanos -> mix.issue(ThreadLocalRandom.current(), dueNanos));
+        }
+    }
+
+    /**
+     * Schedules the extra views of a freshly published event at exponentially distributed delays.
+     */
+    private void burst(TrafficMix mix, long event, ScheduledExecutorService timers, long end) {
+        long published = System.nanoTime();
+        double decay = options.burstDecay().toNanos();
+        for (int i = 0; i < options.burstViews(); i++) {
+            long due = published + (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * decay);
+            if (due < end) {
+                timers.schedule(() -> launcher.launch(due, dueNanos ->
+                                mix.view(event, ThreadLocalRandom.current(), dueNanos)),
+                        due - System.nanoTime(), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void progress(long started) {
+        long seconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+        long total = recorder.total();
+        System.out.printf("%4d s: %d requests, %.0f/s, %d failed, %d dropped, %d in flight%n", seconds, total,
+                (double) total / seconds, recorder.failures(), recorder.dropped(), launcher.inFlight());
+    }
+}
@@ -0,0 +1,129 @@
+package ru.practicum.loadgen;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Command line of the load generator, as {@code -name=value} pairs. Every option has a default, so a bare run
+ * seeds a small catalog on localhost and drives a minute of mixed traffic at it.
+ */
+record LoadOptions(String mainUrl,
+                   String statsUrl,
+                   Duration duration,
+                   double rate,
+                   int users,
+                   int categories,
+                   int events,
+                   double zipfExponent,
+                   Map<String, Integer> mix,
+                   Duration publishEvery,
+                   int burstViews,
+                   Duration burstDecay,
+                   int maxInFlight,
+                   Path replay,
+                   double replaySpeed,
+                   String replayTarget,
+                   Path out,
+                   long seed) {
+
+    static final String USAGE = """
+            Usage: java -jar load-gen.jar [-name=value ...]
+              -main-url=http://localhost:8080     main service
+              -stats-url=http://localhost:9090    stats server
+              -duration=PT1M                      how long to generate traffic
+              -rate=200                           mean requests per second, Poisson arrivals
+              -users=50 -categories=10 -events=500
+                                                  catalog seeded before the run
+              -zipf=1.1                           exponent of event popularity
+              -mix=public=80,private=15,admin=4,stats=1
+                                                  weights of the call groups of ewm-main-service-spec.json,
+                                                  stats being direct calls to the stats server
+              -publish-every=PT10S                interval of admin publishing a new event
+              -burst-views=200 -burst-decay=PT30S extra views of a fresh event, decaying exponentially
+              -max-in-flight=10000                requests beyond this are counted as dropped
+              -replay=hits.csv[.gz]               replay an endpoint_hits export instead of synthetic traffic
+              -replay-speed=1                     how much faster than recorded to replay
+              -replay-target=stats                stats: POST /hits to the stats server, main: GET each uri
+              -out=results                        directory for per-endpoint .hgrm percentile files
+              -seed=42
+            """;
+
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("main-url", "http://localhost:8080");
+        DEFAULTS.put("stats-url", "http://localhost:9090");
+        DEFAULTS.put("duration", "PT1M");
+        DEFAULTS.put("rate", "200");
+        DEFAULTS.put("users", "50");
+        DEFAULTS.put("categories", "10");
+        DEFAULTS.put("events", "500");
+        DEFAULTS.put("zipf", "1.1");
+        DEFAULTS.put("mix", "public=80,private=15,admin=4,stats=1");
+        DEFAULTS.put("publish-every", "PT10S");
+        DEFAULTS.put("burst-views", "200");
+        DEFAULTS.put("burst-decay", "PT30S");
+        DEFAULTS.put("max-in-flight", "10000");
+        DEFAULTS.put("replay", "");
+        DEFAULTS.put("replay-speed", "1");
+        DEFAULTS.put("replay-target", "stats");
+        DEFAULTS.put("out", "");
+        DEFAULTS.put("seed", "42");
+    }
+
+    static LoadOptions parse(String[] args) {
+        Map<String, String> values = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (!arg.startsWith("-") || split < 0) {
+                throw new IllegalArgumentException("Expected -name=value but got " + arg);
+            }
+            String name = arg.substring(1, split);
+            if (!DEFAULTS.containsKey(name)) {
+                throw new IllegalArgumentException("Unknown option -" + name);
+            }
+            values.put(name, arg.substring(split + 1));
+        }
+        LoadOptions options = new LoadOptions(
+                values.get("main-url"),
+                values.get("stats-url"),
+                Duration.parse(values.get("duration")),
+                Double.parseDouble(values.get("rate")),
+                Integer.parseInt(values.get("users")),
+                Integer.parseInt(values.get("categories")),
+                Integer.parseInt(values.get("events")),
+                Double.parseDouble(values.get("zipf")),
+                parseMix(values.get("mix")),
+                Duration.parse(values.get("publish-every")),
+                Integer.parseInt(values.get("burst-views")),
+                Duration.parse(values.get("burst-decay")),
+                Integer.parseInt(values.get("max-in-flight")),
+                values.get("replay").isEmpty() ? null : Path.of(values.get("replay")),
+                Double.parseDouble(values.get("replay-speed")),
+                values.get("replay-target"),
+                values.get("out").isEmpty() ? null : Path.of(values.get("out")),
+                Long.parseLong(values.get("seed")));
+        if (options.rate <= 0 || options.users < 1 || options.categories < 1 || options.events < 1
+                || options.replaySpeed <= 0) {
+            throw new IllegalArgumentException("rate, users, categories, events and replay-speed must be positive");
+        }
+        if (!options.replayTarget.equals("stats") && !options.replayTarget.equals("main")) {
+            throw new IllegalArgumentException("replay-target must be stats or main");
+        }
+        return options;
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        for (String part : mix.split(",")) {
+            String[] pair = part.split("=", 2);
+            if (pair.length != 2 || !TrafficMix.GROUPS.contains(pair[0])) {
+                throw new IllegalArgumentException("Bad mix entry " + part + ", groups are " + TrafficMix.GROUPS);
+            }
+            weights.put(pair[0], Integer.parseInt(pair[1]));
+        }
+        return weights;
+    }
+}
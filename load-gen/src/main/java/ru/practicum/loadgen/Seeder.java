@@ -0,0 +1,101 @@
+package ru.practicum.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Creates the catalog the traffic runs against through the admin and private API: categories, users, published
+ * events and a few compilations. Names carry a run suffix, so repeated runs against one database do not collide
+ * on unique names and emails.
+ */
+final class Seeder {
+
+    private static final String[] WORDS = {"concert", "jazz", "lecture", "hike", "festival", "workshop", "meetup",
+            "exhibition", "theatre", "cinema", "marathon", "quiz", "picnic", "tour", "masterclass", "party"};
+
+    private final EwmHttp http;
+    private final LoadOptions options;
+    private final String run = Long.toString(System.currentTimeMillis(), 36);
+
+    Seeder(EwmHttp http, LoadOptions options) {
+        this.http = http;
+        this.options = options;
+    }
+
+    Catalog seed() throws Exception {
+        Catalog catalog = new Catalog();
+        Random random = new Random(options.seed());
+        String main = options.mainUrl();
+        for (int i = 0; i < options.categories(); i++) {
+            catalog.categories.add(http.require("POST", main + "/admin/categories",
+                    Map.of("name", WORDS[i % WORDS.length] + " " + run + "-" + i)).get("id").asLong());
+        }
+        for (int i = 0; i < options.users(); i++) {
+            catalog.users.add(newUser(i));
+        }
+
+        List<Long> initiators = new ArrayList<>();
+        List<Future<Long>> created = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < options.events(); i++) {
+                long initiator = Catalog.any(catalog.users, random);
+                Map<String, Object> event = newEvent(random, Catalog.any(catalog.categories, random));
+                initiators.add(initiator);
+                created.add(executor.submit(() -> {
+                    long id = http.require("POST", main + "/users/" + initiator + "/events", event)
+                            .get("id").asLong();
+                    http.require("PATCH", main + "/admin/events/" + id, Map.of("stateAction", "PUBLISH_EVENT"));
+                    return id;
+                }));
+            }
+        }
+        for (int i = 0; i < created.size(); i++) {
+            catalog.addEvent(initiators.get(i), created.get(i).get());
+        }
+
+        for (int i = 0; i < Math.min(10, options.events()); i++) {
+            List<Long> events = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                events.add(Catalog.any(catalog.events, random));
+            }
+            JsonNode compilation = http.require("POST", main + "/admin/compilations", Map.of(
+                    "events", events.stream().distinct().toList(),
+                    "pinned", i % 3 == 0,
+                    "title", "Best of " + WORDS[i % WORDS.length] + " " + run));
+            catalog.compilations.add(compilation.get("id").asLong());
+        }
+        System.out.printf("Seeded %d categories, %d users, %d published events, %d compilations%n",
+                catalog.categories.size(), catalog.users.size(), catalog.events.size(), catalog.compilations.size());
+        return catalog;
+    }
+
+    long newUser(int index) {
+        return http.require("POST", options.mainUrl() + "/admin/users", Map.of(
+                "name", "Load user " + run + "-" + index,
+                "email", "load-" + run + "-" + index + "@example.com")).get("id").asLong();
+    }
+
+    static Map<String, Object> newEvent(Random random, long category) {
+        String title = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("title", title);
+        event.put("annotation", "Annotation of " + title + " that is long enough");
+        event.put("description", "Description of " + title + " for the load test, with some detail");
+        event.put("category", category);
+        event.put("eventDate", EwmHttp.DATE_TIME.format(LocalDateTime.now().plusDays(1 + random.nextInt(60))));
+        event.put("location", Map.of("lat", 55 + random.nextDouble(), "lon", 37 + random.nextDouble()));
+        event.put("paid", random.nextInt(4) == 0);
+        event.put("participantLimit", random.nextInt(3) == 0 ? 0 : 5 + random.nextInt(50));
+        event.put("requestModeration", random.nextBoolean());
+        return event;
+    }
+}
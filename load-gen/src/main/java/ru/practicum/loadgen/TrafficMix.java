@@ -0,0 +1,195 @@
+package ru.practicum.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import ru.practicum.EndpointHit;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * One synthetic request at a time, drawn from the public, private and admin groups of
+ * {@code ewm-main-service-spec.json} and from direct stats server calls, by the weights of {@code -mix}.
+ * Events are picked by Zipf popularity and visitors by address, so both view counts and unique views look like
+ * real traffic. 4xx answers such as a duplicate participation request are part of the mix, not failures.
+ */
+final class TrafficMix {
+
+    static final List<String> GROUPS = List.of("public", "private", "admin", "stats");
+    private static final String[] SORTS = {"EVENT_DATE", "VIEWS"};
+    private static final int VISITORS = 100_000;
+
+    private final EwmHttp http;
+    private final Catalog catalog;
+    private final String main;
+    private final String stats;
+    private final ZipfDistribution popularity;
+    private final ZipfDistribution visitors;
+    private final int[] weights = new int[GROUPS.size()];
+    private final int totalWeight;
+
+    TrafficMix(EwmHttp http, Catalog catalog, LoadOptions options) {
+        this.http = http;
+        this.catalog = catalog;
+        main = options.mainUrl();
+        stats = options.statsUrl();
+        popularity = new ZipfDistribution(catalog.events.size(), options.zipfExponent());
+        visitors = new ZipfDistribution(VISITORS, 0.8);
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = options.mix().getOrDefault(GROUPS.get(i), 0);
+            total += weights[i];
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("The mix needs a positive weight");
+        }
+        totalWeight = total;
+    }
+
+    void issue(Random random, long dueNanos) {
+        int pick = random.nextInt(totalWeight);
+        int group = 0;
+        while (pick >= weights[group]) {
+            pick -= weights[group++];
+        }
+        switch (group) {
+            case 0 -> publicCall(random, dueNanos);
+            case 1 -> privateCall(random, dueNanos);
+            case 2 -> adminCall(random, dueNanos);
+            default -> statsCall(random, dueNanos);
+        }
+    }
+
+    void view(long event, Random random, long dueNanos) {
+        http.call("GET /events/{id}", "GET", main + "/events/" + event, null, visitor(random), dueNanos);
+    }
+
+    /**
+     * Creates and publishes an event the way an initiator and an admin would, and returns its id once it is
+     * public, or null if either step failed.
+     */
+    Long publish(Random random, long dueNanos) {
+        long user = Catalog.any(catalog.users, random);
+        JsonNode created = http.call("POST /users/{userId}/events", "POST", main + "/users/" + user + "/events",
+                Seeder.newEvent(random, Catalog.any(catalog.categories, random)), null, dueNanos);
+        if (created == null) {
+            return null;
+        }
+        long event = created.get("id").asLong();
+        if (http.call("PATCH /admin/events/{eventId}", "PATCH", main + "/admin/events/" + event,
+                Map.of("stateAction", "PUBLISH_EVENT"), null, System.nanoTime()) == null) {
+            return null;
+        }
+        catalog.addEvent(user, event);
+        return event;
+    }
+
+    private void publicCall(Random random, long dueNanos) {
+        int kind = random.nextInt(100);
+        String visitor = visitor(random);
+        if (kind < 45) {
+            view(popular(random), random, dueNanos);
+        } else if (kind < 75) {
+            StringBuilder url = new StringBuilder(main + "/events?from=0&size=10&sort=" + SORTS[random.nextInt(2)]);
+            if (random.nextBoolean()) {
+                url.append("&categories=").append(Catalog.any(catalog.categories, random));
+            }
+            if (random.nextInt(4) == 0) {
+                url.append("&text=").append(EwmHttp.encode(random.nextBoolean() ? "jazz" : "festival"));
+            }
+            if (random.nextInt(3) == 0) {
+                url.append("&onlyAvailable=true&paid=").append(random.nextBoolean());
+            }
+            if (random.nextInt(3) == 0) {
+                LocalDateTime start = LocalDateTime.now().plusDays(random.nextInt(30));
+                url.append("&rangeStart=").append(EwmHttp.format(start))
+                        .append("&rangeEnd=").append(EwmHttp.format(start.plusDays(7)));
+            }
+            http.call("GET /events", "GET", url.toString(), null, visitor, dueNanos);
+        } else if (kind < 85) {
+            http.call("GET /categories", "GET", main + "/categories?from=0&size=10", null, visitor, dueNanos);
+        } else if (kind < 90) {
+            http.call("GET /categories/{catId}", "GET", main + "/categories/" + Catalog.any(catalog.categories, random),
+                    null, visitor, dueNanos);
+        } else if (kind < 95 || catalog.compilations.isEmpty()) {
+            http.call("GET /compilations", "GET", main + "/compilations?pinned=" + random.nextBoolean()
+                    + "&from=0&size=10", null, visitor, dueNanos);
+        } else {
+            http.call("GET /compilations/{compId}", "GET", main + "/compilations/"
+                    + Catalog.any(catalog.compilations, random), null, visitor, dueNanos);
+        }
+    }
+
+    private void privateCall(Random random, long dueNanos) {
+        long user = Catalog.any(catalog.users, random);
+        String base = main + "/users/" + user;
+        int kind = random.nextInt(100);
+        Long own = catalog.eventOf(user, random);
+        if (kind < 25) {
+            http.call("GET /users/{userId}/events", "GET", base + "/events?from=0&size=10", null, null, dueNanos);
+        } else if (kind < 40 && own != null) {
+            http.call("GET /users/{userId}/events/{eventId}", "GET", base + "/events/" + own, null, null, dueNanos);
+        } else if (kind < 50 && own != null) {
+            http.call("GET /users/{userId}/events/{eventId}/requests", "GET", base + "/events/" + own + "/requests",
+                    null, null, dueNanos);
+        } else if (kind < 75) {
+            JsonNode request = http.call("POST /users/{userId}/requests", "POST",
+                    base + "/requests?eventId=" + popular(random), null, null, dueNanos);
+            if (request != null) {
+                catalog.addRequest(user, request.get("id").asLong());
+            }
+        } else if (kind < 90) {
+            http.call("GET /users/{userId}/requests", "GET", base + "/requests", null, null, dueNanos);
+        } else {
+            Long request = catalog.takeRequest(user);
+            if (request != null) {
+                http.call("PATCH /users/{userId}/requests/{requestId}/cancel", "PATCH",
+                        base + "/requests/" + request + "/cancel", null, null, dueNanos);
+            } else {
+                http.call("GET /users/{userId}/requests", "GET", base + "/requests", null, null, dueNanos);
+            }
+        }
+    }
+
+    private void adminCall(Random random, long dueNanos) {
+        int kind = random.nextInt(100);
+        if (kind < 40) {
+            http.call("GET /admin/events", "GET", main + "/admin/events?states=PUBLISHED&from="
+                    + 10 * random.nextInt(10) + "&size=10", null, null, dueNanos);
+        } else if (kind < 60) {
+            http.call("GET /admin/events", "GET", main + "/admin/events?users=" + Catalog.any(catalog.users, random)
+                    + "&categories=" + Catalog.any(catalog.categories, random), null, null, dueNanos);
+        } else if (kind < 85) {
+            http.call("GET /admin/users", "GET", main + "/admin/users?from=0&size=20", null, null, dueNanos);
+        } else {
+            String name = "Admin user " + Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+            http.call("POST /admin/users", "POST", main + "/admin/users", Map.of("name", name,
+                    "email", name.replace(' ', '-').toLowerCase() + "@example.com"), null, dueNanos);
+        }
+    }
+
+    private void statsCall(Random random, long dueNanos) {
+        if (random.nextInt(4) == 0) {
+            http.call("POST /hit", "POST", stats + "/hit", new EndpointHit(null, "ewm-main-service",
+                    "/events/" + popular(random), visitor(random), LocalDateTime.now()), null, dueNanos);
+            return;
+        }
+        LocalDateTime end = LocalDateTime.now();
+        StringBuilder url = new StringBuilder(stats + "/stats?start=" + EwmHttp.format(end.minusDays(30))
+                + "&end=" + EwmHttp.format(end) + "&unique=" + random.nextBoolean());
+        for (int i = 0; i < 1 + random.nextInt(10); i++) {
+            url.append("&uris=").append(EwmHttp.encode("/events/" + popular(random)));
+        }
+        http.call("GET /stats", "GET", url.toString(), null, null, dueNanos);
+    }
+
+    private long popular(Random random) {
+        return catalog.events.get(popularity.sample(random));
+    }
+
+    private String visitor(Random random) {
+        int visitor = visitors.sample(random);
+        return "10." + (visitor >> 16) + "." + ((visitor >> 8) & 0xff) + "." + (visitor & 0xff);
+    }
+}
@@ -0,0 +1,30 @@
+package ru.practicum.loadgen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Ranks {@code 0..n-1} drawn with probability proportional to {@code 1 / (rank + 1)^exponent}, by binary search
+ * over the cumulative weights. Rank 0 is the most popular.
+ */
+final class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    ZipfDistribution(int n, double exponent) {
+        cumulative = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            sum += 1 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = sum;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cumulative[rank] /= sum;
+        }
+    }
+
+    int sample(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+}
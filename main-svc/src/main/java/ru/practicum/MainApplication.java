@@ -1,5 +1,8 @@
 package ru.practicum;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
@@ -14,4 +17,57 @@ public class MainApplication {
     public StatsClient statsClient() {
         return new StatsClient();
     }
+
+    @Bean
+    public ViewCountCache viewCountCache(StatsClient statsClient) {
+        return new ViewCountCache(statsClient);
+    }
+
+    @Bean
+    public MeterBinder statsClientMetrics(StatsClient statsClient, ViewCountCache viewCountCache) {
+        return registry -> {
+            Gauge.builder("stats.client.hits.queued", statsClient, StatsClient::getQueuedHits)
+                    .description("Hits buffered for the stats service")
+                    .register(registry);
+            FunctionCounter.builder("stats.client.hits.dropped", statsClient, StatsClient::getDroppedHits)
+                    .description("Hits dropped because the buffer was full")
+                    .register(registry);
+            FunctionCounter.builder("stats.client.hits.failed", statsClient, StatsClient::getFailedHits)
+                    .description("Hits the stats service did not accept")
+                    .register(registry);
+            Gauge.builder("stats.client.circuit.open", statsClient,
+                            client -> "CLOSED".equals(client.getCircuitState()) ? 0 : 1)
+                    .description("1 while calls to the stats service fail fast")
+                    .register(registry);
+            Gauge.builder("stats.client.calls.in-flight", statsClient, StatsClient::getInFlightCalls)
+                    .description("Calls to the stats service in flight")
+                    .register(registry);
+            Gauge.builder("stats.client.calls.max", statsClient, StatsClient::getMaxInFlightCalls)
+                    .description("Calls to the stats service allowed in flight at once")
+                    .register(registry);
+            FunctionCounter.builder("stats.client.calls.rejected", statsClient, StatsClient::getBulkheadRejectedCalls)
+                    .tag("reason", "bulkhead")
+                    .description("Calls answered by the fallback without reaching the stats service")
+                    .register(registry);
+            FunctionCounter.builder("stats.client.calls.rejected", statsClient, StatsClient::getCircuitRejectedCalls)
+                    .tag("reason", "circuit")
+                    .description("Calls answered by the fallback without reaching the stats service")
+                    .register(registry);
+            FunctionCounter.builder("stats.client.view-cache.lookups", viewCountCache, ViewCountCache::getFreshHits)
+                    .tag("result", "fresh")
+                    .register(registry);
+            FunctionCounter.builder("stats.client.view-cache.lookups", viewCountCache, ViewCountCache::getStaleHits)
+                    .tag("result", "stale")
+                    .register(registry);
+            FunctionCounter.builder("stats.client.view-cache.lookups", viewCountCache, ViewCountCache::getMisses)
+                    .tag("result", "miss")
+                    .register(registry);
+            FunctionCounter.builder("stats.client.view-cache.load-failures", viewCountCache,
+                            ViewCountCache::getLoadFailures)
+                    .description("View count loads the stats service did not answer")
+                    .register(registry);
+            Gauge.builder("stats.client.view-cache.size", viewCountCache, ViewCountCache::getSize)
+                    .register(registry);
+        };
+    }
 }
\ No newline at end of file
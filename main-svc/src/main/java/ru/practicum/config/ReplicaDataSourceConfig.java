@@ -0,0 +1,21 @@
+package ru.practicum.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import ru.practicum.datasource.ReplicaRoutingConfiguration;
+
+/**
+ * Routes read-only transactions to the replica configured under {@code app.datasource.replica}. Without
+ * {@code app.datasource.replica.enabled} Boot's single pool stays as it is. Scheduling is only needed here, for
+ * the replica lag check.
+ */
+@Configuration
+@EnableScheduling
+@ConditionalOnProperty(name = "app.datasource.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig extends ReplicaRoutingConfiguration {
+
+    public ReplicaDataSourceConfig() {
+        super("app.datasource.replica");
+    }
+}
@@ -6,7 +6,7 @@ import org.springframework.data.domain.*;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import ru.practicum.StatsClient;
+import ru.practicum.ViewCountCache;
 import ru.practicum.dto.*;
 import ru.practicum.exception.ConflictException;
 import ru.practicum.exception.NotFoundException;
@@ -24,6 +24,7 @@ import ru.practicum.repository.CategoryRepository;
 import jakarta.persistence.criteria.Predicate;
 import ru.practicum.service.EventService;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -37,7 +38,7 @@ public class EventServiceImpl implements EventService {
     private final EventRepository eventRepository;
     private final UserRepository userRepository;
     private final CategoryRepository categoryRepository;
-    private final StatsClient statsClient;
+    private final ViewCountCache viewCountCache;
 
     @Override
     @Transactional
@@ -516,21 +517,12 @@ public class EventServiceImpl implements EventService {
             Event event = eventRepository.findById(eventId)
                     .orElseThrow(() -> new NotFoundException("Event with id=" + eventId + " was not found"));
 
-            LocalDateTime start = event.getPublishedOn() != null ? event.getPublishedOn() : LocalDateTime.now().minusYears(1);
-            LocalDateTime end = LocalDateTime.now();
-            List<String> uris = List.of("/events/" + eventId);
+            LocalDateTime start = viewsStart(event);
+            String uri = "/events/" + eventId;
 
-            log.debug("Getting stats for event {}: start={}, end={}, uris={}", eventId, start, end, uris);
+            log.debug("Getting stats for event {}: start={}, uri={}", eventId, start, uri);
 
-            var stats = statsClient.getStats(start, end, uris, true);
-
-            Long views = 0L;
-            for (var stat : stats) {
-                if (("/events/" + eventId).equals(stat.getUri())) {
-                    views = stat.getHits() != null ? stat.getHits() : 0L;
-                    break;
-                }
-            }
+            Long views = viewCountCache.getViews(start, List.of(uri), true).getOrDefault(uri, 0L);
 
             log.debug("Event {} has {} views from stats service", eventId, views);
             return views;
@@ -547,22 +539,14 @@ public class EventServiceImpl implements EventService {
         }
 
         try {
-            List<String> uris = events.stream()
-                    .map(event -> "/events/" + event.getId())
-                    .collect(Collectors.toList());
-
-            LocalDateTime start = events.stream()
-                    .map(event -> event.getPublishedOn() != null ? event.getPublishedOn() : LocalDateTime.now().minusYears(1))
-                    .min(LocalDateTime::compareTo)
-                    .orElse(LocalDateTime.now().minusYears(1));
-            LocalDateTime end = LocalDateTime.now();
+            Map<LocalDateTime, List<String>> urisByStart = events.stream()
+                    .collect(Collectors.groupingBy(this::viewsStart,
+                            Collectors.mapping(event -> "/events/" + event.getId(), Collectors.toList())));
 
-            var stats = statsClient.getStats(start, end, uris, true);
-
-            return stats.stream()
+            return viewCountCache.getViews(urisByStart, true).entrySet().stream()
                     .collect(Collectors.toMap(
-                            stat -> extractEventIdFromUri(stat.getUri()),
-                            stat -> stat.getHits() != null ? stat.getHits() : 0L,
+                            entry -> extractEventIdFromUri(entry.getKey()),
+                            Map.Entry::getValue,
                             (existing, replacement) -> existing
                     ));
         } catch (Exception e) {
@@ -572,6 +556,15 @@ public class EventServiceImpl implements EventService {
         }
     }
 
+    /**
+     * Views of an event count from its publication, or from a year back for unpublished ones. The same event
+     * always gets the same start, so its count stays cached across single and list lookups.
+     */
+    private LocalDateTime viewsStart(Event event) {
+        return event.getPublishedOn() != null ? event.getPublishedOn()
+                : LocalDate.now().minusYears(1).atStartOfDay();
+    }
+
     private Long extractEventIdFromUri(String uri) {
         try {
             String[] parts = uri.split("/");
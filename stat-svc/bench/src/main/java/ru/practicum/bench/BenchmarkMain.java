@@ -0,0 +1,27 @@
+package ru.practicum.bench;
+
+import org.openjdk.jmh.Main;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Entry point of {@code benchmarks.jar}: JMH's own launcher, except that results are also written as JSON,
+ * to {@code jmh-result.json} unless {@code -rff} names another file, e.g. one per commit for tracking regressions:
+ * <pre>
+ * java -jar stat-svc/bench/target/benchmarks.jar StatsQuery -rff bench-$(git rev-parse --short HEAD).json
+ * </pre>
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> arguments = new ArrayList<>(List.of(args));
+        if (!arguments.contains("-rf")) {
+            arguments.addAll(0, List.of("-rf", "json"));
+        }
+        Main.main(arguments.toArray(String[]::new));
+    }
+}
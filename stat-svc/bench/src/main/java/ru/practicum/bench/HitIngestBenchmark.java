@@ -0,0 +1,78 @@
+package ru.practicum.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.EndpointHit;
+import ru.practicum.service.StatsService;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synchronous ingest through {@link StatsService} in hits per second: {@code saveHit} one at a time for a batch
+ * of 1, {@code saveHits} otherwise. Each write updates endpoint_hits, the rollups, sketches and first-seen tables
+ * in one transaction, so the batch size mostly decides how many transactions and round trips a hit costs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class HitIngestBenchmark {
+
+    private static final int HITS = 1_000;
+    private static final int POOL = 200_000;
+
+    @Param({"1", "10", "100", "1000"})
+    private int batch;
+
+    private ConfigurableApplicationContext context;
+    private StatsService statsService;
+    private List<EndpointHit> hits;
+    private int offset;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = StatsServerContext.start();
+        statsService = context.getBean(StatsService.class);
+        hits = StatsServerContext.hits(new Random(42), POOL);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HITS)
+    public void ingest() {
+        if (offset + HITS > POOL) {
+            offset = 0;
+        }
+        if (batch == 1) {
+            for (int i = offset; i < offset + HITS; i++) {
+                statsService.saveHit(hits.get(i));
+            }
+        } else {
+            for (int from = offset; from < offset + HITS; from += batch) {
+                statsService.saveHits(hits.subList(from, Math.min(from + batch, offset + HITS)));
+            }
+        }
+        offset += HITS;
+    }
+}
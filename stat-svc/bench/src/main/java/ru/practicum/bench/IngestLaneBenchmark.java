@@ -0,0 +1,125 @@
+package ru.practicum.bench;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.practicum.EndpointHit;
+import ru.practicum.ingest.HitIngestQueue;
+import ru.practicum.ingest.HitWal;
+import ru.practicum.ingest.HitWriter;
+import ru.practicum.ingest.IngestOverloadGuard;
+
+import java.lang.reflect.Field;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Async ingest throughput of {@link HitIngestQueue} by lane count, in hits per second. The writer stands in for
+ * PostgreSQL: every batch waits one round trip and then spends CPU per row, so lanes overlap their round trips
+ * the way they overlap them on separate connections. Real numbers also depend on the server's cores and
+ * connection pool, which this does not model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestLaneBenchmark {
+
+    private static final int HITS = 20_000;
+    private static final int REQUEST_SIZE = 100;
+
+    @Param({"1", "2", "4", "8"})
+    private int lanes;
+
+    @Param({"1000"})
+    private long roundTripMicros;
+
+    @Param({"200"})
+    private long rowTokens;
+
+    private final AtomicLong written = new AtomicLong();
+    private HitIngestQueue queue;
+    private List<EndpointHit> hits;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        HitWriter hitWriter = new HitWriter(null, null, null, null, null, null, null, null, null) {
+            @Override
+            public void write(List<EndpointHit> batch) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+                Blackhole.consumeCPU(rowTokens * batch.size());
+                written.addAndGet(batch.size());
+            }
+        };
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        queue = new HitIngestQueue(hitWriter, new HitWal(hitWriter, meterRegistry),
+                new IngestOverloadGuard(meterRegistry), meterRegistry);
+        set(queue, "enabled", true);
+        set(queue, "queueCapacity", 10_000);
+        set(queue, "laneCount", lanes);
+        set(queue, "connectionPoolSize", 10);
+        set(queue, "flushSize", 500);
+        set(queue, "flushIntervalMs", 5L);
+        queue.start();
+
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 0, 0);
+        hits = new ArrayList<>(HITS);
+        for (int i = 0; i < HITS; i++) {
+            // Skewed like event pages: most views land on a few popular events.
+            int event = (int) Math.pow(1_000, random.nextDouble());
+            hits.add(new EndpointHit(null, "ewm-main-service", "/events/" + event,
+                    "192.168." + random.nextInt(256) + "." + random.nextInt(256), start.plusSeconds(i)));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        queue.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(HITS)
+    public void ingest() {
+        long target = written.get() + HITS;
+        for (int from = 0; from < HITS; from += REQUEST_SIZE) {
+            List<EndpointHit> request = hits.subList(from, from + REQUEST_SIZE);
+            // A full lane rejects the rest of a request, which a client retries after a pause.
+            for (int accepted = 0; accepted < REQUEST_SIZE; ) {
+                int offered = queue.offerAll(request.subList(accepted, REQUEST_SIZE));
+                accepted += offered;
+                if (offered == 0) {
+                    LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                }
+            }
+        }
+        while (written.get() < target) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+
+    private static void set(Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = target.getClass().getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+}
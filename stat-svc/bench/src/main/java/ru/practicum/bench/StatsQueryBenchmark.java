@@ -0,0 +1,130 @@
+package ru.practicum.bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.service.StatsService;
+import ru.practicum.storage.HitStorage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * {@code GET /stats} latency over a generated dataset, through {@link StatsService} (rollups, first-seen counts,
+ * sketches for {@code unique=approx}) and straight against raw hits through {@link HitStorage}, which keeps them
+ * in endpoint_hits or, for {@code engine=segment}, in memory-mapped segment files. Every call takes the next of a
+ * fixed set of ranges of one to seven days, half of them for ten uris. The dataset is loaded through the service,
+ * about a minute per 10^5 hits on H2, so larger ones such as
+ * {@code -p hits=1000000,100000000} are meant for {@code -Dbench.jdbc.url} on PostgreSQL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StatsQueryBenchmark {
+
+    private static final int LOAD_BATCH = 10_000;
+    private static final int QUERIES = 64;
+
+    @Param({"100000"})
+    private int hits;
+
+    @Param({"jdbc", "segment"})
+    private String engine;
+
+    private ConfigurableApplicationContext context;
+    private StatsService statsService;
+    private HitStorage hitStorage;
+    private LocalDateTime[] starts;
+    private LocalDateTime[] ends;
+    private List<List<String>> uris;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = StatsServerContext.start(engine);
+        statsService = context.getBean(StatsService.class);
+        hitStorage = context.getBean(HitStorage.class);
+
+        Random random = new Random(42);
+        long started = System.nanoTime();
+        for (int loaded = 0; loaded < hits; loaded += LOAD_BATCH) {
+            List<EndpointHit> batch = StatsServerContext.hits(random, Math.min(LOAD_BATCH, hits - loaded));
+            statsService.saveHits(batch);
+        }
+        System.out.printf("%nLoaded %d hits in %d s%n", hits,
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+
+        starts = new LocalDateTime[QUERIES];
+        ends = new LocalDateTime[QUERIES];
+        uris = IntStream.range(0, QUERIES).mapToObj(i -> i % 2 == 0 ? null
+                : IntStream.range(0, 10).mapToObj(event -> "/events/" + (1 + random.nextInt(100))).toList())
+                .toList();
+        for (int i = 0; i < QUERIES; i++) {
+            starts[i] = StatsServerContext.START.plusSeconds(random.nextInt((StatsServerContext.DAYS - 7) * 86_400));
+            ends[i] = starts[i].plusSeconds(86_400 + random.nextInt(6 * 86_400));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<ViewStats> stats() {
+        int query = next();
+        return statsService.getStats(starts[query], ends[query], uris.get(query), false);
+    }
+
+    @Benchmark
+    public List<ViewStats> uniqueStats() {
+        int query = next();
+        return statsService.getStats(starts[query], ends[query], uris.get(query), true);
+    }
+
+    /**
+     * {@code unique=approx} from HyperLogLog sketches, to set against {@link #uniqueStats()}.
+     */
+    @Benchmark
+    public List<ViewStats> approxUniqueStats() {
+        int query = next();
+        return statsService.getApproxUniqueStats(starts[query], ends[query], uris.get(query), null, null);
+    }
+
+    @Benchmark
+    public void rawStats(Blackhole blackhole) {
+        int query = next();
+        hitStorage.streamStats(starts[query], ends[query], uris.get(query), null, blackhole::consume);
+    }
+
+    @Benchmark
+    public void rawUniqueStats(Blackhole blackhole) {
+        int query = next();
+        hitStorage.streamUniqueStats(starts[query], ends[query], uris.get(query), null, blackhole::consume);
+    }
+
+    private int next() {
+        next = (next + 1) % QUERIES;
+        return next;
+    }
+}
@@ -0,0 +1,93 @@
+package ru.practicum.bench;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.util.FileSystemUtils;
+import ru.practicum.EndpointHit;
+import ru.practicum.StatsServerApplication;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Boots the stats server without its web layer for benchmarks that go through the real service, repositories and
+ * database. The database is an in-memory H2 in PostgreSQL mode unless {@code -Dbench.jdbc.url} (with
+ * {@code bench.jdbc.username} and {@code bench.jdbc.password}) points at a real PostgreSQL.
+ */
+final class StatsServerContext {
+
+    static final LocalDateTime START = LocalDateTime.of(2024, 5, 1, 0, 0);
+    static final int DAYS = 30;
+
+    private StatsServerContext() {
+    }
+
+    static ConfigurableApplicationContext start() {
+        return start("jdbc");
+    }
+
+    /**
+     * Starts the server with raw hits in the given {@code stats.storage.engine}; segment files go to a temporary
+     * directory that is deleted when the JVM exits.
+     */
+    static ConfigurableApplicationContext start(String engine) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("spring.datasource.url", System.getProperty("bench.jdbc.url",
+                "jdbc:h2:mem:bench;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DEFAULT_NULL_ORDERING=HIGH"));
+        properties.put("spring.datasource.username", System.getProperty("bench.jdbc.username", "sa"));
+        properties.put("spring.datasource.password", System.getProperty("bench.jdbc.password", ""));
+        properties.put("spring.datasource.driverClassName", System.getProperty("bench.jdbc.url", "")
+                .startsWith("jdbc:postgresql:") ? "org.postgresql.Driver" : "org.h2.Driver");
+        properties.put("spring.jpa.hibernate.ddl-auto", "create-drop");
+        properties.put("spring.jpa.show-sql", "false");
+        properties.put("logging.level.root", "WARN");
+        // Repeated queries would otherwise be answered from memory after the first call.
+        properties.put("stats.cache.enabled", "false");
+        // Off by default in the server; needed for the unique=approx benchmarks.
+        properties.put("stats.sketch.enabled", "true");
+        properties.put("stats.storage.engine", engine);
+        if ("segment".equals(engine)) {
+            properties.put("stats.storage.segment.dir", segmentDir());
+        }
+        // As arguments rather than default properties, which the server's application.properties would override.
+        return new SpringApplicationBuilder(StatsServerApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(properties.entrySet().stream().map(e -> "--" + e.getKey() + "=" + e.getValue())
+                        .toArray(String[]::new));
+    }
+
+    private static Path segmentDir() {
+        try {
+            Path dir = Files.createTempDirectory("bench-segments");
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> FileSystemUtils.deleteRecursively(dir.toFile())));
+            return dir;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Hits spread over {@link #DAYS} days from {@link #START}, skewed like event pages: most views land on a few
+     * popular events, and most visitors come back a few times.
+     */
+    static List<EndpointHit> hits(Random random, int count) {
+        List<EndpointHit> hits = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int event = (int) Math.pow(10_000, random.nextDouble());
+            int visitor = (int) Math.pow(1 << 20, random.nextDouble());
+            hits.add(new EndpointHit(null, "ewm-main-service", "/events/" + event,
+                    "10." + (visitor >> 16) + "." + ((visitor >> 8) & 0xff) + "." + (visitor & 0xff),
+                    START.plusSeconds(random.nextInt(DAYS * 86_400))));
+        }
+        return hits;
+    }
+}
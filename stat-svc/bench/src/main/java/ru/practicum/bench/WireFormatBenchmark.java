@@ -0,0 +1,113 @@
+package ru.practicum.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.practicum.BinaryStatsCodec;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON vs {@link BinaryStatsCodec} for the bodies of {@code POST /hits} and {@code GET /stats}. Payload sizes are
+ * printed once per trial, since JMH itself only reports time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"1", "100", "1000"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private List<EndpointHit> hits;
+    private List<ViewStats> stats;
+    private byte[] hitsJson;
+    private byte[] hitsBinary;
+    private byte[] statsJson;
+    private byte[] statsBinary;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 0, 0);
+        hits = new ArrayList<>(size);
+        stats = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // Skewed like event pages: most views land on a few popular events.
+            int event = (int) Math.pow(10_000, random.nextDouble());
+            hits.add(new EndpointHit(null, "ewm-main-service", "/events/" + event,
+                    "192.168." + random.nextInt(256) + "." + random.nextInt(256),
+                    start.plusSeconds(random.nextInt(86_400))));
+            stats.add(new ViewStats("ewm-main-service", "/events/" + i, (long) random.nextInt(1_000_000)));
+        }
+        hitsJson = objectMapper.writeValueAsBytes(hits);
+        hitsBinary = BinaryStatsCodec.encodeHits(hits);
+        statsJson = objectMapper.writeValueAsBytes(stats);
+        statsBinary = BinaryStatsCodec.encodeStats(stats);
+        System.out.printf("%nPayload bytes for %d records: hits json=%d binary=%d, stats json=%d binary=%d%n",
+                size, hitsJson.length, hitsBinary.length, statsJson.length, statsBinary.length);
+    }
+
+    @Benchmark
+    public byte[] writeHitsJson() throws IOException {
+        return objectMapper.writeValueAsBytes(hits);
+    }
+
+    @Benchmark
+    public byte[] writeHitsBinary() {
+        return BinaryStatsCodec.encodeHits(hits);
+    }
+
+    @Benchmark
+    public EndpointHit[] readHitsJson() throws IOException {
+        return objectMapper.readValue(hitsJson, EndpointHit[].class);
+    }
+
+    @Benchmark
+    public List<EndpointHit> readHitsBinary() throws IOException {
+        return BinaryStatsCodec.decodeHits(new ByteArrayInputStream(hitsBinary));
+    }
+
+    @Benchmark
+    public byte[] writeStatsJson() throws IOException {
+        return objectMapper.writeValueAsBytes(stats);
+    }
+
+    @Benchmark
+    public byte[] writeStatsBinary() {
+        return BinaryStatsCodec.encodeStats(stats);
+    }
+
+    @Benchmark
+    public ViewStats[] readStatsJson() throws IOException {
+        return objectMapper.readValue(statsJson, ViewStats[].class);
+    }
+
+    @Benchmark
+    public List<ViewStats> readStatsBinary() throws IOException {
+        return BinaryStatsCodec.decodeStats(new ByteArrayInputStream(statsBinary));
+    }
+}
@@ -0,0 +1,63 @@
+package ru.practicum;
+
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads and writes {@link EndpointHit}, {@code EndpointHit[]} and {@code ViewStats[]} bodies in the
+ * {@link BinaryStatsCodec} format. Registered by both the stats server and {@link StatsClient}; JSON stays the
+ * default and this converter is only picked when a request names {@link #MEDIA_TYPE}.
+ */
+public class BinaryStatsHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
+
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(BinaryStatsCodec.MEDIA_TYPE);
+
+    public BinaryStatsHttpMessageConverter() {
+        super(MEDIA_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == EndpointHit.class || clazz == EndpointHit[].class || clazz == ViewStats[].class;
+    }
+
+    @Override
+    protected Object readInternal(Class<?> clazz, HttpInputMessage inputMessage) throws IOException {
+        try {
+            if (clazz == ViewStats[].class) {
+                return BinaryStatsCodec.decodeStats(inputMessage.getBody()).toArray(new ViewStats[0]);
+            }
+            List<EndpointHit> hits = BinaryStatsCodec.decodeHits(inputMessage.getBody());
+            if (clazz == EndpointHit[].class) {
+                return hits.toArray(new EndpointHit[0]);
+            }
+            if (hits.size() != 1) {
+                throw new HttpMessageNotReadableException("Expected exactly one hit, got " + hits.size(),
+                        inputMessage);
+            }
+            return hits.get(0);
+        } catch (IllegalArgumentException e) {
+            throw new HttpMessageNotReadableException(e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(Object body, HttpOutputMessage outputMessage) throws IOException {
+        BinaryStatsCodec.Writer writer = new BinaryStatsCodec.Writer(outputMessage.getBody());
+        if (body instanceof ViewStats[] stats) {
+            Arrays.stream(stats).forEach(writer::writeStats);
+        } else if (body instanceof EndpointHit[] hits) {
+            Arrays.stream(hits).forEach(writer::writeHit);
+        } else {
+            writer.writeHit((EndpointHit) body);
+        }
+        writer.flush();
+    }
+}
@@ -0,0 +1,122 @@
+package ru.practicum;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue of hits shipped in batches by one background thread. Callers never block: a hit that does not
+ * fit is dropped and counted. The flusher sends whatever has queued every {@code flushIntervalMs}, or sooner once
+ * a full batch is waiting.
+ */
+@Slf4j
+class HitBuffer {
+
+    private final Queue<EndpointHit> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Consumer<List<EndpointHit>> sender;
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    HitBuffer(int capacity, int batchSize, long flushIntervalMs, Consumer<List<EndpointHit>> sender) {
+        if (capacity <= 0 || batchSize <= 0 || flushIntervalMs <= 0) {
+            throw new IllegalStateException(
+                    "stat-server.async buffer-capacity, batch-size and flush-interval-ms must be positive");
+        }
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.sender = sender;
+        flusher = new Thread(this::run, "stats-hit-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Queues the hit, or drops it and returns false if the buffer is full or closed.
+     */
+    boolean offer(EndpointHit hit) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        int queued = size.incrementAndGet();
+        if (queued > capacity) {
+            size.decrementAndGet();
+            if (dropped.incrementAndGet() % 1000 == 1) {
+                log.warn("Stats hit buffer is full ({} hits), {} hits dropped so far", capacity, dropped.get());
+            }
+            return false;
+        }
+        queue.add(hit);
+        if (queued == batchSize) {
+            LockSupport.unpark(flusher);
+        }
+        return true;
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    int getQueued() {
+        return size.get();
+    }
+
+    /**
+     * Stops accepting hits and sends what is still queued, waiting at most {@code timeoutMs} for the flusher.
+     */
+    void close(long timeoutMs) {
+        running = false;
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            log.warn("Stats hit flusher did not finish in {} ms, {} hits not sent", timeoutMs, size.get());
+            flusher.interrupt();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            if (size.get() < batchSize) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+            }
+            drain(false);
+        }
+        drain(true);
+    }
+
+    private void drain(boolean all) {
+        do {
+            List<EndpointHit> batch = new ArrayList<>(Math.min(batchSize, size.get()));
+            for (EndpointHit hit = queue.poll(); hit != null; hit = batch.size() < batchSize ? queue.poll() : null) {
+                size.decrementAndGet();
+                batch.add(hit);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                sender.accept(batch);
+            } catch (RuntimeException e) {
+                log.error("Failed to send {} buffered hits: {}", batch.size(), e.getMessage());
+            }
+        } while (all || size.get() >= batchSize);
+    }
+}
@@ -0,0 +1,142 @@
+package ru.practicum;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulkhead and circuit breaker around every call to the stats service. At most {@code maxInFlight} calls run at
+ * once; a call that cannot get a slot within {@code acquireTimeoutMs} is rejected. After
+ * {@code failureThreshold} consecutive failures (I/O errors, timeouts or 5xx answers) the circuit opens and calls
+ * are rejected without touching the network for {@code openMs}; then one trial call decides whether it closes
+ * again. Rejections surface as {@link IOException}, so callers fall back exactly as for an unreachable server.
+ */
+@Slf4j
+class StatsCallGuard implements ClientHttpRequestInterceptor {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final Semaphore slots;
+    private final int maxInFlight;
+    private final long acquireTimeoutMs;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final AtomicLong rejectedByBulkhead = new AtomicLong();
+    private final AtomicLong rejectedByCircuit = new AtomicLong();
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    StatsCallGuard(int maxInFlight, long acquireTimeoutMs, int failureThreshold, long openMs) {
+        if (maxInFlight <= 0 || failureThreshold <= 0 || openMs <= 0 || acquireTimeoutMs < 0) {
+            throw new IllegalStateException("stat-server.http max-in-flight, circuit failure threshold and open "
+                    + "time must be positive");
+        }
+        this.slots = new Semaphore(maxInFlight);
+        this.maxInFlight = maxInFlight;
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMs);
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        State admittedIn = admit();
+        if (admittedIn == State.OPEN) {
+            rejectedByCircuit.incrementAndGet();
+            throw new IOException("Stats service circuit is open");
+        }
+        boolean acquired;
+        try {
+            acquired = slots.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejectedByBulkhead.incrementAndGet();
+            if (admittedIn == State.HALF_OPEN) {
+                releaseTrial();
+            }
+            throw new IOException("Stats service has " + maxInFlight + " calls in flight");
+        }
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            if (response.getStatusCode().is5xxServerError()) {
+                onFailure();
+            } else {
+                onSuccess();
+            }
+            return response;
+        } catch (IOException | RuntimeException e) {
+            onFailure();
+            throw e;
+        } finally {
+            slots.release();
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    int getInFlight() {
+        return maxInFlight - slots.availablePermits();
+    }
+
+    long getRejectedByBulkhead() {
+        return rejectedByBulkhead.get();
+    }
+
+    long getRejectedByCircuit() {
+        return rejectedByCircuit.get();
+    }
+
+    /**
+     * Lets the call through while closed, and lets exactly one trial call through once the open period is over;
+     * returns CLOSED or HALF_OPEN for those, and OPEN when the call is rejected.
+     */
+    private synchronized State admit() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            return State.HALF_OPEN;
+        }
+        return state == State.CLOSED ? State.CLOSED : State.OPEN;
+    }
+
+    /**
+     * Puts the circuit back to open when a trial call could not even get a slot, so another trial follows.
+     */
+    private synchronized void releaseTrial() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Stats service answered again, closing the circuit");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || state == State.CLOSED && consecutiveFailures >= failureThreshold) {
+            log.warn("Stats service failed {} calls in a row, failing fast for {} ms", consecutiveFailures,
+                    TimeUnit.NANOSECONDS.toMillis(openNanos));
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+        }
+    }
+}
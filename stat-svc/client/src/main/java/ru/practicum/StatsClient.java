@@ -1,23 +1,32 @@
 package ru.practicum;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import jakarta.servlet.http.HttpServletRequest;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Slf4j
 @Component
-public class StatsClient {
-    private final RestTemplate restTemplate;
+public class StatsClient implements InitializingBean, DisposableBean {
+    private RestTemplate restTemplate;
 
     @Value("${stat-server.url:http://stats-server:9090}")
     private String serverUrl;
@@ -25,46 +34,324 @@ public class StatsClient {
     @Value("${app.name:ewm-main-service}")
     private String appName;
 
-    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    // json or binary; binary posts hits and reads /stats in the compact BinaryStatsCodec format.
+    @Value("${stat-server.wire-format:json}")
+    private String wireFormat;
 
-    public StatsClient() {
-        this.restTemplate = new RestTemplate();
-    }
+    // hit() only queues the hit and a background thread posts them to /hits in batches, so a stats read right
+    // after it may not see the hit yet. Off by default: the hit is sent before the caller reads its views.
+    @Value("${stat-server.async.enabled:false}")
+    private boolean asyncEnabled;
 
-    public void hit(HttpServletRequest request) {
-        String url = serverUrl + "/hit";
+    // Hits beyond this many waiting to be sent are dropped, see getDroppedHits().
+    @Value("${stat-server.async.buffer-capacity:10000}")
+    private int bufferCapacity;
+
+    @Value("${stat-server.async.batch-size:500}")
+    private int batchSize;
+
+    @Value("${stat-server.async.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${stat-server.async.shutdown-timeout-ms:5000}")
+    private long shutdownTimeoutMs;
+
+    // HTTP_1_1 keeps connections alive in the JDK client's pool; HTTP_2 multiplexes calls over one connection.
+    @Value("${stat-server.http.version:HTTP_1_1}")
+    private HttpClient.Version httpVersion;
+
+    @Value("${stat-server.http.connect-timeout-ms:1000}")
+    private long connectTimeoutMs;
+
+    @Value("${stat-server.http.read-timeout-ms:2000}")
+    private long readTimeoutMs;
+
+    // Calls beyond this many in flight wait up to acquire-timeout-ms for a slot, then fall back.
+    @Value("${stat-server.http.max-in-flight:50}")
+    private int maxInFlight;
+
+    @Value("${stat-server.http.acquire-timeout-ms:50}")
+    private long acquireTimeoutMs;
+
+    // Consecutive failures that open the circuit, and how long it then fails fast before a trial call.
+    @Value("${stat-server.http.circuit.failure-threshold:5}")
+    private int failureThreshold;
+
+    @Value("${stat-server.http.circuit.open-ms:10000}")
+    private long circuitOpenMs;
+
+    private StatsCallGuard guard;
+    private HitBuffer buffer;
+    private volatile boolean bulkSupported = true;
+    private final AtomicLong failedHits = new AtomicLong();
+    private final List<Consumer<EndpointHit>> savedHitListeners = new CopyOnWriteArrayList<>();
 
-        String clientIp = getClientIp(request);
-        String uri = request.getRequestURI();
+    private final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
-        log.info("Sending hit to stats service: app={}, uri={}, ip={}", appName, uri, clientIp);
+    @Override
+    public void afterPropertiesSet() {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(httpVersion)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        guard = new StatsCallGuard(maxInFlight, acquireTimeoutMs, failureThreshold, circuitOpenMs);
+        restTemplate = new RestTemplate(requestFactory);
+        restTemplate.getMessageConverters().add(new BinaryStatsHttpMessageConverter());
+        restTemplate.getInterceptors().add(guard);
+        if (asyncEnabled) {
+            buffer = new HitBuffer(bufferCapacity, batchSize, flushIntervalMs, this::send);
+        }
+    }
 
+    /**
+     * Sends the hits still buffered before the context closes.
+     */
+    @Override
+    public void destroy() {
+        if (buffer != null) {
+            buffer.close(shutdownTimeoutMs);
+        }
+    }
+
+    public void hit(HttpServletRequest request) {
         EndpointHit endpointHit = new EndpointHit();
         endpointHit.setApp(appName);
-        endpointHit.setUri(uri);
-        endpointHit.setIp(clientIp);
+        endpointHit.setUri(request.getRequestURI());
+        endpointHit.setIp(getClientIp(request));
         endpointHit.setTimestamp(LocalDateTime.now());
 
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-
-        HttpEntity<EndpointHit> requestEntity = new HttpEntity<>(endpointHit, headers);
+        if (buffer != null) {
+            log.debug("Queueing hit: app={}, uri={}, ip={}", appName, endpointHit.getUri(), endpointHit.getIp());
+            buffer.offer(endpointHit);
+            return;
+        }
 
+        log.info("Sending hit to stats service: app={}, uri={}, ip={}", appName, endpointHit.getUri(),
+                endpointHit.getIp());
         try {
-            ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, requestEntity, String.class);
-            log.info("Stats service hit response: {} - {}", response.getStatusCode(), response.getBody());
+            postHit(endpointHit);
         } catch (Exception e) {
+            failedHits.incrementAndGet();
             log.error("Failed to save hit to stats service: {}", e.getMessage());
         }
     }
 
+    public void hits(List<EndpointHit> endpointHits) {
+        if (endpointHits.isEmpty()) {
+            return;
+        }
+        send(endpointHits);
+    }
+
+    /**
+     * Calls the listener with each hit once the stats service has accepted it, from the thread that sent it.
+     */
+    public void addSavedHitListener(Consumer<EndpointHit> listener) {
+        savedHitListeners.add(listener);
+    }
+
+    /**
+     * Hits dropped because the buffer was full or the client was shutting down.
+     */
+    public long getDroppedHits() {
+        return buffer != null ? buffer.getDropped() : 0;
+    }
+
+    /**
+     * Hits the stats service did not accept, including those sent synchronously.
+     */
+    public long getFailedHits() {
+        return failedHits.get();
+    }
+
+    public int getQueuedHits() {
+        return buffer != null ? buffer.getQueued() : 0;
+    }
+
+    /**
+     * CLOSED, OPEN while calls fail fast, or HALF_OPEN during the trial call.
+     */
+    public String getCircuitState() {
+        return guard.getState().name();
+    }
+
+    public int getInFlightCalls() {
+        return guard.getInFlight();
+    }
+
+    public int getMaxInFlightCalls() {
+        return maxInFlight;
+    }
+
+    /**
+     * Calls answered by the fallback without reaching the server because all in-flight slots were taken.
+     */
+    public long getBulkheadRejectedCalls() {
+        return guard.getRejectedByBulkhead();
+    }
+
+    /**
+     * Calls answered by the fallback without reaching the server because the circuit was open.
+     */
+    public long getCircuitRejectedCalls() {
+        return guard.getRejectedByCircuit();
+    }
+
+    /**
+     * Posts the hits to /hits, or one by one to /hit once the server turned out to have no bulk endpoint.
+     */
+    private void send(List<EndpointHit> endpointHits) {
+        if (bulkSupported) {
+            log.info("Sending {} hits to stats service", endpointHits.size());
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(wireType());
+            Object body = isBinary() ? endpointHits.toArray(new EndpointHit[0]) : endpointHits;
+            try {
+                ResponseEntity<String> response = restTemplate.exchange(serverUrl + "/hits", HttpMethod.POST,
+                        new HttpEntity<>(body, headers), String.class);
+                log.info("Stats service batch hit response: {}", response.getStatusCode());
+                endpointHits.forEach(this::saved);
+                return;
+            } catch (HttpClientErrorException.NotFound | HttpClientErrorException.MethodNotAllowed e) {
+                log.warn("Stats service has no /hits endpoint ({}), sending hits one by one", e.getStatusCode());
+                bulkSupported = false;
+            } catch (Exception e) {
+                failedHits.addAndGet(endpointHits.size());
+                log.error("Failed to save {} hits to stats service: {}", endpointHits.size(), e.getMessage());
+                return;
+            }
+        }
+        for (EndpointHit endpointHit : endpointHits) {
+            try {
+                postHit(endpointHit);
+            } catch (Exception e) {
+                failedHits.incrementAndGet();
+                log.error("Failed to save hit to stats service: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void postHit(EndpointHit endpointHit) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(wireType());
+        ResponseEntity<String> response = restTemplate.exchange(serverUrl + "/hit", HttpMethod.POST,
+                new HttpEntity<>(endpointHit, headers), String.class);
+        log.debug("Stats service hit response: {} - {}", response.getStatusCode(), response.getBody());
+        saved(endpointHit);
+    }
+
+    private void saved(EndpointHit endpointHit) {
+        for (Consumer<EndpointHit> listener : savedHitListeners) {
+            try {
+                listener.accept(endpointHit);
+            } catch (Exception e) {
+                log.warn("Saved hit listener failed: {}", e.getMessage());
+            }
+        }
+    }
+
     public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
+        return getStats(start, end, uris, unique, null);
+    }
+
+    public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique,
+                                    Integer limit) {
+        return requestStats(start, end, uris, null, false, String.valueOf(unique != null ? unique : false), limit);
+    }
+
+    public List<ViewStats> getApproxUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return requestStats(start, end, uris, null, false, "approx", null);
+    }
+
+    /**
+     * Per-uri stats for every uri starting with one of {@code uriPrefixes}, without listing the uris.
+     */
+    public List<ViewStats> getStatsByPrefix(LocalDateTime start, LocalDateTime end, List<String> uriPrefixes,
+                                            Boolean unique) {
+        return requestStats(start, end, null, uriPrefixes, false, String.valueOf(unique != null ? unique : false),
+                null);
+    }
+
+    /**
+     * One row per app and prefix, with the uri set to the prefix and the hits of all its uris combined.
+     */
+    public List<ViewStats> getPrefixStats(LocalDateTime start, LocalDateTime end, List<String> uriPrefixes,
+                                          Boolean unique) {
+        return requestStats(start, end, null, uriPrefixes, true, String.valueOf(unique != null ? unique : false),
+                null);
+    }
+
+    /**
+     * Most viewed uris of {@code app} over the trailing {@code window} (e.g. "15m", "1h", "7d"), as estimated
+     * by the stats service; each entry carries its error bound.
+     */
+    public TopStats getTopStats(String app, String window, int k) {
+        String finalUrl = UriComponentsBuilder.fromHttpUrl(serverUrl + "/stats/top")
+                .queryParam("app", app)
+                .queryParam("window", window)
+                .queryParam("k", k)
+                .build().toUriString();
+        log.info("Requesting top stats from: {}", finalUrl);
+
+        try {
+            TopStats top = restTemplate.getForObject(finalUrl, TopStats.class);
+            log.info("Received {} top stats records", top != null ? top.getTop().size() : 0);
+            return top != null ? top : new TopStats(app, null, null, 0L, 0L, List.of());
+        } catch (Exception e) {
+            log.error("Failed to get top stats from stats service: {}", e.getMessage());
+            return new TopStats(app, null, null, 0L, 0L, List.of());
+        }
+    }
+
+    /**
+     * Hits per {@code interval} (minute, hour or day) for each of the uris, one dense array per app and uri.
+     */
+    public List<TimeSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris, String interval) {
+        UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(serverUrl + "/stats/timeseries")
+                .queryParam("start", start.format(formatter))
+                .queryParam("end", end.format(formatter))
+                .queryParam("interval", interval);
+        for (String uri : uris) {
+            builder.queryParam("uris", uri);
+        }
+        String finalUrl = builder.build().toUriString();
+        log.info("Requesting time series from: {}", finalUrl);
+
+        try {
+            TimeSeries[] series = restTemplate.getForObject(finalUrl, TimeSeries[].class);
+            log.info("Received {} time series", series != null ? series.length : 0);
+            return series != null ? Arrays.asList(series) : List.of();
+        } catch (Exception e) {
+            log.error("Failed to get time series from stats service: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    private List<ViewStats> requestStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                         List<String> uriPrefixes, boolean groupByPrefix, String unique,
+                                         Integer limit) {
+        try {
+            return fetchStats(start, end, uris, uriPrefixes, groupByPrefix, unique, limit);
+        } catch (Exception e) {
+            log.error("Failed to get stats from stats service: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Same as the public stats methods, but failures are thrown rather than answered with an empty list, so a
+     * caller such as {@link ViewCountCache} can tell "no views" from "no answer".
+     */
+    List<ViewStats> fetchStats(LocalDateTime start, LocalDateTime end, List<String> uris, List<String> uriPrefixes,
+                               boolean groupByPrefix, String unique, Integer limit) {
         String url = serverUrl + "/stats";
 
         UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(url)
                 .queryParam("start", start.format(formatter))
                 .queryParam("end", end.format(formatter))
-                .queryParam("unique", unique != null ? unique : false);
+                .queryParam("unique", unique);
 
         if (uris != null && !uris.isEmpty()) {
             for (String uri : uris) {
@@ -72,25 +359,45 @@ public class StatsClient {
             }
         }
 
+        if (uriPrefixes != null) {
+            for (String prefix : uriPrefixes) {
+                builder.queryParam("uri-prefix", prefix);
+            }
+        }
+
+        if (groupByPrefix) {
+            builder.queryParam("group-by", "prefix");
+        }
+
+        if (limit != null) {
+            builder.queryParam("limit", limit);
+        }
+
         String finalUrl = builder.build().toUriString();
         log.info("Requesting stats from: {}", finalUrl);
 
-        try {
-            ResponseEntity<ViewStats[]> response = restTemplate.getForEntity(finalUrl, ViewStats[].class);
-            ViewStats[] statsArray = response.getBody();
-            log.info("Received {} stats records", statsArray != null ? statsArray.length : 0);
-
-            if (statsArray != null) {
-                for (ViewStats stat : statsArray) {
-                    log.debug("Stat: app={}, uri={}, hits={}", stat.getApp(), stat.getUri(), stat.getHits());
-                }
-            }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(List.of(wireType()));
+        ResponseEntity<ViewStats[]> response = restTemplate.exchange(finalUrl, HttpMethod.GET,
+                new HttpEntity<>(headers), ViewStats[].class);
+        ViewStats[] statsArray = response.getBody();
+        log.info("Received {} stats records", statsArray != null ? statsArray.length : 0);
 
-            return statsArray != null ? Arrays.asList(statsArray) : List.of();
-        } catch (Exception e) {
-            log.error("Failed to get stats from stats service: {}", e.getMessage());
-            return List.of();
+        if (statsArray != null) {
+            for (ViewStats stat : statsArray) {
+                log.debug("Stat: app={}, uri={}, hits={}", stat.getApp(), stat.getUri(), stat.getHits());
+            }
         }
+
+        return statsArray != null ? Arrays.asList(statsArray) : List.of();
+    }
+
+    private boolean isBinary() {
+        return "binary".equalsIgnoreCase(wireFormat);
+    }
+
+    private MediaType wireType() {
+        return isBinary() ? BinaryStatsHttpMessageConverter.MEDIA_TYPE : MediaType.APPLICATION_JSON;
     }
 
     private String getClientIp(HttpServletRequest request) {
@@ -0,0 +1,322 @@
+package ru.practicum;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * View counts per uri, start and unique flag, kept for {@code ttl-ms} in front of {@code /stats}. An expired count is
+ * still served for another {@code stale-ms} while one background call refreshes it, and concurrent lookups of a
+ * count nobody has yet wait for a single call instead of each asking the stats service. When the stats service
+ * fails, the last known count is served rather than 0.
+ * <p>
+ * A count only answers lookups with the same {@code start}, so callers should pass the same start for a uri every
+ * time, such as the publication date of the event; each other start is cached and loaded on its own.
+ * <p>
+ * Once the stats client has saved a hit on a uri, counts of that uri loaded before it are reloaded on the next
+ * lookup, so a page that records its own view and then reads its views sees that view. A uri viewed more often
+ * than once per {@code ttl-ms} is therefore loaded on almost every lookup; unique counts cannot simply be
+ * incremented, since the viewer may have been counted already.
+ */
+@Slf4j
+public class ViewCountCache implements InitializingBean, DisposableBean {
+
+    private record Key(String uri, LocalDateTime start, boolean unique) {
+    }
+
+    private record Entry(long views, long loadedAt) {
+    }
+
+    private final StatsClient statsClient;
+    private final Map<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Key, CompletableFuture<Long>> loading = new ConcurrentHashMap<>();
+    private final Map<String, Long> savedHitAt = new ConcurrentHashMap<>();
+    private final AtomicLong freshHits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private ExecutorService refresher;
+
+    @Value("${stat-server.view-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stat-server.view-cache.ttl-ms:5000}")
+    private long ttlMs;
+
+    @Value("${stat-server.view-cache.stale-ms:60000}")
+    private long staleMs;
+
+    @Value("${stat-server.view-cache.max-entries:100000}")
+    private int maxEntries;
+
+    // Above this many uris one prefix query is cheaper than listing every uri.
+    @Value("${stat-server.view-cache.prefix-threshold:50}")
+    private int prefixThreshold;
+
+    // How many starts of one getViews(Map) call are looked up at the same time.
+    @Value("${stat-server.view-cache.load-parallelism:4}")
+    private int loadParallelism;
+
+    public ViewCountCache(StatsClient statsClient) {
+        this.statsClient = statsClient;
+        statsClient.addSavedHitListener(hit -> onSavedHit(hit.getUri()));
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (ttlMs <= 0 || staleMs < 0 || maxEntries <= 0 || loadParallelism <= 0) {
+            throw new IllegalStateException(
+                    "stat-server.view-cache ttl-ms, max-entries and load-parallelism must be positive");
+        }
+        refresher = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("view-cache-refresh-", 0).factory());
+    }
+
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    /**
+     * Views of each uri from {@code start} until now; a uri the stats service has no hits for maps to 0, and so
+     * does one it could not answer for when no earlier count is cached.
+     */
+    public Map<String, Long> getViews(LocalDateTime start, Collection<String> uris, boolean unique) {
+        Map<String, Long> views = new HashMap<>();
+        if (uris.isEmpty()) {
+            return views;
+        }
+        if (!enabled) {
+            try {
+                views.putAll(fetch(start, List.copyOf(uris), unique));
+            } catch (Exception e) {
+                log.warn("Failed to load views of {} uris from stats service: {}", uris.size(), e.getMessage());
+            }
+            return views;
+        }
+
+        long now = System.nanoTime();
+        long ttl = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        long servable = ttl + TimeUnit.MILLISECONDS.toNanos(staleMs);
+        List<Key> expired = new ArrayList<>();
+        List<Key> missing = new ArrayList<>();
+        for (String uri : uris) {
+            Key key = new Key(uri, start, unique);
+            Entry entry = entries.get(key);
+            Long hitAt = savedHitAt.get(uri);
+            if (entry != null && hitAt != null && entry.loadedAt() - hitAt <= 0) {
+                entry = null;
+            }
+            long age = entry != null ? now - entry.loadedAt() : Long.MAX_VALUE;
+            if (age < ttl) {
+                freshHits.incrementAndGet();
+                views.put(uri, entry.views());
+            } else if (age < servable) {
+                staleHits.incrementAndGet();
+                views.put(uri, entry.views());
+                expired.add(key);
+            } else {
+                misses.incrementAndGet();
+                missing.add(key);
+            }
+        }
+
+        if (!expired.isEmpty()) {
+            List<Key> claimed = claim(expired, new HashMap<>());
+            if (!claimed.isEmpty()) {
+                try {
+                    refresher.execute(() -> load(start, claimed, unique));
+                } catch (RejectedExecutionException e) {
+                    claimed.forEach(key -> complete(key, entries.getOrDefault(key, new Entry(0, 0)).views()));
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Key, CompletableFuture<Long>> pending = new HashMap<>();
+            List<Key> claimed = claim(missing, pending);
+            if (!claimed.isEmpty()) {
+                load(start, claimed, unique);
+            }
+            for (Key key : missing) {
+                views.put(key.uri(), pending.get(key).join());
+            }
+        }
+        return views;
+    }
+
+    /**
+     * Views of the uris grouped by start, as {@link #getViews(LocalDateTime, Collection, boolean)} of each group.
+     * Up to {@code load-parallelism} groups are looked up at the same time, so a page of events published at
+     * different times waits for about one {@code /stats} call instead of one per start.
+     */
+    public Map<String, Long> getViews(Map<LocalDateTime, ? extends Collection<String>> urisByStart, boolean unique) {
+        List<Map.Entry<LocalDateTime, ? extends Collection<String>>> groups = new ArrayList<>(urisByStart.entrySet());
+        int lanes = Math.min(loadParallelism, groups.size());
+        List<CompletableFuture<Map<String, Long>>> otherLanes = new ArrayList<>();
+        for (int lane = 1; lane < lanes; lane++) {
+            int first = lane;
+            try {
+                otherLanes.add(CompletableFuture.supplyAsync(() -> getViews(groups, first, lanes, unique), refresher));
+            } catch (RejectedExecutionException e) {
+                otherLanes.add(CompletableFuture.completedFuture(getViews(groups, first, lanes, unique)));
+            }
+        }
+        Map<String, Long> views = getViews(groups, 0, lanes, unique);
+        for (CompletableFuture<Map<String, Long>> lane : otherLanes) {
+            views.putAll(lane.join());
+        }
+        return views;
+    }
+
+    public long getFreshHits() {
+        return freshHits.get();
+    }
+
+    public long getStaleHits() {
+        return staleHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Loads and refreshes the stats service did not answer, each of which served the last known counts.
+     */
+    public long getLoadFailures() {
+        return loadFailures.get();
+    }
+
+    public int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * Registers a pending load for each key nobody is loading yet and returns those keys; {@code pending} gets
+     * the future of every key, whoever loads it.
+     */
+    private List<Key> claim(List<Key> keys, Map<Key, CompletableFuture<Long>> pending) {
+        List<Key> claimed = new ArrayList<>();
+        for (Key key : keys) {
+            CompletableFuture<Long> own = new CompletableFuture<>();
+            CompletableFuture<Long> running = loading.putIfAbsent(key, own);
+            if (running == null) {
+                claimed.add(key);
+                pending.put(key, own);
+            } else {
+                pending.put(key, running);
+            }
+        }
+        return claimed;
+    }
+
+    private Map<String, Long> getViews(List<Map.Entry<LocalDateTime, ? extends Collection<String>>> groups,
+                                       int first, int step, boolean unique) {
+        Map<String, Long> views = new HashMap<>();
+        for (int i = first; i < groups.size(); i += step) {
+            views.putAll(getViews(groups.get(i).getKey(), groups.get(i).getValue(), unique));
+        }
+        return views;
+    }
+
+    private void load(LocalDateTime start, List<Key> keys, boolean unique) {
+        // Taken before the call, so that a hit saved while it runs still counts as newer than the loaded count.
+        long loadedAt = System.nanoTime();
+        try {
+            Map<String, Long> views = fetch(start, keys.stream().map(Key::uri).toList(), unique);
+            for (Key key : keys) {
+                long count = views.getOrDefault(key.uri(), 0L);
+                entries.put(key, new Entry(count, loadedAt));
+                complete(key, count);
+            }
+            evictIfFull(System.nanoTime());
+        } catch (Exception e) {
+            loadFailures.incrementAndGet();
+            log.warn("Failed to load views of {} uris from stats service, serving last known counts: {}",
+                    keys.size(), e.getMessage());
+            for (Key key : keys) {
+                Entry entry = entries.get(key);
+                complete(key, entry != null ? entry.views() : 0L);
+            }
+        }
+    }
+
+    private void onSavedHit(String uri) {
+        if (!enabled || uri == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        savedHitAt.put(uri, now);
+        if (savedHitAt.size() > maxEntries) {
+            // Counts loaded before such an old hit are too old to be served anyway.
+            long servable = TimeUnit.MILLISECONDS.toNanos(ttlMs + staleMs);
+            savedHitAt.values().removeIf(hitAt -> now - hitAt >= servable);
+        }
+    }
+
+    private void complete(Key key, long views) {
+        CompletableFuture<Long> future = loading.remove(key);
+        if (future != null) {
+            future.complete(views);
+        }
+    }
+
+    private Map<String, Long> fetch(LocalDateTime start, List<String> uris, boolean unique) {
+        String prefix = commonPrefix(uris);
+        List<ViewStats> stats = uris.size() > prefixThreshold && prefix.length() > 1
+                ? statsClient.fetchStats(start, LocalDateTime.now(), null, List.of(prefix), false,
+                        String.valueOf(unique), null)
+                : statsClient.fetchStats(start, LocalDateTime.now(), uris, null, false, String.valueOf(unique), null);
+        Map<String, Long> views = new HashMap<>();
+        for (ViewStats stat : stats) {
+            views.putIfAbsent(stat.getUri(), stat.getHits() != null ? stat.getHits() : 0L);
+        }
+        return views;
+    }
+
+    /**
+     * The longest prefix of all uris that ends with a slash, e.g. {@code /events/} for event pages.
+     */
+    private static String commonPrefix(List<String> uris) {
+        String prefix = uris.get(0);
+        for (String uri : uris) {
+            int i = 0;
+            while (i < prefix.length() && i < uri.length() && prefix.charAt(i) == uri.charAt(i)) {
+                i++;
+            }
+            prefix = prefix.substring(0, i);
+        }
+        return prefix.substring(0, prefix.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Drops counts too old to be served, then arbitrary ones, once the cache holds more than max-entries.
+     */
+    private void evictIfFull(long now) {
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        long servable = TimeUnit.MILLISECONDS.toNanos(ttlMs + staleMs);
+        entries.values().removeIf(entry -> now - entry.loadedAt() >= servable);
+        Iterator<Key> keys = entries.keySet().iterator();
+        while (entries.size() > maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.mock.http.MockHttpInputMessage;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryStatsHttpMessageConverterTest {
+
+    private final BinaryStatsHttpMessageConverter converter = new BinaryStatsHttpMessageConverter();
+
+    @Test
+    void decodeStats_ShouldReturnEncodedStatsWithNullFields() throws IOException {
+        List<ViewStats> stats = List.of(
+                new ViewStats("ewm-main-service", "/events/1", 12L),
+                new ViewStats("ewm-main-service", "/events/2", 0L),
+                new ViewStats("ewm-main-service", "/events/1", Long.MAX_VALUE),
+                new ViewStats(null, "/events/3", null),
+                new ViewStats("ewm-main-service", null, 5L));
+
+        assertEquals(stats, decode(BinaryStatsCodec.encodeStats(stats)));
+    }
+
+    @Test
+    void decodeStats_WhenStringTableIsFull_ShouldKeepSendingLaterStringsAsLiterals() throws IOException {
+        List<ViewStats> stats = new ArrayList<>();
+        for (int event = 0; event < BinaryStatsCodec.MAX_STRINGS + 10; event++) {
+            stats.add(new ViewStats("ewm-main-service", "/events/" + event, (long) event));
+        }
+        stats.add(new ViewStats("ewm-main-service", "/events/1", 1L));
+        stats.add(new ViewStats("ewm-main-service", "/events/" + (BinaryStatsCodec.MAX_STRINGS + 5), 2L));
+
+        assertEquals(stats, decode(BinaryStatsCodec.encodeStats(stats)));
+    }
+
+    @Test
+    void decodeStats_WhenRecordIsTruncated_ShouldRejectIt() {
+        byte[] encoded = BinaryStatsCodec.encodeStats(List.of(
+                new ViewStats("ewm-main-service", "/events/1", 3L),
+                new ViewStats("ewm-main-service", "/events/2", 4L)));
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 1);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> decode(truncated));
+        assertEquals("Malformed binary record #1: truncated record", e.getMessage());
+    }
+
+    @Test
+    void read_ShouldReturnWrittenStats() throws IOException {
+        List<ViewStats> stats = new ArrayList<>();
+        for (int event = 0; event < 2_000; event++) {
+            stats.add(new ViewStats("ewm-main-service", "/events/" + event % 300, (long) event));
+        }
+        stats.add(new ViewStats(null, null, null));
+
+        ViewStats[] read = (ViewStats[]) converter.read(ViewStats[].class,
+                input(write(stats.toArray(new ViewStats[0]))));
+
+        assertEquals(stats, Arrays.asList(read));
+    }
+
+    @Test
+    void read_ShouldReturnWrittenHitsWithNullFields() throws IOException {
+        EndpointHit[] hits = {
+                new EndpointHit(7L, "ewm-main-service", "/events/1", "10.0.0.1",
+                        LocalDateTime.of(2024, 5, 1, 12, 0, 1)),
+                new EndpointHit(null, "ewm-main-service", "/events/1", "10.0.0.2", null),
+                new EndpointHit(null, null, null, null, LocalDateTime.of(1969, 12, 31, 23, 59, 59, 1_000_000))};
+
+        assertArrayEquals(hits, (EndpointHit[]) converter.read(EndpointHit[].class, input(write(hits))));
+        assertEquals(hits[0], converter.read(EndpointHit.class, input(write(hits[0]))));
+    }
+
+    @Test
+    void read_WhenBodyIsTruncated_ShouldFailAsNotReadable() throws IOException {
+        byte[] body = write(new ViewStats[]{new ViewStats("ewm-main-service", "/events/1", 3L)});
+
+        assertThrows(HttpMessageNotReadableException.class,
+                () -> converter.read(ViewStats[].class, input(Arrays.copyOf(body, body.length - 2))));
+    }
+
+    @Test
+    void read_WhenSingleHitBodyHoldsTwo_ShouldFailAsNotReadable() throws IOException {
+        EndpointHit hit = new EndpointHit(null, "ewm-main-service", "/events/1", "10.0.0.1", null);
+
+        assertThrows(HttpMessageNotReadableException.class,
+                () -> converter.read(EndpointHit.class, input(write(new EndpointHit[]{hit, hit}))));
+    }
+
+    private byte[] write(Object body) throws IOException {
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(body, BinaryStatsHttpMessageConverter.MEDIA_TYPE, output);
+        return output.getBodyAsBytes();
+    }
+
+    private static List<ViewStats> decode(byte[] encoded) throws IOException {
+        return BinaryStatsCodec.decodeStats(new ByteArrayInputStream(encoded));
+    }
+
+    private static MockHttpInputMessage input(byte[] body) {
+        MockHttpInputMessage input = new MockHttpInputMessage(body);
+        input.getHeaders().setContentType(BinaryStatsHttpMessageConverter.MEDIA_TYPE);
+        return input;
+    }
+}
@@ -0,0 +1,107 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HitBufferTest {
+
+    private final BlockingQueue<List<EndpointHit>> sent = new LinkedBlockingQueue<>();
+    private HitBuffer buffer;
+
+    @AfterEach
+    void tearDown() {
+        buffer.close(1000);
+    }
+
+    @Test
+    void offer_WhenFull_ShouldDropAndCountHits() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        buffer = new HitBuffer(2, 1, 60_000, batch -> {
+            sent.add(batch);
+            await(release);
+        });
+        assertTrue(buffer.offer(hit(1)));
+        List<EndpointHit> first = sent.poll(5, TimeUnit.SECONDS);
+        assertEquals(List.of(hit(1)), first);
+
+        assertTrue(buffer.offer(hit(2)));
+        assertTrue(buffer.offer(hit(3)));
+        assertFalse(buffer.offer(hit(4)));
+        assertEquals(1, buffer.getDropped());
+        assertEquals(2, buffer.getQueued());
+
+        release.countDown();
+        assertEquals(List.of(hit(2)), sent.poll(5, TimeUnit.SECONDS));
+        assertEquals(List.of(hit(3)), sent.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void offer_WhenBatchFills_ShouldSendBeforeFlushInterval() throws InterruptedException {
+        buffer = new HitBuffer(100, 3, 60_000, sent::add);
+
+        buffer.offer(hit(1));
+        buffer.offer(hit(2));
+        assertNull(sent.poll(200, TimeUnit.MILLISECONDS));
+        buffer.offer(hit(3));
+
+        assertEquals(List.of(hit(1), hit(2), hit(3)), sent.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void flusher_ShouldSendPartialBatchEveryFlushInterval() throws InterruptedException {
+        buffer = new HitBuffer(100, 500, 50, sent::add);
+
+        buffer.offer(hit(1));
+
+        assertEquals(List.of(hit(1)), sent.poll(5, TimeUnit.SECONDS));
+        assertEquals(0, buffer.getQueued());
+    }
+
+    @Test
+    void close_ShouldSendQueuedHitsAndDropLaterOnes() {
+        buffer = new HitBuffer(100, 2, 60_000, sent::add);
+        buffer.offer(hit(1));
+
+        buffer.close(5000);
+
+        assertEquals(List.of(List.of(hit(1))), List.copyOf(sent));
+        assertFalse(buffer.offer(hit(2)));
+        assertEquals(1, buffer.getDropped());
+    }
+
+    @Test
+    void flusher_WhenSenderFails_ShouldKeepSending() throws InterruptedException {
+        buffer = new HitBuffer(100, 1, 60_000, batch -> {
+            if (batch.get(0).equals(hit(1))) {
+                throw new IllegalStateException("stats service is down");
+            }
+            sent.add(batch);
+        });
+
+        buffer.offer(hit(1));
+        buffer.offer(hit(2));
+
+        assertEquals(List.of(hit(2)), sent.poll(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static EndpointHit hit(int event) {
+        return new EndpointHit(null, "ewm", "/events/" + event, "10.0.0.1", LocalDateTime.of(2024, 5, 1, 12, 0));
+    }
+}
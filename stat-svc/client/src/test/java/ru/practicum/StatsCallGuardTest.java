@@ -0,0 +1,195 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatsCallGuardTest {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger executed = new AtomicInteger();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void intercept_WhenFailuresReachThreshold_ShouldOpenAndFailFast() throws Exception {
+        StatsCallGuard guard = new StatsCallGuard(10, 50, 3, 10_000);
+
+        assertThrows(IOException.class, () -> call(guard, failing()));
+        call(guard, answering(HttpStatus.OK));
+        assertThrows(IOException.class, () -> call(guard, failing()));
+        assertThrows(IOException.class, () -> call(guard, failing()));
+        assertEquals(StatsCallGuard.State.CLOSED, guard.getState());
+        assertThrows(IOException.class, () -> call(guard, failing()));
+        assertEquals(StatsCallGuard.State.OPEN, guard.getState());
+
+        int before = executed.get();
+        IOException rejected = assertThrows(IOException.class, () -> call(guard, answering(HttpStatus.OK)));
+
+        assertEquals("Stats service circuit is open", rejected.getMessage());
+        assertEquals(before, executed.get());
+        assertEquals(1, guard.getRejectedByCircuit());
+    }
+
+    @Test
+    void intercept_WhenServerAnswers5xx_ShouldCountItAsFailure() throws Exception {
+        StatsCallGuard guard = new StatsCallGuard(10, 50, 2, 10_000);
+
+        assertEquals(503, call(guard, answering(HttpStatus.SERVICE_UNAVAILABLE)).getStatusCode().value());
+        call(guard, answering(HttpStatus.NOT_FOUND));
+        call(guard, answering(HttpStatus.INTERNAL_SERVER_ERROR));
+        assertEquals(StatsCallGuard.State.CLOSED, guard.getState());
+        call(guard, answering(HttpStatus.BAD_GATEWAY));
+
+        assertEquals(StatsCallGuard.State.OPEN, guard.getState());
+    }
+
+    @Test
+    void intercept_WhenTrialSucceeds_ShouldClose() throws Exception {
+        StatsCallGuard guard = new StatsCallGuard(10, 50, 1, 50);
+        assertThrows(IOException.class, () -> call(guard, failing()));
+        assertThrows(IOException.class, () -> call(guard, answering(HttpStatus.OK)));
+        Thread.sleep(80);
+
+        call(guard, answering(HttpStatus.OK));
+
+        assertEquals(StatsCallGuard.State.CLOSED, guard.getState());
+        call(guard, answering(HttpStatus.OK));
+        assertEquals(1, guard.getRejectedByCircuit());
+    }
+
+    @Test
+    void intercept_WhenTrialFails_ShouldOpenAgain() throws Exception {
+        StatsCallGuard guard = new StatsCallGuard(10, 50, 1, 50);
+        assertThrows(IOException.class, () -> call(guard, failing()));
+        Thread.sleep(80);
+
+        assertThrows(IOException.class, () -> call(guard, failing()));
+
+        assertEquals(StatsCallGuard.State.OPEN, guard.getState());
+        int before = executed.get();
+        assertThrows(IOException.class, () -> call(guard, answering(HttpStatus.OK)));
+        assertEquals(before, executed.get());
+    }
+
+    @Test
+    void intercept_WhenAllSlotsTaken_ShouldRejectWithoutCountingFailure() throws Exception {
+        StatsCallGuard guard = new StatsCallGuard(1, 20, 1, 10_000);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<ClientHttpResponse> running = callAsync(guard, blocking(release, HttpStatus.OK));
+        awaitInFlight(guard, 1);
+
+        IOException rejected = assertThrows(IOException.class, () -> call(guard, answering(HttpStatus.OK)));
+
+        assertEquals("Stats service has 1 calls in flight", rejected.getMessage());
+        assertEquals(1, guard.getRejectedByBulkhead());
+        assertEquals(StatsCallGuard.State.CLOSED, guard.getState());
+        release.countDown();
+        running.get(5, TimeUnit.SECONDS);
+        assertEquals(0, guard.getInFlight());
+    }
+
+    @Test
+    void intercept_WhenTrialGetsNoSlot_ShouldLetTheNextCallBeTheTrial() throws Exception {
+        StatsCallGuard guard = new StatsCallGuard(2, 300, 1, 50);
+        CountDownLatch releaseHeld = new CountDownLatch(1);
+        CountDownLatch releaseFailing = new CountDownLatch(1);
+        CompletableFuture<ClientHttpResponse> held = callAsync(guard, blockingFailure(releaseHeld));
+        CompletableFuture<ClientHttpResponse> failing = callAsync(guard, blockingFailure(releaseFailing));
+        awaitInFlight(guard, 2);
+        // Admitted while closed, it takes the slot of the failing call once the circuit has opened.
+        CompletableFuture<ClientHttpResponse> waiting = callAsync(guard, blockingFailure(releaseHeld));
+        Thread.sleep(50);
+        releaseFailing.countDown();
+        assertThrows(Exception.class, () -> failing.get(5, TimeUnit.SECONDS));
+        assertEquals(StatsCallGuard.State.OPEN, guard.getState());
+        awaitInFlight(guard, 2);
+        Thread.sleep(80);
+
+        assertThrows(IOException.class, () -> call(guard, answering(HttpStatus.OK)));
+
+        assertEquals(1, guard.getRejectedByBulkhead());
+        assertEquals(StatsCallGuard.State.OPEN, guard.getState());
+        releaseHeld.countDown();
+        assertThrows(Exception.class, () -> held.get(5, TimeUnit.SECONDS));
+        assertThrows(Exception.class, () -> waiting.get(5, TimeUnit.SECONDS));
+        call(guard, answering(HttpStatus.OK));
+        assertEquals(StatsCallGuard.State.CLOSED, guard.getState());
+    }
+
+    private ClientHttpResponse call(StatsCallGuard guard, ClientHttpRequestExecution execution) throws IOException {
+        return guard.intercept(new MockClientHttpRequest(), new byte[0], execution);
+    }
+
+    private CompletableFuture<ClientHttpResponse> callAsync(StatsCallGuard guard,
+                                                            ClientHttpRequestExecution execution) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return call(guard, execution);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }, executor);
+    }
+
+    private ClientHttpRequestExecution answering(HttpStatus status) {
+        return (request, body) -> {
+            executed.incrementAndGet();
+            return new MockClientHttpResponse(new byte[0], status);
+        };
+    }
+
+    private ClientHttpRequestExecution failing() {
+        return (request, body) -> {
+            executed.incrementAndGet();
+            throw new IOException("Connection refused");
+        };
+    }
+
+    private ClientHttpRequestExecution blocking(CountDownLatch release, HttpStatus status) {
+        return (request, body) -> {
+            await(release);
+            return new MockClientHttpResponse(new byte[0], status);
+        };
+    }
+
+    private ClientHttpRequestExecution blockingFailure(CountDownLatch release) {
+        return (request, body) -> {
+            await(release);
+            throw new IOException("Read timed out");
+        };
+    }
+
+    private static void awaitInFlight(StatsCallGuard guard, int calls) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (guard.getInFlight() != calls && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(calls, guard.getInFlight());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
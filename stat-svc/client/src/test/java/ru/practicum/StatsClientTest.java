@@ -0,0 +1,120 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.http.HttpClient;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.ExpectedCount.times;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class StatsClientTest {
+
+    private static final String URL = "http://stats-server:9090";
+
+    private StatsClient client;
+    private MockRestServiceServer server;
+
+    @BeforeEach
+    void setUp() {
+        client = new StatsClient();
+        ReflectionTestUtils.setField(client, "serverUrl", URL);
+        ReflectionTestUtils.setField(client, "appName", "ewm-main-service");
+        ReflectionTestUtils.setField(client, "wireFormat", "json");
+        ReflectionTestUtils.setField(client, "httpVersion", HttpClient.Version.HTTP_1_1);
+        ReflectionTestUtils.setField(client, "connectTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(client, "readTimeoutMs", 1000L);
+        ReflectionTestUtils.setField(client, "maxInFlight", 10);
+        ReflectionTestUtils.setField(client, "acquireTimeoutMs", 50L);
+        ReflectionTestUtils.setField(client, "failureThreshold", 100);
+        ReflectionTestUtils.setField(client, "circuitOpenMs", 10_000L);
+        client.afterPropertiesSet();
+        server = MockRestServiceServer.bindTo((RestTemplate) ReflectionTestUtils.getField(client, "restTemplate"))
+                .build();
+    }
+
+    @Test
+    void hits_WhenBulkEndpointMissing_ShouldFallBackToSingleHits() {
+        server.expect(once(), requestTo(URL + "/hits")).andExpect(method(HttpMethod.POST))
+                .andRespond(withStatus(HttpStatus.NOT_FOUND));
+        server.expect(times(4), requestTo(URL + "/hit")).andExpect(method(HttpMethod.POST))
+                .andRespond(withStatus(HttpStatus.CREATED));
+
+        client.hits(List.of(hit(1), hit(2)));
+        client.hits(List.of(hit(3), hit(4)));
+
+        server.verify();
+        assertEquals(0, client.getFailedHits());
+    }
+
+    @Test
+    void hits_WhenBulkMethodNotAllowed_ShouldFallBackToSingleHits() {
+        server.expect(once(), requestTo(URL + "/hits"))
+                .andRespond(withStatus(HttpStatus.METHOD_NOT_ALLOWED));
+        server.expect(once(), requestTo(URL + "/hit")).andRespond(withStatus(HttpStatus.CREATED));
+        server.expect(once(), requestTo(URL + "/hit")).andRespond(withServerError());
+
+        client.hits(List.of(hit(1), hit(2)));
+
+        server.verify();
+        assertEquals(1, client.getFailedHits());
+    }
+
+    @Test
+    void hits_WhenBulkFailsOtherwise_ShouldCountFailuresAndKeepBulk() {
+        server.expect(once(), requestTo(URL + "/hits")).andRespond(withServerError());
+        server.expect(once(), requestTo(URL + "/hits")).andRespond(withStatus(HttpStatus.CREATED));
+
+        client.hits(List.of(hit(1), hit(2)));
+        client.hits(List.of(hit(3)));
+
+        server.verify();
+        assertEquals(2, client.getFailedHits());
+    }
+
+    @Test
+    void hits_ShouldTellListenersOnlyAboutSavedHits() {
+        server.expect(once(), requestTo(URL + "/hits")).andRespond(withServerError());
+        server.expect(once(), requestTo(URL + "/hits")).andRespond(withStatus(HttpStatus.CREATED));
+        List<String> saved = new ArrayList<>();
+        client.addSavedHitListener(hit -> saved.add(hit.getUri()));
+
+        client.hits(List.of(hit(1)));
+        client.hits(List.of(hit(2), hit(3)));
+
+        server.verify();
+        assertEquals(List.of("/events/2", "/events/3"), saved);
+    }
+
+    @Test
+    void getStats_ShouldReadStatsFromServer() {
+        server.expect(once(), requestTo(URL + "/stats?start=2024-05-01%2000:00:00&end=2024-05-02%2000:00:00"
+                        + "&unique=false&uris=/events/1"))
+                .andRespond(withSuccess("[{\"app\":\"ewm-main-service\",\"uri\":\"/events/1\",\"hits\":3}]",
+                        MediaType.APPLICATION_JSON));
+
+        List<ViewStats> stats = client.getStats(LocalDateTime.of(2024, 5, 1, 0, 0), LocalDateTime.of(2024, 5, 2, 0, 0),
+                List.of("/events/1"), false);
+
+        assertEquals(List.of(new ViewStats("ewm-main-service", "/events/1", 3L)), stats);
+    }
+
+    private static EndpointHit hit(int event) {
+        return new EndpointHit(null, "ewm", "/events/" + event, "10.0.0.1", LocalDateTime.of(2024, 5, 1, 12, 0));
+    }
+}
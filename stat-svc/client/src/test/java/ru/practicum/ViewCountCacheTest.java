@@ -0,0 +1,196 @@
+package ru.practicum;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class ViewCountCacheTest {
+
+    private static final LocalDateTime PUBLISHED = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    private StatsClient statsClient;
+    private ViewCountCache cache;
+    private Consumer<EndpointHit> savedHitListener;
+
+    @BeforeEach
+    void setUp() {
+        statsClient = mock(StatsClient.class);
+        cache = new ViewCountCache(statsClient);
+        ArgumentCaptor<Consumer<EndpointHit>> listener = ArgumentCaptor.captor();
+        verify(statsClient).addSavedHitListener(listener.capture());
+        savedHitListener = listener.getValue();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "ttlMs", 60_000L);
+        ReflectionTestUtils.setField(cache, "staleMs", 60_000L);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100);
+        ReflectionTestUtils.setField(cache, "prefixThreshold", 50);
+        ReflectionTestUtils.setField(cache, "loadParallelism", 4);
+        cache.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.destroy();
+    }
+
+    @Test
+    void getViews_WhenConcurrentMisses_ShouldLoadOnce() throws Exception {
+        CountDownLatch called = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(fetch(PUBLISHED, List.of("/events/1"))).thenAnswer(invocation -> {
+            called.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return List.of(stat("/events/1", 7));
+        });
+
+        CompletableFuture<Map<String, Long>> first = CompletableFuture.supplyAsync(
+                () -> cache.getViews(PUBLISHED, List.of("/events/1"), true));
+        assertTrue(called.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Map<String, Long>> second = CompletableFuture.supplyAsync(
+                () -> cache.getViews(PUBLISHED, List.of("/events/1"), true));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getMisses() < 2 && System.nanoTime() < deadline) {
+            sleep(10);
+        }
+        release.countDown();
+
+        assertEquals(Map.of("/events/1", 7L), first.get(5, TimeUnit.SECONDS));
+        assertEquals(Map.of("/events/1", 7L), second.get(5, TimeUnit.SECONDS));
+        verify(statsClient, times(1)).fetchStats(any(), any(), any(), any(), anyBoolean(), any(), any());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void getViews_WhenExpired_ShouldServeStaleCountAndRefreshInBackground() {
+        ReflectionTestUtils.setField(cache, "ttlMs", 1L);
+        when(fetch(PUBLISHED, List.of("/events/1")))
+                .thenReturn(List.of(stat("/events/1", 3)))
+                .thenReturn(List.of(stat("/events/1", 5)));
+        assertEquals(Map.of("/events/1", 3L), cache.getViews(PUBLISHED, List.of("/events/1"), true));
+        sleep(10);
+
+        assertEquals(Map.of("/events/1", 3L), cache.getViews(PUBLISHED, List.of("/events/1"), true));
+
+        verify(statsClient, timeout(5000).times(2)).fetchStats(any(), any(), any(), any(), anyBoolean(), any(),
+                any());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getViews(PUBLISHED, List.of("/events/1"), true).get("/events/1") != 5L
+                && System.nanoTime() < deadline) {
+            sleep(10);
+        }
+        assertEquals(Map.of("/events/1", 5L), cache.getViews(PUBLISHED, List.of("/events/1"), true));
+        assertTrue(cache.getStaleHits() >= 1);
+    }
+
+    @Test
+    void getViews_WhenStatsServiceFails_ShouldServeLastKnownCount() {
+        ReflectionTestUtils.setField(cache, "ttlMs", 1L);
+        ReflectionTestUtils.setField(cache, "staleMs", 0L);
+        when(fetch(PUBLISHED, List.of("/events/1")))
+                .thenReturn(List.of(stat("/events/1", 3)))
+                .thenThrow(new IllegalStateException("stats service is down"));
+        cache.getViews(PUBLISHED, List.of("/events/1"), true);
+        sleep(10);
+
+        assertEquals(Map.of("/events/1", 3L), cache.getViews(PUBLISHED, List.of("/events/1"), true));
+        assertEquals(1, cache.getLoadFailures());
+    }
+
+    @Test
+    void getViews_WhenStartDiffers_ShouldNotServeCountOfOtherStart() {
+        LocalDateTime later = PUBLISHED.plusDays(10);
+        when(fetch(PUBLISHED, List.of("/events/1"))).thenReturn(List.of(stat("/events/1", 9)));
+        when(fetch(later, List.of("/events/1"))).thenReturn(List.of(stat("/events/1", 2)));
+
+        assertEquals(Map.of("/events/1", 9L), cache.getViews(PUBLISHED, List.of("/events/1"), true));
+        assertEquals(Map.of("/events/1", 2L), cache.getViews(later, List.of("/events/1"), true));
+        assertEquals(Map.of("/events/1", 9L), cache.getViews(PUBLISHED, List.of("/events/1"), true));
+        assertEquals(1, cache.getFreshHits());
+    }
+
+    @Test
+    void getViews_WhenFull_ShouldEvictDownToMaxEntries() {
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        when(statsClient.fetchStats(eq(PUBLISHED), any(), any(), isNull(), eq(false), eq("true"), isNull()))
+                .thenAnswer(invocation -> invocation.<List<String>>getArgument(2).stream()
+                        .map(uri -> stat(uri, 1)).toList());
+
+        for (int event = 1; event <= 5; event++) {
+            String uri = "/events/" + event;
+            assertEquals(Map.of(uri, 1L), cache.getViews(PUBLISHED, List.of(uri), true));
+            assertTrue(cache.getSize() <= 2);
+        }
+    }
+
+    @Test
+    void getViews_WhenHitSavedAfterLoad_ShouldReloadThatUri() {
+        when(fetch(PUBLISHED, List.of("/events/1"))).thenReturn(List.of(stat("/events/1", 3)))
+                .thenReturn(List.of(stat("/events/1", 4)));
+        when(fetch(PUBLISHED, List.of("/events/2"))).thenReturn(List.of(stat("/events/2", 8)));
+        cache.getViews(PUBLISHED, List.of("/events/1"), true);
+        cache.getViews(PUBLISHED, List.of("/events/2"), true);
+
+        savedHitListener.accept(hit("/events/1"));
+
+        assertEquals(Map.of("/events/1", 4L), cache.getViews(PUBLISHED, List.of("/events/1"), true));
+        assertEquals(Map.of("/events/1", 4L), cache.getViews(PUBLISHED, List.of("/events/1"), true));
+        assertEquals(Map.of("/events/2", 8L), cache.getViews(PUBLISHED, List.of("/events/2"), true));
+        verify(statsClient, times(3)).fetchStats(any(), any(), any(), any(), anyBoolean(), any(), any());
+    }
+
+    @Test
+    void getViews_WhenSeveralStarts_ShouldLoadThemAtTheSameTime() {
+        LocalDateTime later = PUBLISHED.plusDays(10);
+        CountDownLatch bothCalled = new CountDownLatch(2);
+        when(statsClient.fetchStats(any(), any(), any(), isNull(), eq(false), eq("true"), isNull()))
+                .thenAnswer(invocation -> {
+                    bothCalled.countDown();
+                    boolean together = bothCalled.await(5, TimeUnit.SECONDS);
+                    return invocation.<List<String>>getArgument(2).stream().map(uri -> stat(uri, together ? 1 : 0))
+                            .toList();
+                });
+        Map<LocalDateTime, List<String>> urisByStart = new TreeMap<>(Map.of(
+                PUBLISHED, List.of("/events/1", "/events/2"),
+                later, List.of("/events/3")));
+
+        assertEquals(Map.of("/events/1", 1L, "/events/2", 1L, "/events/3", 1L), cache.getViews(urisByStart, true));
+    }
+
+    private List<ViewStats> fetch(LocalDateTime start, List<String> uris) {
+        return statsClient.fetchStats(eq(start), any(), eq(uris), isNull(), eq(false), eq("true"), isNull());
+    }
+
+    private static EndpointHit hit(String uri) {
+        return new EndpointHit(null, "ewm-main-service", uri, "10.0.0.1", LocalDateTime.now());
+    }
+
+    private static ViewStats stat(String uri, long hits) {
+        return new ViewStats("ewm-main-service", uri, hits);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package ru.practicum;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of {@link EndpointHit} and {@link ViewStats} streams, negotiated as
+ * {@value #MEDIA_TYPE} next to JSON.
+ *
+ * <p>A stream is a sequence of records, each prefixed with its varint length. Numbers are varints, timestamps
+ * are zigzag varint epoch millis of the local date-time taken as UTC. Strings are written once per stream and
+ * then referenced by a varint id, so the app name and hot uris of a batch cost a byte or two after their first
+ * occurrence.
+ */
+public final class BinaryStatsCodec {
+
+    public static final String MEDIA_TYPE = "application/x-ewm-stats";
+
+    static final int MAX_RECORD_BYTES = 1 << 20;
+    static final int MAX_STRINGS = 4096;
+
+    private static final int HAS_ID = 1;
+    private static final int HAS_TIMESTAMP = 2;
+    private static final int HAS_HITS = 1;
+
+    private BinaryStatsCodec() {
+    }
+
+    public static byte[] encodeHits(List<EndpointHit> hits) {
+        Writer writer = new Writer(null);
+        for (EndpointHit hit : hits) {
+            writer.writeHit(hit);
+        }
+        return writer.toByteArray();
+    }
+
+    public static byte[] encodeStats(List<ViewStats> stats) {
+        Writer writer = new Writer(null);
+        for (ViewStats stat : stats) {
+            writer.writeStats(stat);
+        }
+        return writer.toByteArray();
+    }
+
+    public static List<EndpointHit> decodeHits(InputStream in) throws IOException {
+        Reader reader = new Reader(in);
+        List<EndpointHit> hits = new ArrayList<>();
+        for (EndpointHit hit = reader.readHit(); hit != null; hit = reader.readHit()) {
+            hits.add(hit);
+        }
+        return hits;
+    }
+
+    public static List<ViewStats> decodeStats(InputStream in) throws IOException {
+        Reader reader = new Reader(in);
+        List<ViewStats> stats = new ArrayList<>();
+        for (ViewStats stat = reader.readStats(); stat != null; stat = reader.readStats()) {
+            stats.add(stat);
+        }
+        return stats;
+    }
+
+    /**
+     * Writes records into an internal buffer that is handed to the stream whenever it grows past a few kilobytes
+     * and on {@link #flush()}. Without a stream everything stays buffered for {@link #toByteArray()}.
+     */
+    public static final class Writer {
+        private static final int FLUSH_BYTES = 8192;
+
+        private final OutputStream out;
+        private final Map<String, Integer> strings = new HashMap<>();
+        private byte[] record = new byte[256];
+        private int recordLength;
+        private byte[] buffer = new byte[FLUSH_BYTES + 512];
+        private int bufferLength;
+
+        public Writer(OutputStream out) {
+            this.out = out;
+        }
+
+        public void writeHit(EndpointHit hit) {
+            recordLength = 0;
+            int flags = (hit.getId() != null ? HAS_ID : 0) | (hit.getTimestamp() != null ? HAS_TIMESTAMP : 0);
+            putVarLong(flags);
+            if (hit.getId() != null) {
+                putVarLong(hit.getId());
+            }
+            putString(hit.getApp());
+            putString(hit.getUri());
+            putString(hit.getIp());
+            if (hit.getTimestamp() != null) {
+                long millis = hit.getTimestamp().toInstant(ZoneOffset.UTC).toEpochMilli();
+                putVarLong((millis << 1) ^ (millis >> 63));
+            }
+            endRecord();
+        }
+
+        public void writeStats(ViewStats stats) {
+            recordLength = 0;
+            putVarLong(stats.getHits() != null ? HAS_HITS : 0);
+            putString(stats.getApp());
+            putString(stats.getUri());
+            if (stats.getHits() != null) {
+                putVarLong(stats.getHits());
+            }
+            endRecord();
+        }
+
+        public void flush() throws IOException {
+            out.write(buffer, 0, bufferLength);
+            bufferLength = 0;
+            out.flush();
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, bufferLength);
+        }
+
+        // String tags: 0 is null, odd tags reference an earlier string, even tags carry a literal of
+        // (tag / 2 - 1) bytes that takes the next id while the table has room.
+        private void putString(String value) {
+            if (value == null) {
+                putVarLong(0);
+                return;
+            }
+            Integer id = strings.get(value);
+            if (id != null) {
+                putVarLong(((long) id << 1) | 1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarLong((long) (bytes.length + 1) << 1);
+            ensureRecord(bytes.length);
+            System.arraycopy(bytes, 0, record, recordLength, bytes.length);
+            recordLength += bytes.length;
+            if (strings.size() < MAX_STRINGS) {
+                strings.put(value, strings.size());
+            }
+        }
+
+        private void putVarLong(long value) {
+            ensureRecord(10);
+            while ((value & ~0x7FL) != 0) {
+                record[recordLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            record[recordLength++] = (byte) value;
+        }
+
+        private void ensureRecord(int extra) {
+            if (recordLength + extra > record.length) {
+                record = Arrays.copyOf(record, Math.max(record.length * 2, recordLength + extra));
+            }
+        }
+
+        private void endRecord() {
+            if (recordLength > MAX_RECORD_BYTES) {
+                throw new IllegalArgumentException("Record of " + recordLength + " bytes exceeds the limit");
+            }
+            if (bufferLength + recordLength + 5 > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, bufferLength + recordLength + 5));
+            }
+            int length = recordLength;
+            while ((length & ~0x7F) != 0) {
+                buffer[bufferLength++] = (byte) ((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            buffer[bufferLength++] = (byte) length;
+            System.arraycopy(record, 0, buffer, bufferLength, recordLength);
+            bufferLength += recordLength;
+            if (out != null && bufferLength >= FLUSH_BYTES) {
+                try {
+                    out.write(buffer, 0, bufferLength);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                bufferLength = 0;
+            }
+        }
+    }
+
+    /**
+     * Reads records one at a time; the read methods return {@code null} once the stream ends on a record boundary.
+     * A malformed or truncated record is an {@link IllegalArgumentException}.
+     */
+    public static final class Reader {
+        private final InputStream in;
+        private final List<String> strings = new ArrayList<>();
+        private byte[] record = new byte[256];
+        private int position;
+        private int limit;
+        private long records;
+
+        public Reader(InputStream in) {
+            this.in = in;
+        }
+
+        public EndpointHit readHit() throws IOException {
+            if (!nextRecord()) {
+                return null;
+            }
+            int flags = (int) getVarLong();
+            EndpointHit hit = new EndpointHit();
+            if ((flags & HAS_ID) != 0) {
+                hit.setId(getVarLong());
+            }
+            hit.setApp(getString());
+            hit.setUri(getString());
+            hit.setIp(getString());
+            if ((flags & HAS_TIMESTAMP) != 0) {
+                long zigzag = getVarLong();
+                long millis = (zigzag >>> 1) ^ -(zigzag & 1);
+                hit.setTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+            }
+            endRecord();
+            return hit;
+        }
+
+        public ViewStats readStats() throws IOException {
+            if (!nextRecord()) {
+                return null;
+            }
+            int flags = (int) getVarLong();
+            ViewStats stats = new ViewStats();
+            stats.setApp(getString());
+            stats.setUri(getString());
+            if ((flags & HAS_HITS) != 0) {
+                stats.setHits(getVarLong());
+            }
+            endRecord();
+            return stats;
+        }
+
+        private boolean nextRecord() throws IOException {
+            int first = in.read();
+            if (first < 0) {
+                return false;
+            }
+            long length = first & 0x7F;
+            for (int shift = 7; (first & 0x80) != 0; shift += 7) {
+                first = in.read();
+                if (first < 0 || shift > 28) {
+                    throw malformed("truncated length");
+                }
+                length |= (long) (first & 0x7F) << shift;
+            }
+            if (length > MAX_RECORD_BYTES) {
+                throw malformed("length " + length + " exceeds the limit");
+            }
+            if (record.length < length) {
+                record = new byte[(int) Math.max(length, record.length * 2L)];
+            }
+            int read = in.readNBytes(record, 0, (int) length);
+            if (read < length) {
+                throw malformed("truncated record");
+            }
+            position = 0;
+            limit = (int) length;
+            return true;
+        }
+
+        private void endRecord() {
+            if (position != limit) {
+                throw malformed((limit - position) + " trailing bytes");
+            }
+            records++;
+        }
+
+        private String getString() {
+            long tag = getVarLong();
+            if (tag == 0) {
+                return null;
+            }
+            if ((tag & 1) != 0) {
+                long id = tag >>> 1;
+                if (id >= strings.size()) {
+                    throw malformed("unknown string id " + id);
+                }
+                return strings.get((int) id);
+            }
+            long length = (tag >>> 1) - 1;
+            if (length > limit - position) {
+                throw malformed("string overruns the record");
+            }
+            String value = new String(record, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            if (strings.size() < MAX_STRINGS) {
+                strings.add(value);
+            }
+            return value;
+        }
+
+        private long getVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= limit) {
+                    throw malformed("truncated varint");
+                }
+                byte b = record[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw malformed("varint too long");
+        }
+
+        private IllegalArgumentException malformed(String reason) {
+            return new IllegalArgumentException("Malformed binary record #" + records + ": " + reason);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TimeSeries {
+    private String app;
+
+    private String uri;
+
+    /**
+     * Start of the first bucket; bucket {@code i} starts {@code i} intervals later.
+     */
+    @JsonFormat(pattern = "yyyy-MM-dd HH:mm:ss")
+    private LocalDateTime start;
+
+    /**
+     * Bucket width: minute, hour or day.
+     */
+    private String interval;
+
+    /**
+     * Hits per bucket, one entry for every bucket of the requested range including empty ones.
+     */
+    private List<Long> hits;
+
+    private Long total;
+}
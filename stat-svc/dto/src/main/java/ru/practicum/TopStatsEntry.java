@@ -0,0 +1,24 @@
+package ru.practicum;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TopStatsEntry {
+    private String uri;
+
+    /**
+     * Estimated hits; the true count lies between {@code hits - error} and {@code hits}.
+     */
+    private Long hits;
+
+    private Long error;
+
+    /**
+     * Whether the uri is certain to belong to the top-k, i.e. its lower bound beats every other candidate.
+     */
+    private Boolean guaranteed;
+}
@@ -0,0 +1,346 @@
+package ru.practicum.archive;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.datasource.ReplicaDataSource;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.partition.ExpiringHitData;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold tier for endpoint_hits. Once a day, whole days older than {@code stats.archive.after} are streamed into
+ * gzip CSV files and deleted from the table, and the hit_archive_segments manifest lists the files. Queries whose
+ * range reaches archived time read the overlapping files with {@link #scan} on top of the table.
+ * <p>
+ * A day is exported, deleted and listed in one repeatable read transaction, so exactly the exported rows are
+ * deleted and a crash leaves at most an unlisted file behind, which is removed on the next start. Hits that
+ * arrive for an archived day later simply stay in the table.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class HitArchive implements ExpiringHitData {
+
+    private static final String HEADER = "app_id,uri_id,ip,timestamp,weight";
+    private static final String FILE_PREFIX = "hits-";
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectProvider<ReplicaDataSource> replicaDataSource;
+
+    @Value("${stats.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${stats.archive.dir:data/archive}")
+    private String dir;
+
+    @Value("${stats.archive.after:P90D}")
+    private Duration after;
+
+    @Value("${stats.archive.max-days-per-run:7}")
+    private int maxDaysPerRun;
+
+    private final ReadWriteLock publishLock = new ReentrantReadWriteLock();
+    private Path root;
+    private volatile List<Segment> segments = List.of();
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(dir);
+        // Listed files are read even with archiving switched off, or their hits would vanish from queries.
+        List<Segment> listed = new ArrayList<>();
+        jdbcTemplate.query("SELECT file_name, range_start, range_end FROM hit_archive_segments ORDER BY range_start",
+                (RowCallbackHandler) rs -> listed.add(new Segment(rs.getString("file_name"),
+                        rs.getTimestamp("range_start").toLocalDateTime(),
+                        rs.getTimestamp("range_end").toLocalDateTime())));
+        segments = List.copyOf(listed);
+
+        if (Files.isDirectory(root)) {
+            Set<String> names = new HashSet<>();
+            listed.forEach(segment -> names.add(segment.file()));
+            try (Stream<Path> files = Files.list(root)) {
+                for (Path file : files.toList()) {
+                    String name = file.getFileName().toString();
+                    if (name.startsWith(FILE_PREFIX) && !names.contains(name)) {
+                        Files.delete(file);
+                        log.warn("Deleted archive file {} left by an interrupted run", name);
+                    }
+                }
+            }
+        }
+        for (Segment segment : listed) {
+            if (!Files.exists(root.resolve(segment.file()))) {
+                log.error("Archive file {} listed in hit_archive_segments is missing", segment.file());
+            }
+        }
+        if (enabled) {
+            Files.createDirectories(root);
+            log.info("Hit archive in {}: {} files, archiving days older than {}", root, listed.size(), after);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Scheduled(cron = "${stats.archive.cron:0 15 0 * * *}")
+    public void scheduledArchive() {
+        if (enabled) {
+            archive(LocalDateTime.now());
+        }
+    }
+
+    /**
+     * Moves up to {@code max-days-per-run} of the oldest days before {@code now - after} into archive files.
+     */
+    public int archive(LocalDateTime now) {
+        LocalDateTime cutoff = RollupGranularity.DAY.floor(now.minus(after));
+        int days = 0;
+        while (days < maxDaysPerRun) {
+            Timestamp oldest = jdbcTemplate.queryForObject(
+                    "SELECT MIN(timestamp) FROM endpoint_hits WHERE timestamp < ?", Timestamp.class,
+                    Timestamp.valueOf(cutoff));
+            if (oldest == null) {
+                break;
+            }
+            LocalDateTime from = RollupGranularity.DAY.floor(oldest.toLocalDateTime());
+            archiveDay(from, from.plusDays(1));
+            days++;
+        }
+        return days;
+    }
+
+    /**
+     * Drops the files of days before the retention cut, the same days whose partitions are dropped.
+     */
+    @Override
+    public void deleteBefore(LocalDateTime cut) {
+        List<Segment> expired = segments.stream().filter(segment -> !segment.to().isAfter(cut)).toList();
+        if (expired.isEmpty()) {
+            return;
+        }
+        publishLock.writeLock().lock();
+        try {
+            jdbcTemplate.update("DELETE FROM hit_archive_segments WHERE range_end <= ?", Timestamp.valueOf(cut));
+            segments = segments.stream().filter(segment -> segment.to().isAfter(cut)).toList();
+        } finally {
+            publishLock.writeLock().unlock();
+        }
+        for (Segment segment : expired) {
+            deleteQuietly(root.resolve(segment.file()));
+        }
+        log.info("Deleted {} archive files of days before {}", expired.size(), cut.toLocalDate());
+    }
+
+    /**
+     * Runs a read of hits stamped from {@code start} on so that it never sees a day that is already deleted from
+     * endpoint_hits but not yet listed, or the other way round. Reads of recent hits never wait.
+     */
+    public <T> T read(LocalDateTime start, Supplier<T> read) {
+        if (!enabled || !start.isBefore(LocalDateTime.now().minus(after).plusDays(1))) {
+            return read.get();
+        }
+        publishLock.readLock().lock();
+        try {
+            return read.get();
+        } finally {
+            publishLock.readLock().unlock();
+        }
+    }
+
+    public void run(LocalDateTime start, Runnable read) {
+        read(start, () -> {
+            read.run();
+            return null;
+        });
+    }
+
+    /**
+     * Whether any archived hits may fall in {@code [start, end]}.
+     */
+    public boolean overlaps(LocalDateTime start, LocalDateTime end) {
+        for (Segment segment : segments) {
+            if (segment.overlaps(start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Visits archived hits stamped in {@code [start, end]}, of all uris when {@code uriIds} is null.
+     */
+    public void scan(LocalDateTime start, LocalDateTime end, Collection<Long> uriIds, Visitor visitor) {
+        Set<Long> wanted = uriIds != null ? new HashSet<>(uriIds) : null;
+        for (Segment segment : segments) {
+            if (segment.overlaps(start, end)) {
+                scan(segment, start, end, wanted, visitor);
+            }
+        }
+    }
+
+    private void scan(Segment segment, LocalDateTime start, LocalDateTime end, Set<Long> uriIds, Visitor visitor) {
+        Path file = root.resolve(segment.file());
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file), 1 << 16), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IllegalStateException("Archive file " + file + " has an unexpected header: " + line);
+            }
+            while ((line = reader.readLine()) != null) {
+                int first = line.indexOf(',');
+                int second = line.indexOf(',', first + 1);
+                int third = line.indexOf(',', second + 1);
+                int fourth = line.indexOf(',', third + 1);
+                LocalDateTime timestamp = LocalDateTime.parse(line.substring(third + 1, fourth));
+                if (timestamp.isAfter(end)) {
+                    // Rows are written in timestamp order.
+                    break;
+                }
+                long uriId = Long.parseLong(line, first + 1, second, 10);
+                if (timestamp.isBefore(start) || uriIds != null && !uriIds.contains(uriId)) {
+                    continue;
+                }
+                visitor.visit(Long.parseLong(line, 0, first, 10), uriId,
+                        HEX.parseHex(line, second + 1, third), timestamp,
+                        Integer.parseInt(line, fourth + 1, line.length(), 10));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read archive file " + file, e);
+        }
+    }
+
+    private void archiveDay(LocalDateTime from, LocalDateTime to) {
+        String name = FILE_PREFIX + from.toLocalDate() + "-" + System.currentTimeMillis() + ".csv.gz";
+        Path file = root.resolve(name);
+        Path tmp = root.resolve(name + ".tmp");
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(10_000);
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        long started = System.nanoTime();
+        boolean[] locked = {false};
+        try {
+            long[] rows = {0};
+            transaction.executeWithoutResult(status -> {
+                try {
+                    try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                            new GZIPOutputStream(Files.newOutputStream(tmp), 1 << 16), StandardCharsets.UTF_8))) {
+                        out.write(HEADER);
+                        out.write('\n');
+                        streaming.query("SELECT app_id, uri_id, ip, timestamp, weight FROM endpoint_hits" +
+                                " WHERE timestamp >= ? AND timestamp < ? ORDER BY timestamp", (RowCallbackHandler) rs -> {
+                                    try {
+                                        out.write(rs.getLong("app_id") + "," + rs.getLong("uri_id") + ","
+                                                + HEX.formatHex(rs.getBytes("ip")) + ","
+                                                + rs.getTimestamp("timestamp").toLocalDateTime() + ","
+                                                + rs.getInt("weight") + "\n");
+                                    } catch (IOException e) {
+                                        throw new UncheckedIOException(e);
+                                    }
+                                    rows[0]++;
+                                }, Timestamp.valueOf(from), Timestamp.valueOf(to));
+                    }
+                    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                        channel.force(true);
+                    }
+                    publishLock.writeLock().lock();
+                    locked[0] = true;
+                    // Same snapshot as the export, so rows inserted meanwhile are neither exported nor deleted.
+                    int deleted = jdbcTemplate.update("DELETE FROM endpoint_hits WHERE timestamp >= ? AND timestamp < ?",
+                            Timestamp.valueOf(from), Timestamp.valueOf(to));
+                    if (deleted != rows[0]) {
+                        throw new IllegalStateException("Exported " + rows[0] + " hits of " + from.toLocalDate()
+                                + " but deleted " + deleted);
+                    }
+                    Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+                    jdbcTemplate.update("INSERT INTO hit_archive_segments" +
+                            " (file_name, range_start, range_end, hit_count, file_bytes, created_at)" +
+                            " VALUES (?, ?, ?, ?, ?, ?)", name, Timestamp.valueOf(from), Timestamp.valueOf(to),
+                            rows[0], Files.size(file), Timestamp.valueOf(LocalDateTime.now()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            // Reads on a replica would still see the deleted rows next to the new file until it replays the delete.
+            replicaDataSource.ifAvailable(replica -> replica.awaitReplay(replicaJdbc -> replicaJdbc.queryForObject(
+                    "SELECT COUNT(*) FROM hit_archive_segments WHERE file_name = ?", Long.class, name) > 0));
+            List<Segment> grown = new ArrayList<>(segments);
+            grown.add(new Segment(name, from, to));
+            segments = List.copyOf(grown);
+            publishLock.writeLock().unlock();
+            locked[0] = false;
+            log.info("Archived {} hits of {} to {} in {} ms", rows[0], from.toLocalDate(), name,
+                    Duration.ofNanos(System.nanoTime() - started).toMillis());
+        } catch (RuntimeException e) {
+            deleteQuietly(tmp);
+            deleteQuietly(file);
+            throw e;
+        } finally {
+            if (locked[0]) {
+                publishLock.writeLock().unlock();
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Failed to delete {}: {}", file, e.getMessage());
+        }
+    }
+
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(long appId, long uriId, byte[] ip, LocalDateTime timestamp, int weight);
+    }
+
+    private record Segment(String file, LocalDateTime from, LocalDateTime to) {
+        boolean overlaps(LocalDateTime start, LocalDateTime end) {
+            return from.compareTo(end) <= 0 && to.isAfter(start);
+        }
+    }
+}
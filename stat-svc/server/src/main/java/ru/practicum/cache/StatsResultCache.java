@@ -0,0 +1,324 @@
+package ru.practicum.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.ingest.SampledHit;
+import ru.practicum.model.HitKey;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Results of unlimited /stats queries keyed by the normalized query. An {@code end} within one
+ * {@code stats.cache.end-alignment} of now is rounded up to that alignment, so repeated "up to now" requests
+ * share an entry; the only extra hits this admits are ones still arriving, which the caller would see on its
+ * next request anyway. Committed hits keep cached counts exact: plain counts are incremented in place,
+ * distinct-ip counts are invalidated.
+ * <p>
+ * Every write is logged from just before its commit until well after it completes. A result is only
+ * cached when no logged write that may or may not be part of the query's snapshot touches it, so a hit
+ * is never counted both by the query and by an increment.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StatsResultCache {
+
+    private static final int WRITE_LOG_SIZE = 256;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${stats.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stats.cache.max-rows:200000}")
+    private long maxRows;
+
+    @Value("${stats.cache.max-entry-rows:10000}")
+    private int maxEntryRows;
+
+    @Value("${stats.cache.end-alignment:PT1M}")
+    private Duration endAlignment;
+
+    @Value("${stats.cache.ttl:PT10M}")
+    private Duration ttl;
+
+    private final Map<String, Set<Key>> keysByUri = new ConcurrentHashMap<>();
+    private final Set<Key> allUriKeys = ConcurrentHashMap.newKeySet();
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final NavigableMap<Long, Write> writes = new ConcurrentSkipListMap<>();
+    private final AtomicLong truncatedUpTo = new AtomicLong();
+
+    private Cache<Key, Entry> cache;
+    private Counter incrementCounter;
+    private Counter invalidationCounter;
+    private Counter skippedCounter;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (endAlignment.isNegative() || maxEntryRows <= 0 || maxRows <= 0) {
+            throw new IllegalStateException("stats.cache.end-alignment must not be negative and the row limits positive");
+        }
+        cache = Caffeine.newBuilder()
+                .maximumWeight(maxRows)
+                .weigher((Key key, Entry entry) -> Math.max(1, entry.size()))
+                .expireAfterWrite(ttl)
+                .evictionListener((Key key, Entry entry, RemovalCause cause) ->
+                        unindex(key))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "stats.result-cache");
+        incrementCounter = meterRegistry.counter("stats.result-cache.updates", "type", "increment");
+        invalidationCounter = meterRegistry.counter("stats.result-cache.updates", "type", "invalidation");
+        skippedCounter = meterRegistry.counter("stats.result-cache.updates", "type", "skipped-put");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxEntryRows() {
+        return maxEntryRows;
+    }
+
+    public Key key(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        return key(start, end, uris, unique, LocalDateTime.now());
+    }
+
+    Key key(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique, LocalDateTime now) {
+        LocalDateTime alignedEnd = end;
+        long alignment = endAlignment.getSeconds();
+        if (alignment > 0 && !end.isBefore(now.minus(endAlignment))) {
+            long seconds = end.toEpochSecond(ZoneOffset.UTC);
+            alignedEnd = LocalDateTime.ofEpochSecond(Math.ceilDiv(seconds, alignment) * alignment, 0, ZoneOffset.UTC);
+        }
+        return new Key(start, alignedEnd, uris != null ? List.copyOf(new TreeSet<>(uris)) : null, unique);
+    }
+
+    public Optional<List<ViewStats>> get(Key key) {
+        Entry entry = cache.getIfPresent(key);
+        return entry != null ? Optional.of(entry.rows()) : Optional.empty();
+    }
+
+    /**
+     * Marks the point before a query reads the database; writes from here on may or may not be in its result.
+     */
+    public Loading startLoading() {
+        long next = writeSequence.get() + 1;
+        for (Map.Entry<Long, Write> write : writes.entrySet()) {
+            if (!write.getValue().finished) {
+                return new Loading(Math.min(write.getKey(), next));
+            }
+        }
+        return new Loading(next);
+    }
+
+    public void put(Key key, Loading loading, List<ViewStats> rows) {
+        if (rows.size() > maxEntryRows) {
+            return;
+        }
+        cache.asMap().compute(key, (k, old) -> {
+            if (conflicts(k, loading)) {
+                skippedCounter.increment();
+                return old;
+            }
+            index(k);
+            return new Entry(rows);
+        });
+    }
+
+    /**
+     * Called just before a batch of hits commits; returns its sequence for {@link #writeFinished}.
+     */
+    public long writeStarted(List<EndpointHit> hits) {
+        long sequence = writeSequence.incrementAndGet();
+        writes.put(sequence, new Write(hits));
+        return sequence;
+    }
+
+    public void writeFinished(long sequence, boolean committed) {
+        Write write = writes.get(sequence);
+        if (committed) {
+            for (EndpointHit hit : write.hits) {
+                apply(hit);
+            }
+        }
+        // Only the uris and time range are needed to spot conflicts from here on.
+        write.hits = List.of();
+        write.finished = true;
+        while (writes.size() > WRITE_LOG_SIZE) {
+            Map.Entry<Long, Write> oldest = writes.firstEntry();
+            if (oldest == null || !oldest.getValue().finished) {
+                break;
+            }
+            if (writes.remove(oldest.getKey(), oldest.getValue())) {
+                truncatedUpTo.accumulateAndGet(oldest.getKey(), Math::max);
+            }
+        }
+    }
+
+    private void apply(EndpointHit hit) {
+        Set<Key> byUri = keysByUri.get(hit.getUri());
+        List<Key> candidates = new ArrayList<>(allUriKeys);
+        if (byUri != null) {
+            candidates.addAll(byUri);
+        }
+        for (Key key : candidates) {
+            if (!key.covers(hit.getTimestamp())) {
+                continue;
+            }
+            if (key.unique()) {
+                // Whether the ip is new to the entry is unknown, so the entry is dropped.
+                cache.asMap().computeIfPresent(key, (k, entry) -> {
+                    unindex(k);
+                    invalidationCounter.increment();
+                    return null;
+                });
+            } else {
+                cache.asMap().computeIfPresent(key, (k, entry) -> {
+                    entry.increment(new HitKey(hit.getApp(), hit.getUri()), SampledHit.weightOf(hit));
+                    incrementCounter.increment();
+                    return entry;
+                });
+            }
+        }
+    }
+
+    private boolean conflicts(Key key, Loading loading) {
+        if (truncatedUpTo.get() >= loading.fromSequence()) {
+            return true;
+        }
+        for (Write write : writes.tailMap(loading.fromSequence(), true).values()) {
+            if (write.affects(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void index(Key key) {
+        if (key.uris() == null) {
+            allUriKeys.add(key);
+            return;
+        }
+        for (String uri : key.uris()) {
+            keysByUri.compute(uri, (u, keys) -> {
+                Set<Key> set = keys != null ? keys : ConcurrentHashMap.newKeySet();
+                set.add(key);
+                return set;
+            });
+        }
+    }
+
+    private void unindex(Key key) {
+        if (key.uris() == null) {
+            allUriKeys.remove(key);
+            return;
+        }
+        for (String uri : key.uris()) {
+            keysByUri.computeIfPresent(uri, (u, keys) -> {
+                keys.remove(key);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    public record Key(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+
+        boolean covers(LocalDateTime timestamp) {
+            return !timestamp.isBefore(start) && !timestamp.isAfter(end);
+        }
+    }
+
+    public record Loading(long fromSequence) {
+    }
+
+    private static final class Write {
+        private volatile List<EndpointHit> hits;
+        private final Set<String> uris = new HashSet<>();
+        private final LocalDateTime first;
+        private final LocalDateTime last;
+        private volatile boolean finished;
+
+        Write(List<EndpointHit> hits) {
+            this.hits = hits;
+            LocalDateTime min = LocalDateTime.MAX;
+            LocalDateTime max = LocalDateTime.MIN;
+            for (EndpointHit hit : hits) {
+                uris.add(hit.getUri());
+                min = hit.getTimestamp().isBefore(min) ? hit.getTimestamp() : min;
+                max = hit.getTimestamp().isAfter(max) ? hit.getTimestamp() : max;
+            }
+            this.first = min;
+            this.last = max;
+        }
+
+        boolean affects(Key key) {
+            if (uris.isEmpty() || last.isBefore(key.start()) || first.isAfter(key.end())) {
+                return false;
+            }
+            if (key.uris() == null) {
+                return true;
+            }
+            for (String uri : key.uris()) {
+                if (uris.contains(uri)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Entry {
+        private final Map<HitKey, Long> counts = new HashMap<>();
+
+        Entry(List<ViewStats> rows) {
+            for (ViewStats row : rows) {
+                counts.put(new HitKey(row.getApp(), row.getUri()), row.getHits());
+            }
+        }
+
+        synchronized void increment(HitKey key, long hits) {
+            counts.merge(key, hits, Long::sum);
+        }
+
+        synchronized int size() {
+            return counts.size();
+        }
+
+        synchronized List<ViewStats> rows() {
+            List<ViewStats> rows = new ArrayList<>(counts.size());
+            counts.forEach((key, hits) -> rows.add(new ViewStats(key.getApp(), key.getUri(), hits)));
+            rows.sort(Comparator.comparing(ViewStats::getHits).reversed());
+            return rows;
+        }
+    }
+}
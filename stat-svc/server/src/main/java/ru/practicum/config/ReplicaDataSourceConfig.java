@@ -0,0 +1,18 @@
+package ru.practicum.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import ru.practicum.datasource.ReplicaRoutingConfiguration;
+
+/**
+ * Routes read-only transactions to the replica configured under {@code stats.datasource.replica}. Without
+ * {@code stats.datasource.replica.enabled} Boot's single pool stays as it is.
+ */
+@Configuration
+@ConditionalOnProperty(name = "stats.datasource.replica.enabled", havingValue = "true")
+public class ReplicaDataSourceConfig extends ReplicaRoutingConfiguration {
+
+    public ReplicaDataSourceConfig() {
+        super("stats.datasource.replica");
+    }
+}
@@ -0,0 +1,18 @@
+package ru.practicum.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.practicum.BinaryStatsHttpMessageConverter;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    // Appended after the defaults so JSON keeps answering requests that do not ask for the binary format.
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(new BinaryStatsHttpMessageConverter());
+    }
+}
@@ -1,16 +1,31 @@
 package ru.practicum.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import ru.practicum.BinaryStatsCodec;
+import ru.practicum.BinaryStatsHttpMessageConverter;
 import ru.practicum.EndpointHit;
+import ru.practicum.TimeSeries;
+import ru.practicum.TopStats;
 import ru.practicum.ViewStats;
+import ru.practicum.ingest.HitStreamReader;
+import ru.practicum.model.enums.RollupGranularity;
 import ru.practicum.service.StatsService;
 
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -21,6 +36,8 @@ import java.util.List;
 public class StatsController {
 
     private final StatsService service;
+    private final HitStreamReader hitStreamReader;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/hit")
     @ResponseStatus(code = HttpStatus.CREATED)
@@ -29,15 +46,32 @@ public class StatsController {
         service.saveHit(hit);
     }
 
-    @GetMapping("/stats")
-    public List<ViewStats> getStats(
+    @PostMapping(value = "/hits", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE,
+            BinaryStatsCodec.MEDIA_TYPE})
+    @ResponseStatus(code = HttpStatus.CREATED)
+    public void hits(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body)
+            throws IOException {
+        log.info("POST request to save a batch of hits.");
+        long saved = BinaryStatsHttpMessageConverter.MEDIA_TYPE.includes(MediaType.parseMediaType(contentType))
+                ? hitStreamReader.readBinary(body, service::saveHits)
+                : hitStreamReader.read(body, service::saveHits);
+        log.info("Saved {} hits from batch request.", saved);
+    }
+
+    @GetMapping(value = "/stats", produces = {MediaType.APPLICATION_JSON_VALUE, BinaryStatsCodec.MEDIA_TYPE})
+    public void getStats(
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
             @RequestParam(required = false) List<String> uris,
-            @RequestParam(defaultValue = "false") Boolean unique) {
+            @RequestParam(name = "uri-prefix", required = false) List<String> uriPrefixes,
+            @RequestParam(name = "group-by", defaultValue = "uri") String groupBy,
+            @RequestParam(defaultValue = "false") String unique,
+            @RequestParam(required = false) Integer limit,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            HttpServletResponse response) throws IOException {
 
-        log.info("GET request to get all statistic. start={}, end={}, uris={}, unique={}",
-                start, end, uris, unique);
+        log.info("GET request to get all statistic. start={}, end={}, uris={}, uriPrefixes={}, groupBy={}, " +
+                "unique={}, limit={}", start, end, uris, uriPrefixes, groupBy, unique, limit);
 
         if (start == null) {
             throw new IllegalArgumentException("Parameter 'start' is required");
@@ -51,6 +85,106 @@ public class StatsController {
             throw new IllegalArgumentException("End date must be after start date");
         }
 
-        return service.getStats(start, end, uris, unique);
+        boolean byPrefix = "prefix".equalsIgnoreCase(groupBy);
+        if (!byPrefix && !"uri".equalsIgnoreCase(groupBy)) {
+            throw new IllegalArgumentException("Parameter 'group-by' must be uri or prefix");
+        }
+        if (byPrefix && (uriPrefixes == null || uriPrefixes.isEmpty())) {
+            throw new IllegalArgumentException("Parameter 'uri-prefix' is required to group by prefix");
+        }
+        if (byPrefix && uris != null) {
+            throw new IllegalArgumentException("Parameter 'uris' cannot be combined with group-by=prefix");
+        }
+
+        boolean binary = accept != null && MediaType.parseMediaTypes(accept).stream()
+                .anyMatch(type -> !type.isWildcardType() && BinaryStatsHttpMessageConverter.MEDIA_TYPE.includes(type));
+
+        if ("approx".equalsIgnoreCase(unique)) {
+            List<ViewStats> stats = byPrefix
+                    ? service.getApproxUniquePrefixStats(start, end, uriPrefixes, limit)
+                    : service.getApproxUniqueStats(start, end, uris, uriPrefixes, limit);
+            response.setHeader("X-Stats-Relative-Error", String.valueOf(service.getApproxUniqueError()));
+            writeStats(stats, binary, response);
+            return;
+        }
+        if (!"true".equalsIgnoreCase(unique) && !"false".equalsIgnoreCase(unique)) {
+            throw new IllegalArgumentException("Parameter 'unique' must be true, false or approx");
+        }
+        if (byPrefix) {
+            // One row per app and prefix, so the result is small enough to write in one go.
+            List<ViewStats> stats = service.getPrefixStats(start, end, uriPrefixes, Boolean.parseBoolean(unique), limit);
+            writeStats(stats, binary, response);
+            return;
+        }
+
+        if (binary) {
+            response.setContentType(BinaryStatsCodec.MEDIA_TYPE);
+            BinaryStatsCodec.Writer writer = new BinaryStatsCodec.Writer(response.getOutputStream());
+            service.streamStats(start, end, uris, uriPrefixes, Boolean.parseBoolean(unique), limit, writer::writeStats);
+            writer.flush();
+            return;
+        }
+
+        // Rows are written as the cursor yields them. The generator is only closed on success, so nothing
+        // buffered reaches the client if the query fails before the first flush and the error handler can respond.
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+        generator.writeStartArray();
+        service.streamStats(start, end, uris, uriPrefixes, Boolean.parseBoolean(unique), limit, stat -> {
+            try {
+                generator.writeObject(stat);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        generator.writeEndArray();
+        generator.close();
+    }
+
+    @GetMapping("/stats/top")
+    public TopStats getTopStats(
+            @RequestParam String app,
+            @RequestParam(defaultValue = "1h") String window,
+            @RequestParam(defaultValue = "10") int k) {
+
+        log.info("GET request to get top uris. app={}, window={}, k={}", app, window, k);
+
+        Duration duration;
+        try {
+            duration = DurationStyle.detectAndParse(window);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Parameter 'window' must be a duration such as 15m, 1h or PT24H");
+        }
+        return service.getTopStats(app, duration, k);
+    }
+
+    @GetMapping("/stats/timeseries")
+    public List<TimeSeries> getTimeSeries(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+            @RequestParam List<String> uris,
+            @RequestParam(defaultValue = "hour") String interval) {
+
+        log.info("GET request to get time series. start={}, end={}, uris={}, interval={}", start, end, uris, interval);
+
+        RollupGranularity granularity;
+        try {
+            granularity = RollupGranularity.valueOf(interval.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Parameter 'interval' must be minute, hour or day");
+        }
+        return service.getTimeSeries(start, end, uris, granularity);
+    }
+
+    private void writeStats(List<ViewStats> stats, boolean binary, HttpServletResponse response) throws IOException {
+        if (binary) {
+            response.setContentType(BinaryStatsCodec.MEDIA_TYPE);
+            BinaryStatsCodec.Writer writer = new BinaryStatsCodec.Writer(response.getOutputStream());
+            stats.forEach(writer::writeStats);
+            writer.flush();
+        } else {
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), stats);
+        }
     }
 }
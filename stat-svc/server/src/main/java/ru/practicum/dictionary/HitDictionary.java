@@ -0,0 +1,302 @@
+package ru.practicum.dictionary;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.core.support.AbstractSqlTypeValue;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.model.HitKey;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+
+/**
+ * Interns app names and uris into the hit_apps / hit_uris dimension tables so hit, rollup and sketch
+ * rows only carry integer keys. Ids are cached in-process in both directions; new names are inserted
+ * in their own transaction so a cached id always refers to a committed row. Besides the bounded cache,
+ * every uri is kept in a sorted index so prefix lookups never touch the database; like the hot window
+ * this assumes the instance is the only writer of hit_uris.
+ */
+@Slf4j
+@Repository
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class HitDictionary {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int DECODE_BATCH_SIZE = 500;
+
+    private static final String POSTGRES_INSERT_SQL =
+            "INSERT INTO %s (name) VALUES (?) ON CONFLICT (name) DO NOTHING";
+
+    private static final String MERGE_INSERT_SQL =
+            "MERGE INTO %s d USING (VALUES (CAST(? AS VARCHAR(255)))) s(name) ON d.name = s.name " +
+            "WHEN NOT MATCHED THEN INSERT (name) VALUES (s.name)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${stats.dictionary.cache-size:200000}")
+    private int cacheSize;
+
+    @Value("${stats.dictionary.uri-index.enabled:true}")
+    private boolean uriIndexEnabled;
+
+    private final NavigableMap<String, Long> uriIndex = new ConcurrentSkipListMap<>();
+    private final Dimension apps = new Dimension("hit_apps", null);
+    private final Dimension uris = new Dimension("hit_uris", uriIndex);
+
+    private String insertSql;
+    private TransactionTemplate insertTransaction;
+
+    @PostConstruct
+    public void init() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        insertSql = "PostgreSQL".equalsIgnoreCase(product) ? POSTGRES_INSERT_SQL : MERGE_INSERT_SQL;
+        insertTransaction = new TransactionTemplate(transactionManager);
+        insertTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        if (uriIndexEnabled) {
+            jdbcTemplate.query("SELECT id, name FROM hit_uris", (RowCallbackHandler) rs ->
+                    uriIndex.put(rs.getString("name"), rs.getLong("id")));
+            log.info("Uri index loaded with {} uris", uriIndex.size());
+        }
+    }
+
+    public void intern(List<EndpointHit> hits) {
+        Set<String> newApps = new TreeSet<>();
+        Set<String> newUris = new TreeSet<>();
+        for (EndpointHit hit : hits) {
+            if (!apps.ids.containsKey(hit.getApp())) {
+                newApps.add(hit.getApp());
+            }
+            if (!uris.ids.containsKey(hit.getUri())) {
+                newUris.add(hit.getUri());
+            }
+        }
+        if (!newApps.isEmpty()) {
+            apps.intern(newApps);
+        }
+        if (!newUris.isEmpty()) {
+            uris.intern(newUris);
+        }
+    }
+
+    public int appId(String app) {
+        return (int) apps.id(app);
+    }
+
+    public long uriId(String uri) {
+        return uris.id(uri);
+    }
+
+    /**
+     * Ids of the given uris that have ever been hit; unknown uris are simply absent.
+     */
+    public List<Long> findUriIds(Collection<String> names) {
+        List<Long> ids = new ArrayList<>(names.size());
+        List<String> missing = new ArrayList<>();
+        for (String name : names) {
+            Long id = uris.ids.get(name);
+            if (id == null && uriIndexEnabled) {
+                id = uriIndex.get(name);
+            }
+            if (id != null) {
+                ids.add(id);
+            } else {
+                missing.add(name);
+            }
+        }
+        if (!missing.isEmpty()) {
+            ids.addAll(uris.load(missing).values());
+        }
+        return ids;
+    }
+
+    /**
+     * Every uri ever hit that starts with {@code prefix}, in name order, with its id.
+     */
+    public SortedMap<String, Long> findUrisByPrefix(String prefix) {
+        SortedMap<String, Long> found = new TreeMap<>();
+        if (uriIndexEnabled) {
+            for (Map.Entry<String, Long> entry : uriIndex.tailMap(prefix, true).entrySet()) {
+                if (!entry.getKey().startsWith(prefix)) {
+                    break;
+                }
+                found.put(entry.getKey(), entry.getValue());
+            }
+            return found;
+        }
+        String pattern = prefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        jdbcTemplate.query("SELECT id, name FROM hit_uris WHERE name LIKE ? ESCAPE '\\'", (RowCallbackHandler) rs ->
+                found.put(rs.getString("name"), rs.getLong("id")), pattern);
+        return found;
+    }
+
+    public String appName(long appId) {
+        return apps.name(appId);
+    }
+
+    public HitKey key(long appId, long uriId) {
+        return new HitKey(apps.name(appId), uris.name(uriId));
+    }
+
+    public void loadNames(Collection<Long> appIds, Collection<Long> uriIds) {
+        apps.loadNames(appIds);
+        uris.loadNames(uriIds);
+    }
+
+    public List<ViewStats> decode(List<IdCount> rows) {
+        List<Long> appIds = new ArrayList<>(rows.size());
+        List<Long> uriIds = new ArrayList<>(rows.size());
+        for (IdCount row : rows) {
+            appIds.add(row.appId());
+            uriIds.add(row.uriId());
+        }
+        loadNames(appIds, uriIds);
+
+        List<ViewStats> stats = new ArrayList<>(rows.size());
+        for (IdCount row : rows) {
+            stats.add(new ViewStats(apps.name(row.appId()), uris.name(row.uriId()), row.hits()));
+        }
+        return stats;
+    }
+
+    /**
+     * Decodes rows pushed by {@code producer} in small batches, so a streamed result never has to be
+     * held in memory as a whole.
+     */
+    public void decodeStream(Consumer<Consumer<IdCount>> producer, Consumer<ViewStats> consumer) {
+        List<IdCount> buffer = new ArrayList<>(DECODE_BATCH_SIZE);
+        producer.accept(row -> {
+            buffer.add(row);
+            if (buffer.size() == DECODE_BATCH_SIZE) {
+                decode(buffer).forEach(consumer);
+                buffer.clear();
+            }
+        });
+        decode(buffer).forEach(consumer);
+    }
+
+    /**
+     * Binds a list of ids as one SQL array for {@code = ANY(:ids)} filters, so prefix queries matching
+     * many uris do not run into bind parameter limits.
+     */
+    public static SqlParameterValue idArray(List<Long> ids) {
+        return new SqlParameterValue(Types.ARRAY, new AbstractSqlTypeValue() {
+            @Override
+            protected Object createTypeValue(Connection connection, int sqlType, String typeName)
+                    throws SQLException {
+                return connection.createArrayOf("BIGINT", ids.toArray());
+            }
+        });
+    }
+
+    public record IdCount(long appId, long uriId, long hits) {
+    }
+
+    private final class Dimension {
+        private final String table;
+        private final Map<String, Long> ids = new ConcurrentHashMap<>();
+        private final Map<Long, String> names = new ConcurrentHashMap<>();
+        private final Map<String, Long> index;
+
+        Dimension(String table, Map<String, Long> index) {
+            this.table = table;
+            this.index = index;
+        }
+
+        long id(String name) {
+            Long id = ids.get(name);
+            if (id == null) {
+                id = intern(Set.of(name)).get(name);
+            }
+            return id;
+        }
+
+        String name(long id) {
+            String name = names.get(id);
+            if (name == null) {
+                loadNames(List.of(id));
+                name = names.get(id);
+                if (name == null) {
+                    throw new IllegalStateException("Unknown id " + id + " in " + table);
+                }
+            }
+            return name;
+        }
+
+        Map<String, Long> intern(Set<String> newNames) {
+            List<String> sorted = new ArrayList<>(newNames);
+            insertTransaction.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(String.format(insertSql, table), sorted, sorted.size(),
+                            (ps, name) -> ps.setString(1, name)));
+            return load(sorted);
+        }
+
+        Map<String, Long> load(List<String> wanted) {
+            Map<String, Long> found = new HashMap<>();
+            for (int from = 0; from < wanted.size(); from += CHUNK_SIZE) {
+                namedJdbcTemplate.query("SELECT id, name FROM " + table + " WHERE name IN (:names)",
+                        Map.of("names", wanted.subList(from, Math.min(wanted.size(), from + CHUNK_SIZE))),
+                        rs -> {
+                            found.put(rs.getString("name"), rs.getLong("id"));
+                        });
+            }
+            found.forEach(this::cache);
+            return found;
+        }
+
+        void loadNames(Collection<Long> wanted) {
+            List<Long> missing = wanted.stream().filter(id -> !names.containsKey(id)).distinct().toList();
+            for (int from = 0; from < missing.size(); from += CHUNK_SIZE) {
+                namedJdbcTemplate.query("SELECT id, name FROM " + table + " WHERE id IN (:ids)",
+                        Map.of("ids", missing.subList(from, Math.min(missing.size(), from + CHUNK_SIZE))),
+                        rs -> {
+                            cache(rs.getString("name"), rs.getLong("id"));
+                        });
+            }
+        }
+
+        private void cache(String name, long id) {
+            if (ids.size() >= cacheSize) {
+                // Entries are cheap to reload, so an overflowing cache is simply started afresh.
+                log.debug("Dictionary cache for {} reached {} entries, clearing", table, cacheSize);
+                ids.clear();
+                names.clear();
+            }
+            ids.put(name, id);
+            names.put(id, name);
+            if (index != null && uriIndexEnabled) {
+                index.put(name, id);
+            }
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ru.practicum.dictionary;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Binary form of client addresses: 4 bytes for IPv4, 16 for IPv6 (IPv4-mapped IPv6 collapses to IPv4).
+ * Anything that is not an address literal is stored as a tagged UTF-8 string whose length never
+ * collides with either address form, so distinct counts stay exact.
+ */
+public final class IpAddresses {
+
+    private static final byte TEXT_TAG = (byte) 0xFF;
+
+    private IpAddresses() {
+    }
+
+    public static byte[] encode(String ip) {
+        byte[] v4 = parseIpv4(ip);
+        if (v4 != null) {
+            return v4;
+        }
+        if (ip.indexOf(':') >= 0 && ip.indexOf('%') < 0) {
+            try {
+                // A string containing ':' is parsed as an IPv6 literal and never triggers a DNS lookup.
+                return InetAddress.getByName(ip).getAddress();
+            } catch (UnknownHostException | IllegalArgumentException e) {
+                // Not an address literal, fall through to the text form.
+            }
+        }
+        byte[] text = ip.getBytes(StandardCharsets.UTF_8);
+        int length = text.length + 1;
+        byte[] tagged = Arrays.copyOf(new byte[]{TEXT_TAG}, length == 4 || length == 16 ? length + 1 : length);
+        System.arraycopy(text, 0, tagged, 1, text.length);
+        return tagged;
+    }
+
+    private static byte[] parseIpv4(String ip) {
+        byte[] address = new byte[4];
+        int part = 0;
+        int value = -1;
+        for (int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (value == 0) {
+                    return null;
+                }
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return null;
+                }
+            } else if (c == '.' && value >= 0 && part < 3) {
+                address[part++] = (byte) value;
+                value = -1;
+            } else {
+                return null;
+            }
+        }
+        if (part != 3 || value < 0) {
+            return null;
+        }
+        address[3] = (byte) value;
+        return address;
+    }
+}
@@ -1,7 +1,10 @@
 package ru.practicum.exception;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.MissingServletRequestParameterException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -12,6 +15,11 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 @RestControllerAdvice
 public class ErrorHandler {
 
+    /**
+     * Number of hits at the start of a rejected bulk request that were saved; resend only the hits after them.
+     */
+    public static final String SAVED_HITS_HEADER = "X-Saved-Hits";
+
     @ExceptionHandler(MethodArgumentNotValidException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public String handleValidationExceptions(MethodArgumentNotValidException ex) {
@@ -20,6 +28,14 @@ public class ErrorHandler {
         return errorMessage;
     }
 
+    @ExceptionHandler(InvalidHitException.class)
+    public ResponseEntity<String> handleInvalidHit(InvalidHitException e) {
+        log.error("Invalid hit in bulk request: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .header(SAVED_HITS_HEADER, String.valueOf(e.getSavedHits()))
+                .body(e.getMessage() + "; the first " + e.getSavedHits() + " hits were saved");
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public String handleIllegalArgumentException(IllegalArgumentException e) {
@@ -27,6 +43,13 @@ public class ErrorHandler {
         return e.getMessage();
     }
 
+    @ExceptionHandler(HttpMessageNotReadableException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public String handleNotReadable(HttpMessageNotReadableException e) {
+        log.error("Unreadable request body: {}", e.getMessage());
+        return "Malformed request body: " + e.getMostSpecificCause().getMessage();
+    }
+
     @ExceptionHandler(MissingServletRequestParameterException.class)
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     public String handleMissingParams(MissingServletRequestParameterException e) {
@@ -35,6 +58,20 @@ public class ErrorHandler {
         return errorMessage;
     }
 
+    @ExceptionHandler(TooManyHitsException.class)
+    public ResponseEntity<String> handleTooManyHits(TooManyHitsException e) {
+        log.warn("Hit rejected: {}", e.getMessage());
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS);
+        if (e.getRetryAfter() != null) {
+            response.header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())));
+        }
+        if (e.getSavedHits() != null) {
+            response.header(SAVED_HITS_HEADER, String.valueOf(e.getSavedHits()));
+            return response.body(e.getMessage() + "; the first " + e.getSavedHits() + " hits were saved");
+        }
+        return response.body(e.getMessage());
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     public String handleException(Exception e) {
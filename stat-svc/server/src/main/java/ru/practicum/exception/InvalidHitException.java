@@ -0,0 +1,19 @@
+package ru.practicum.exception;
+
+/**
+ * A malformed or invalid hit in a bulk request, after the first {@code savedHits} hits of the request were
+ * already saved.
+ */
+public class InvalidHitException extends IllegalArgumentException {
+
+    private final long savedHits;
+
+    public InvalidHitException(String message, long savedHits) {
+        super(message);
+        this.savedHits = savedHits;
+    }
+
+    public long getSavedHits() {
+        return savedHits;
+    }
+}
@@ -0,0 +1,39 @@
+package ru.practicum.exception;
+
+import java.time.Duration;
+
+public class TooManyHitsException extends RuntimeException {
+
+    private final Duration retryAfter;
+    // Hits at the start of the rejected request that were saved anyway, or null for a single hit.
+    private final Long savedHits;
+
+    public TooManyHitsException(String message) {
+        this(message, null);
+    }
+
+    public TooManyHitsException(String message, Duration retryAfter) {
+        this(message, retryAfter, null);
+    }
+
+    public TooManyHitsException(String message, Duration retryAfter, Long savedHits) {
+        super(message);
+        this.retryAfter = retryAfter;
+        this.savedHits = savedHits;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public Long getSavedHits() {
+        return savedHits;
+    }
+
+    /**
+     * The same rejection for a request of which {@code earlier} hits before this part were saved.
+     */
+    public TooManyHitsException afterSaved(long earlier) {
+        return new TooManyHitsException(getMessage(), retryAfter, earlier + (savedHits != null ? savedHits : 0));
+    }
+}
@@ -0,0 +1,244 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.EndpointHit;
+import ru.practicum.sketch.Hashing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers hits for background writing in lanes picked by a hash of app and uri. Each lane has its own queue,
+ * batch and writer thread, and so its own database connection while it flushes; the hits of a uri always take
+ * the same lane and are written in the order they arrived. Since rollup rows are keyed by uri too, lanes never
+ * wait on each other's row locks.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HitIngestQueue {
+
+    private final HitWriter hitWriter;
+    private final HitWal hitWal;
+    private final IngestOverloadGuard ingestOverloadGuard;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${stats.ingest.async.enabled:false}")
+    private boolean enabled;
+
+    @Value("${stats.ingest.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${stats.ingest.lanes:${stats.ingest.writer-threads:2}}")
+    private int laneCount;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int connectionPoolSize;
+
+    @Value("${stats.ingest.flush-size:500}")
+    private int flushSize;
+
+    @Value("${stats.ingest.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    private final List<Lane> lanes = new ArrayList<>();
+    private int laneCapacity;
+    private volatile boolean running;
+
+    private Timer flushTimer;
+    private Counter acceptedCounter;
+    private Counter rejectedCounter;
+    private Counter droppedCounter;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (queueCapacity <= 0 || laneCount <= 0 || flushSize <= 0 || flushIntervalMs <= 0) {
+            throw new IllegalStateException("Ingest queue capacity, lanes, flush size and interval must be positive");
+        }
+        if (laneCount >= connectionPoolSize) {
+            log.warn("{} ingest lanes leave no spare connections in a pool of {}, queries will wait for lane flushes",
+                    laneCount, connectionPoolSize);
+        }
+
+        laneCapacity = (queueCapacity + laneCount - 1) / laneCount;
+        for (int i = 0; i < laneCount; i++) {
+            Lane lane = new Lane(i, new ArrayBlockingQueue<>(laneCapacity));
+            Gauge.builder("stats.ingest.queue.depth", lane.queue, BlockingQueue::size)
+                    .description("Hits waiting to be flushed to the database")
+                    .tag("lane", String.valueOf(i))
+                    .register(meterRegistry);
+            lanes.add(lane);
+        }
+        flushTimer = Timer.builder("stats.ingest.flush")
+                .description("Latency of a batch insert into endpoint_hits")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        acceptedCounter = meterRegistry.counter("stats.ingest.hits", "result", "accepted");
+        rejectedCounter = meterRegistry.counter("stats.ingest.hits", "result", "rejected");
+        droppedCounter = meterRegistry.counter("stats.ingest.hits", "result", "dropped");
+
+        if (!hitWal.isEnabled()) {
+            log.warn("Hit write-ahead log is disabled, hits still queued are lost if the server stops abruptly");
+        }
+        running = true;
+        for (Lane lane : lanes) {
+            lane.writer = new Thread(() -> drainLoop(lane), "hit-writer-" + lane.index);
+            lane.writer.setDaemon(true);
+            lane.writer.start();
+        }
+        log.info("Async hit ingestion started: capacity={}, lanes={}, flushSize={}, flushIntervalMs={}",
+                laneCapacity * laneCount, laneCount, flushSize, flushIntervalMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean offer(EndpointHit hit) {
+        return offerAll(List.of(hit)) == 1;
+    }
+
+    /**
+     * Queues hits in order until one meets a full lane and returns how many were accepted. With the
+     * write-ahead log enabled they are logged first, so every accepted hit survives a crash.
+     */
+    public int offerAll(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return 0;
+        }
+        if (laneOf(hits.get(0)).queue.remainingCapacity() == 0) {
+            rejectedCounter.increment(hits.size());
+            ingestOverloadGuard.recordQueueDepth(laneCapacity, laneCapacity);
+            return 0;
+        }
+        List<HitWal.Entry> entries;
+        if (hitWal.isEnabled()) {
+            entries = hitWal.append(hits);
+        } else {
+            entries = new ArrayList<>(hits.size());
+            for (EndpointHit hit : hits) {
+                entries.add(new HitWal.Entry(hit, 0, null));
+            }
+        }
+        int accepted = 0;
+        for (HitWal.Entry entry : entries) {
+            if (!laneOf(entry.hit()).queue.offer(entry)) {
+                break;
+            }
+            accepted++;
+        }
+        acceptedCounter.increment(accepted);
+        recordQueueDepth();
+        if (accepted < entries.size()) {
+            rejectedCounter.increment(entries.size() - accepted);
+            hitWal.complete(entries.subList(accepted, entries.size()));
+        }
+        return accepted;
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        int left = 0;
+        for (Lane lane : lanes) {
+            lane.writer.join(TimeUnit.SECONDS.toMillis(10));
+            left += lane.queue.size();
+        }
+        log.info("Async hit ingestion stopped, {} hits left in queue", left);
+    }
+
+    private Lane laneOf(EndpointHit hit) {
+        long hash = Hashing.hash64(hit.getApp() + '\n' + hit.getUri());
+        return lanes.get((int) Long.remainderUnsigned(hash, lanes.size()));
+    }
+
+    // A hot uri fills its own lane first, and that lane is what starts rejecting hits.
+    private void recordQueueDepth() {
+        int deepest = 0;
+        for (Lane lane : lanes) {
+            deepest = Math.max(deepest, lane.queue.size());
+        }
+        ingestOverloadGuard.recordQueueDepth(deepest, laneCapacity);
+    }
+
+    private void drainLoop(Lane lane) {
+        BlockingQueue<HitWal.Entry> queue = lane.queue;
+        List<HitWal.Entry> batch = new ArrayList<>(flushSize);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                long waitNanos = Math.max(0, deadline - System.nanoTime());
+                HitWal.Entry entry = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                if (entry != null) {
+                    batch.add(entry);
+                    queue.drainTo(batch, flushSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+
+            if (batch.size() >= flushSize || System.nanoTime() >= deadline || !running) {
+                flush(batch);
+                batch.clear();
+                deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+            }
+        }
+        flush(batch);
+    }
+
+    private void flush(List<HitWal.Entry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<EndpointHit> hits = new ArrayList<>(batch.size());
+        for (HitWal.Entry entry : batch) {
+            hits.add(entry.hit());
+        }
+        long started = System.nanoTime();
+        try {
+            hitWriter.write(hits);
+            long nanos = System.nanoTime() - started;
+            flushTimer.record(nanos, TimeUnit.NANOSECONDS);
+            ingestOverloadGuard.recordWrite(nanos);
+            recordQueueDepth();
+            hitWal.complete(batch);
+            log.debug("Flushed {} hits", batch.size());
+        } catch (Exception e) {
+            droppedCounter.increment(batch.size());
+            // Without a done mark the hits stay in the write-ahead log and are replayed on the next start.
+            log.error("Failed to flush {} hits{}: {}", batch.size(),
+                    hitWal.isEnabled() ? ", kept in the write-ahead log" : "", e.getMessage(), e);
+        }
+    }
+
+    private static final class Lane {
+        private final int index;
+        private final BlockingQueue<HitWal.Entry> queue;
+        private Thread writer;
+
+        private Lane(int index, BlockingQueue<HitWal.Entry> queue) {
+            this.index = index;
+            this.queue = queue;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package ru.practicum.ingest;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.BinaryStatsCodec;
+import ru.practicum.EndpointHit;
+import ru.practicum.exception.InvalidHitException;
+import ru.practicum.exception.TooManyHitsException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+@Slf4j
+@Component
+public class HitStreamReader {
+
+    private final ObjectReader hitReader;
+    private final Validator validator;
+
+    @Value("${stats.ingest.bulk.batch-size:1000}")
+    private int batchSize;
+
+    public HitStreamReader(ObjectMapper objectMapper, Validator validator) {
+        this.hitReader = objectMapper.readerFor(EndpointHit.class);
+        this.validator = validator;
+    }
+
+    public long read(InputStream body, Consumer<List<EndpointHit>> batchConsumer) throws IOException {
+        try (MappingIterator<EndpointHit> hits = hitReader.readValues(body)) {
+            return read(() -> hits.hasNextValue() ? hits.nextValue() : null, batchConsumer);
+        }
+    }
+
+    /**
+     * Same as {@link #read} for a body in the {@link BinaryStatsCodec} format.
+     */
+    public long readBinary(InputStream body, Consumer<List<EndpointHit>> batchConsumer) throws IOException {
+        BinaryStatsCodec.Reader reader = new BinaryStatsCodec.Reader(body);
+        return read(reader::readHit, batchConsumer);
+    }
+
+    /**
+     * Each batch is saved before the next hit is read, so a request rejected part way has its earlier batches
+     * saved; the exception carries how many, for the client to resend only the rest.
+     */
+    private long read(HitSource source, Consumer<List<EndpointHit>> batchConsumer) throws IOException {
+        List<EndpointHit> batch = new ArrayList<>(batchSize);
+        long count = 0;
+        long saved = 0;
+
+        try {
+            for (EndpointHit hit = source.next(); hit != null; hit = source.next()) {
+                validate(hit, count, saved);
+                batch.add(hit);
+                count++;
+
+                if (batch.size() >= batchSize) {
+                    saved = save(batch, saved, batchConsumer);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new InvalidHitException("Malformed hit #" + count + ": " + e.getOriginalMessage(), saved);
+        } catch (InvalidHitException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            throw new InvalidHitException(e.getMessage(), saved);
+        }
+
+        if (!batch.isEmpty()) {
+            save(batch, saved, batchConsumer);
+        }
+        log.debug("Read {} hits from bulk request", count);
+        return count;
+    }
+
+    private static long save(List<EndpointHit> batch, long saved, Consumer<List<EndpointHit>> batchConsumer) {
+        try {
+            batchConsumer.accept(batch);
+        } catch (TooManyHitsException e) {
+            throw e.afterSaved(saved);
+        }
+        return saved + batch.size();
+    }
+
+    private void validate(EndpointHit hit, long index, long saved) {
+        Set<ConstraintViolation<EndpointHit>> violations = validator.validate(hit);
+        if (!violations.isEmpty()) {
+            throw new InvalidHitException("Validation error in hit #" + index + ": "
+                    + violations.iterator().next().getMessage(), saved);
+        }
+    }
+
+    @FunctionalInterface
+    private interface HitSource {
+        EndpointHit next() throws IOException;
+    }
+}
@@ -0,0 +1,554 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.EndpointHit;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Write-ahead log for hits accepted by the async ingest queue. Appends from all request threads are
+ * handed to one log thread, which writes whatever has piled up with a single write and, with
+ * {@code stats.ingest.wal.fsync}, a single fsync before releasing the callers (group commit).
+ * <p>
+ * Once a batch is written to the database its hits are marked done in the log, in whichever file is
+ * active by then. Rotated files are therefore deleted oldest first, each once all of its hits are done and
+ * every older file is gone, so no file is deleted while it holds done marks an older file still needs.
+ * On startup every hit left without a done mark is written to the database before the queue accepts new
+ * ones; hits the database still rejects one by one are moved to a {@code quarantine-*.log} file, in the
+ * same format, rather than failing startup. Done marks are not part of the database transaction, so a
+ * batch committed just before a crash may be replayed twice; a hit is never lost once its append has
+ * returned.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HitWal {
+
+    private static final String FILE_PREFIX = "wal-";
+    private static final String FILE_SUFFIX = ".log";
+    private static final String QUARANTINE_PREFIX = "quarantine-";
+    private static final byte HIT_RECORD = 1;
+    private static final byte DONE_RECORD = 2;
+    // A hit record followed by the weight of a sampled hit.
+    private static final byte SAMPLED_HIT_RECORD = 3;
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES + Integer.BYTES;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private final HitWriter hitWriter;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${stats.ingest.wal.enabled:false}")
+    private boolean enabled;
+
+    @Value("${stats.ingest.wal.dir:data/wal}")
+    private String dir;
+
+    @Value("${stats.ingest.wal.fsync:true}")
+    private boolean fsync;
+
+    @Value("${stats.ingest.wal.segment-bytes:67108864}")
+    private long segmentBytes;
+
+    @Value("${stats.ingest.flush-size:500}")
+    private int replayBatchSize;
+
+    private final BlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    // Files not deleted yet, oldest first; guarded by itself.
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private Segment active;
+    private long nextFileNumber;
+    private Thread logThread;
+    private volatile boolean running;
+    // Set by the log thread when the active file may end in a torn record and could not be replaced yet.
+    private boolean torn;
+
+    private Timer syncTimer;
+    private DistributionSummary groupSize;
+
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (segmentBytes <= 0 || replayBatchSize <= 0) {
+            throw new IllegalStateException("stats.ingest.wal.segment-bytes and stats.ingest.flush-size must be positive");
+        }
+        Path directory = Paths.get(dir);
+        Files.createDirectories(directory);
+        replay(directory);
+
+        syncTimer = Timer.builder("stats.ingest.wal.sync")
+                .description("Latency of one group write to the hit write-ahead log")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        groupSize = DistributionSummary.builder("stats.ingest.wal.group-size")
+                .description("Appends written to the hit write-ahead log by one group write")
+                .register(meterRegistry);
+
+        active = openSegment();
+        running = true;
+        logThread = new Thread(this::logLoop, "hit-wal");
+        logThread.setDaemon(true);
+        logThread.start();
+        log.info("Hit write-ahead log started in {}: fsync={}, segmentBytes={}", directory.toAbsolutePath(),
+                fsync, segmentBytes);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends the hits and returns once they are written (and synced, if configured).
+     */
+    public List<Entry> append(List<EndpointHit> hits) {
+        long first = sequence.getAndAdd(hits.size()) + 1;
+        ByteBuffer records = encodeHits(hits, first);
+        Request request = new Request(records, hits.size());
+        requests.add(request);
+        Segment segment;
+        try {
+            segment = request.written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while appending to the hit write-ahead log", e);
+        } catch (ExecutionException e) {
+            throw new UncheckedIOException("Cannot append to the hit write-ahead log",
+                    e.getCause() instanceof IOException io ? io : new IOException(e.getCause()));
+        }
+        List<Entry> entries = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            entries.add(new Entry(hits.get(i), first + i, segment));
+        }
+        return entries;
+    }
+
+    /**
+     * Marks entries as no longer needed, either written to the database or rejected. Does not wait for the log.
+     */
+    public void complete(List<Entry> entries) {
+        if (!enabled || entries.isEmpty()) {
+            return;
+        }
+        long[] sequences = new long[entries.size()];
+        for (int i = 0; i < entries.size(); i++) {
+            sequences[i] = entries.get(i).sequence();
+        }
+        requests.add(new Request(encodeDone(sequences), 0));
+        Map<Segment, Long> bySegment = entries.stream()
+                .collect(Collectors.groupingBy(Entry::segment, Collectors.counting()));
+        bySegment.forEach((segment, count) -> segment.live.addAndGet(-count));
+        deleteDoneSegments();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        logThread.join(TimeUnit.SECONDS.toMillis(10));
+        active.channel.force(false);
+        active.channel.close();
+        log.info("Hit write-ahead log stopped");
+    }
+
+    private void logLoop() {
+        List<Request> group = new ArrayList<>();
+        while (running || !requests.isEmpty()) {
+            try {
+                Request first = requests.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                group.add(first);
+                requests.drainTo(group);
+                write(group);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void write(List<Request> group) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Segment groupSegment = null;
+        long groupStart = 0;
+        try {
+            if (torn) {
+                abandonActive();
+            }
+            groupSegment = active;
+            groupStart = active.size;
+            for (Request request : group) {
+                if (active.size > 0 && active.size + request.records.remaining() > segmentBytes) {
+                    rotate();
+                }
+                active.size += request.records.remaining();
+                while (request.records.hasRemaining()) {
+                    active.channel.write(request.records);
+                }
+                active.live.addAndGet(request.hits);
+                request.segment = active;
+            }
+            if (fsync) {
+                active.channel.force(false);
+            }
+            for (Request request : group) {
+                request.written.complete(request.segment);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to write {} requests to the hit write-ahead log: {}", group.size(), e.getMessage(), e);
+            for (Request request : group) {
+                if (request.segment != null) {
+                    request.segment.live.addAndGet(-request.hits);
+                }
+                request.written.completeExceptionally(e);
+            }
+            deleteDoneSegments();
+            discardFailedWrite(active == groupSegment ? groupStart : 0);
+        }
+        sample.stop(syncTimer);
+        groupSize.record(group.size());
+    }
+
+    /**
+     * Cuts a failed write off the active file, so that later appends do not land behind a torn record where
+     * replay would never reach them. A file that cannot be cut is left for a new one.
+     */
+    private void discardFailedWrite(long goodSize) {
+        try {
+            active.channel.truncate(goodSize);
+            active.channel.position(goodSize);
+            active.size = goodSize;
+            return;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot truncate write-ahead log file {} to {} bytes: {}", active.path, goodSize, e.getMessage());
+        }
+        torn = true;
+        try {
+            abandonActive();
+        } catch (IOException e) {
+            log.error("Cannot open a new write-ahead log file, retrying before the next write: {}", e.getMessage());
+        }
+    }
+
+    private void abandonActive() throws IOException {
+        Segment abandoned = active;
+        active = openSegment();
+        torn = false;
+        try {
+            abandoned.channel.close();
+        } catch (IOException e) {
+            log.warn("Cannot close write-ahead log file {}: {}", abandoned.path, e.getMessage());
+        }
+        abandoned.sealed = true;
+        deleteDoneSegments();
+        log.warn("Left write-ahead log file {} with a torn tail, appending to {}", abandoned.path, active.path);
+    }
+
+    private void rotate() throws IOException {
+        Segment sealed = active;
+        sealed.channel.force(false);
+        sealed.channel.close();
+        active = openSegment();
+        sealed.sealed = true;
+        deleteDoneSegments();
+    }
+
+    private Segment openSegment() throws IOException {
+        Path path = Paths.get(dir, String.format("%s%012d%s", FILE_PREFIX, nextFileNumber++, FILE_SUFFIX));
+        Segment segment = new Segment(path,
+                FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+        synchronized (segments) {
+            segments.addLast(segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Deletes sealed files whose hits are all done, oldest first, stopping at the first one still needed:
+     * done marks for its hits may sit in any newer file.
+     */
+    private void deleteDoneSegments() {
+        synchronized (segments) {
+            for (Segment oldest = segments.peekFirst(); oldest != null && oldest.sealed && oldest.live.get() == 0;
+                 oldest = segments.peekFirst()) {
+                segments.pollFirst();
+                try {
+                    Files.deleteIfExists(oldest.path);
+                } catch (IOException e) {
+                    log.warn("Cannot delete write-ahead log file {}: {}", oldest.path, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void replay(Path directory) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(p -> p.getFileName().toString().startsWith(FILE_PREFIX)
+                            && p.getFileName().toString().endsWith(FILE_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            nextFileNumber = Math.max(nextFileNumber,
+                    Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())) + 1);
+        }
+        if (files.isEmpty()) {
+            return;
+        }
+
+        Set<Long> done = new HashSet<>();
+        for (Path file : files) {
+            read(file, hit -> {
+            }, done::add);
+        }
+        List<EndpointHit> batch = new ArrayList<>(replayBatchSize);
+        List<EndpointHit> rejected = new ArrayList<>();
+        long[] replayed = {0};
+        for (Path file : files) {
+            read(file, sequenced -> {
+                if (!done.contains(sequenced.sequence())) {
+                    batch.add(sequenced.hit());
+                    if (batch.size() == replayBatchSize) {
+                        replayed[0] += replayBatch(batch, rejected);
+                        batch.clear();
+                    }
+                }
+            }, sequence -> {
+            });
+        }
+        if (!batch.isEmpty()) {
+            replayed[0] += replayBatch(batch, rejected);
+        }
+        if (!rejected.isEmpty()) {
+            quarantine(directory, rejected);
+        }
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        log.info("Replayed {} hits from {} write-ahead log files", replayed[0], files.size());
+    }
+
+    /**
+     * Writes the batch, or, if the database rejects it, each hit on its own so that one bad hit does not keep
+     * the rest out. Returns the number of hits written and adds the others to {@code rejected}.
+     */
+    private int replayBatch(List<EndpointHit> batch, List<EndpointHit> rejected) {
+        try {
+            hitWriter.write(batch);
+            return batch.size();
+        } catch (RuntimeException e) {
+            log.warn("Failed to replay {} hits from the write-ahead log, retrying them one by one: {}",
+                    batch.size(), e.getMessage());
+        }
+        int written = 0;
+        for (EndpointHit hit : batch) {
+            try {
+                hitWriter.write(List.of(hit));
+                written++;
+            } catch (RuntimeException e) {
+                rejected.add(hit);
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Keeps hits the database would not take in a file replay does not pick up. Renaming it to the next
+     * {@code wal-*.log} number replays it again on the next start.
+     */
+    private void quarantine(Path directory, List<EndpointHit> rejected) throws IOException {
+        Path file = directory.resolve(QUARANTINE_PREFIX + System.currentTimeMillis() + FILE_SUFFIX);
+        ByteBuffer records = encodeHits(rejected, 1);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            channel.force(false);
+        }
+        log.error("Moved {} hits the database rejected during write-ahead log replay to {}", rejected.size(), file);
+    }
+
+    /**
+     * Reads records up to the end of the file or the first torn or corrupt one, which can only be the tail
+     * of an append that never returned.
+     */
+    private void read(Path file, Consumer<Sequenced> hits, Consumer<Long> done) throws IOException {
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 1 << 16))) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_BYTES) {
+                        log.warn("Ignoring corrupt tail of {}", file);
+                        return;
+                    }
+                    payload = in.readNBytes(length);
+                } catch (EOFException e) {
+                    return;
+                }
+                CRC32C crc = new CRC32C();
+                crc.update(payload);
+                if (payload.length < length || (int) crc.getValue() != checksum) {
+                    log.warn("Ignoring torn tail of {}", file);
+                    return;
+                }
+                ByteBuffer record = ByteBuffer.wrap(payload);
+                byte type = record.get();
+                if (type == HIT_RECORD || type == SAMPLED_HIT_RECORD) {
+                    hits.accept(decodeHit(record, type == SAMPLED_HIT_RECORD));
+                } else if (type == DONE_RECORD) {
+                    int count = record.getInt();
+                    for (int i = 0; i < count; i++) {
+                        done.accept(record.getLong());
+                    }
+                }
+            }
+        }
+    }
+
+    private static ByteBuffer encodeHits(List<EndpointHit> hits, long first) {
+        List<byte[]> payloads = new ArrayList<>(hits.size());
+        int total = 0;
+        for (int i = 0; i < hits.size(); i++) {
+            EndpointHit hit = hits.get(i);
+            byte[] app = hit.getApp().getBytes(StandardCharsets.UTF_8);
+            byte[] uri = hit.getUri().getBytes(StandardCharsets.UTF_8);
+            byte[] ip = hit.getIp().getBytes(StandardCharsets.UTF_8);
+            int weight = SampledHit.weightOf(hit);
+            ByteBuffer payload = ByteBuffer.allocate(1 + Long.BYTES + Long.BYTES + Integer.BYTES
+                    + 3 * Integer.BYTES + app.length + uri.length + ip.length + (weight != 1 ? Integer.BYTES : 0));
+            payload.put(weight != 1 ? SAMPLED_HIT_RECORD : HIT_RECORD)
+                    .putLong(first + i)
+                    .putLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC))
+                    .putInt(hit.getTimestamp().getNano());
+            payload.putInt(app.length).put(app).putInt(uri.length).put(uri).putInt(ip.length).put(ip);
+            if (weight != 1) {
+                payload.putInt(weight);
+            }
+            payloads.add(payload.array());
+            total += RECORD_HEADER_BYTES + payload.capacity();
+        }
+        ByteBuffer records = ByteBuffer.allocate(total);
+        payloads.forEach(payload -> frame(records, payload));
+        return records.flip();
+    }
+
+    private static ByteBuffer encodeDone(long[] sequences) {
+        ByteBuffer payload = ByteBuffer.allocate(1 + Integer.BYTES + sequences.length * Long.BYTES);
+        payload.put(DONE_RECORD).putInt(sequences.length);
+        for (long done : sequences) {
+            payload.putLong(done);
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.capacity());
+        frame(record, payload.array());
+        return record.flip();
+    }
+
+    private static void frame(ByteBuffer target, byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        target.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+    }
+
+    private static Sequenced decodeHit(ByteBuffer record, boolean sampled) {
+        long sequence = record.getLong();
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(record.getLong(), record.getInt(), ZoneOffset.UTC);
+        String app = readString(record);
+        String uri = readString(record);
+        String ip = readString(record);
+        EndpointHit hit = new EndpointHit(null, app, uri, ip, timestamp);
+        return new Sequenced(sequence, sampled ? new SampledHit(hit, record.getInt()) : hit);
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A hit accepted by the log, with what is needed to mark it done later.
+     */
+    public record Entry(EndpointHit hit, long sequence, Segment segment) {
+    }
+
+    private record Sequenced(long sequence, EndpointHit hit) {
+    }
+
+    private static final class Request {
+        private final ByteBuffer records;
+        private final int hits;
+        private final CompletableFuture<Segment> written = new CompletableFuture<>();
+        private Segment segment;
+
+        Request(ByteBuffer records, int hits) {
+            this.records = records;
+            this.hits = hits;
+        }
+    }
+
+    static final class Segment {
+        private final Path path;
+        private final FileChannel channel;
+        private final AtomicLong live = new AtomicLong();
+        private long size;
+        private volatile boolean sealed;
+
+        Segment(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+    }
+}
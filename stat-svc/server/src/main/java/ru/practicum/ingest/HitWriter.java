@@ -0,0 +1,99 @@
+package ru.practicum.ingest;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.EndpointHit;
+import ru.practicum.cache.StatsResultCache;
+import ru.practicum.partition.HitPartitionManager;
+import ru.practicum.repository.FirstSeenRepository;
+import ru.practicum.repository.HitRollupRepository;
+import ru.practicum.repository.HitSketchRepository;
+import ru.practicum.storage.HitStorage;
+import ru.practicum.window.HotWindowCounters;
+import ru.practicum.window.TopUriTracker;
+
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+public class HitWriter {
+
+    private final HitStorage hitStorage;
+    private final HitRollupRepository hitRollupRepository;
+    private final HitSketchRepository hitSketchRepository;
+    private final FirstSeenRepository firstSeenRepository;
+    private final HotWindowCounters hotWindowCounters;
+    private final TopUriTracker topUriTracker;
+    private final StatsResultCache statsResultCache;
+    private final HitPartitionManager hitPartitionManager;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${stats.rollup.enabled:true}")
+    private boolean rollupsEnabled;
+
+    @Value("${stats.sketch.enabled:false}")
+    private boolean sketchesEnabled;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Writes the hits in one transaction. Missing partitions are created first, each in its own short
+     * transaction, so a writer never waits for a second pooled connection while holding row locks in the first.
+     */
+    public void write(List<EndpointHit> hits) {
+        hitPartitionManager.ensurePartitions(hits);
+        transactionTemplate.executeWithoutResult(status -> writeInTransaction(hits));
+    }
+
+    private void writeInTransaction(List<EndpointHit> hits) {
+        if (rollupsEnabled) {
+            hitRollupRepository.increment(hits);
+        }
+        if (sketchesEnabled) {
+            hitSketchRepository.add(hits);
+        }
+        if (firstSeenRepository.isEnabled()) {
+            firstSeenRepository.record(hits);
+        }
+        // Last, so a failed rollup or sketch update never leaves hits in a storage outside the transaction.
+        hitStorage.insertBatch(hits);
+        if (hotWindowCounters.isEnabled() || topUriTracker.isEnabled()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    hotWindowCounters.record(hits);
+                    topUriTracker.record(hits);
+                }
+            });
+        }
+        if (statsResultCache.isEnabled()) {
+            // Logged before commit so a concurrent query can tell these hits may already be in its snapshot.
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                private long sequence;
+
+                @Override
+                public void beforeCommit(boolean readOnly) {
+                    sequence = statsResultCache.writeStarted(hits);
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (sequence > 0) {
+                        statsResultCache.writeFinished(sequence, status == STATUS_COMMITTED);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.EndpointHit;
+import ru.practicum.exception.TooManyHitsException;
+import ru.practicum.model.enums.OverloadMode;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Watches ingest pressure, the mean write latency over the last interval and the fill of the async queue,
+ * each relative to its threshold. Above a pressure of 1 it either doubles the sampling rate, up to
+ * {@code max-sample-rate}, or starts shedding hits with 429; below 0.5 it steps back.
+ * <p>
+ * Sampling keeps each hit with probability 1/N, drawn independently per hit, and records it with weight N so hit
+ * counts stay unbiased however the hits are spread over visitors. Unique counts only cover visitors with at least
+ * one kept hit while sampling is active.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class IngestOverloadGuard {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${stats.ingest.overload.mode:OFF}")
+    private OverloadMode mode;
+
+    @Value("${stats.ingest.overload.latency-threshold:PT0.25S}")
+    private Duration latencyThreshold;
+
+    @Value("${stats.ingest.overload.queue-threshold:0.5}")
+    private double queueThreshold;
+
+    @Value("${stats.ingest.overload.max-sample-rate:64}")
+    private int maxSampleRate;
+
+    @Value("${stats.ingest.overload.retry-after:PT1S}")
+    private Duration retryAfter;
+
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder writes = new LongAdder();
+    private volatile double queueFill;
+    private volatile double pressure;
+    private volatile int sampleRate = 1;
+    private volatile boolean shedding;
+
+    private Counter sampledOutCounter;
+    private Counter shedCounter;
+
+    @PostConstruct
+    public void init() {
+        if (maxSampleRate < 1 || Integer.bitCount(maxSampleRate) != 1) {
+            throw new IllegalStateException("stats.ingest.overload.max-sample-rate must be a power of two");
+        }
+        if (latencyThreshold.isNegative() || latencyThreshold.isZero() || queueThreshold <= 0) {
+            throw new IllegalStateException("stats.ingest.overload thresholds must be positive");
+        }
+        Gauge.builder("stats.ingest.overload.sample-rate", this, IngestOverloadGuard::getSampleRate)
+                .description("1 in how many hits are recorded, each with that weight")
+                .register(meterRegistry);
+        Gauge.builder("stats.ingest.overload.shedding", this, guard -> guard.isShedding() ? 1 : 0)
+                .description("Whether hits are being rejected with 429")
+                .register(meterRegistry);
+        Gauge.builder("stats.ingest.overload.pressure", this, IngestOverloadGuard::getPressure)
+                .description("Ingest latency or queue fill relative to its threshold, whichever is higher")
+                .register(meterRegistry);
+        sampledOutCounter = meterRegistry.counter("stats.ingest.hits", "result", "sampled");
+        shedCounter = meterRegistry.counter("stats.ingest.hits", "result", "shed");
+        log.info("Ingest overload guard: mode={}, latencyThreshold={}, queueThreshold={}, maxSampleRate={}",
+                mode, latencyThreshold, queueThreshold, maxSampleRate);
+    }
+
+    /**
+     * Returns the hits to record, which is all of them unless sampling is active.
+     *
+     * @throws TooManyHitsException while shedding
+     */
+    public List<EndpointHit> admit(List<EndpointHit> hits) {
+        if (shedding) {
+            shedCounter.increment(hits.size());
+            throw new TooManyHitsException("Stats ingest is overloaded, retry later", retryAfter);
+        }
+        int rate = sampleRate;
+        if (rate == 1) {
+            return hits;
+        }
+        List<EndpointHit> kept = new ArrayList<>(hits.size() / rate + 1);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (EndpointHit hit : hits) {
+            if ((random.nextInt() & (rate - 1)) == 0) {
+                kept.add(new SampledHit(hit, rate));
+            }
+        }
+        sampledOutCounter.increment(hits.size() - kept.size());
+        return kept;
+    }
+
+    public void recordWrite(long nanos) {
+        writeNanos.add(nanos);
+        writes.increment();
+    }
+
+    public void recordQueueDepth(int depth, int capacity) {
+        queueFill = (double) depth / capacity;
+    }
+
+    @Scheduled(fixedDelayString = "${stats.ingest.overload.interval-ms:1000}")
+    public void evaluate() {
+        long count = writes.sumThenReset();
+        long nanos = writeNanos.sumThenReset();
+        double latencyPressure = count == 0 ? 0 : (double) nanos / count / latencyThreshold.toNanos();
+        pressure = Math.max(latencyPressure, queueFill / queueThreshold);
+
+        int rate = sampleRate;
+        if (mode == OverloadMode.SAMPLE) {
+            if (pressure > 1 && rate < maxSampleRate) {
+                sampleRate = rate * 2;
+                log.warn("Ingest overloaded (pressure {}), recording 1 in {} hits", format(pressure), rate * 2);
+            } else if (pressure < 0.5 && rate > 1) {
+                sampleRate = rate / 2;
+                log.info("Ingest pressure down to {}, recording 1 in {} hits", format(pressure), rate / 2);
+            }
+        } else if (mode == OverloadMode.SHED) {
+            if (pressure > 1 && !shedding) {
+                shedding = true;
+                log.warn("Ingest overloaded (pressure {}), rejecting hits", format(pressure));
+            } else if (pressure < 0.5 && shedding) {
+                shedding = false;
+                log.info("Ingest pressure down to {}, accepting hits again", format(pressure));
+            }
+        }
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    public boolean isShedding() {
+        return shedding;
+    }
+
+    public double getPressure() {
+        return pressure;
+    }
+
+    private static String format(double value) {
+        return String.format("%.2f", value);
+    }
+}
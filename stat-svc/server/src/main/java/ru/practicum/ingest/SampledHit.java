@@ -0,0 +1,26 @@
+package ru.practicum.ingest;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import ru.practicum.EndpointHit;
+
+/**
+ * A hit kept by sampling 1 in {@code weight}, which stands for {@code weight} hits wherever hits are counted.
+ */
+@Getter
+@EqualsAndHashCode(callSuper = true)
+@ToString(callSuper = true)
+public class SampledHit extends EndpointHit {
+
+    private final int weight;
+
+    public SampledHit(EndpointHit hit, int weight) {
+        super(hit.getId(), hit.getApp(), hit.getUri(), hit.getIp(), hit.getTimestamp());
+        this.weight = weight;
+    }
+
+    public static int weightOf(EndpointHit hit) {
+        return hit instanceof SampledHit sampled ? sampled.weight : 1;
+    }
+}
@@ -0,0 +1,39 @@
+package ru.practicum.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Manifest row of one archive file, holding the hits of {@code [rangeStart, rangeEnd)} that were moved out of
+ * endpoint_hits. It commits together with their deletion, so a hit is either in the table or in a listed file.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "hit_archive_segments", indexes = @Index(name = "ix_hit_archive_segments_range", columnList = "range_start"))
+public class ArchivedSegment {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "file_name", nullable = false, unique = true)
+    private String fileName;
+
+    @Column(name = "range_start", nullable = false)
+    private LocalDateTime rangeStart;
+
+    @Column(name = "range_end", nullable = false)
+    private LocalDateTime rangeEnd;
+
+    @Column(name = "hit_count", nullable = false)
+    private Long hitCount;
+
+    @Column(name = "file_bytes", nullable = false)
+    private Long fileBytes;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,10 @@
+package ru.practicum.model;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "hit_rollups_day",
+        uniqueConstraints = @UniqueConstraint(name = "uq_hit_rollups_day", columnNames = {"uri_id", "bucket", "app_id"}),
+        indexes = @Index(name = "ix_hit_rollups_day_bucket", columnList = "bucket"))
+public class DayHitRollup extends HitRollup {
+}
@@ -0,0 +1,10 @@
+package ru.practicum.model;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "hit_sketches_day",
+        uniqueConstraints = @UniqueConstraint(name = "uq_hit_sketches_day", columnNames = {"uri_id", "bucket", "app_id"}),
+        indexes = @Index(name = "ix_hit_sketches_day_bucket", columnList = "bucket"))
+public class DayHitSketch extends HitSketch {
+}
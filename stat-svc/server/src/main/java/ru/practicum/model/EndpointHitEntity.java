@@ -11,21 +11,25 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @NoArgsConstructor
 @Entity
-@Table(name = "endpoint_hits")
+@Table(name = "endpoint_hits", indexes = @Index(name = "ix_endpoint_hits_uri_timestamp", columnList = "uri_id, timestamp"))
 public class EndpointHitEntity {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(name = "app", nullable = false)
-    private String app;
+    @Column(name = "app_id", nullable = false)
+    private Integer appId;
 
-    @Column(name = "uri", nullable = false)
-    private String uri;
+    @Column(name = "uri_id", nullable = false)
+    private Long uriId;
 
-    @Column(name = "ip", nullable = false)
-    private String ip;
+    @Column(name = "ip", nullable = false, length = 256)
+    private byte[] ip;
 
     @Column(name = "timestamp", nullable = false)
     private LocalDateTime timestamp;
+
+    // Hits this row stands for: 1, or the sampling rate in effect when it was recorded.
+    @Column(name = "weight", nullable = false)
+    private Integer weight;
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package ru.practicum.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * How many visitors of a uri were first seen on the day starting at {@code bucket}.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "hit_first_seen_day",
+        uniqueConstraints = @UniqueConstraint(name = "uq_hit_first_seen_day", columnNames = {"uri_id", "bucket", "app_id"}),
+        indexes = @Index(name = "ix_hit_first_seen_day_bucket", columnList = "bucket"))
+public class FirstSeenDay {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "app_id", nullable = false)
+    private Integer appId;
+
+    @Column(name = "uri_id", nullable = false)
+    private Long uriId;
+
+    @Column(name = "bucket", nullable = false)
+    private LocalDateTime bucket;
+
+    @Column(name = "visitors", nullable = false)
+    private Long visitors;
+}
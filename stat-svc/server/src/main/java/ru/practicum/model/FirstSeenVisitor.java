@@ -0,0 +1,37 @@
+package ru.practicum.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+/**
+ * The earliest hit of one ip on one uri, which is what exact unique counts are answered from.
+ */
+@Getter
+@Setter
+@Entity
+@Table(name = "hit_first_seen",
+        uniqueConstraints = @UniqueConstraint(name = "uq_hit_first_seen", columnNames = {"uri_id", "app_id", "ip"}),
+        indexes = {
+                @Index(name = "ix_hit_first_seen_uri_first_seen", columnList = "uri_id, first_seen"),
+                @Index(name = "ix_hit_first_seen_first_seen", columnList = "first_seen")
+        })
+public class FirstSeenVisitor {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "app_id", nullable = false)
+    private Integer appId;
+
+    @Column(name = "uri_id", nullable = false)
+    private Long uriId;
+
+    @Column(name = "ip", nullable = false, length = 256)
+    private byte[] ip;
+
+    @Column(name = "first_seen", nullable = false)
+    private LocalDateTime firstSeen;
+}
@@ -0,0 +1,11 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class HitKey {
+    private final String app;
+    private final String uri;
+}
@@ -0,0 +1,28 @@
+package ru.practicum.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Setter
+@MappedSuperclass
+public abstract class HitRollup {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "app_id", nullable = false)
+    private Integer appId;
+
+    @Column(name = "uri_id", nullable = false)
+    private Long uriId;
+
+    @Column(name = "bucket", nullable = false)
+    private LocalDateTime bucket;
+
+    @Column(name = "hits", nullable = false)
+    private Long hits;
+}
@@ -0,0 +1,10 @@
+package ru.practicum.model;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "hit_rollups_hour",
+        uniqueConstraints = @UniqueConstraint(name = "uq_hit_rollups_hour", columnNames = {"uri_id", "bucket", "app_id"}),
+        indexes = @Index(name = "ix_hit_rollups_hour_bucket", columnList = "bucket"))
+public class HourHitRollup extends HitRollup {
+}
@@ -0,0 +1,10 @@
+package ru.practicum.model;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "hit_sketches_hour",
+        uniqueConstraints = @UniqueConstraint(name = "uq_hit_sketches_hour", columnNames = {"uri_id", "bucket", "app_id"}),
+        indexes = @Index(name = "ix_hit_sketches_hour_bucket", columnList = "bucket"))
+public class HourHitSketch extends HitSketch {
+}
@@ -0,0 +1,10 @@
+package ru.practicum.model;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "hit_rollups_minute",
+        uniqueConstraints = @UniqueConstraint(name = "uq_hit_rollups_minute", columnNames = {"uri_id", "bucket", "app_id"}),
+        indexes = @Index(name = "ix_hit_rollups_minute_bucket", columnList = "bucket"))
+public class MinuteHitRollup extends HitRollup {
+}
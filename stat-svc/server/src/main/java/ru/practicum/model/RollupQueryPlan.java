@@ -0,0 +1,76 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import ru.practicum.model.enums.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a {@code [start, end]} stats range into bucket-aligned pieces served from rollup tables
+ * and the ragged edges that still have to be counted from raw hits.
+ */
+@Data
+@AllArgsConstructor
+public class RollupQueryPlan {
+    private final List<Segment> rollupSegments;
+    private final List<Segment> rawSegments;
+
+    public static RollupQueryPlan of(LocalDateTime start, LocalDateTime end) {
+        return of(start, end, RollupGranularity.MINUTE);
+    }
+
+    public static RollupQueryPlan of(LocalDateTime start, LocalDateTime end, RollupGranularity finest) {
+        List<Segment> rollups = new ArrayList<>();
+        List<Segment> raw = new ArrayList<>();
+
+        LocalDateTime alignedStart = finest.ceil(start);
+        LocalDateTime alignedEnd = finest.floor(end);
+
+        if (!alignedStart.isBefore(alignedEnd)) {
+            raw.add(new Segment(null, start, end, true));
+            return new RollupQueryPlan(rollups, raw);
+        }
+
+        if (start.isBefore(alignedStart)) {
+            raw.add(new Segment(null, start, alignedStart, false));
+        }
+        split(RollupGranularity.DAY, finest, alignedStart, alignedEnd, rollups);
+        raw.add(new Segment(null, alignedEnd, end, true));
+
+        return new RollupQueryPlan(rollups, raw);
+    }
+
+    private static void split(RollupGranularity granularity, RollupGranularity finest,
+                              LocalDateTime from, LocalDateTime to, List<Segment> segments) {
+        if (!from.isBefore(to)) {
+            return;
+        }
+        if (granularity == finest) {
+            segments.add(new Segment(granularity, from, to, false));
+            return;
+        }
+
+        LocalDateTime coarseStart = granularity.ceil(from);
+        LocalDateTime coarseEnd = granularity.floor(to);
+
+        if (!coarseStart.isBefore(coarseEnd)) {
+            split(granularity.finer(), finest, from, to, segments);
+            return;
+        }
+        split(granularity.finer(), finest, from, coarseStart, segments);
+        segments.add(new Segment(granularity, coarseStart, coarseEnd, false));
+        split(granularity.finer(), finest, coarseEnd, to, segments);
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Segment {
+        private final RollupGranularity granularity;
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final boolean toInclusive;
+    }
+}
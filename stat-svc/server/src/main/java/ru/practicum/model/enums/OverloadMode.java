@@ -0,0 +1,11 @@
+package ru.practicum.model.enums;
+
+/**
+ * What the ingest path does once it is overloaded: nothing, record a deterministic sample of hits with
+ * weights, or reject hits with 429 until it recovers.
+ */
+public enum OverloadMode {
+    OFF,
+    SAMPLE,
+    SHED
+}
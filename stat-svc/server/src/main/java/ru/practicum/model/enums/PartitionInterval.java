@@ -0,0 +1,49 @@
+package ru.practicum.model.enums;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+public enum PartitionInterval {
+    DAY(ChronoUnit.DAYS, DateTimeFormatter.ofPattern("yyyyMMdd")),
+    MONTH(ChronoUnit.MONTHS, DateTimeFormatter.ofPattern("yyyyMM"));
+
+    private final ChronoUnit unit;
+    private final DateTimeFormatter suffixFormat;
+
+    PartitionInterval(ChronoUnit unit, DateTimeFormatter suffixFormat) {
+        this.unit = unit;
+        this.suffixFormat = suffixFormat;
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        return this == MONTH ? day.withDayOfMonth(1) : day;
+    }
+
+    public LocalDateTime next(LocalDateTime periodStart) {
+        return periodStart.plus(1, unit);
+    }
+
+    public String partitionName(String table, LocalDateTime periodStart) {
+        return table + "_p" + periodStart.format(suffixFormat);
+    }
+
+    public LocalDateTime parsePartitionName(String table, String name) {
+        String prefix = table + "_p";
+        if (!name.startsWith(prefix)) {
+            return null;
+        }
+        String suffix = name.substring(prefix.length());
+        try {
+            return this == MONTH
+                    ? YearMonth.parse(suffix, suffixFormat).atDay(1).atStartOfDay()
+                    : LocalDate.parse(suffix, suffixFormat).atStartOfDay();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package ru.practicum.model.enums;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+public enum RollupGranularity {
+    MINUTE("hit_rollups_minute", null, ChronoUnit.MINUTES),
+    HOUR("hit_rollups_hour", "hit_sketches_hour", ChronoUnit.HOURS),
+    DAY("hit_rollups_day", "hit_sketches_day", ChronoUnit.DAYS);
+
+    private final String table;
+    private final String sketchTable;
+    private final ChronoUnit unit;
+
+    RollupGranularity(String table, String sketchTable, ChronoUnit unit) {
+        this.table = table;
+        this.sketchTable = sketchTable;
+        this.unit = unit;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getSketchTable() {
+        return sketchTable;
+    }
+
+    public ChronoUnit getUnit() {
+        return unit;
+    }
+
+    public RollupGranularity finer() {
+        return this == DAY ? HOUR : MINUTE;
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? floor : floor.plus(1, unit);
+    }
+}
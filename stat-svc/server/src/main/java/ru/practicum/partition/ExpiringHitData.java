@@ -0,0 +1,16 @@
+package ru.practicum.partition;
+
+import java.time.LocalDateTime;
+
+/**
+ * Hits, or data counted from them, kept outside the partitioned endpoint_hits table. Retention cuts all of it
+ * at the same partition boundary as the raw partitions, so answers from rollups, sketches, first hits or
+ * archive files keep matching a scan of the hits that are left.
+ */
+public interface ExpiringHitData {
+
+    /**
+     * Deletes everything stamped before {@code cut}, which is always the start of a day.
+     */
+    void deleteBefore(LocalDateTime cut);
+}
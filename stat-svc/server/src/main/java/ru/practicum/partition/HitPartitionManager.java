@@ -0,0 +1,151 @@
+package ru.practicum.partition;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.EndpointHit;
+import ru.practicum.model.enums.PartitionInterval;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class HitPartitionManager {
+
+    public static final String TABLE = "endpoint_hits";
+
+    private final PartitionDialect partitionDialect;
+    private final List<ExpiringHitData> expiringHitData;
+
+    @Value("${stats.partition.enabled:false}")
+    private boolean enabled;
+
+    @Value("${stats.partition.interval:DAY}")
+    private PartitionInterval interval;
+
+    @Value("${stats.partition.premake:3}")
+    private int premake;
+
+    @Value("${stats.partition.retention-days:0}")
+    private int retentionDays;
+
+    @Value("${stats.partition.retention-mode:drop}")
+    private String retentionMode;
+
+    private final Set<LocalDateTime> knownPeriods = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (!"drop".equals(retentionMode) && !"detach".equals(retentionMode)) {
+            throw new IllegalStateException("stats.partition.retention-mode must be drop or detach");
+        }
+        partitionDialect.ensurePartitionedTable(interval);
+        maintain(LocalDateTime.now());
+    }
+
+    @Scheduled(cron = "${stats.partition.maintenance-cron:0 5 0 * * *}")
+    public void scheduledMaintenance() {
+        if (enabled) {
+            maintain(LocalDateTime.now());
+        }
+    }
+
+    /**
+     * Creates the partitions {@code hits} fall into that do not exist yet. Called before the write transaction
+     * opens; inside a transaction nothing is created and the hits land in the default partition, from where
+     * {@link #maintain} moves them when it creates the partition.
+     */
+    public void ensurePartitions(List<EndpointHit> hits) {
+        if (!enabled) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            log.debug("Not creating partitions inside a transaction, {} hits may go to the default partition",
+                    hits.size());
+            return;
+        }
+        LocalDateTime horizon = horizon(LocalDateTime.now());
+        for (EndpointHit hit : hits) {
+            LocalDateTime period = interval.floor(hit.getTimestamp());
+            if (!knownPeriods.contains(period) && (horizon == null || interval.next(period).isAfter(horizon))) {
+                createPartition(period);
+            }
+        }
+    }
+
+    void maintain(LocalDateTime now) {
+        Map<LocalDateTime, String> partitions = existingPartitions();
+        knownPeriods.retainAll(partitions.keySet());
+        knownPeriods.addAll(partitions.keySet());
+
+        LocalDateTime period = interval.floor(now);
+        for (int i = 0; i <= premake; i++) {
+            if (!knownPeriods.contains(period)) {
+                createPartition(period);
+            }
+            period = interval.next(period);
+        }
+
+        LocalDateTime horizon = horizon(now);
+        if (horizon == null) {
+            return;
+        }
+        // Only whole partitions go, so everything else is cut at the same partition boundary.
+        LocalDateTime cut = interval.floor(horizon);
+        for (Map.Entry<LocalDateTime, String> partition : partitions.entrySet()) {
+            if (interval.next(partition.getKey()).isAfter(cut)) {
+                break;
+            }
+            if ("detach".equals(retentionMode)) {
+                String archiveName = partition.getValue().replace(TABLE + "_p", TABLE + "_archive_p");
+                partitionDialect.detachPartition(partition.getValue(), archiveName);
+                log.info("Detached partition {} as {}", partition.getValue(), archiveName);
+            } else {
+                partitionDialect.dropPartition(partition.getValue());
+                log.info("Dropped partition {}", partition.getValue());
+            }
+            knownPeriods.remove(partition.getKey());
+        }
+        partitionDialect.purgeDefaultPartitionBefore(cut);
+        for (ExpiringHitData data : expiringHitData) {
+            data.deleteBefore(cut);
+        }
+    }
+
+    private Map<LocalDateTime, String> existingPartitions() {
+        Map<LocalDateTime, String> partitions = new TreeMap<>();
+        for (String name : partitionDialect.listPartitions()) {
+            LocalDateTime period = interval.parsePartitionName(TABLE, name);
+            if (period != null) {
+                partitions.put(period, name);
+            }
+        }
+        return partitions;
+    }
+
+    private void createPartition(LocalDateTime period) {
+        String name = interval.partitionName(TABLE, period);
+        partitionDialect.createPartition(name, period, interval.next(period));
+        knownPeriods.add(period);
+        log.info("Created partition {}", name);
+    }
+
+    private LocalDateTime horizon(LocalDateTime now) {
+        return retentionDays > 0 ? now.minusDays(retentionDays) : null;
+    }
+}
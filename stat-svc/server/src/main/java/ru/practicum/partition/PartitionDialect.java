@@ -0,0 +1,20 @@
+package ru.practicum.partition;
+
+import ru.practicum.model.enums.PartitionInterval;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+public interface PartitionDialect {
+    void ensurePartitionedTable(PartitionInterval interval);
+
+    Set<String> listPartitions();
+
+    void createPartition(String name, LocalDateTime from, LocalDateTime to);
+
+    void dropPartition(String name);
+
+    void detachPartition(String name, String archiveName);
+
+    void purgeDefaultPartitionBefore(LocalDateTime horizon);
+}
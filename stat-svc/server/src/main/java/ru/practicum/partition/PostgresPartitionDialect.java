@@ -0,0 +1,128 @@
+package ru.practicum.partition;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.model.enums.PartitionInterval;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PostgresPartitionDialect implements PartitionDialect {
+
+    private static final String TABLE = HitPartitionManager.TABLE;
+    private static final String LEGACY_TABLE = TABLE + "_legacy";
+    private static final String DEFAULT_PARTITION = TABLE + "_default";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Override
+    @Transactional
+    public void ensurePartitionedTable(PartitionInterval interval) {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        if (!"PostgreSQL".equalsIgnoreCase(product)) {
+            throw new IllegalStateException("Hit table partitioning requires PostgreSQL, found " + product);
+        }
+
+        List<String> kind = jdbcTemplate.queryForList(
+                "SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?)", String.class, TABLE);
+        if (kind.isEmpty()) {
+            throw new IllegalStateException("Table " + TABLE + " does not exist");
+        }
+        if ("p".equals(kind.get(0))) {
+            return;
+        }
+
+        log.info("Converting {} to a table partitioned by {}", TABLE, interval);
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " RENAME TO " + LEGACY_TABLE);
+        jdbcTemplate.execute("CREATE TABLE " + TABLE + " (LIKE " + LEGACY_TABLE + " INCLUDING DEFAULTS) " +
+                "PARTITION BY RANGE (timestamp)");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ALTER COLUMN id DROP IDENTITY IF EXISTS");
+        jdbcTemplate.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF " + TABLE + " DEFAULT");
+
+        jdbcTemplate.query("SELECT MIN(timestamp) AS first, MAX(timestamp) AS last FROM " + LEGACY_TABLE, rs -> {
+            Timestamp first = rs.getTimestamp("first");
+            Timestamp last = rs.getTimestamp("last");
+            if (first == null) {
+                return;
+            }
+            LocalDateTime end = last.toLocalDateTime();
+            for (LocalDateTime period = interval.floor(first.toLocalDateTime()); !period.isAfter(end);
+                 period = interval.next(period)) {
+                jdbcTemplate.execute("CREATE TABLE " + interval.partitionName(TABLE, period) + " PARTITION OF " +
+                        TABLE + " FOR VALUES FROM (" + literal(period) + ") TO (" + literal(interval.next(period)) + ")");
+            }
+        });
+
+        jdbcTemplate.execute("INSERT INTO " + TABLE + " SELECT * FROM " + LEGACY_TABLE);
+        // The legacy identity sequence goes away with the legacy table, so ids continue from a fresh sequence.
+        jdbcTemplate.execute("DROP TABLE " + LEGACY_TABLE);
+        jdbcTemplate.execute("CREATE SEQUENCE " + TABLE + "_id_seq OWNED BY " + TABLE + ".id");
+        jdbcTemplate.execute("SELECT setval('" + TABLE + "_id_seq', COALESCE(MAX(id), 0) + 1, false) FROM " + TABLE);
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ALTER COLUMN id SET DEFAULT nextval('" + TABLE + "_id_seq')");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD PRIMARY KEY (id, timestamp)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS ix_" + TABLE + "_uri_timestamp ON " + TABLE + " (uri_id, timestamp)");
+    }
+
+    @Override
+    public Set<String> listPartitions() {
+        return new HashSet<>(jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i " +
+                "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)", String.class, TABLE));
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void createPartition(String name, LocalDateTime from, LocalDateTime to) {
+        if (!listPartitions().contains(name)) {
+            // Rows that landed in the default partition for this range must move before the range can be attached.
+            jdbcTemplate.execute("LOCK TABLE " + DEFAULT_PARTITION + " IN ACCESS EXCLUSIVE MODE");
+            if (listPartitions().contains(name)) {
+                return;
+            }
+            String range = "timestamp >= " + literal(from) + " AND timestamp < " + literal(to);
+            jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE " + TABLE + " INCLUDING DEFAULTS)");
+            jdbcTemplate.execute("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION + " WHERE " + range +
+                    " RETURNING *) INSERT INTO " + name + " SELECT * FROM moved");
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + name +
+                    " FOR VALUES FROM (" + literal(from) + ") TO (" + literal(to) + ")");
+        }
+    }
+
+    @Override
+    @Transactional
+    public void dropPartition(String name) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + name);
+    }
+
+    @Override
+    @Transactional
+    public void detachPartition(String name, String archiveName) {
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + name);
+        jdbcTemplate.execute("ALTER TABLE " + name + " RENAME TO " + archiveName);
+    }
+
+    @Override
+    @Transactional
+    public void purgeDefaultPartitionBefore(LocalDateTime horizon) {
+        int purged = jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE timestamp < ?",
+                Timestamp.valueOf(horizon));
+        if (purged > 0) {
+            log.info("Purged {} expired hits from {}", purged, DEFAULT_PARTITION);
+        }
+    }
+
+    private String literal(LocalDateTime time) {
+        return "'" + Timestamp.valueOf(time) + "'";
+    }
+}
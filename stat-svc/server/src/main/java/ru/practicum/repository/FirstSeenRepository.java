@@ -0,0 +1,443 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.archive.HitArchive;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.dictionary.IpAddresses;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.partition.ExpiringHitData;
+import ru.practicum.storage.HitStorage;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the first hit of every visitor of a uri and how many visitors were first seen each day, so exact
+ * unique counts do not have to run {@code COUNT(DISTINCT ip)} over raw hits.
+ * <p>
+ * When no visitor of a uri was seen before {@code start}, its distinct ips in {@code [start, end]} are exactly
+ * the visitors first seen by {@code end}: whole days are summed from the day counters and only the day holding
+ * {@code end} is counted row by row. That holds for the usual "since publication" queries. A uri with visitors
+ * from before {@code start} is counted over raw hits as before; the first day of each uri is looked up before
+ * anything else, so a query whose uris all had earlier visitors goes straight to raw hits.
+ * <p>
+ * Retention forgets visitors first seen before its cut, but they may have come back since. Each uri that had
+ * such visitors keeps one day row just before the cut, so it always has visitors from before any later
+ * {@code start} and is counted over the raw hits that are left.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class FirstSeenRepository implements ExpiringHitData {
+
+    // INSERT ... SELECT rather than VALUES, so the driver never rewrites the batch and every row reports
+    // whether it was inserted.
+    private static final String POSTGRES_INSERT_SQL =
+            "INSERT INTO hit_first_seen (app_id, uri_id, ip, first_seen) " +
+            "SELECT CAST(? AS INTEGER), CAST(? AS BIGINT), CAST(? AS BYTEA), CAST(? AS TIMESTAMP) " +
+            "ON CONFLICT (uri_id, app_id, ip) DO NOTHING";
+
+    private static final String MERGE_INSERT_SQL =
+            "INSERT INTO hit_first_seen (app_id, uri_id, ip, first_seen) " +
+            "SELECT CAST(? AS INTEGER), CAST(? AS BIGINT), CAST(? AS VARBINARY), CAST(? AS TIMESTAMP) " +
+            "WHERE NOT EXISTS (SELECT 1 FROM hit_first_seen WHERE uri_id = ? AND app_id = ? AND ip = ?)";
+
+    private static final String UPDATE_SQL =
+            "UPDATE hit_first_seen SET first_seen = ? WHERE uri_id = ? AND app_id = ? AND ip = ?";
+
+    private static final String POSTGRES_DAY_UPSERT_SQL =
+            "INSERT INTO hit_first_seen_day (app_id, uri_id, bucket, visitors) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (uri_id, bucket, app_id) DO UPDATE SET visitors = hit_first_seen_day.visitors + EXCLUDED.visitors";
+
+    private static final String MERGE_DAY_UPSERT_SQL =
+            "MERGE INTO hit_first_seen_day r USING (VALUES (CAST(? AS INTEGER), CAST(? AS BIGINT), " +
+            "CAST(? AS TIMESTAMP), CAST(? AS BIGINT))) s(app_id, uri_id, bucket, visitors) " +
+            "ON r.app_id = s.app_id AND r.uri_id = s.uri_id AND r.bucket = s.bucket " +
+            "WHEN MATCHED THEN UPDATE SET visitors = r.visitors + s.visitors " +
+            "WHEN NOT MATCHED THEN INSERT (app_id, uri_id, bucket, visitors) " +
+            "VALUES (s.app_id, s.uri_id, s.bucket, s.visitors)";
+
+    private static final String POSTGRES_EARLIEST_SQL =
+            "INSERT INTO hit_first_seen (app_id, uri_id, ip, first_seen) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (uri_id, app_id, ip) DO UPDATE SET first_seen = LEAST(hit_first_seen.first_seen, EXCLUDED.first_seen)";
+
+    private static final String MERGE_EARLIEST_SQL =
+            "MERGE INTO hit_first_seen f USING (VALUES (CAST(? AS INTEGER), CAST(? AS BIGINT), " +
+            "CAST(? AS VARBINARY), CAST(? AS TIMESTAMP))) s(app_id, uri_id, ip, first_seen) " +
+            "ON f.uri_id = s.uri_id AND f.app_id = s.app_id AND f.ip = s.ip " +
+            "WHEN MATCHED AND s.first_seen < f.first_seen THEN UPDATE SET first_seen = s.first_seen " +
+            "WHEN NOT MATCHED THEN INSERT (app_id, uri_id, ip, first_seen) " +
+            "VALUES (s.app_id, s.uri_id, s.ip, s.first_seen)";
+
+    private static final int LOOKUP_CHUNK = 500;
+    private static final int BACKFILL_CHUNK = 10_000;
+
+    // Sorted keys give concurrent writers the same lock order on visitor and day rows.
+    private static final Comparator<VisitorKey> VISITOR_ORDER = Comparator.comparingLong(VisitorKey::uriId)
+            .thenComparingInt(VisitorKey::appId)
+            .thenComparing(VisitorKey::ip, Arrays::compareUnsigned);
+
+    private static final Comparator<DayKey> DAY_ORDER = Comparator.comparingLong(DayKey::uriId)
+            .thenComparing(DayKey::bucket)
+            .thenComparingInt(DayKey::appId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HitDictionary hitDictionary;
+    private final HitArchive hitArchive;
+
+    @Value("${stats.first-seen.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stats.query.fetch-size:1000}")
+    private int fetchSize;
+
+    private boolean postgres;
+    private volatile LocalDateTime retainedFrom;
+    private NamedParameterJdbcTemplate namedJdbcTemplate;
+    private NamedParameterJdbcTemplate streamingJdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        postgres = "PostgreSQL".equalsIgnoreCase(product);
+        namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(fetchSize);
+        streamingJdbcTemplate = new NamedParameterJdbcTemplate(streaming);
+        if (enabled) {
+            backfill();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records the visitors of {@code hits}, moving a visitor's first hit earlier when an older one arrives late.
+     */
+    public void record(List<EndpointHit> hits) {
+        hitDictionary.intern(hits);
+        Map<VisitorKey, LocalDateTime> earliest = new TreeMap<>(VISITOR_ORDER);
+        for (EndpointHit hit : hits) {
+            VisitorKey key = new VisitorKey(hitDictionary.appId(hit.getApp()), hitDictionary.uriId(hit.getUri()),
+                    IpAddresses.encode(hit.getIp()));
+            earliest.merge(key, hit.getTimestamp(), (a, b) -> a.isBefore(b) ? a : b);
+        }
+
+        Map<DayKey, Long> deltas = new TreeMap<>(DAY_ORDER);
+        Map<VisitorKey, LocalDateTime> stored = findForUpdate(earliest.keySet());
+        List<Map.Entry<VisitorKey, LocalDateTime>> fresh = new ArrayList<>();
+        for (Map.Entry<VisitorKey, LocalDateTime> entry : earliest.entrySet()) {
+            if (!stored.containsKey(entry.getKey())) {
+                fresh.add(entry);
+            }
+        }
+        if (!fresh.isEmpty()) {
+            int[][] counts = jdbcTemplate.batchUpdate(postgres ? POSTGRES_INSERT_SQL : MERGE_INSERT_SQL, fresh,
+                    fresh.size(), (ps, row) -> {
+                        VisitorKey key = row.getKey();
+                        ps.setInt(1, key.appId());
+                        ps.setLong(2, key.uriId());
+                        ps.setBytes(3, key.ip());
+                        ps.setTimestamp(4, Timestamp.valueOf(row.getValue()));
+                        if (!postgres) {
+                            ps.setLong(5, key.uriId());
+                            ps.setInt(6, key.appId());
+                            ps.setBytes(7, key.ip());
+                        }
+                    });
+            List<VisitorKey> raced = new ArrayList<>();
+            int index = 0;
+            for (int[] chunk : counts) {
+                for (int count : chunk) {
+                    Map.Entry<VisitorKey, LocalDateTime> row = fresh.get(index++);
+                    if (count == 0) {
+                        raced.add(row.getKey());
+                    } else {
+                        deltas.merge(day(row.getKey(), row.getValue()), 1L, Long::sum);
+                    }
+                }
+            }
+            // Inserted by a concurrent writer since the lookup, so from here on just another stored visitor.
+            if (!raced.isEmpty()) {
+                stored.putAll(findForUpdate(raced));
+            }
+        }
+
+        List<Map.Entry<VisitorKey, LocalDateTime>> moved = new ArrayList<>();
+        stored.forEach((key, firstSeen) -> {
+            LocalDateTime timestamp = earliest.get(key);
+            if (timestamp.isBefore(firstSeen)) {
+                moved.add(Map.entry(key, timestamp));
+                deltas.merge(day(key, firstSeen), -1L, Long::sum);
+                deltas.merge(day(key, timestamp), 1L, Long::sum);
+            }
+        });
+        if (!moved.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, moved, moved.size(), (ps, row) -> {
+                ps.setTimestamp(1, Timestamp.valueOf(row.getValue()));
+                ps.setLong(2, row.getKey().uriId());
+                ps.setInt(3, row.getKey().appId());
+                ps.setBytes(4, row.getKey().ip());
+            });
+        }
+
+        deltas.values().removeIf(delta -> delta == 0);
+        List<Map.Entry<DayKey, Long>> days = new ArrayList<>(deltas.entrySet());
+        jdbcTemplate.batchUpdate(postgres ? POSTGRES_DAY_UPSERT_SQL : MERGE_DAY_UPSERT_SQL, days, days.size(),
+                (ps, row) -> {
+                    ps.setInt(1, row.getKey().appId());
+                    ps.setLong(2, row.getKey().uriId());
+                    ps.setTimestamp(3, Timestamp.valueOf(row.getKey().bucket()));
+                    ps.setLong(4, row.getValue());
+                });
+    }
+
+    @Override
+    @Transactional
+    public void deleteBefore(LocalDateTime cut) {
+        Timestamp before = Timestamp.valueOf(cut);
+        List<Object[]> folded = new ArrayList<>();
+        jdbcTemplate.query("SELECT app_id, uri_id, SUM(visitors) AS visitors FROM hit_first_seen_day" +
+                " WHERE bucket < ? GROUP BY app_id, uri_id HAVING SUM(visitors) > 0", (RowCallbackHandler) rs ->
+                folded.add(new Object[]{rs.getInt("app_id"), rs.getLong("uri_id"),
+                        Timestamp.valueOf(cut.minusDays(1)), rs.getLong("visitors")}), before);
+        jdbcTemplate.update("DELETE FROM hit_first_seen_day WHERE bucket < ?", before);
+        jdbcTemplate.batchUpdate("INSERT INTO hit_first_seen_day (app_id, uri_id, bucket, visitors) VALUES (?, ?, ?, ?)",
+                folded);
+        int deleted = jdbcTemplate.update("DELETE FROM hit_first_seen WHERE first_seen < ?", before);
+        retainedFrom = cut;
+        if (deleted > 0) {
+            log.info("Forgot {} visitors first seen before {}, {} uris are counted over raw hits from now on",
+                    deleted, cut, folded.size());
+        }
+    }
+
+    /**
+     * Streams exact unique counts in the order of {@link HitStorage#streamUniqueStats}, reading raw hits from
+     * {@code hitStorage} only for uris that had visitors before {@code start}.
+     */
+    public void streamUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris, Integer limit,
+                                  HitStorage hitStorage, Consumer<ViewStats> consumer) {
+        LocalDateTime retained = retainedFrom;
+        if (retained != null && start.isBefore(retained)) {
+            // Visitors forgotten by retention would count although their hits are gone.
+            hitStorage.streamUniqueStats(start, end, uris, limit, consumer);
+            return;
+        }
+        LocalDateTime startDay = RollupGranularity.DAY.floor(start);
+        LocalDateTime endDay = RollupGranularity.DAY.floor(end);
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("startDay", Timestamp.valueOf(startDay))
+                .addValue("endDay", Timestamp.valueOf(endDay));
+
+        // Only uris first visited on or after the day of start can be answered here; when there are none, which
+        // is the usual case for a start well after publication, the day and visitor rows are not read at all.
+        Map<IdKey, Visitors> visitors = new HashMap<>();
+        List<IdKey> unresolved = new ArrayList<>();
+        String uriFilter = "";
+        if (uris != null) {
+            List<Long> uriIds = hitDictionary.findUriIds(uris);
+            if (uriIds.isEmpty()) {
+                return;
+            }
+            params.addValue("uriIds", HitDictionary.idArray(uriIds));
+            streamingJdbcTemplate.query("SELECT app_id, uri_id, MIN(bucket) AS first_day FROM hit_first_seen_day" +
+                    " WHERE visitors > 0 AND uri_id = ANY(:uriIds) GROUP BY app_id, uri_id", params,
+                    (RowCallbackHandler) rs -> {
+                        IdKey key = new IdKey(rs.getLong("app_id"), rs.getLong("uri_id"));
+                        if (rs.getTimestamp("first_day").toLocalDateTime().isBefore(startDay)) {
+                            unresolved.add(key);
+                        } else {
+                            visitors.put(key, new Visitors());
+                        }
+                    });
+            if (visitors.isEmpty()) {
+                hitStorage.streamUniqueStats(start, end, uris, limit, consumer);
+                return;
+            }
+            params.addValue("candidateIds",
+                    HitDictionary.idArray(visitors.keySet().stream().map(IdKey::uriId).distinct().toList()));
+            uriFilter = " AND uri_id = ANY(:candidateIds)";
+        } else if (Boolean.TRUE.equals(jdbcTemplate.query("SELECT 1 FROM hit_first_seen_day" +
+                " WHERE bucket < ? AND visitors > 0 FETCH FIRST 1 ROWS ONLY", (ResultSetExtractor<Boolean>) ResultSet::next,
+                Timestamp.valueOf(startDay)))) {
+            // Raw hits of every uri would be read for the ones visited earlier anyway.
+            hitStorage.streamUniqueStats(start, end, null, limit, consumer);
+            return;
+        }
+
+        streamingJdbcTemplate.query("SELECT app_id, uri_id, SUM(visitors) AS visitors FROM hit_first_seen_day" +
+                " WHERE bucket < :endDay" + uriFilter + " GROUP BY app_id, uri_id", params, (RowCallbackHandler) rs -> {
+                    IdKey key = new IdKey(rs.getLong("app_id"), rs.getLong("uri_id"));
+                    if (uris == null) {
+                        visitors.computeIfAbsent(key, k -> new Visitors()).count += rs.getLong("visitors");
+                    } else if (visitors.containsKey(key)) {
+                        visitors.get(key).count += rs.getLong("visitors");
+                    }
+                });
+        // Only the day of start, to tell whether anyone came before it, and the day of end are read row by row.
+        streamingJdbcTemplate.query("SELECT app_id, uri_id," +
+                " SUM(CASE WHEN first_seen < :start THEN 1 ELSE 0 END) AS before_start," +
+                " SUM(CASE WHEN first_seen >= :endDay THEN 1 ELSE 0 END) AS last_day FROM hit_first_seen" +
+                " WHERE (first_seen >= :startDay AND first_seen < :start OR first_seen >= :endDay AND first_seen <= :end)" +
+                uriFilter + " GROUP BY app_id, uri_id", params, (RowCallbackHandler) rs -> {
+                    IdKey key = new IdKey(rs.getLong("app_id"), rs.getLong("uri_id"));
+                    Visitors counted = uris == null ? visitors.computeIfAbsent(key, k -> new Visitors())
+                            : visitors.get(key);
+                    if (counted != null) {
+                        counted.beforeStart = rs.getLong("before_start") > 0;
+                        counted.count += rs.getLong("last_day");
+                    }
+                });
+
+        List<HitDictionary.IdCount> exact = new ArrayList<>();
+        visitors.forEach((key, counted) -> {
+            if (counted.beforeStart) {
+                unresolved.add(key);
+            } else if (counted.count > 0) {
+                exact.add(new HitDictionary.IdCount(key.appId(), key.uriId(), counted.count));
+            }
+        });
+
+        List<ViewStats> stats = new ArrayList<>(hitDictionary.decode(exact));
+        if (!unresolved.isEmpty()) {
+            Set<HitKey> keys = new HashSet<>();
+            hitDictionary.loadNames(unresolved.stream().map(IdKey::appId).toList(),
+                    unresolved.stream().map(IdKey::uriId).toList());
+            for (IdKey key : unresolved) {
+                keys.add(hitDictionary.key(key.appId(), key.uriId()));
+            }
+            hitStorage.streamUniqueStats(start, end, keys.stream().map(HitKey::getUri).distinct().toList(), null,
+                    stat -> {
+                        if (keys.contains(new HitKey(stat.getApp(), stat.getUri()))) {
+                            stats.add(stat);
+                        }
+                    });
+        }
+        log.debug("Counted unique visitors of {} uris from first hits and {} over raw hits",
+                exact.size(), unresolved.size());
+
+        stats.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        stats.stream().limit(limit != null ? limit : Long.MAX_VALUE).forEach(consumer);
+    }
+
+    private Map<VisitorKey, LocalDateTime> findForUpdate(Iterable<VisitorKey> keys) {
+        Map<VisitorKey, LocalDateTime> found = new TreeMap<>(VISITOR_ORDER);
+        List<Object[]> chunk = new ArrayList<>(LOOKUP_CHUNK);
+        for (VisitorKey key : keys) {
+            chunk.add(new Object[]{key.uriId(), key.appId(), key.ip()});
+            if (chunk.size() == LOOKUP_CHUNK) {
+                findForUpdate(chunk, found);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            findForUpdate(chunk, found);
+        }
+        return found;
+    }
+
+    private void findForUpdate(List<Object[]> chunk, Map<VisitorKey, LocalDateTime> found) {
+        namedJdbcTemplate.query("SELECT app_id, uri_id, ip, first_seen FROM hit_first_seen" +
+                " WHERE (uri_id, app_id, ip) IN (:keys) ORDER BY uri_id, app_id, ip FOR UPDATE",
+                new MapSqlParameterSource("keys", chunk), (RowCallbackHandler) rs ->
+                        found.put(new VisitorKey(rs.getInt("app_id"), rs.getLong("uri_id"), rs.getBytes("ip")),
+                                rs.getTimestamp("first_seen").toLocalDateTime()));
+    }
+
+    // Copies visitors of hits stored before the table existed, archived ones included; with the segment engine raw
+    // hits are not in endpoint_hits, so there the table only covers hits written while it is enabled.
+    private void backfill() {
+        Boolean empty = jdbcTemplate.query("SELECT 1 FROM hit_first_seen FETCH FIRST 1 ROWS ONLY",
+                rs -> !rs.next());
+        if (!Boolean.TRUE.equals(empty)) {
+            return;
+        }
+        long copied = jdbcTemplate.update("INSERT INTO hit_first_seen (app_id, uri_id, ip, first_seen)" +
+                " SELECT app_id, uri_id, ip, MIN(timestamp) FROM endpoint_hits GROUP BY app_id, uri_id, ip");
+        copied += backfillArchived();
+        if (copied > 0) {
+            jdbcTemplate.update("INSERT INTO hit_first_seen_day (app_id, uri_id, bucket, visitors)" +
+                    " SELECT app_id, uri_id, DATE_TRUNC('DAY', first_seen), COUNT(*) FROM hit_first_seen" +
+                    " GROUP BY app_id, uri_id, DATE_TRUNC('DAY', first_seen)");
+            log.info("Backfilled first hits of {} visitors from stored hits", copied);
+        }
+    }
+
+    /**
+     * Adds the visitors of archived hits, keeping the earlier first hit of one also found in endpoint_hits or in
+     * another file, and returns how many rows were written.
+     */
+    private long backfillArchived() {
+        Map<VisitorKey, LocalDateTime> earliest = new TreeMap<>(VISITOR_ORDER);
+        long[] written = {0};
+        hitArchive.scan(LocalDateTime.MIN, LocalDateTime.MAX, null, (appId, uriId, ip, timestamp, weight) -> {
+            earliest.merge(new VisitorKey((int) appId, uriId, ip), timestamp, (a, b) -> a.isBefore(b) ? a : b);
+            if (earliest.size() == BACKFILL_CHUNK) {
+                written[0] += upsertEarliest(earliest);
+                earliest.clear();
+            }
+        });
+        return written[0] + upsertEarliest(earliest);
+    }
+
+    private int upsertEarliest(Map<VisitorKey, LocalDateTime> earliest) {
+        List<Map.Entry<VisitorKey, LocalDateTime>> rows = new ArrayList<>(earliest.entrySet());
+        jdbcTemplate.batchUpdate(postgres ? POSTGRES_EARLIEST_SQL : MERGE_EARLIEST_SQL, rows, rows.size(),
+                (ps, row) -> {
+                    ps.setInt(1, row.getKey().appId());
+                    ps.setLong(2, row.getKey().uriId());
+                    ps.setBytes(3, row.getKey().ip());
+                    ps.setTimestamp(4, Timestamp.valueOf(row.getValue()));
+                });
+        return rows.size();
+    }
+
+    private static DayKey day(VisitorKey key, LocalDateTime timestamp) {
+        return new DayKey(key.appId(), key.uriId(), RollupGranularity.DAY.floor(timestamp));
+    }
+
+    private record VisitorKey(int appId, long uriId, byte[] ip) {
+    }
+
+    private record DayKey(int appId, long uriId, LocalDateTime bucket) {
+    }
+
+    private record IdKey(long appId, long uriId) {
+    }
+
+    private static final class Visitors {
+        private long count;
+        private boolean beforeStart;
+    }
+}
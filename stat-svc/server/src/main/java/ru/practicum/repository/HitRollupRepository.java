@@ -0,0 +1,236 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.archive.HitArchive;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.ingest.SampledHit;
+import ru.practicum.model.RollupQueryPlan;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.partition.ExpiringHitData;
+import ru.practicum.storage.HitStorage;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class HitRollupRepository implements ExpiringHitData {
+
+    private static final String POSTGRES_UPSERT_SQL =
+            "INSERT INTO %1$s (app_id, uri_id, bucket, hits) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (uri_id, bucket, app_id) DO UPDATE SET hits = %1$s.hits + EXCLUDED.hits";
+
+    private static final String MERGE_UPSERT_SQL =
+            "MERGE INTO %1$s r USING (VALUES (CAST(? AS INTEGER), CAST(? AS BIGINT), " +
+            "CAST(? AS TIMESTAMP), CAST(? AS BIGINT))) s(app_id, uri_id, bucket, hits) " +
+            "ON r.app_id = s.app_id AND r.uri_id = s.uri_id AND r.bucket = s.bucket " +
+            "WHEN MATCHED THEN UPDATE SET hits = r.hits + s.hits " +
+            "WHEN NOT MATCHED THEN INSERT (app_id, uri_id, bucket, hits) VALUES (s.app_id, s.uri_id, s.bucket, s.hits)";
+
+    private static final Comparator<RollupKey> KEY_ORDER = Comparator.comparingLong(RollupKey::uriId)
+            .thenComparing(RollupKey::bucket)
+            .thenComparingInt(RollupKey::appId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HitDictionary hitDictionary;
+    private final HitArchive hitArchive;
+    private final HitStorage hitStorage;
+
+    @Value("${stats.query.fetch-size:1000}")
+    private int fetchSize;
+
+    private String upsertSql;
+    private NamedParameterJdbcTemplate streamingJdbcTemplate;
+    // H2's MERGE inserts a missing row without locking its key first, so two transactions adding the same new
+    // bucket both insert and one fails on the primary key. Writers there take this lock until they complete.
+    private final ReentrantLock mergeLock = new ReentrantLock();
+    private boolean serializeUpserts;
+
+    @PostConstruct
+    public void init() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        upsertSql = "PostgreSQL".equalsIgnoreCase(product) ? POSTGRES_UPSERT_SQL : MERGE_UPSERT_SQL;
+        serializeUpserts = upsertSql.equals(MERGE_UPSERT_SQL);
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(fetchSize);
+        streamingJdbcTemplate = new NamedParameterJdbcTemplate(streaming);
+        log.debug("Rollup upserts prepared for {}", product);
+    }
+
+    @Override
+    public void deleteBefore(LocalDateTime cut) {
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            int deleted = jdbcTemplate.update("DELETE FROM " + granularity.getTable() + " WHERE bucket < ?",
+                    Timestamp.valueOf(cut));
+            if (deleted > 0) {
+                log.info("Deleted {} expired rollups from {}", deleted, granularity.getTable());
+            }
+        }
+    }
+
+    public void increment(List<EndpointHit> hits) {
+        if (serializeUpserts) {
+            lockUntilCompletion();
+        }
+        hitDictionary.intern(hits);
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            // Sorted keys give concurrent writers the same lock order on the rollup rows.
+            Map<RollupKey, Long> counts = new TreeMap<>(KEY_ORDER);
+            for (EndpointHit hit : hits) {
+                RollupKey key = new RollupKey(hitDictionary.appId(hit.getApp()), hitDictionary.uriId(hit.getUri()),
+                        granularity.floor(hit.getTimestamp()));
+                counts.merge(key, (long) SampledHit.weightOf(hit), Long::sum);
+            }
+
+            List<Map.Entry<RollupKey, Long>> rows = new ArrayList<>(counts.entrySet());
+            jdbcTemplate.batchUpdate(String.format(upsertSql, granularity.getTable()), rows, rows.size(),
+                    (ps, row) -> {
+                        ps.setInt(1, row.getKey().appId());
+                        ps.setLong(2, row.getKey().uriId());
+                        ps.setTimestamp(3, Timestamp.valueOf(row.getKey().bucket()));
+                        ps.setLong(4, row.getValue());
+                    });
+        }
+    }
+
+    /**
+     * Holds {@link #mergeLock} until the surrounding transaction completes. Taken before anything else the
+     * transaction writes, so a writer never waits for the lock while holding row locks another one needs.
+     */
+    private void lockUntilCompletion() {
+        if (mergeLock.isHeldByCurrentThread() || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        mergeLock.lock();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                mergeLock.unlock();
+            }
+        });
+    }
+
+    public void streamStats(RollupQueryPlan plan, List<String> uris, Integer limit, Consumer<ViewStats> consumer) {
+        List<RollupQueryPlan.Segment> rawSegments = plan.getRawSegments();
+        if (rawSegments.isEmpty()) {
+            streamStats(plan, uris, limit, false, consumer);
+            return;
+        }
+        // Raw edges in segment files or archived days cannot join the rollups in SQL and are merged here.
+        boolean merged = !hitStorage.isInDatabase() || rawSegments.stream()
+                .anyMatch(segment -> hitArchive.overlaps(segment.getFrom(), segment.getTo()));
+        hitArchive.run(rawSegments.get(0).getFrom(), () -> streamStats(plan, uris, limit, merged, consumer));
+    }
+
+    private void streamStats(RollupQueryPlan plan, List<String> uris, Integer limit, boolean merged,
+                             Consumer<ViewStats> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String uriFilter = "";
+        if (uris != null) {
+            List<Long> uriIds = hitDictionary.findUriIds(uris);
+            if (uriIds.isEmpty()) {
+                return;
+            }
+            params.addValue("uriIds", HitDictionary.idArray(uriIds));
+            uriFilter = " AND uri_id = ANY(:uriIds)";
+        }
+
+        List<String> parts = new ArrayList<>();
+        int index = 0;
+        for (RollupQueryPlan.Segment segment : plan.getRollupSegments()) {
+            parts.add("SELECT app_id, uri_id, hits FROM " + segment.getGranularity().getTable() +
+                    " WHERE bucket >= :from" + index + " AND bucket < :to" + index + uriFilter);
+            addRange(params, index++, segment.getFrom(), segment.getTo());
+        }
+
+        if (merged) {
+            Map<IdKey, Long> counts = new HashMap<>();
+            if (!parts.isEmpty()) {
+                streamingJdbcTemplate.query("SELECT app_id, uri_id, hits FROM (" + String.join(" UNION ALL ", parts) +
+                        ") t", params, (RowCallbackHandler) rs -> counts.merge(
+                        new IdKey(rs.getLong("app_id"), rs.getLong("uri_id")), rs.getLong("hits"), Long::sum));
+            }
+            for (RollupQueryPlan.Segment segment : plan.getRawSegments()) {
+                hitStorage.countHits(segment.getFrom(), segment.getTo(), segment.isToInclusive(), uris, row ->
+                        counts.merge(new IdKey(row.appId(), row.uriId()), row.hits(), Long::sum));
+            }
+            List<HitDictionary.IdCount> rows = new ArrayList<>(counts.size());
+            counts.forEach((key, hits) -> rows.add(new HitDictionary.IdCount(key.appId(), key.uriId(), hits)));
+            rows.sort(Comparator.comparingLong(HitDictionary.IdCount::hits).reversed());
+            hitDictionary.decode(rows.subList(0, limit != null ? Math.min(limit, rows.size()) : rows.size()))
+                    .forEach(consumer);
+            return;
+        }
+
+        for (RollupQueryPlan.Segment segment : plan.getRawSegments()) {
+            parts.add("SELECT app_id, uri_id, SUM(weight) AS hits FROM endpoint_hits" +
+                    " WHERE timestamp >= :from" + index +
+                    " AND timestamp " + (segment.isToInclusive() ? "<=" : "<") + " :to" + index + uriFilter +
+                    " GROUP BY app_id, uri_id");
+            addRange(params, index++, segment.getFrom(), segment.getTo());
+        }
+        String limitClause = "";
+        if (limit != null) {
+            params.addValue("limit", limit);
+            limitClause = " LIMIT :limit";
+        }
+        String sql = "SELECT app_id, uri_id, SUM(hits) AS hits FROM (" + String.join(" UNION ALL ", parts) + ") t " +
+                "GROUP BY app_id, uri_id ORDER BY hits DESC" + limitClause;
+
+        hitDictionary.decodeStream(rows -> streamingJdbcTemplate.query(sql, params, (RowCallbackHandler) rs ->
+                rows.accept(new HitDictionary.IdCount(rs.getLong("app_id"), rs.getLong("uri_id"), rs.getLong("hits")))),
+                consumer);
+    }
+
+    /**
+     * Rollup rows of {@code granularity} with buckets in {@code [from, to)}, as stored.
+     */
+    public void streamSeries(RollupGranularity granularity, LocalDateTime from, LocalDateTime to, List<String> uris,
+                             HitStorage.BucketVisitor visitor) {
+        List<Long> uriIds = hitDictionary.findUriIds(uris);
+        if (uriIds.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("uriIds", HitDictionary.idArray(uriIds));
+        addRange(params, 0, from, to);
+        streamingJdbcTemplate.query("SELECT app_id, uri_id, bucket, hits FROM " + granularity.getTable() +
+                " WHERE bucket >= :from0 AND bucket < :to0 AND uri_id = ANY(:uriIds)", params,
+                (RowCallbackHandler) rs -> visitor.visit(rs.getLong("app_id"), rs.getLong("uri_id"),
+                        rs.getTimestamp("bucket").toLocalDateTime(), rs.getLong("hits")));
+    }
+
+    private void addRange(MapSqlParameterSource params, int index, LocalDateTime from, LocalDateTime to) {
+        params.addValue("from" + index, Timestamp.valueOf(from));
+        params.addValue("to" + index, Timestamp.valueOf(to));
+    }
+
+    private record RollupKey(int appId, long uriId, LocalDateTime bucket) {
+    }
+
+    private record IdKey(long appId, long uriId) {
+    }
+}
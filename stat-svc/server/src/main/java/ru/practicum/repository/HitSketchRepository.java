@@ -0,0 +1,191 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.EndpointHit;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.dictionary.IpAddresses;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.RollupQueryPlan;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.partition.ExpiringHitData;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.storage.HitStorage;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+public class HitSketchRepository implements ExpiringHitData {
+
+    private static final RollupGranularity[] SKETCH_GRANULARITIES = {RollupGranularity.HOUR, RollupGranularity.DAY};
+    private static final int LOCK_CHUNK_SIZE = 500;
+
+    private static final String POSTGRES_CREATE_SQL =
+            "INSERT INTO %s (app_id, uri_id, bucket, registers) VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (uri_id, bucket, app_id) DO NOTHING";
+
+    private static final String MERGE_CREATE_SQL =
+            "MERGE INTO %s k USING (VALUES (CAST(? AS INTEGER), CAST(? AS BIGINT), " +
+            "CAST(? AS TIMESTAMP), CAST(? AS VARBINARY))) s(app_id, uri_id, bucket, registers) " +
+            "ON k.app_id = s.app_id AND k.uri_id = s.uri_id AND k.bucket = s.bucket " +
+            "WHEN NOT MATCHED THEN INSERT (app_id, uri_id, bucket, registers) " +
+            "VALUES (s.app_id, s.uri_id, s.bucket, s.registers)";
+
+    private static final Comparator<SketchKey> KEY_ORDER = Comparator.comparingLong(SketchKey::uriId)
+            .thenComparing(SketchKey::bucket)
+            .thenComparingInt(SketchKey::appId);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final HitDictionary hitDictionary;
+    private final HitStorage hitStorage;
+
+    @Value("${stats.sketch.precision:12}")
+    private int precision;
+
+    private String createSql;
+
+    @PostConstruct
+    public void init() {
+        if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+            throw new IllegalStateException("stats.sketch.precision must be between "
+                    + HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION);
+        }
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        createSql = "PostgreSQL".equalsIgnoreCase(product) ? POSTGRES_CREATE_SQL : MERGE_CREATE_SQL;
+        log.debug("Hit sketches use precision {} ({}% relative standard error)",
+                precision, Math.round(HyperLogLog.relativeStandardError(precision) * 10000) / 100.0);
+    }
+
+    @Override
+    public void deleteBefore(LocalDateTime cut) {
+        for (RollupGranularity granularity : SKETCH_GRANULARITIES) {
+            int deleted = jdbcTemplate.update("DELETE FROM " + granularity.getSketchTable() + " WHERE bucket < ?",
+                    Timestamp.valueOf(cut));
+            if (deleted > 0) {
+                log.info("Deleted {} expired sketches from {}", deleted, granularity.getSketchTable());
+            }
+        }
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public void add(List<EndpointHit> hits) {
+        hitDictionary.intern(hits);
+        for (RollupGranularity granularity : SKETCH_GRANULARITIES) {
+            Map<SketchKey, HyperLogLog> batch = new TreeMap<>(KEY_ORDER);
+            for (EndpointHit hit : hits) {
+                SketchKey key = new SketchKey(hitDictionary.appId(hit.getApp()), hitDictionary.uriId(hit.getUri()),
+                        granularity.floor(hit.getTimestamp()));
+                batch.computeIfAbsent(key, k -> new HyperLogLog(precision)).add(IpAddresses.encode(hit.getIp()));
+            }
+
+            List<SketchKey> keys = new ArrayList<>(batch.keySet());
+            for (int from = 0; from < keys.size(); from += LOCK_CHUNK_SIZE) {
+                mergeInto(granularity.getSketchTable(), keys.subList(from, Math.min(keys.size(), from + LOCK_CHUNK_SIZE)),
+                        batch);
+            }
+        }
+    }
+
+    public Map<HitKey, HyperLogLog> findSketches(RollupQueryPlan plan, List<String> uris) {
+        List<Long> uriIds = uris != null ? hitDictionary.findUriIds(uris) : null;
+        if (uriIds != null && uriIds.isEmpty()) {
+            return new HashMap<>();
+        }
+
+        Map<IdKey, HyperLogLog> sketches = new HashMap<>();
+        String uriFilter = uriIds != null ? " AND uri_id = ANY(:uriIds)" : "";
+        for (RollupQueryPlan.Segment segment : plan.getRollupSegments()) {
+            MapSqlParameterSource params = rangeParams(segment, uriIds);
+            namedJdbcTemplate.query("SELECT app_id, uri_id, registers FROM " +
+                    segment.getGranularity().getSketchTable() + " WHERE bucket >= :from AND bucket < :to" + uriFilter,
+                    params, rs -> {
+                        HyperLogLog stored = HyperLogLog.fromBytes(rs.getBytes("registers"));
+                        sketchFor(sketches, rs.getLong("app_id"), rs.getLong("uri_id")).merge(stored);
+                    });
+        }
+        for (RollupQueryPlan.Segment segment : plan.getRawSegments()) {
+            hitStorage.forEachVisitor(segment.getFrom(), segment.getTo(), segment.isToInclusive(), uris,
+                    (appId, uriId, ipHash) -> sketchFor(sketches, appId, uriId).addHash(ipHash));
+        }
+
+        hitDictionary.loadNames(sketches.keySet().stream().map(IdKey::appId).toList(),
+                sketches.keySet().stream().map(IdKey::uriId).toList());
+        Map<HitKey, HyperLogLog> decoded = new HashMap<>();
+        sketches.forEach((key, sketch) -> decoded.put(hitDictionary.key(key.appId(), key.uriId()), sketch));
+        return decoded;
+    }
+
+    private void mergeInto(String table, List<SketchKey> keys, Map<SketchKey, HyperLogLog> batch) {
+        byte[] empty = new HyperLogLog(precision).toBytes();
+        jdbcTemplate.batchUpdate(String.format(createSql, table), keys, keys.size(), (ps, key) -> {
+            ps.setInt(1, key.appId());
+            ps.setLong(2, key.uriId());
+            ps.setTimestamp(3, Timestamp.valueOf(key.bucket()));
+            ps.setBytes(4, empty);
+        });
+
+        StringBuilder sql = new StringBuilder("SELECT app_id, uri_id, bucket, registers FROM ").append(table)
+                .append(" WHERE (uri_id, bucket, app_id) IN (");
+        List<Object> args = new ArrayList<>(keys.size() * 3);
+        for (int i = 0; i < keys.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?)" : ", (?, ?, ?)");
+            args.add(keys.get(i).uriId());
+            args.add(Timestamp.valueOf(keys.get(i).bucket()));
+            args.add(keys.get(i).appId());
+        }
+        sql.append(") ORDER BY uri_id, bucket, app_id FOR UPDATE");
+
+        List<Object[]> updates = new ArrayList<>(keys.size());
+        jdbcTemplate.query(sql.toString(), rs -> {
+            SketchKey key = new SketchKey(rs.getInt("app_id"), rs.getLong("uri_id"),
+                    rs.getTimestamp("bucket").toLocalDateTime());
+            HyperLogLog merged = HyperLogLog.fromBytes(rs.getBytes("registers"));
+            merged.merge(batch.get(key));
+            updates.add(new Object[]{merged.toBytes(), key.uriId(), Timestamp.valueOf(key.bucket()), key.appId()});
+        }, args.toArray());
+
+        jdbcTemplate.batchUpdate("UPDATE " + table + " SET registers = ? WHERE uri_id = ? AND bucket = ? AND app_id = ?",
+                updates);
+    }
+
+    private MapSqlParameterSource rangeParams(RollupQueryPlan.Segment segment, List<Long> uriIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(segment.getFrom()))
+                .addValue("to", Timestamp.valueOf(segment.getTo()));
+        if (uriIds != null) {
+            params.addValue("uriIds", HitDictionary.idArray(uriIds));
+        }
+        return params;
+    }
+
+    private HyperLogLog sketchFor(Map<IdKey, HyperLogLog> sketches, long appId, long uriId) {
+        return sketches.computeIfAbsent(new IdKey(appId, uriId), k -> new HyperLogLog(precision));
+    }
+
+    private record SketchKey(int appId, long uriId, LocalDateTime bucket) {
+    }
+
+    private record IdKey(long appId, long uriId) {
+    }
+}
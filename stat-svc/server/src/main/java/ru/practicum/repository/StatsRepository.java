@@ -1,33 +1,7 @@
 package ru.practicum.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.query.Param;
 import ru.practicum.model.EndpointHitEntity;
-import ru.practicum.ViewStats;
 
-import java.time.LocalDateTime;
-import java.util.List;
-
-public interface StatsRepository extends JpaRepository<EndpointHitEntity, Long> {
-
-    @Query("SELECT new ru.practicum.ViewStats(h.app, h.uri, COUNT(h.ip)) " +
-            "FROM EndpointHitEntity h " +
-            "WHERE h.timestamp BETWEEN :start AND :end " +
-            "AND (:uris IS NULL OR h.uri IN :uris) " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(h.ip) DESC")
-    List<ViewStats> findStats(@Param("start") LocalDateTime start,
-                              @Param("end") LocalDateTime end,
-                              @Param("uris") List<String> uris);
-
-    @Query("SELECT new ru.practicum.ViewStats(h.app, h.uri, COUNT(DISTINCT h.ip)) " +
-            "FROM EndpointHitEntity h " +
-            "WHERE h.timestamp BETWEEN :start AND :end " +
-            "AND (:uris IS NULL OR h.uri IN :uris) " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(DISTINCT h.ip) DESC")
-    List<ViewStats> findUniqueStats(@Param("start") LocalDateTime start,
-                                    @Param("end") LocalDateTime end,
-                                    @Param("uris") List<String> uris);
-}
\ No newline at end of file
+public interface StatsRepository extends JpaRepository<EndpointHitEntity, Long>, StatsRepositoryCustom {
+}
@@ -0,0 +1,47 @@
+package ru.practicum.repository;
+
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.storage.HitStorage;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+public interface StatsRepositoryCustom {
+    void insertBatch(List<EndpointHit> hits);
+
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Integer limit,
+                     Consumer<ViewStats> consumer);
+
+    void streamUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris, Integer limit,
+                           Consumer<ViewStats> consumer);
+
+    /**
+     * Distinct ips per app across all of the given uris together.
+     */
+    Map<String, Long> countUniqueByApp(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    void streamSeries(LocalDateTime start, LocalDateTime end, List<String> uris, RollupGranularity interval,
+                      HitStorage.BucketVisitor visitor);
+
+    /**
+     * Hits per app and uri from {@code from} up to {@code to}, of all uris when {@code uris} is null.
+     */
+    void forEachCount(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                      Consumer<HitDictionary.IdCount> consumer);
+
+    /**
+     * Every distinct app, uri and ip hit from {@code from} up to {@code to}, of all uris when {@code uris} is null.
+     */
+    void forEachVisitor(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                        VisitorConsumer consumer);
+
+    @FunctionalInterface
+    interface VisitorConsumer {
+        void accept(long appId, long uriId, byte[] ip);
+    }
+}
@@ -0,0 +1,180 @@
+package ru.practicum.repository;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.dictionary.IpAddresses;
+import ru.practicum.ingest.SampledHit;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.storage.HitStorage;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+@RequiredArgsConstructor
+public class StatsRepositoryCustomImpl implements StatsRepositoryCustom {
+
+    private static final String INSERT_HIT_SQL =
+            "INSERT INTO endpoint_hits (app_id, uri_id, ip, timestamp, weight) VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HitDictionary hitDictionary;
+
+    @Value("${stats.query.fetch-size:1000}")
+    private int fetchSize;
+
+    private NamedParameterJdbcTemplate streamingJdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(fetchSize);
+        streamingJdbcTemplate = new NamedParameterJdbcTemplate(streaming);
+    }
+
+    @Override
+    public void insertBatch(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        hitDictionary.intern(hits);
+        jdbcTemplate.batchUpdate(INSERT_HIT_SQL, hits, hits.size(), (ps, hit) -> {
+            ps.setInt(1, hitDictionary.appId(hit.getApp()));
+            ps.setLong(2, hitDictionary.uriId(hit.getUri()));
+            ps.setBytes(3, IpAddresses.encode(hit.getIp()));
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+            ps.setInt(5, SampledHit.weightOf(hit));
+        });
+    }
+
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Integer limit,
+                            Consumer<ViewStats> consumer) {
+        streamCounts("SUM(weight)", start, end, uris, limit, consumer);
+    }
+
+    @Override
+    public void streamUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris, Integer limit,
+                                  Consumer<ViewStats> consumer) {
+        streamCounts("COUNT(DISTINCT ip)", start, end, uris, limit, consumer);
+    }
+
+    @Override
+    public Map<String, Long> countUniqueByApp(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        Map<String, Long> counts = new HashMap<>();
+        List<Long> uriIds = hitDictionary.findUriIds(uris);
+        if (uriIds.isEmpty()) {
+            return counts;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("uriIds", HitDictionary.idArray(uriIds));
+        streamingJdbcTemplate.query("SELECT app_id, COUNT(DISTINCT ip) AS hits FROM endpoint_hits" +
+                " WHERE timestamp BETWEEN :start AND :end AND uri_id = ANY(:uriIds) GROUP BY app_id", params,
+                (RowCallbackHandler) rs -> {
+                    counts.put(hitDictionary.appName(rs.getLong("app_id")), rs.getLong("hits"));
+                });
+        return counts;
+    }
+
+    @Override
+    public void streamSeries(LocalDateTime start, LocalDateTime end, List<String> uris, RollupGranularity interval,
+                             HitStorage.BucketVisitor visitor) {
+        List<Long> uriIds = hitDictionary.findUriIds(uris);
+        if (uriIds.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end))
+                .addValue("uriIds", HitDictionary.idArray(uriIds));
+        String bucket = "DATE_TRUNC('" + interval.name() + "', timestamp)";
+        streamingJdbcTemplate.query("SELECT app_id, uri_id, " + bucket + " AS bucket, SUM(weight) AS hits" +
+                " FROM endpoint_hits WHERE timestamp BETWEEN :start AND :end AND uri_id = ANY(:uriIds)" +
+                " GROUP BY app_id, uri_id, " + bucket, params, (RowCallbackHandler) rs ->
+                visitor.visit(rs.getLong("app_id"), rs.getLong("uri_id"), rs.getTimestamp("bucket").toLocalDateTime(),
+                        rs.getLong("hits")));
+    }
+
+    @Override
+    public void forEachCount(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                             Consumer<HitDictionary.IdCount> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String where = rangeFilter(from, to, toInclusive, uris, params);
+        if (where == null) {
+            return;
+        }
+        streamingJdbcTemplate.query("SELECT app_id, uri_id, SUM(weight) AS hits FROM endpoint_hits" + where +
+                " GROUP BY app_id, uri_id", params, (RowCallbackHandler) rs ->
+                consumer.accept(new HitDictionary.IdCount(rs.getLong("app_id"), rs.getLong("uri_id"), rs.getLong("hits"))));
+    }
+
+    @Override
+    public void forEachVisitor(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                               VisitorConsumer consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String where = rangeFilter(from, to, toInclusive, uris, params);
+        if (where == null) {
+            return;
+        }
+        streamingJdbcTemplate.query("SELECT DISTINCT app_id, uri_id, ip FROM endpoint_hits" + where, params,
+                (RowCallbackHandler) rs -> consumer.accept(rs.getLong("app_id"), rs.getLong("uri_id"), rs.getBytes("ip")));
+    }
+
+    // Null when none of the uris was ever hit.
+    private String rangeFilter(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                               MapSqlParameterSource params) {
+        params.addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String where = " WHERE timestamp >= :from AND timestamp " + (toInclusive ? "<=" : "<") + " :to";
+        if (uris == null) {
+            return where;
+        }
+        List<Long> uriIds = hitDictionary.findUriIds(uris);
+        if (uriIds.isEmpty()) {
+            return null;
+        }
+        params.addValue("uriIds", HitDictionary.idArray(uriIds));
+        return where + " AND uri_id = ANY(:uriIds)";
+    }
+
+    private void streamCounts(String aggregate, LocalDateTime start, LocalDateTime end, List<String> uris,
+                              Integer limit, Consumer<ViewStats> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+        String uriFilter = "";
+        if (uris != null) {
+            List<Long> uriIds = hitDictionary.findUriIds(uris);
+            if (uriIds.isEmpty()) {
+                return;
+            }
+            params.addValue("uriIds", HitDictionary.idArray(uriIds));
+            uriFilter = " AND uri_id = ANY(:uriIds)";
+        }
+        String limitClause = "";
+        if (limit != null) {
+            params.addValue("limit", limit);
+            limitClause = " LIMIT :limit";
+        }
+
+        String sql = "SELECT app_id, uri_id, " + aggregate + " AS hits FROM endpoint_hits" +
+                " WHERE timestamp BETWEEN :start AND :end" + uriFilter +
+                " GROUP BY app_id, uri_id ORDER BY hits DESC" + limitClause;
+        hitDictionary.decodeStream(rows -> streamingJdbcTemplate.query(sql, params, (RowCallbackHandler) rs ->
+                rows.accept(new HitDictionary.IdCount(rs.getLong("app_id"), rs.getLong("uri_id"), rs.getLong("hits")))),
+                consumer);
+    }
+}
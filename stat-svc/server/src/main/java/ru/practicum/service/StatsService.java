@@ -1,13 +1,39 @@
 package ru.practicum.service;
 
 import ru.practicum.EndpointHit;
+import ru.practicum.TimeSeries;
+import ru.practicum.TopStats;
 import ru.practicum.ViewStats;
+import ru.practicum.model.enums.RollupGranularity;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatsService {
     void saveHit(EndpointHit endpointHit);
 
+    void saveHits(List<EndpointHit> endpointHits);
+
     List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique);
+
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, List<String> uriPrefixes,
+                     Boolean unique, Integer limit, Consumer<ViewStats> consumer);
+
+    List<ViewStats> getApproxUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                         List<String> uriPrefixes, Integer limit);
+
+    List<ViewStats> getPrefixStats(LocalDateTime start, LocalDateTime end, List<String> uriPrefixes, Boolean unique,
+                                   Integer limit);
+
+    List<ViewStats> getApproxUniquePrefixStats(LocalDateTime start, LocalDateTime end, List<String> uriPrefixes,
+                                               Integer limit);
+
+    double getApproxUniqueError();
+
+    TopStats getTopStats(String app, Duration window, int k);
+
+    List<TimeSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                   RollupGranularity interval);
 }
\ No newline at end of file
@@ -1,16 +1,53 @@
 package ru.practicum.service;
 
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import ru.practicum.EndpointHit;
+import ru.practicum.cache.StatsResultCache;
+import ru.practicum.datasource.ReplicaDataSource;
+import ru.practicum.TimeSeries;
+import ru.practicum.TopStats;
 import ru.practicum.ViewStats;
-import ru.practicum.model.EndpointHitEntity;
-import ru.practicum.repository.StatsRepository;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.exception.TooManyHitsException;
+import ru.practicum.ingest.HitIngestQueue;
+import ru.practicum.ingest.HitWriter;
+import ru.practicum.ingest.IngestOverloadGuard;
+import ru.practicum.ingest.SampledHit;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.RollupQueryPlan;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.repository.FirstSeenRepository;
+import ru.practicum.repository.HitRollupRepository;
+import ru.practicum.repository.HitSketchRepository;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.storage.HitStorage;
+import ru.practicum.window.HotWindowCounters;
+import ru.practicum.window.TopUriTracker;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -18,39 +55,408 @@ import java.util.List;
 @Transactional(readOnly = true)
 public class StatsServiceImpl implements StatsService {
 
-    private final StatsRepository statsRepository;
+    private final HitStorage hitStorage;
+    private final HitIngestQueue hitIngestQueue;
+    private final IngestOverloadGuard ingestOverloadGuard;
+    private final HitWriter hitWriter;
+    private final HitRollupRepository hitRollupRepository;
+    private final HitSketchRepository hitSketchRepository;
+    private final FirstSeenRepository firstSeenRepository;
+    private final HotWindowCounters hotWindowCounters;
+    private final TopUriTracker topUriTracker;
+    private final HitDictionary hitDictionary;
+    private final StatsResultCache statsResultCache;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectProvider<ReplicaDataSource> replicaDataSource;
+
+    @Value("${stats.rollup.enabled:true}")
+    private boolean rollupsEnabled;
+
+    @Value("${stats.sketch.enabled:false}")
+    private boolean sketchesEnabled;
+
+    @Value("${stats.timeseries.max-buckets:10000}")
+    private int maxSeriesBuckets;
+
+    private TransactionTemplate primaryTransaction;
+
+    @PostConstruct
+    public void init() {
+        primaryTransaction = new TransactionTemplate(transactionManager);
+        primaryTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
 
     @Override
-    @Transactional
+    @Transactional(propagation = Propagation.SUPPORTS)
     public void saveHit(EndpointHit endpointHit) {
-        EndpointHitEntity entity = new EndpointHitEntity();
-        entity.setApp(endpointHit.getApp());
-        entity.setUri(endpointHit.getUri());
-        entity.setIp(endpointHit.getIp());
-        entity.setTimestamp(endpointHit.getTimestamp());
+        List<EndpointHit> admitted = ingestOverloadGuard.admit(List.of(endpointHit));
+        if (admitted.isEmpty()) {
+            return;
+        }
+        if (hitIngestQueue.isEnabled()) {
+            if (!hitIngestQueue.offer(admitted.get(0))) {
+                throw new TooManyHitsException("Hit ingest queue is full, retry later");
+            }
+            return;
+        }
 
-        statsRepository.save(entity);
-        log.info("Saved hit: app={}, uri={}, ip={}, timestamp={}",
-                entity.getApp(), entity.getUri(), entity.getIp(), entity.getTimestamp());
+        write(admitted);
+        log.debug("Saved hit: app={}, uri={}, ip={}, timestamp={}",
+                endpointHit.getApp(), endpointHit.getUri(), endpointHit.getIp(), endpointHit.getTimestamp());
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void saveHits(List<EndpointHit> endpointHits) {
+        List<EndpointHit> admitted = ingestOverloadGuard.admit(endpointHits);
+        if (admitted.isEmpty()) {
+            return;
+        }
+        if (hitIngestQueue.isEnabled()) {
+            int accepted = hitIngestQueue.offerAll(admitted);
+            if (accepted < admitted.size()) {
+                throw new TooManyHitsException("Hit ingest queue is full, retry the rest later", null,
+                        (long) positionOf(endpointHits, admitted, accepted));
+            }
+            return;
+        }
+
+        write(admitted);
+        log.debug("Saved batch of {} hits", admitted.size());
+    }
+
+    /**
+     * Position in {@code hits} of the {@code index}-th admitted hit: everything before it was either queued or
+     * sampled out. Sampling keeps hits in order, so the admitted hits are matched against the request in turn.
+     */
+    private static int positionOf(List<EndpointHit> hits, List<EndpointHit> admitted, int index) {
+        if (admitted == hits) {
+            return index;
+        }
+        int position = 0;
+        for (int i = 0; i <= index; i++) {
+            EndpointHit kept = admitted.get(i);
+            while (!new SampledHit(hits.get(position), SampledHit.weightOf(kept)).equals(kept)) {
+                position++;
+            }
+            if (i < index) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    private void write(List<EndpointHit> hits) {
+        long started = System.nanoTime();
+        hitWriter.write(hits);
+        ingestOverloadGuard.recordWrite(System.nanoTime() - started);
     }
 
     @Override
     public List<ViewStats> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique) {
-        log.info("Getting stats from {} to {} for uris: {}, unique: {}", start, end, uris, unique);
+        List<ViewStats> stats = new ArrayList<>();
+        streamStats(start, end, uris, null, unique, null, stats::add);
+        return stats;
+    }
+
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, List<String> uriPrefixes,
+                            Boolean unique, Integer limit, Consumer<ViewStats> consumer) {
+        log.info("Getting stats from {} to {} for uris: {}, uri prefixes: {}, unique: {}, limit: {}",
+                start, end, uris, uriPrefixes, unique, limit);
+
+        validateTimeRange(start, end);
+        validateLimit(limit);
+        boolean cacheable = statsResultCache.isEnabled() && (uriPrefixes == null || uriPrefixes.isEmpty());
+        uris = resolveUris(uris, uriPrefixes);
+
+        long[] count = {0};
+        Consumer<ViewStats> counting = stat -> {
+            count[0]++;
+            consumer.accept(stat);
+        };
+        if (cacheable) {
+            StatsResultCache.Key key = statsResultCache.key(start, end, uris, Boolean.TRUE.equals(unique));
+            Optional<List<ViewStats>> cached = statsResultCache.get(key);
+            if (cached.isPresent()) {
+                limit(cached.get(), limit).forEach(counting);
+                log.info("Found {} cached stats records", count[0]);
+                return;
+            }
+            end = key.end();
+            // Limited results cannot be kept exact by increments, so only full results are cached.
+            if (limit == null) {
+                StatsResultCache.Loading loading = statsResultCache.startLoading();
+                List<ViewStats> rows = new ArrayList<>();
+                int maxRows = statsResultCache.getMaxEntryRows();
+                LocalDateTime queryEnd = end;
+                List<String> queryUris = uris;
+                onPrimary(() -> queryStats(start, queryEnd, queryUris, unique, null, stat -> {
+                    if (rows.size() <= maxRows) {
+                        rows.add(stat);
+                    }
+                    counting.accept(stat);
+                }));
+                statsResultCache.put(key, loading, rows);
+                log.info("Found {} stats records", count[0]);
+                return;
+            }
+        }
+
+        queryStats(start, end, uris, unique, limit, counting);
+        log.info("Found {} stats records", count[0]);
+    }
+
+    /**
+     * Runs a load whose result gets cached in a transaction of its own on the primary. Increments only cover
+     * hits written after the load started, so hits a lagging replica has not replayed yet would be missing from
+     * the cached result for good.
+     */
+    private void onPrimary(Runnable load) {
+        if (replicaDataSource.getIfAvailable() == null) {
+            load.run();
+            return;
+        }
+        primaryTransaction.executeWithoutResult(status -> load.run());
+    }
+
+    private void queryStats(LocalDateTime start, LocalDateTime end, List<String> uris, Boolean unique, Integer limit,
+                            Consumer<ViewStats> consumer) {
+        if (Boolean.TRUE.equals(unique)) {
+            if (firstSeenRepository.isEnabled()) {
+                firstSeenRepository.streamUniqueStats(start, end, uris, limit, hitStorage, consumer);
+            } else {
+                hitStorage.streamUniqueStats(start, end, uris, limit, consumer);
+            }
+            return;
+        }
+        Optional<List<ViewStats>> hot = hotWindowCounters.findStats(start, end, uris);
+        if (hot.isPresent()) {
+            limit(hot.get(), limit).forEach(consumer);
+        } else if (rollupsEnabled) {
+            hitRollupRepository.streamStats(RollupQueryPlan.of(start, end), uris, limit, consumer);
+        } else {
+            hitStorage.streamStats(start, end, uris, limit, consumer);
+        }
+    }
+
+    @Override
+    public List<ViewStats> getApproxUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                List<String> uriPrefixes, Integer limit) {
+        log.info("Getting approximate unique stats from {} to {} for uris: {}, uri prefixes: {}, limit: {}",
+                start, end, uris, uriPrefixes, limit);
+
+        validateTimeRange(start, end);
+        validateLimit(limit);
+        uris = resolveUris(uris, uriPrefixes);
+
+        if (!sketchesEnabled) {
+            List<ViewStats> stats = new ArrayList<>();
+            hitStorage.streamUniqueStats(start, end, uris, limit, stats::add);
+            return stats;
+        }
+
+        RollupQueryPlan plan = RollupQueryPlan.of(start, end, RollupGranularity.HOUR);
+        Map<HitKey, HyperLogLog> sketches = hitSketchRepository.findSketches(plan, uris);
+
+        List<ViewStats> stats = sketches.entrySet().stream()
+                .map(e -> new ViewStats(e.getKey().getApp(), e.getKey().getUri(), e.getValue().estimate()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .limit(limit != null ? limit : Long.MAX_VALUE)
+                .toList();
+
+        log.info("Found {} approximate stats records", stats.size());
+        return stats;
+    }
+
+    @Override
+    public List<ViewStats> getPrefixStats(LocalDateTime start, LocalDateTime end, List<String> uriPrefixes,
+                                          Boolean unique, Integer limit) {
+        log.info("Getting stats from {} to {} grouped by uri prefixes: {}, unique: {}, limit: {}",
+                start, end, uriPrefixes, unique, limit);
 
         validateTimeRange(start, end);
+        validateLimit(limit);
+        Map<String, List<String>> urisByPrefix = expandPrefixes(uriPrefixes);
 
-        List<ViewStats> stats;
+        List<ViewStats> stats = new ArrayList<>();
         if (Boolean.TRUE.equals(unique)) {
-            stats = statsRepository.findUniqueStats(start, end, uris);
+            // Distinct ips do not add up across uris, so each prefix is counted over its uris as a whole.
+            urisByPrefix.forEach((prefix, uris) -> hitStorage.countUniqueByApp(start, end, uris)
+                    .forEach((app, hits) -> stats.add(new ViewStats(app, prefix, hits))));
         } else {
-            stats = statsRepository.findStats(start, end, uris);
+            Map<HitKey, Long> grouped = new HashMap<>();
+            streamStats(start, end, union(urisByPrefix), null, false, null, stat -> {
+                for (String prefix : urisByPrefix.keySet()) {
+                    if (stat.getUri().startsWith(prefix)) {
+                        grouped.merge(new HitKey(stat.getApp(), prefix), stat.getHits(), Long::sum);
+                    }
+                }
+            });
+            grouped.forEach((key, hits) -> stats.add(new ViewStats(key.getApp(), key.getUri(), hits)));
+        }
+
+        stats.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        log.info("Found {} prefix stats records", stats.size());
+        return limit(stats, limit);
+    }
+
+    @Override
+    public List<ViewStats> getApproxUniquePrefixStats(LocalDateTime start, LocalDateTime end,
+                                                      List<String> uriPrefixes, Integer limit) {
+        if (!sketchesEnabled) {
+            return getPrefixStats(start, end, uriPrefixes, true, limit);
         }
+        log.info("Getting approximate unique stats from {} to {} grouped by uri prefixes: {}, limit: {}",
+                start, end, uriPrefixes, limit);
 
-        log.info("Found {} stats records", stats.size());
+        validateTimeRange(start, end);
+        validateLimit(limit);
+        Map<String, List<String>> urisByPrefix = expandPrefixes(uriPrefixes);
+
+        RollupQueryPlan plan = RollupQueryPlan.of(start, end, RollupGranularity.HOUR);
+        Map<HitKey, HyperLogLog> grouped = new HashMap<>();
+        hitSketchRepository.findSketches(plan, union(urisByPrefix)).forEach((key, sketch) -> {
+            for (String prefix : urisByPrefix.keySet()) {
+                if (key.getUri().startsWith(prefix)) {
+                    grouped.computeIfAbsent(new HitKey(key.getApp(), prefix),
+                            k -> new HyperLogLog(sketch.getPrecision())).merge(sketch);
+                }
+            }
+        });
+
+        List<ViewStats> stats = grouped.entrySet().stream()
+                .map(e -> new ViewStats(e.getKey().getApp(), e.getKey().getUri(), e.getValue().estimate()))
+                .sorted(Comparator.comparing(ViewStats::getHits).reversed())
+                .limit(limit != null ? limit : Long.MAX_VALUE)
+                .toList();
+
+        log.info("Found {} approximate prefix stats records", stats.size());
         return stats;
     }
 
+    @Override
+    public double getApproxUniqueError() {
+        return sketchesEnabled ? HyperLogLog.relativeStandardError(hitSketchRepository.getPrecision()) : 0;
+    }
+
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public TopStats getTopStats(String app, Duration window, int k) {
+        log.info("Getting top {} uris of app {} over the last {}", k, app, window);
+
+        if (!topUriTracker.isEnabled()) {
+            throw new IllegalArgumentException("Top uri tracking is disabled");
+        }
+        if (app == null || app.isBlank()) {
+            throw new IllegalArgumentException("App cannot be blank");
+        }
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("Window must be positive");
+        }
+        if (k <= 0) {
+            throw new IllegalArgumentException("Parameter 'k' must be positive");
+        }
+
+        return topUriTracker.findTop(app, window, k);
+    }
+
+    @Override
+    public List<TimeSeries> getTimeSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                          RollupGranularity interval) {
+        log.info("Getting {} time series from {} to {} for uris: {}", interval, start, end, uris);
+
+        validateTimeRange(start, end);
+        if (uris == null || uris.isEmpty()) {
+            throw new IllegalArgumentException("At least one uri is required");
+        }
+        long bucketSeconds = interval.getUnit().getDuration().getSeconds();
+        LocalDateTime first = interval.floor(start);
+        long firstBucket = Math.floorDiv(first.toEpochSecond(ZoneOffset.UTC), bucketSeconds);
+        long buckets = Math.floorDiv(end.toEpochSecond(ZoneOffset.UTC), bucketSeconds) - firstBucket + 1;
+        if (buckets > maxSeriesBuckets) {
+            throw new IllegalArgumentException("Range spans " + buckets + " " + interval.name().toLowerCase()
+                    + " buckets, at most " + maxSeriesBuckets + " are allowed");
+        }
+
+        Map<SeriesKey, long[]> series = new HashMap<>();
+        HitStorage.BucketVisitor collect = (appId, uriId, bucket, hits) -> {
+            int index = (int) (Math.floorDiv(bucket.toEpochSecond(ZoneOffset.UTC), bucketSeconds) - firstBucket);
+            series.computeIfAbsent(new SeriesKey(appId, uriId), key -> new long[(int) buckets])[index] += hits;
+        };
+        LocalDateTime alignedStart = interval.ceil(start);
+        LocalDateTime alignedEnd = interval.floor(end);
+        if (rollupsEnabled && alignedStart.isBefore(alignedEnd)) {
+            // Whole buckets come straight from the rollup table, only the partial edge buckets from raw hits.
+            if (start.isBefore(alignedStart)) {
+                hitStorage.streamSeries(start, alignedStart.minusNanos(1), uris, interval, collect);
+            }
+            hitRollupRepository.streamSeries(interval, alignedStart, alignedEnd, uris, collect);
+            hitStorage.streamSeries(alignedEnd, end, uris, interval, collect);
+        } else {
+            hitStorage.streamSeries(start, end, uris, interval, collect);
+        }
+
+        hitDictionary.loadNames(series.keySet().stream().map(SeriesKey::appId).toList(),
+                series.keySet().stream().map(SeriesKey::uriId).toList());
+        List<TimeSeries> result = new ArrayList<>(series.size());
+        series.forEach((key, hits) -> {
+            HitKey names = hitDictionary.key(key.appId(), key.uriId());
+            result.add(new TimeSeries(names.getApp(), names.getUri(), first, interval.name().toLowerCase(),
+                    Arrays.stream(hits).boxed().toList(), Arrays.stream(hits).sum()));
+        });
+        result.sort(Comparator.comparing(TimeSeries::getTotal).reversed()
+                .thenComparing(TimeSeries::getApp)
+                .thenComparing(TimeSeries::getUri));
+        log.info("Found {} time series of {} buckets", result.size(), buckets);
+        return result;
+    }
+
+    /**
+     * Adds every known uri under the given prefixes to the explicit uris; null keeps "all uris".
+     */
+    private List<String> resolveUris(List<String> uris, List<String> uriPrefixes) {
+        if (uriPrefixes == null || uriPrefixes.isEmpty()) {
+            return uris;
+        }
+        Set<String> resolved = new LinkedHashSet<>(uris != null ? uris : List.of());
+        resolved.addAll(union(expandPrefixes(uriPrefixes)));
+        return new ArrayList<>(resolved);
+    }
+
+    private Map<String, List<String>> expandPrefixes(List<String> uriPrefixes) {
+        if (uriPrefixes == null || uriPrefixes.isEmpty()) {
+            throw new IllegalArgumentException("At least one uri prefix is required");
+        }
+        Map<String, List<String>> urisByPrefix = new LinkedHashMap<>();
+        for (String prefix : uriPrefixes) {
+            if (prefix == null || prefix.isBlank()) {
+                throw new IllegalArgumentException("Uri prefix cannot be blank");
+            }
+            urisByPrefix.computeIfAbsent(prefix, p -> new ArrayList<>(hitDictionary.findUrisByPrefix(p).keySet()));
+        }
+        return urisByPrefix;
+    }
+
+    private List<String> union(Map<String, List<String>> urisByPrefix) {
+        Set<String> uris = new LinkedHashSet<>();
+        urisByPrefix.values().forEach(uris::addAll);
+        return new ArrayList<>(uris);
+    }
+
+    private List<ViewStats> limit(List<ViewStats> stats, Integer limit) {
+        return limit != null && stats.size() > limit ? stats.subList(0, limit) : stats;
+    }
+
+    private void validateLimit(Integer limit) {
+        if (limit != null && limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+    }
+
+    private record SeriesKey(long appId, long uriId) {
+    }
+
     private void validateTimeRange(LocalDateTime start, LocalDateTime end) {
         if (start == null) {
             throw new IllegalArgumentException("Start date cannot be null");
@@ -0,0 +1,39 @@
+package ru.practicum.sketch;
+
+public final class Hashing {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hashing() {
+    }
+
+    public static long hash64(String value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return mix64(hash);
+    }
+
+    public static long hash64(byte[] value) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : value) {
+            hash ^= b & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return mix64(hash);
+    }
+
+    // MurmurHash3 finalizer: spreads FNV output so that every bit is usable by the sketches.
+    public static long mix64(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,206 @@
+package ru.practicum.sketch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Space-Saving heavy-hitters summary (Metwally et al.) over weighted string items. At most {@code capacity}
+ * counters are kept; an unmonitored item takes over the smallest counter and inherits its count as error,
+ * so every reported count overestimates the true one by at most its error and any item not reported has
+ * a true count of at most {@link #minCount()}. Not thread-safe.
+ */
+public class SpaceSaving {
+
+    private final int capacity;
+    private final Map<String, Counter> counters;
+    private final Counter[] heap;
+    private int size;
+    private long total;
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Space-Saving capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(capacity * 2);
+        this.heap = new Counter[capacity];
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Largest true count an item without a counter can have.
+     */
+    public long minCount() {
+        return size < capacity ? 0 : heap[0].count;
+    }
+
+    public void add(String item, long weight) {
+        total += weight;
+        Counter counter = counters.get(item);
+        if (counter == null && size < capacity) {
+            counter = new Counter(item, weight, 0, size);
+            heap[size++] = counter;
+            counters.put(item, counter);
+            siftUp(counter.index);
+            return;
+        }
+        if (counter == null) {
+            counter = heap[0];
+            counters.remove(counter.item);
+            counter.item = item;
+            counter.error = counter.count;
+            counters.put(item, counter);
+        }
+        counter.count += weight;
+        siftDown(counter.index);
+    }
+
+    public void clear() {
+        counters.clear();
+        Arrays.fill(heap, null);
+        size = 0;
+        total = 0;
+    }
+
+    public List<Estimate> estimates() {
+        List<Estimate> estimates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            estimates.add(new Estimate(heap[i].item, heap[i].count, heap[i].error));
+        }
+        return estimates;
+    }
+
+    /**
+     * Combines summaries of disjoint sub-streams, see {@link Merger}.
+     */
+    public static Merged merge(Collection<SpaceSaving> summaries) {
+        Merger merger = new Merger();
+        summaries.forEach(merger::add);
+        return merger.result();
+    }
+
+    private void siftUp(int index) {
+        Counter counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].count <= counter.count) {
+                break;
+            }
+            heap[index] = heap[parent];
+            heap[index].index = index;
+            index = parent;
+        }
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    private void siftDown(int index) {
+        Counter counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap[child + 1].count < heap[child].count) {
+                child++;
+            }
+            if (heap[child].count >= counter.count) {
+                break;
+            }
+            heap[index] = heap[child];
+            heap[index].index = index;
+            index = child;
+        }
+        heap[index] = counter;
+        counter.index = index;
+    }
+
+    public record Estimate(String item, long count, long error) {
+    }
+
+    /**
+     * Merged view: every estimate overestimates by at most its error, and an item no summary monitored
+     * has at most {@code missingBound} hits.
+     */
+    public record Merged(List<Estimate> estimates, long total, long missingBound) {
+    }
+
+    /**
+     * Accumulates summaries of disjoint sub-streams. An item missing from a summary may still have up to that
+     * summary's {@link #minCount()} hits there, which is added to both its count and its error.
+     */
+    public static final class Merger {
+        // Per item: summed counts, summed errors and summed minimum counts of the summaries that monitor it.
+        private final Map<String, long[]> merged = new HashMap<>();
+        private long total;
+        private long missingBound;
+
+        public void add(SpaceSaving summary) {
+            total += summary.total;
+            long min = summary.minCount();
+            missingBound += min;
+            for (int i = 0; i < summary.size; i++) {
+                Counter counter = summary.heap[i];
+                long[] entry = merged.computeIfAbsent(counter.item, item -> new long[3]);
+                entry[0] += counter.count;
+                entry[1] += counter.error;
+                entry[2] += min;
+            }
+        }
+
+        public Merged result() {
+            return result(Integer.MAX_VALUE);
+        }
+
+        /**
+         * Merged view holding only the {@code limit} largest estimates, selected without sorting every item.
+         */
+        public Merged result(int limit) {
+            Comparator<Estimate> order = Comparator.comparingLong(Estimate::count).reversed()
+                    .thenComparing(Estimate::item);
+            PriorityQueue<Estimate> largest = new PriorityQueue<>(order.reversed());
+            for (Map.Entry<String, long[]> e : merged.entrySet()) {
+                long[] entry = e.getValue();
+                long missing = missingBound - entry[2];
+                long count = entry[0] + missing;
+                if (largest.size() == limit && count < largest.peek().count()) {
+                    continue;
+                }
+                largest.add(new Estimate(e.getKey(), count, entry[1] + missing));
+                if (largest.size() > limit) {
+                    largest.poll();
+                }
+            }
+            List<Estimate> estimates = new ArrayList<>(largest);
+            estimates.sort(order);
+            return new Merged(estimates, total, missingBound);
+        }
+    }
+
+    private static final class Counter {
+        private String item;
+        private long count;
+        private long error;
+        private int index;
+
+        Counter(String item, long count, long error, int index) {
+            this.item = item;
+            this.count = count;
+            this.error = error;
+            this.index = index;
+        }
+    }
+}
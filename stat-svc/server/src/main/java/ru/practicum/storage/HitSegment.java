@@ -0,0 +1,206 @@
+package ru.practicum.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One append-only, memory-mapped file of a fixed number of hit rows, stored column by column: epoch
+ * second, app id, uri id, a 64-bit hash of the client ip and the weight of a sampled hit. Version 1 files
+ * have no weight column and are read as weight 1, but never appended to. The header holds the number of complete rows
+ * and the time range they span, so reopening a segment needs no scan and queries skip segments whose
+ * range does not overlap theirs. Appends are made by a single writer and become visible on {@link #publish}.
+ */
+final class HitSegment implements Closeable {
+
+    static final int HEADER_BYTES = 64;
+    static final int ROW_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES + Long.BYTES + Integer.BYTES;
+    static final int MAX_CAPACITY = (Integer.MAX_VALUE - HEADER_BYTES) / ROW_BYTES;
+
+    private static final int MAGIC = 0x48495453;
+    private static final int VERSION = 2;
+    private static final int UNWEIGHTED_VERSION = 1;
+    private static final int UNWEIGHTED_ROW_BYTES = ROW_BYTES - Integer.BYTES;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int COUNT_OFFSET = 12;
+    private static final int MIN_OFFSET = 16;
+    private static final int MAX_OFFSET = 24;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final LongBuffer timestamps;
+    private final IntBuffer apps;
+    private final LongBuffer uris;
+    private final LongBuffer ips;
+    private final IntBuffer weights;
+
+    private int size;
+    private long min;
+    private long max;
+    private volatile Bounds bounds;
+
+    private HitSegment(Path path, FileChannel channel, int capacity, boolean weighted) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize(capacity, weighted));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int offset = HEADER_BYTES;
+        timestamps = buffer.slice(offset, capacity * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        offset += capacity * Long.BYTES;
+        apps = buffer.slice(offset, capacity * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        offset += capacity * Integer.BYTES;
+        uris = buffer.slice(offset, capacity * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        offset += capacity * Long.BYTES;
+        ips = buffer.slice(offset, capacity * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        offset += capacity * Long.BYTES;
+        weights = weighted
+                ? buffer.slice(offset, capacity * Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer()
+                : null;
+    }
+
+    static HitSegment create(Path path, int capacity) throws IOException {
+        if (capacity <= 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("Segment capacity must be between 1 and " + MAX_CAPACITY);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        HitSegment segment = new HitSegment(path, channel, capacity, true);
+        segment.buffer.putInt(MAGIC_OFFSET, MAGIC);
+        segment.buffer.putInt(VERSION_OFFSET, VERSION);
+        segment.buffer.putInt(CAPACITY_OFFSET, capacity);
+        segment.min = Long.MAX_VALUE;
+        segment.max = Long.MIN_VALUE;
+        segment.publish();
+        return segment;
+    }
+
+    static HitSegment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            int capacity = header.getInt(CAPACITY_OFFSET);
+            int version = header.getInt(VERSION_OFFSET);
+            boolean weighted = version == VERSION;
+            if (header.getInt(MAGIC_OFFSET) != MAGIC || (!weighted && version != UNWEIGHTED_VERSION)
+                    || capacity <= 0 || capacity > MAX_CAPACITY
+                    || channel.size() != fileSize(capacity, weighted)) {
+                throw new IOException("Not a hit segment: " + path);
+            }
+            HitSegment segment = new HitSegment(path, channel, capacity, weighted);
+            segment.size = segment.buffer.getInt(COUNT_OFFSET);
+            if (segment.size < 0 || segment.size > capacity) {
+                throw new IOException("Corrupt row count in " + path);
+            }
+            segment.min = segment.buffer.getLong(MIN_OFFSET);
+            segment.max = segment.buffer.getLong(MAX_OFFSET);
+            segment.bounds = new Bounds(segment.size, segment.min, segment.max);
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Whether rows can be appended, which takes room and a weight column.
+     */
+    boolean isWritable() {
+        return size < capacity && weights != null;
+    }
+
+    void append(long timestamp, int appId, long uriId, long ipHash, int weight) {
+        timestamps.put(size, timestamp);
+        apps.put(size, appId);
+        uris.put(size, uriId);
+        ips.put(size, ipHash);
+        weights.put(size, weight);
+        min = Math.min(min, timestamp);
+        max = Math.max(max, timestamp);
+        size++;
+    }
+
+    /**
+     * Makes every appended row visible to readers and records it in the header.
+     */
+    void publish() {
+        buffer.putLong(MIN_OFFSET, min);
+        buffer.putLong(MAX_OFFSET, max);
+        buffer.putInt(COUNT_OFFSET, size);
+        bounds = new Bounds(size, min, max);
+    }
+
+    /**
+     * Rows and time range readers may use; rows below {@code count} are never modified again.
+     */
+    Bounds bounds() {
+        return bounds;
+    }
+
+    LongBuffer timestamps() {
+        return timestamps;
+    }
+
+    IntBuffer apps() {
+        return apps;
+    }
+
+    LongBuffer uris() {
+        return uris;
+    }
+
+    LongBuffer ips() {
+        return ips;
+    }
+
+    /**
+     * Weight column, or {@code null} for a version 1 segment whose rows all weigh 1.
+     */
+    IntBuffer weights() {
+        return weights;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private static long fileSize(int capacity, boolean weighted) {
+        return HEADER_BYTES + (long) capacity * (weighted ? ROW_BYTES : UNWEIGHTED_ROW_BYTES);
+    }
+
+    record Bounds(int count, long min, long max) {
+
+        boolean overlaps(long from, long to) {
+            return count > 0 && min <= to && max >= from;
+        }
+
+        boolean within(long from, long to) {
+            return min >= from && max <= to;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ru.practicum.storage;
+
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.model.enums.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Where raw hits live. Rollups, sketches and the dictionary stay in the database whichever engine is
+ * configured with {@code stats.storage.engine}; only the per-hit rows and the queries over them move.
+ */
+public interface HitStorage {
+
+    void insertBatch(List<EndpointHit> hits);
+
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Integer limit,
+                     Consumer<ViewStats> consumer);
+
+    void streamUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris, Integer limit,
+                           Consumer<ViewStats> consumer);
+
+    /**
+     * Distinct ips per app across all of the given uris together.
+     */
+    Map<String, Long> countUniqueByApp(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    /**
+     * Hits per app, uri and {@code interval} bucket in {@code [start, end]}, counted in one grouped pass.
+     */
+    void streamSeries(LocalDateTime start, LocalDateTime end, List<String> uris, RollupGranularity interval,
+                      BucketVisitor visitor);
+
+    /**
+     * Hits per app and uri id from {@code from} up to {@code to}, of all uris when {@code uris} is null.
+     */
+    void countHits(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                   Consumer<HitDictionary.IdCount> consumer);
+
+    /**
+     * Visitors per app and uri id from {@code from} up to {@code to} as 64-bit hashes of their encoded ips, the
+     * hash {@link ru.practicum.sketch.HyperLogLog#add(byte[])} uses. A visitor may be reported more than once.
+     */
+    void forEachVisitor(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                        VisitorVisitor visitor);
+
+    /**
+     * Whether hits are rows of the endpoint_hits table, so rollup queries may aggregate them in the same statement.
+     */
+    default boolean isInDatabase() {
+        return false;
+    }
+
+    /**
+     * Visits every stored hit stamped at or after {@code from}, in no particular order.
+     */
+    void forEachHit(LocalDateTime from, HitVisitor visitor);
+
+    @FunctionalInterface
+    interface HitVisitor {
+        void visit(long appId, long uriId, LocalDateTime timestamp, int weight);
+    }
+
+    @FunctionalInterface
+    interface VisitorVisitor {
+        void visit(long appId, long uriId, long ipHash);
+    }
+
+    @FunctionalInterface
+    interface BucketVisitor {
+        void visit(long appId, long uriId, LocalDateTime bucket, long hits);
+    }
+}
@@ -0,0 +1,206 @@
+package ru.practicum.storage;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.archive.HitArchive;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.repository.StatsRepository;
+import ru.practicum.sketch.Hashing;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Hits as rows of the endpoint_hits table, optionally range partitioned. Ranges that reach archived days are
+ * answered from the table and the {@link HitArchive} files together, merged here.
+ */
+@Component
+@ConditionalOnProperty(name = "stats.storage.engine", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class JdbcHitStorage implements HitStorage {
+
+    private final StatsRepository statsRepository;
+    private final HitArchive hitArchive;
+    private final HitDictionary hitDictionary;
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    @Override
+    public void insertBatch(List<EndpointHit> hits) {
+        statsRepository.insertBatch(hits);
+    }
+
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Integer limit,
+                            Consumer<ViewStats> consumer) {
+        hitArchive.run(start, () -> {
+            if (!hitArchive.overlaps(start, end)) {
+                statsRepository.streamStats(start, end, uris, limit, consumer);
+                return;
+            }
+            Map<HitKey, Long> counts = new HashMap<>();
+            statsRepository.streamStats(start, end, uris, null, stat ->
+                    counts.merge(new HitKey(stat.getApp(), stat.getUri()), stat.getHits(), Long::sum));
+            Map<IdKey, Long> archived = new HashMap<>();
+            hitArchive.scan(start, end, uriIds(uris), (appId, uriId, ip, timestamp, weight) ->
+                    archived.merge(new IdKey(appId, uriId), (long) weight, Long::sum));
+            names(archived).forEach((key, hits) -> counts.merge(key, hits, Long::sum));
+            emit(counts, limit, consumer);
+        });
+    }
+
+    @Override
+    public void streamUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris, Integer limit,
+                                  Consumer<ViewStats> consumer) {
+        hitArchive.run(start, () -> {
+            if (!hitArchive.overlaps(start, end)) {
+                statsRepository.streamUniqueStats(start, end, uris, limit, consumer);
+                return;
+            }
+            // A visitor may have hits on both sides of the archive boundary, so ips are collected, not counted.
+            Map<IdKey, Set<ByteBuffer>> visitors = new HashMap<>();
+            statsRepository.forEachVisitor(start, end, true, uris, (appId, uriId, ip) ->
+                    visitors.computeIfAbsent(new IdKey(appId, uriId), key -> new HashSet<>()).add(ByteBuffer.wrap(ip)));
+            hitArchive.scan(start, end, uriIds(uris), (appId, uriId, ip, timestamp, weight) ->
+                    visitors.computeIfAbsent(new IdKey(appId, uriId), key -> new HashSet<>()).add(ByteBuffer.wrap(ip)));
+            Map<IdKey, Long> counts = new HashMap<>();
+            visitors.forEach((key, ips) -> counts.put(key, (long) ips.size()));
+            emit(names(counts), limit, consumer);
+        });
+    }
+
+    @Override
+    public Map<String, Long> countUniqueByApp(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return hitArchive.read(start, () -> {
+            if (!hitArchive.overlaps(start, end)) {
+                return statsRepository.countUniqueByApp(start, end, uris);
+            }
+            Map<Long, Set<ByteBuffer>> visitors = new HashMap<>();
+            statsRepository.forEachVisitor(start, end, true, uris, (appId, uriId, ip) ->
+                    visitors.computeIfAbsent(appId, key -> new HashSet<>()).add(ByteBuffer.wrap(ip)));
+            hitArchive.scan(start, end, hitDictionary.findUriIds(uris), (appId, uriId, ip, timestamp, weight) ->
+                    visitors.computeIfAbsent(appId, key -> new HashSet<>()).add(ByteBuffer.wrap(ip)));
+            Map<String, Long> counts = new HashMap<>();
+            hitDictionary.loadNames(visitors.keySet(), List.of());
+            visitors.forEach((appId, ips) -> counts.put(hitDictionary.appName(appId), (long) ips.size()));
+            return counts;
+        });
+    }
+
+    @Override
+    public void streamSeries(LocalDateTime start, LocalDateTime end, List<String> uris, RollupGranularity interval,
+                             BucketVisitor visitor) {
+        hitArchive.run(start, () -> {
+            statsRepository.streamSeries(start, end, uris, interval, visitor);
+            if (!hitArchive.overlaps(start, end)) {
+                return;
+            }
+            Map<BucketKey, Long> buckets = new HashMap<>();
+            hitArchive.scan(start, end, hitDictionary.findUriIds(uris), (appId, uriId, ip, timestamp, weight) ->
+                    buckets.merge(new BucketKey(appId, uriId, interval.floor(timestamp)), (long) weight, Long::sum));
+            buckets.forEach((key, hits) -> visitor.visit(key.appId(), key.uriId(), key.bucket(), hits));
+        });
+    }
+
+    @Override
+    public void countHits(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                          Consumer<HitDictionary.IdCount> consumer) {
+        hitArchive.run(from, () -> {
+            if (!hitArchive.overlaps(from, to)) {
+                statsRepository.forEachCount(from, to, toInclusive, uris, consumer);
+                return;
+            }
+            Map<IdKey, Long> counts = new HashMap<>();
+            statsRepository.forEachCount(from, to, toInclusive, uris, row ->
+                    counts.merge(new IdKey(row.appId(), row.uriId()), row.hits(), Long::sum));
+            hitArchive.scan(from, to, uriIds(uris), (appId, uriId, ip, timestamp, weight) -> {
+                if (toInclusive || timestamp.isBefore(to)) {
+                    counts.merge(new IdKey(appId, uriId), (long) weight, Long::sum);
+                }
+            });
+            counts.forEach((key, hits) -> consumer.accept(new HitDictionary.IdCount(key.appId(), key.uriId(), hits)));
+        });
+    }
+
+    @Override
+    public void forEachVisitor(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                               VisitorVisitor visitor) {
+        hitArchive.run(from, () -> {
+            statsRepository.forEachVisitor(from, to, toInclusive, uris, (appId, uriId, ip) ->
+                    visitor.visit(appId, uriId, Hashing.hash64(ip)));
+            if (hitArchive.overlaps(from, to)) {
+                hitArchive.scan(from, to, uriIds(uris), (appId, uriId, ip, timestamp, weight) -> {
+                    if (toInclusive || timestamp.isBefore(to)) {
+                        visitor.visit(appId, uriId, Hashing.hash64(ip));
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public boolean isInDatabase() {
+        return true;
+    }
+
+    @Override
+    public void forEachHit(LocalDateTime from, HitVisitor visitor) {
+        JdbcTemplate streaming = new JdbcTemplate(jdbcTemplate.getDataSource());
+        streaming.setFetchSize(10_000);
+        // PostgreSQL only honours the fetch size inside a transaction.
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(true);
+        hitArchive.run(from, () -> {
+            transaction.executeWithoutResult(status ->
+                    streaming.query("SELECT app_id, uri_id, timestamp, weight FROM endpoint_hits WHERE timestamp >= ?",
+                            (RowCallbackHandler) rs -> visitor.visit(rs.getLong("app_id"), rs.getLong("uri_id"),
+                                    rs.getTimestamp("timestamp").toLocalDateTime(), rs.getInt("weight")),
+                            Timestamp.valueOf(from)));
+            hitArchive.scan(from, LocalDateTime.MAX, null, (appId, uriId, ip, timestamp, weight) ->
+                    visitor.visit(appId, uriId, timestamp, weight));
+        });
+    }
+
+    private List<Long> uriIds(List<String> uris) {
+        return uris != null ? hitDictionary.findUriIds(uris) : null;
+    }
+
+    private Map<HitKey, Long> names(Map<IdKey, Long> counts) {
+        hitDictionary.loadNames(counts.keySet().stream().map(IdKey::appId).toList(),
+                counts.keySet().stream().map(IdKey::uriId).toList());
+        Map<HitKey, Long> named = new HashMap<>();
+        counts.forEach((key, hits) -> named.put(hitDictionary.key(key.appId(), key.uriId()), hits));
+        return named;
+    }
+
+    private static void emit(Map<HitKey, Long> counts, Integer limit, Consumer<ViewStats> consumer) {
+        List<ViewStats> stats = new ArrayList<>(counts.size());
+        counts.forEach((key, hits) -> stats.add(new ViewStats(key.getApp(), key.getUri(), hits)));
+        stats.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        stats.stream().limit(limit != null ? limit : Long.MAX_VALUE).forEach(consumer);
+    }
+
+    private record IdKey(long appId, long uriId) {
+    }
+
+    private record BucketKey(long appId, long uriId, LocalDateTime bucket) {
+    }
+}
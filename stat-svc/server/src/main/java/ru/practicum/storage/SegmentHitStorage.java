@@ -0,0 +1,531 @@
+package ru.practicum.storage;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.dictionary.IpAddresses;
+import ru.practicum.ingest.SampledHit;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.partition.ExpiringHitData;
+import ru.practicum.sketch.Hashing;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Hits in append-only, memory-mapped columnar segment files instead of the endpoint_hits table. Queries
+ * only scan segments whose time range overlaps theirs and aggregate in primitive hash tables, which avoids
+ * per-row JDBC and executor overhead. Distinct counts use a 64-bit hash of the ip, so they are exact up to
+ * hash collisions.
+ * <p>
+ * Appends are not part of the database transaction: a batch whose commit fails after it was appended
+ * stays in the segments. Rows reach the page cache immediately and survive a process crash, but are only
+ * forced to disk when a segment fills up and on shutdown.
+ * <p>
+ * Retention deletes whole segments whose newest hit is before its cut; older hits in a segment that straddles
+ * the cut are skipped by every scan until that segment goes too.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.storage.engine", havingValue = "segment")
+@RequiredArgsConstructor
+public class SegmentHitStorage implements HitStorage, ExpiringHitData {
+
+    private static final String SEGMENT_PREFIX = "hits-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int URI_BITS = 40;
+    private static final long MAX_URI_ID = (1L << URI_BITS) - 1;
+
+    private final HitDictionary hitDictionary;
+
+    @Value("${stats.storage.segment.dir:data/segments}")
+    private String dir;
+
+    @Value("${stats.storage.segment.rows:1048576}")
+    private int segmentRows;
+
+    private final List<HitSegment> segments = new CopyOnWriteArrayList<>();
+    private HitSegment active;
+    private long nextSegmentNumber;
+    private volatile long retainedFrom = Long.MIN_VALUE;
+
+    @PostConstruct
+    public synchronized void init() throws IOException {
+        if (segmentRows <= 0 || segmentRows > HitSegment.MAX_CAPACITY) {
+            throw new IllegalStateException("stats.storage.segment.rows must be between 1 and "
+                    + HitSegment.MAX_CAPACITY);
+        }
+        Path directory = Paths.get(dir);
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        long rows = 0;
+        for (Path file : files) {
+            HitSegment segment = HitSegment.open(file);
+            segments.add(segment);
+            rows += segment.bounds().count();
+            nextSegmentNumber = Math.max(nextSegmentNumber, segmentNumber(file) + 1);
+        }
+        if (!segments.isEmpty() && segments.get(segments.size() - 1).isWritable()) {
+            active = segments.get(segments.size() - 1);
+        } else {
+            active = newSegment();
+        }
+        log.info("Segment storage opened in {}: {} segments, {} hits", directory.toAbsolutePath(),
+                segments.size(), rows);
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        for (HitSegment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    @Override
+    public void insertBatch(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        hitDictionary.intern(hits);
+        int size = hits.size();
+        long[] timestamps = new long[size];
+        int[] appIds = new int[size];
+        long[] uriIds = new long[size];
+        long[] ipHashes = new long[size];
+        int[] weights = new int[size];
+        for (int i = 0; i < size; i++) {
+            EndpointHit hit = hits.get(i);
+            timestamps[i] = hit.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+            appIds[i] = hitDictionary.appId(hit.getApp());
+            uriIds[i] = hitDictionary.uriId(hit.getUri());
+            ipHashes[i] = Hashing.hash64(IpAddresses.encode(hit.getIp()));
+            weights[i] = SampledHit.weightOf(hit);
+            if (appIds[i] < 0 || uriIds[i] < 0 || uriIds[i] > MAX_URI_ID) {
+                throw new IllegalStateException("Dictionary id out of range for segment storage: app "
+                        + appIds[i] + ", uri " + uriIds[i]);
+            }
+        }
+        append(timestamps, appIds, uriIds, ipHashes, weights);
+    }
+
+    private synchronized void append(long[] timestamps, int[] appIds, long[] uriIds, long[] ipHashes,
+                                     int[] weights) {
+        for (int i = 0; i < timestamps.length; i++) {
+            if (active.isFull()) {
+                active.publish();
+                active.force();
+                active = newSegment();
+            }
+            active.append(timestamps[i], appIds[i], uriIds[i], ipHashes[i], weights[i]);
+        }
+        active.publish();
+    }
+
+    @Override
+    public void deleteBefore(LocalDateTime cut) {
+        long cutSecond = toSecond(cut);
+        retainedFrom = Math.max(retainedFrom, cutSecond);
+        List<HitSegment> expired = new ArrayList<>();
+        synchronized (this) {
+            for (HitSegment segment : segments) {
+                HitSegment.Bounds bounds = segment.bounds();
+                if (segment != active && bounds.count() > 0 && bounds.max() < cutSecond) {
+                    expired.add(segment);
+                }
+            }
+            segments.removeAll(expired);
+        }
+        // Queries still scanning a removed segment keep reading its mapping, which outlives the file.
+        for (HitSegment segment : expired) {
+            try {
+                segment.close();
+                Files.deleteIfExists(segment.getPath());
+            } catch (IOException e) {
+                log.warn("Failed to delete hit segment {}: {}", segment.getPath(), e.getMessage());
+            }
+        }
+        if (!expired.isEmpty()) {
+            log.info("Deleted {} hit segments with all hits before {}", expired.size(), cut);
+        }
+    }
+
+    @Override
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, Integer limit,
+                            Consumer<ViewStats> consumer) {
+        streamCounts(start, end, uris, Mode.HITS, limit, consumer);
+    }
+
+    @Override
+    public void streamUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris, Integer limit,
+                                  Consumer<ViewStats> consumer) {
+        streamCounts(start, end, uris, Mode.UNIQUE, limit, consumer);
+    }
+
+    @Override
+    public Map<String, Long> countUniqueByApp(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        Map<String, Long> counts = new HashMap<>();
+        long[] uriIds = uriFilter(uris);
+        if (uriIds.length == 0) {
+            return counts;
+        }
+        aggregate(fromSecond(start), toSecond(end), uriIds, Mode.UNIQUE_BY_APP)
+                .forEach((appId, hits) -> counts.put(hitDictionary.appName(appId), hits));
+        return counts;
+    }
+
+    @Override
+    public void streamSeries(LocalDateTime start, LocalDateTime end, List<String> uris, RollupGranularity interval,
+                             BucketVisitor visitor) {
+        long[] uriIds = uriFilter(uris);
+        if (uriIds.length == 0) {
+            return;
+        }
+        long from = fromSecond(start);
+        long to = toSecond(end);
+        long bucketSeconds = interval.getUnit().getDuration().getSeconds();
+        long firstBucket = Math.floorDiv(from, bucketSeconds);
+        int buckets = (int) (Math.floorDiv(to, bucketSeconds) - firstBucket + 1);
+        Map<Long, long[]> series = new HashMap<>();
+        for (HitSegment segment : segments) {
+            HitSegment.Bounds bounds = segment.bounds();
+            if (!bounds.overlaps(from, to)) {
+                continue;
+            }
+            LongBuffer timestamps = segment.timestamps();
+            IntBuffer apps = segment.apps();
+            LongBuffer uriColumn = segment.uris();
+            IntBuffer weights = segment.weights();
+            for (int i = 0; i < bounds.count(); i++) {
+                long timestamp = timestamps.get(i);
+                if (timestamp < from || timestamp > to) {
+                    continue;
+                }
+                long uriId = uriColumn.get(i);
+                if (Arrays.binarySearch(uriIds, uriId) < 0) {
+                    continue;
+                }
+                long key = (long) apps.get(i) << URI_BITS | uriId;
+                series.computeIfAbsent(key, k -> new long[buckets])
+                        [(int) (Math.floorDiv(timestamp, bucketSeconds) - firstBucket)] += weight(weights, i);
+            }
+        }
+        series.forEach((key, counts) -> {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] > 0) {
+                    visitor.visit(key >>> URI_BITS, key & MAX_URI_ID,
+                            LocalDateTime.ofEpochSecond((firstBucket + i) * bucketSeconds, 0, ZoneOffset.UTC),
+                            counts[i]);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void countHits(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                          Consumer<HitDictionary.IdCount> consumer) {
+        long[] uriIds = null;
+        if (uris != null) {
+            uriIds = uriFilter(uris);
+            if (uriIds.length == 0) {
+                return;
+            }
+        }
+        aggregate(fromSecond(from), toInclusive ? toSecond(to) : beforeSecond(to), uriIds, Mode.HITS)
+                .forEach((key, hits) -> consumer.accept(new HitDictionary.IdCount(key >>> URI_BITS, key & MAX_URI_ID, hits)));
+    }
+
+    @Override
+    public void forEachVisitor(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                               VisitorVisitor visitor) {
+        long[] uriIds = null;
+        if (uris != null) {
+            uriIds = uriFilter(uris);
+            if (uriIds.length == 0) {
+                return;
+            }
+        }
+        long fromSecond = fromSecond(from);
+        long toSecond = toInclusive ? toSecond(to) : beforeSecond(to);
+        for (HitSegment segment : segments) {
+            HitSegment.Bounds bounds = segment.bounds();
+            if (!bounds.overlaps(fromSecond, toSecond)) {
+                continue;
+            }
+            LongBuffer timestamps = segment.timestamps();
+            IntBuffer apps = segment.apps();
+            LongBuffer uriColumn = segment.uris();
+            LongBuffer ips = segment.ips();
+            for (int i = 0; i < bounds.count(); i++) {
+                long timestamp = timestamps.get(i);
+                long uriId = uriColumn.get(i);
+                if (timestamp >= fromSecond && timestamp <= toSecond
+                        && (uriIds == null || Arrays.binarySearch(uriIds, uriId) >= 0)) {
+                    visitor.visit(apps.get(i), uriId, ips.get(i));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void forEachHit(LocalDateTime from, HitVisitor visitor) {
+        long fromSecond = fromSecond(from);
+        for (HitSegment segment : segments) {
+            HitSegment.Bounds bounds = segment.bounds();
+            if (!bounds.overlaps(fromSecond, Long.MAX_VALUE)) {
+                continue;
+            }
+            LongBuffer timestamps = segment.timestamps();
+            IntBuffer apps = segment.apps();
+            LongBuffer uris = segment.uris();
+            IntBuffer weights = segment.weights();
+            for (int i = 0; i < bounds.count(); i++) {
+                long timestamp = timestamps.get(i);
+                if (timestamp >= fromSecond) {
+                    visitor.visit(apps.get(i), uris.get(i), LocalDateTime.ofEpochSecond(timestamp, 0, ZoneOffset.UTC),
+                            weight(weights, i));
+                }
+            }
+        }
+    }
+
+    private void streamCounts(LocalDateTime start, LocalDateTime end, List<String> uris, Mode mode, Integer limit,
+                              Consumer<ViewStats> consumer) {
+        long[] uriIds = null;
+        if (uris != null) {
+            uriIds = uriFilter(uris);
+            if (uriIds.length == 0) {
+                return;
+            }
+        }
+        List<HitDictionary.IdCount> rows = new ArrayList<>();
+        aggregate(fromSecond(start), toSecond(end), uriIds, mode).forEach((key, hits) ->
+                rows.add(new HitDictionary.IdCount(key >>> URI_BITS, key & MAX_URI_ID, hits)));
+        rows.sort(Comparator.comparingLong(HitDictionary.IdCount::hits).reversed()
+                .thenComparingLong(HitDictionary.IdCount::appId)
+                .thenComparingLong(HitDictionary.IdCount::uriId));
+        List<HitDictionary.IdCount> limited = limit != null && rows.size() > limit ? rows.subList(0, limit) : rows;
+        hitDictionary.decodeStream(limited::forEach, consumer);
+    }
+
+    /**
+     * Sums the weights of rows in {@code [from, to]} seconds, or counts distinct ips, keyed by packed
+     * (app, uri) or by app alone.
+     */
+    private LongCounts aggregate(long from, long to, long[] uriIds, Mode mode) {
+        LongCounts counts = new LongCounts();
+        LongPairSet seen = mode == Mode.HITS ? null : new LongPairSet();
+        for (HitSegment segment : segments) {
+            HitSegment.Bounds bounds = segment.bounds();
+            if (!bounds.overlaps(from, to)) {
+                continue;
+            }
+            boolean within = bounds.within(from, to);
+            int count = bounds.count();
+            LongBuffer timestamps = segment.timestamps();
+            IntBuffer apps = segment.apps();
+            LongBuffer uris = segment.uris();
+            LongBuffer ips = segment.ips();
+            IntBuffer weights = segment.weights();
+            for (int i = 0; i < count; i++) {
+                if (!within) {
+                    long timestamp = timestamps.get(i);
+                    if (timestamp < from || timestamp > to) {
+                        continue;
+                    }
+                }
+                long uriId = uris.get(i);
+                if (uriIds != null && Arrays.binarySearch(uriIds, uriId) < 0) {
+                    continue;
+                }
+                long appId = apps.get(i);
+                long key = mode == Mode.UNIQUE_BY_APP ? appId : appId << URI_BITS | uriId;
+                if (seen == null) {
+                    counts.add(key, weight(weights, i));
+                } else if (seen.add(key, ips.get(i))) {
+                    counts.add(key, 1);
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static int weight(IntBuffer weights, int row) {
+        return weights != null ? weights.get(row) : 1;
+    }
+
+    private long[] uriFilter(List<String> uris) {
+        return hitDictionary.findUriIds(uris).stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+    }
+
+    private HitSegment newSegment() {
+        Path path = Paths.get(dir, String.format("%s%012d%s", SEGMENT_PREFIX, nextSegmentNumber++, SEGMENT_SUFFIX));
+        try {
+            HitSegment segment = HitSegment.create(path, segmentRows);
+            segments.add(segment);
+            log.debug("Created hit segment {}", path);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot create hit segment " + path, e);
+        }
+    }
+
+    private static long segmentNumber(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // Hits are stored in whole seconds, so a fractional start only admits the following second. Hits before the
+    // retention cut that are still in a segment are never admitted.
+    private long fromSecond(LocalDateTime time) {
+        long second = time.toEpochSecond(ZoneOffset.UTC);
+        return Math.max(time.getNano() > 0 ? second + 1 : second, retainedFrom);
+    }
+
+    private static long toSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    // The last whole second before an exclusive end.
+    private static long beforeSecond(LocalDateTime time) {
+        long second = time.toEpochSecond(ZoneOffset.UTC);
+        return time.getNano() > 0 ? second : second - 1;
+    }
+
+    private enum Mode {
+        HITS,
+        UNIQUE,
+        UNIQUE_BY_APP
+    }
+
+    /**
+     * Open-addressing map from non-negative long keys to counts.
+     */
+    private static final class LongCounts {
+        private long[] keys = new long[1024];
+        private long[] values = new long[1024];
+        private int size;
+
+        void add(long key, long delta) {
+            int slot = slot(keys, key);
+            if (keys[slot] == 0) {
+                keys[slot] = key + 1;
+                if (++size * 2 > keys.length) {
+                    grow();
+                    slot = slot(keys, key);
+                }
+            }
+            values[slot] += delta;
+        }
+
+        void forEach(LongBiConsumer action) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    action.accept(keys[i] - 1, values[i]);
+                }
+            }
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = slot(keys, oldKeys[i] - 1);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int slot(long[] keys, long key) {
+            int mask = keys.length - 1;
+            int slot = (int) Hashing.mix64(key) & mask;
+            while (keys[slot] != 0 && keys[slot] != key + 1) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * Open-addressing set of (non-negative key, value) pairs.
+     */
+    private static final class LongPairSet {
+        private long[] keys = new long[1024];
+        private long[] values = new long[1024];
+        private int size;
+
+        boolean add(long key, long value) {
+            int slot = slot(keys, values, key, value);
+            if (keys[slot] != 0) {
+                return false;
+            }
+            keys[slot] = key + 1;
+            values[slot] = value;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int slot = slot(keys, values, oldKeys[i] - 1, oldValues[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+
+        private static int slot(long[] keys, long[] values, long key, long value) {
+            int mask = keys.length - 1;
+            int slot = (int) Hashing.mix64(key * 0x9E3779B97F4A7C15L ^ value) & mask;
+            while (keys[slot] != 0 && (keys[slot] != key + 1 || values[slot] != value)) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+    }
+
+    @FunctionalInterface
+    private interface LongBiConsumer {
+        void accept(long key, long value);
+    }
+}
@@ -0,0 +1,334 @@
+package ru.practicum.window;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Component;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.ingest.SampledHit;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.storage.HitStorage;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-(app, uri) hit counters for the most recent buckets, fed by the ingest path after commit.
+ * Every slot packs {@code lap | count | first second | last second} into one long so writers
+ * update it with a single CAS, and the first/last second let queries with unaligned edges still
+ * be answered exactly when no hit of the edge bucket straddles the boundary.
+ * Assumes this instance is the only writer of the hit storage.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class HotWindowCounters {
+
+    private static final int OFFSET_BITS = 12;
+    private static final int COUNT_BITS = 24;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+    private static final long LAP_MASK = 0xFFFF;
+    private static final long RETIRED = Long.MIN_VALUE;
+    private static final long SWEEP_INTERVAL_NANOS = 1_000_000_000L;
+    private static final long AMBIGUOUS = -1;
+
+    private final HitStorage hitStorage;
+    private final MeterRegistry meterRegistry;
+    private final HitDictionary hitDictionary;
+
+    @Value("${stats.hot-window.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stats.hot-window.granularity:HOUR}")
+    private RollupGranularity granularity;
+
+    @Value("${stats.hot-window.slots:72}")
+    private int slots;
+
+    @Value("${stats.hot-window.max-keys:50000}")
+    private int maxKeys;
+
+    private final Map<HitKey, Ring> rings = new ConcurrentHashMap<>();
+    private final AtomicLong lastDroppedBucket = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong lastSweepNanos = new AtomicLong();
+    private volatile long coveredFrom = Long.MAX_VALUE;
+    private long bucketSeconds;
+
+    private Counter servedCounter;
+    private Counter fallbackCounter;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime from = granularity.floor(LocalDateTime.now()).minus(slots - 1L, granularity.getUnit());
+        prepare(from);
+        rebuild(from);
+        log.info("Hot window ready: {} {} buckets, {} keys loaded", slots, granularity, rings.size());
+    }
+
+    void prepare(LocalDateTime from) {
+        if (granularity == RollupGranularity.DAY) {
+            throw new IllegalStateException("stats.hot-window.granularity must be MINUTE or HOUR");
+        }
+        if (slots <= 0 || maxKeys <= 0) {
+            throw new IllegalStateException("stats.hot-window.slots and max-keys must be positive");
+        }
+        bucketSeconds = granularity.getUnit().getDuration().getSeconds();
+        coveredFrom = bucketOf(from);
+
+        Gauge.builder("stats.hot-window.keys", rings, Map::size)
+                .description("Uris currently tracked by the in-memory hot window")
+                .register(meterRegistry);
+        servedCounter = meterRegistry.counter("stats.hot-window.queries", "result", "served");
+        fallbackCounter = meterRegistry.counter("stats.hot-window.queries", "result", "fallback");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void record(List<EndpointHit> hits) {
+        if (!enabled) {
+            return;
+        }
+        for (EndpointHit hit : hits) {
+            record(hit.getApp(), hit.getUri(), hit.getTimestamp(), SampledHit.weightOf(hit));
+        }
+    }
+
+    public Optional<List<ViewStats>> findStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Optional<List<ViewStats>> stats = findStats(start, end, uris, LocalDateTime.now());
+        (stats.isPresent() ? servedCounter : fallbackCounter).increment();
+        return stats;
+    }
+
+    Optional<List<ViewStats>> findStats(LocalDateTime start, LocalDateTime end, List<String> uris, LocalDateTime now) {
+        long startBucket = bucketOf(start);
+        long endBucket = bucketOf(end);
+        if (startBucket < coveredFrom || startBucket <= bucketOf(now) - slots) {
+            return Optional.empty();
+        }
+        if (uris != null && uris.isEmpty()) {
+            return Optional.of(List.of());
+        }
+
+        Set<String> wanted = uris != null ? new HashSet<>(uris) : null;
+        boolean needsEveryKey = wanted == null;
+        List<ViewStats> stats = new ArrayList<>();
+        Set<String> resident = new HashSet<>();
+        for (Map.Entry<HitKey, Ring> entry : rings.entrySet()) {
+            if (wanted != null && !wanted.contains(entry.getKey().getUri())) {
+                continue;
+            }
+            Ring ring = entry.getValue();
+            if (startBucket < ring.coveredFrom) {
+                return Optional.empty();
+            }
+            long hits = ring.count(startBucket, offsetOf(start, startBucket), endBucket, offsetOf(end, endBucket));
+            if (hits == AMBIGUOUS) {
+                return Optional.empty();
+            }
+            if (hits > 0) {
+                stats.add(new ViewStats(entry.getKey().getApp(), entry.getKey().getUri(), hits));
+            }
+            resident.add(entry.getKey().getUri());
+        }
+        if (wanted != null && !resident.containsAll(wanted)) {
+            needsEveryKey = true;
+        }
+        // Hits turned away while the window was full are only known to be absent after the last drop.
+        if (needsEveryKey && startBucket <= lastDroppedBucket.get()) {
+            return Optional.empty();
+        }
+
+        stats.sort(Comparator.comparing(ViewStats::getHits).reversed());
+        return Optional.of(stats);
+    }
+
+    private void record(String app, String uri, LocalDateTime timestamp, int weight) {
+        long bucket = bucketOf(timestamp);
+        int offset = offsetOf(timestamp, bucket);
+        HitKey key = new HitKey(app, uri);
+        while (true) {
+            Ring ring = rings.get(key);
+            if (ring == null) {
+                ring = admit(key);
+                if (ring == null) {
+                    lastDroppedBucket.accumulateAndGet(bucket, Math::max);
+                    // A concurrent admit may have created the ring before it could see this drop.
+                    if (rings.get(key) == null) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            if (ring.add(bucket, offset, weight)) {
+                return;
+            }
+        }
+    }
+
+    private Ring admit(HitKey key) {
+        if (rings.size() >= maxKeys) {
+            sweep();
+            if (rings.size() >= maxKeys) {
+                return null;
+            }
+        }
+        return rings.computeIfAbsent(key, k -> new Ring(slots, lastDroppedBucket.get() + 1));
+    }
+
+    private void sweep() {
+        long last = lastSweepNanos.get();
+        long now = System.nanoTime();
+        if (now - last < SWEEP_INTERVAL_NANOS || !lastSweepNanos.compareAndSet(last, now)) {
+            return;
+        }
+        long windowStart = bucketOf(LocalDateTime.now()) - slots + 1;
+        int evicted = 0;
+        for (Map.Entry<HitKey, Ring> entry : rings.entrySet()) {
+            if (entry.getValue().retireIfOlderThan(windowStart)) {
+                rings.remove(entry.getKey(), entry.getValue());
+                evicted++;
+            }
+        }
+        log.debug("Hot window sweep evicted {} cold keys, {} left", evicted, rings.size());
+    }
+
+    private void rebuild(LocalDateTime from) {
+        hitStorage.forEachHit(from, (appId, uriId, timestamp, weight) -> {
+            HitKey key = hitDictionary.key(appId, uriId);
+            record(key.getApp(), key.getUri(), timestamp, weight);
+        });
+    }
+
+    private long bucketOf(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), bucketSeconds);
+    }
+
+    private int offsetOf(LocalDateTime time, long bucket) {
+        return (int) (time.toEpochSecond(ZoneOffset.UTC) - bucket * bucketSeconds);
+    }
+
+    private static final class Ring {
+        private final AtomicLongArray slots;
+        private final AtomicLong newest = new AtomicLong(Long.MIN_VALUE + 1);
+        private final long coveredFrom;
+
+        Ring(int size, long coveredFrom) {
+            this.slots = new AtomicLongArray(size);
+            this.coveredFrom = coveredFrom;
+        }
+
+        boolean add(long bucket, int offset, int weight) {
+            while (true) {
+                long current = newest.get();
+                if (current == RETIRED) {
+                    return false;
+                }
+                if (bucket <= current || newest.compareAndSet(current, bucket)) {
+                    break;
+                }
+            }
+
+            int index = (int) Math.floorMod(bucket, slots.length());
+            long lap = lapOf(bucket);
+            while (true) {
+                long slot = slots.get(index);
+                long next;
+                int delta = countOf(slot) == 0 ? -1 : lapDelta(lap, slot);
+                if (delta < 0) {
+                    next = pack(lap, Math.min(weight, COUNT_MASK), offset, offset);
+                } else if (delta == 0) {
+                    next = pack(lap, Math.min(countOf(slot) + weight, COUNT_MASK),
+                            Math.min(minOf(slot), offset), Math.max(maxOf(slot), offset));
+                } else {
+                    // The slot already holds a newer bucket; readers of this bucket will see that and fall back.
+                    return true;
+                }
+                if (slots.compareAndSet(index, slot, next)) {
+                    return true;
+                }
+            }
+        }
+
+        boolean retireIfOlderThan(long bucket) {
+            long current = newest.get();
+            return current != RETIRED && current < bucket && newest.compareAndSet(current, RETIRED);
+        }
+
+        long count(long startBucket, int startOffset, long endBucket, int endOffset) {
+            long last = Math.min(endBucket, newest.get());
+            long total = 0;
+            for (long bucket = startBucket; bucket <= last; bucket++) {
+                long slot = slots.get((int) Math.floorMod(bucket, slots.length()));
+                long count = countOf(slot);
+                if (count == 0 || lapDelta(lapOf(bucket), slot) < 0) {
+                    continue;
+                }
+                if (lapDelta(lapOf(bucket), slot) > 0 || count == COUNT_MASK) {
+                    return AMBIGUOUS;
+                }
+                int from = bucket == startBucket ? startOffset : 0;
+                int to = bucket == endBucket ? endOffset : Integer.MAX_VALUE;
+                if (minOf(slot) >= from && maxOf(slot) <= to) {
+                    total += count;
+                } else if (maxOf(slot) >= from && minOf(slot) <= to) {
+                    return AMBIGUOUS;
+                }
+            }
+            return total;
+        }
+
+        private long lapOf(long bucket) {
+            return Math.floorDiv(bucket, slots.length()) & LAP_MASK;
+        }
+
+        // Positive when the slot holds a later lap than the given one, negative when it holds an earlier one.
+        private static int lapDelta(long lap, long slot) {
+            return (short) (((slot >>> (COUNT_BITS + 2 * OFFSET_BITS)) & LAP_MASK) - lap);
+        }
+
+        private static long pack(long lap, long count, long min, long max) {
+            return (lap & LAP_MASK) << (COUNT_BITS + 2 * OFFSET_BITS) | count << (2 * OFFSET_BITS)
+                    | min << OFFSET_BITS | max;
+        }
+
+        private static long countOf(long slot) {
+            return (slot >>> (2 * OFFSET_BITS)) & COUNT_MASK;
+        }
+
+        private static int minOf(long slot) {
+            return (int) ((slot >>> OFFSET_BITS) & OFFSET_MASK);
+        }
+
+        private static int maxOf(long slot) {
+            return (int) (slot & OFFSET_MASK);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package ru.practicum.window;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import ru.practicum.EndpointHit;
+import ru.practicum.TopStats;
+import ru.practicum.TopStatsEntry;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.ingest.SampledHit;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.sketch.SpaceSaving;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Most hit uris per app over recent sliding windows. Every app keeps one Space-Saving summary per minute
+ * and per hour bucket, fed by the ingest path after commit, so memory is fixed by
+ * {@code (minute-slots + hour-slots) * capacity} counters per app and a query only merges the summaries
+ * of the buckets it spans. Windows are rounded up to whole buckets.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+@RequiredArgsConstructor
+public class TopUriTracker {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final HitDictionary hitDictionary;
+
+    @Value("${stats.top.enabled:true}")
+    private boolean enabled;
+
+    @Value("${stats.top.capacity:100}")
+    private int capacity;
+
+    @Value("${stats.top.minute-slots:60}")
+    private int minuteSlots;
+
+    @Value("${stats.top.hour-slots:168}")
+    private int hourSlots;
+
+    @Value("${stats.top.max-apps:32}")
+    private int maxApps;
+
+    @Value("${stats.rollup.enabled:true}")
+    private boolean rollupsEnabled;
+
+    private final Map<String, AppRings> apps = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        if (capacity <= 0 || minuteSlots <= 0 || hourSlots <= 0 || maxApps <= 0) {
+            throw new IllegalStateException("stats.top.capacity, minute-slots, hour-slots and max-apps must be positive");
+        }
+        if (rollupsEnabled) {
+            LocalDateTime now = LocalDateTime.now();
+            rebuild(RollupGranularity.MINUTE, now, minuteSlots);
+            rebuild(RollupGranularity.HOUR, now, hourSlots);
+        } else {
+            log.info("Rollups are disabled, top uris only cover hits received from now on");
+        }
+        log.info("Top uri tracker ready: {} counters per bucket, {} apps loaded", capacity, apps.size());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Duration getMaxWindow() {
+        return Duration.ofHours(hourSlots);
+    }
+
+    public void record(List<EndpointHit> hits) {
+        if (!enabled) {
+            return;
+        }
+        record(hits, LocalDateTime.now());
+    }
+
+    void record(List<EndpointHit> hits, LocalDateTime now) {
+        for (EndpointHit hit : hits) {
+            // Hits stamped in the future would overwrite a live bucket on wrap-around.
+            if (!hit.getTimestamp().isAfter(now.plusMinutes(1))) {
+                record(hit.getApp(), hit.getUri(), hit.getTimestamp(), SampledHit.weightOf(hit));
+            }
+        }
+    }
+
+    public TopStats findTop(String app, Duration window, int k) {
+        return findTop(app, window, k, LocalDateTime.now());
+    }
+
+    TopStats findTop(String app, Duration window, int k, LocalDateTime now) {
+        if (k > capacity) {
+            throw new IllegalArgumentException("Parameter 'k' must not exceed " + capacity);
+        }
+        RollupGranularity granularity = window.compareTo(Duration.ofMinutes(minuteSlots)) <= 0
+                ? RollupGranularity.MINUTE : RollupGranularity.HOUR;
+        long bucketSeconds = granularity.getUnit().getDuration().getSeconds();
+        long buckets = (window.getSeconds() + bucketSeconds - 1) / bucketSeconds;
+        if (buckets > hourSlots && granularity == RollupGranularity.HOUR) {
+            throw new IllegalArgumentException("Parameter 'window' must not exceed " + getMaxWindow());
+        }
+        long last = bucketOf(now, bucketSeconds);
+        LocalDateTime start = LocalDateTime.ofEpochSecond((last - buckets + 1) * bucketSeconds, 0, ZoneOffset.UTC);
+
+        AppRings rings = apps.get(app);
+        if (rings == null) {
+            return new TopStats(app, start, now, 0L, 0L, List.of());
+        }
+        Ring ring = granularity == RollupGranularity.MINUTE ? rings.minutes : rings.hours;
+        SpaceSaving.Merger merger = new SpaceSaving.Merger();
+        for (long bucket = last - buckets + 1; bucket <= last; bucket++) {
+            ring.mergeInto(merger, bucket);
+        }
+
+        // One estimate beyond k tells whether the last reported entries are certain.
+        SpaceSaving.Merged merged = merger.result(k + 1);
+        List<SpaceSaving.Estimate> estimates = merged.estimates();
+        // An entry is certainly in the top-k once its lower bound reaches the upper bound of every outsider.
+        long outsiderBound = Math.max(merged.missingBound(), estimates.size() > k ? estimates.get(k).count() : 0);
+        List<TopStatsEntry> top = new ArrayList<>(Math.min(k, estimates.size()));
+        for (SpaceSaving.Estimate estimate : estimates.subList(0, Math.min(k, estimates.size()))) {
+            long lower = estimate.count() - estimate.error();
+            top.add(new TopStatsEntry(estimate.item(), estimate.count(), estimate.error(),
+                    lower > 0 && lower >= outsiderBound));
+        }
+        return new TopStats(app, start, now, merged.total(), merged.missingBound(), top);
+    }
+
+    private void record(String app, String uri, LocalDateTime timestamp, long hits) {
+        AppRings rings = apps.get(app);
+        if (rings == null) {
+            if (apps.size() >= maxApps) {
+                log.debug("Top uri tracker is full, ignoring app {}", app);
+                return;
+            }
+            rings = apps.computeIfAbsent(app, a -> new AppRings(minuteSlots, hourSlots));
+        }
+        rings.minutes.add(bucketOf(timestamp, 60), uri, hits, capacity);
+        rings.hours.add(bucketOf(timestamp, 3600), uri, hits, capacity);
+    }
+
+    private void rebuild(RollupGranularity granularity, LocalDateTime now, int slots) {
+        long bucketSeconds = granularity.getUnit().getDuration().getSeconds();
+        LocalDateTime from = granularity.floor(now).minus(slots - 1L, granularity.getUnit());
+        jdbcTemplate.query("SELECT app_id, uri_id, bucket, hits FROM " + granularity.getTable() + " WHERE bucket >= ?",
+                (RowCallbackHandler) rs -> {
+                    HitKey key = hitDictionary.key(rs.getLong("app_id"), rs.getLong("uri_id"));
+                    long bucket = bucketOf(rs.getTimestamp("bucket").toLocalDateTime(), bucketSeconds);
+                    AppRings rings = apps.computeIfAbsent(key.getApp(), a -> new AppRings(minuteSlots, hourSlots));
+                    (granularity == RollupGranularity.MINUTE ? rings.minutes : rings.hours)
+                            .add(bucket, key.getUri(), rs.getLong("hits"), capacity);
+                }, Timestamp.valueOf(from));
+    }
+
+    private static long bucketOf(LocalDateTime time, long bucketSeconds) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), bucketSeconds);
+    }
+
+    private static final class AppRings {
+        private final Ring minutes;
+        private final Ring hours;
+
+        AppRings(int minuteSlots, int hourSlots) {
+            this.minutes = new Ring(minuteSlots);
+            this.hours = new Ring(hourSlots);
+        }
+    }
+
+    private static final class Ring {
+        private final Slot[] slots;
+
+        Ring(int size) {
+            slots = new Slot[size];
+            for (int i = 0; i < size; i++) {
+                slots[i] = new Slot();
+            }
+        }
+
+        void add(long bucket, String uri, long hits, int capacity) {
+            slots[(int) Math.floorMod(bucket, slots.length)].add(bucket, uri, hits, capacity);
+        }
+
+        void mergeInto(SpaceSaving.Merger merger, long bucket) {
+            slots[(int) Math.floorMod(bucket, slots.length)].mergeInto(merger, bucket);
+        }
+    }
+
+    private static final class Slot {
+        private long bucket = Long.MIN_VALUE;
+        private SpaceSaving summary;
+
+        synchronized void add(long bucket, String uri, long hits, int capacity) {
+            if (bucket < this.bucket) {
+                return;
+            }
+            if (summary == null) {
+                summary = new SpaceSaving(capacity);
+            } else if (bucket > this.bucket) {
+                summary.clear();
+            }
+            this.bucket = bucket;
+            summary.add(uri, hits);
+        }
+
+        synchronized void mergeInto(SpaceSaving.Merger merger, long bucket) {
+            if (bucket == this.bucket) {
+                merger.add(summary);
+            }
+        }
+    }
+}
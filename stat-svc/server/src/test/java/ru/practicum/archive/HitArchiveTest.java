@@ -0,0 +1,158 @@
+package ru.practicum.archive;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.dictionary.IpAddresses;
+import ru.practicum.model.HitKey;
+import ru.practicum.repository.FirstSeenRepository;
+import ru.practicum.repository.StatsRepository;
+import ru.practicum.repository.StatsRepositoryCustomImpl;
+import ru.practicum.sketch.Hashing;
+import ru.practicum.storage.JdbcHitStorage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalAnswers.delegatesTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class HitArchiveTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 0);
+    private static final LocalDateTime OLD = NOW.minusDays(100);
+
+    @TempDir
+    Path dir;
+
+    private JdbcTemplate jdbcTemplate;
+    private HitDictionary hitDictionary;
+    private HitArchive hitArchive;
+    private JdbcHitStorage storage;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws IOException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + dir.getFileName()
+                + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE endpoint_hits (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY," +
+                " app_id INTEGER, uri_id BIGINT, ip VARBINARY(16), timestamp TIMESTAMP, weight INTEGER)");
+        jdbcTemplate.execute("CREATE TABLE hit_archive_segments (id BIGINT GENERATED BY DEFAULT AS IDENTITY" +
+                " PRIMARY KEY, file_name VARCHAR(255), range_start TIMESTAMP, range_end TIMESTAMP, hit_count BIGINT," +
+                " file_bytes BIGINT, created_at TIMESTAMP)");
+        jdbcTemplate.execute("CREATE TABLE hit_first_seen (app_id INTEGER, uri_id BIGINT, ip VARBINARY(16)," +
+                " first_seen TIMESTAMP, PRIMARY KEY (uri_id, app_id, ip))");
+        jdbcTemplate.execute("CREATE TABLE hit_first_seen_day (app_id INTEGER, uri_id BIGINT, bucket TIMESTAMP," +
+                " visitors BIGINT, PRIMARY KEY (uri_id, bucket, app_id))");
+
+        hitDictionary = mock(HitDictionary.class);
+        when(hitDictionary.appId(anyString())).thenReturn(1);
+        when(hitDictionary.uriId(anyString())).thenAnswer(inv -> uriId(inv.getArgument(0)));
+        when(hitDictionary.findUriIds(any())).thenAnswer(inv -> inv.<Collection<String>>getArgument(0).stream()
+                .map(HitArchiveTest::uriId).toList());
+        when(hitDictionary.key(anyLong(), anyLong()))
+                .thenAnswer(inv -> new HitKey("app", "/events/" + inv.<Long>getArgument(1)));
+        when(hitDictionary.decode(any())).thenAnswer(inv -> inv.<List<HitDictionary.IdCount>>getArgument(0).stream()
+                .map(row -> new ViewStats("app", "/events/" + row.uriId(), row.hits())).toList());
+        doAnswer(inv -> {
+            Consumer<ViewStats> consumer = inv.getArgument(1);
+            inv.<Consumer<Consumer<HitDictionary.IdCount>>>getArgument(0).accept(row ->
+                    consumer.accept(new ViewStats("app", "/events/" + row.uriId(), row.hits())));
+            return null;
+        }).when(hitDictionary).decodeStream(any(), any());
+
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        hitArchive = new HitArchive(jdbcTemplate, transactionManager, mock(ObjectProvider.class));
+        ReflectionTestUtils.setField(hitArchive, "enabled", true);
+        ReflectionTestUtils.setField(hitArchive, "dir", dir.toString());
+        ReflectionTestUtils.setField(hitArchive, "after", Duration.ofDays(90));
+        ReflectionTestUtils.setField(hitArchive, "maxDaysPerRun", 7);
+        hitArchive.init();
+
+        StatsRepositoryCustomImpl custom = new StatsRepositoryCustomImpl(jdbcTemplate, hitDictionary);
+        ReflectionTestUtils.setField(custom, "fetchSize", 100);
+        custom.init();
+        storage = new JdbcHitStorage(mock(StatsRepository.class, delegatesTo(custom)), hitArchive, hitDictionary,
+                jdbcTemplate, transactionManager);
+
+        storage.insertBatch(List.of(
+                hit("10.0.0.1", OLD.plusHours(1)),
+                hit("10.0.0.2", OLD.plusHours(2)),
+                hit("10.0.0.1", OLD.plusHours(3)),
+                hit("10.0.0.1", NOW),
+                hit("10.0.0.3", NOW.plusHours(1))));
+    }
+
+    @Test
+    void archive_ShouldKeepAnsweringQueriesFromFiles() {
+        assertEquals(1, hitArchive.archive(NOW));
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM endpoint_hits", Long.class));
+
+        List<String> uris = List.of("/events/1");
+        List<ViewStats> hits = new ArrayList<>();
+        storage.streamStats(OLD, NOW.plusHours(2), uris, null, hits::add);
+        assertEquals(List.of(new ViewStats("app", "/events/1", 5L)), hits);
+        List<ViewStats> unique = new ArrayList<>();
+        storage.streamUniqueStats(OLD, NOW.plusHours(2), uris, null, unique::add);
+        assertEquals(List.of(new ViewStats("app", "/events/1", 3L)), unique);
+
+        List<HitDictionary.IdCount> counts = new ArrayList<>();
+        storage.countHits(OLD.plusMinutes(90), NOW.plusHours(1), false, uris, counts::add);
+        assertEquals(List.of(new HitDictionary.IdCount(1, 1, 3)), counts);
+        Set<Long> visitors = new HashSet<>();
+        storage.forEachVisitor(OLD, NOW.plusHours(1), false, uris, (appId, uriId, ipHash) -> visitors.add(ipHash));
+        assertEquals(Set.of(ipHash("10.0.0.1"), ipHash("10.0.0.2")), visitors);
+    }
+
+    @Test
+    void firstSeenBackfill_ShouldIncludeArchivedVisitors() {
+        hitArchive.archive(NOW);
+
+        FirstSeenRepository firstSeen = new FirstSeenRepository(jdbcTemplate, hitDictionary, hitArchive);
+        ReflectionTestUtils.setField(firstSeen, "enabled", true);
+        ReflectionTestUtils.setField(firstSeen, "fetchSize", 100);
+        firstSeen.init();
+
+        assertEquals(Timestamp.valueOf(OLD.plusHours(1)), jdbcTemplate.queryForObject(
+                "SELECT first_seen FROM hit_first_seen WHERE ip = ?", Timestamp.class,
+                (Object) IpAddresses.encode("10.0.0.1")));
+        List<ViewStats> unique = new ArrayList<>();
+        firstSeen.streamUniqueStats(OLD, NOW.plusHours(2), List.of("/events/1"), null, storage, unique::add);
+        assertEquals(List.of(new ViewStats("app", "/events/1", 3L)), unique);
+    }
+
+    private static long uriId(String uri) {
+        return Long.parseLong(uri.substring("/events/".length()));
+    }
+
+    private static long ipHash(String ip) {
+        return Hashing.hash64(IpAddresses.encode(ip));
+    }
+
+    private static EndpointHit hit(String ip, LocalDateTime timestamp) {
+        return new EndpointHit(null, "app", "/events/1", ip, timestamp);
+    }
+}
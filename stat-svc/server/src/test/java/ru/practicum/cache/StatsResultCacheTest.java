@@ -0,0 +1,90 @@
+package ru.practicum.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatsResultCacheTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final LocalDateTime END = LocalDateTime.of(2024, 1, 2, 0, 0);
+
+    private StatsResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new StatsResultCache(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxRows", 1000L);
+        ReflectionTestUtils.setField(cache, "maxEntryRows", 100);
+        ReflectionTestUtils.setField(cache, "endAlignment", Duration.ofMinutes(1));
+        ReflectionTestUtils.setField(cache, "ttl", Duration.ofMinutes(10));
+        cache.init();
+    }
+
+    @Test
+    void key_ShouldNormalizeUrisAndRoundRecentEndUp() {
+        LocalDateTime now = LocalDateTime.of(2024, 1, 2, 12, 0, 40);
+
+        StatsResultCache.Key recent = cache.key(START, now.minusSeconds(5), List.of("/b", "/a", "/b"), false, now);
+        StatsResultCache.Key past = cache.key(START, END.plusSeconds(5), null, false, now);
+
+        assertEquals(List.of("/a", "/b"), recent.uris());
+        assertEquals(LocalDateTime.of(2024, 1, 2, 12, 1), recent.end());
+        assertEquals(recent, cache.key(START, now.minusSeconds(30), List.of("/a", "/b"), false, now));
+        assertEquals(END.plusSeconds(5), past.end());
+    }
+
+    @Test
+    void writeFinished_ShouldIncrementCachedCountsInRange() {
+        StatsResultCache.Key key = cache.key(START, END, List.of("/events/1"), false, END.plusDays(1));
+        cache.put(key, cache.startLoading(), List.of(new ViewStats("app", "/events/1", 2L)));
+
+        write(List.of(hit("/events/1", START.plusHours(1)), hit("/events/1", END.plusHours(1)),
+                hit("/events/2", START.plusHours(1))));
+
+        assertEquals(Optional.of(List.of(new ViewStats("app", "/events/1", 3L))), cache.get(key));
+    }
+
+    @Test
+    void writeFinished_WhenEntryCountsUniqueIps_ShouldInvalidate() {
+        StatsResultCache.Key key = cache.key(START, END, null, true, END.plusDays(1));
+        cache.put(key, cache.startLoading(), List.of(new ViewStats("app", "/events/1", 2L)));
+
+        write(List.of(hit("/events/7", START.plusHours(1))));
+
+        assertTrue(cache.get(key).isEmpty());
+    }
+
+    @Test
+    void put_WhenMatchingWriteOverlapsLoading_ShouldNotCache() {
+        StatsResultCache.Key key = cache.key(START, END, List.of("/events/1"), false, END.plusDays(1));
+        long inFlight = cache.writeStarted(List.of(hit("/events/1", START.plusHours(1))));
+        StatsResultCache.Loading loading = cache.startLoading();
+        cache.writeFinished(inFlight, true);
+
+        cache.put(key, loading, List.of(new ViewStats("app", "/events/1", 1L)));
+        assertTrue(cache.get(key).isEmpty());
+
+        cache.put(key, cache.startLoading(), List.of(new ViewStats("app", "/events/1", 1L)));
+        assertTrue(cache.get(key).isPresent());
+    }
+
+    private void write(List<EndpointHit> hits) {
+        cache.writeFinished(cache.writeStarted(hits), true);
+    }
+
+    private static EndpointHit hit(String uri, LocalDateTime timestamp) {
+        return new EndpointHit(null, "app", uri, "192.168.1.1", timestamp);
+    }
+}
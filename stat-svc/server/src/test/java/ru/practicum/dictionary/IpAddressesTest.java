@@ -0,0 +1,31 @@
+package ru.practicum.dictionary;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpAddressesTest {
+
+    @Test
+    void encode_WhenIpv4_ShouldUseFourBytes() {
+        assertArrayEquals(new byte[]{(byte) 192, (byte) 168, 1, 10}, IpAddresses.encode("192.168.1.10"));
+        assertArrayEquals(IpAddresses.encode("10.0.0.1"), IpAddresses.encode("::ffff:10.0.0.1"));
+    }
+
+    @Test
+    void encode_WhenIpv6_ShouldUseSixteenBytesInCanonicalForm() {
+        assertEquals(16, IpAddresses.encode("2001:db8::1").length);
+        assertArrayEquals(IpAddresses.encode("2001:db8::1"), IpAddresses.encode("2001:0db8:0:0:0:0:0:1"));
+    }
+
+    @Test
+    void encode_WhenNotAnAddress_ShouldNotCollideWithAddresses() {
+        byte[] text = IpAddresses.encode("abc");
+        assertNotEquals(4, text.length);
+        assertNotEquals(4, IpAddresses.encode("256.1.1.1").length);
+        assertNotEquals(16, IpAddresses.encode("fifteen-chars!!").length);
+        assertFalse(Arrays.equals(text, IpAddresses.encode("255.97.98.99")));
+    }
+}
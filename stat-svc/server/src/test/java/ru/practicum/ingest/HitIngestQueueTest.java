@@ -0,0 +1,64 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.EndpointHit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class HitIngestQueueTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 0);
+
+    @Test
+    void offerAll_ShouldWriteEachUriInOrderWithinOneLane() throws Exception {
+        HitWriter hitWriter = mock(HitWriter.class);
+        Map<String, List<LocalDateTime>> written = new ConcurrentHashMap<>();
+        Map<String, Set<String>> writerThreads = new ConcurrentHashMap<>();
+        doAnswer(inv -> {
+            for (EndpointHit hit : inv.<List<EndpointHit>>getArgument(0)) {
+                written.computeIfAbsent(hit.getUri(), uri -> new ArrayList<>()).add(hit.getTimestamp());
+                writerThreads.computeIfAbsent(hit.getUri(), uri -> ConcurrentHashMap.newKeySet())
+                        .add(Thread.currentThread().getName());
+            }
+            return null;
+        }).when(hitWriter).write(any());
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        HitIngestQueue queue = new HitIngestQueue(hitWriter, new HitWal(hitWriter, meterRegistry),
+                new IngestOverloadGuard(meterRegistry), meterRegistry);
+        ReflectionTestUtils.setField(queue, "enabled", true);
+        ReflectionTestUtils.setField(queue, "queueCapacity", 4000);
+        ReflectionTestUtils.setField(queue, "laneCount", 4);
+        ReflectionTestUtils.setField(queue, "connectionPoolSize", 10);
+        ReflectionTestUtils.setField(queue, "flushSize", 7);
+        ReflectionTestUtils.setField(queue, "flushIntervalMs", 5L);
+        queue.start();
+
+        List<EndpointHit> hits = IntStream.range(0, 2000)
+                .mapToObj(i -> new EndpointHit(null, "app", "/events/" + (i % 20), "10.0.0.1", NOW.plusSeconds(i)))
+                .toList();
+        for (int i = 0; i < hits.size(); i += 50) {
+            assertEquals(50, queue.offerAll(hits.subList(i, i + 50)));
+        }
+        queue.stop();
+
+        assertEquals(20, written.size());
+        written.forEach((uri, timestamps) -> {
+            assertEquals(100, timestamps.size(), uri);
+            assertEquals(timestamps.stream().sorted().toList(), timestamps, uri);
+        });
+        assertTrue(writerThreads.values().stream().allMatch(threads -> threads.size() == 1));
+        assertTrue(writerThreads.values().stream().flatMap(Set::stream).distinct().count() > 1);
+    }
+}
@@ -0,0 +1,120 @@
+package ru.practicum.ingest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import jakarta.validation.Validation;
+import jakarta.validation.ValidatorFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.BinaryStatsCodec;
+import ru.practicum.EndpointHit;
+import ru.practicum.exception.InvalidHitException;
+import ru.practicum.exception.TooManyHitsException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HitStreamReaderTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 0, 7);
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private ValidatorFactory validatorFactory;
+    private HitStreamReader reader;
+    private List<List<EndpointHit>> batches;
+
+    @BeforeEach
+    void setUp() {
+        validatorFactory = Validation.buildDefaultValidatorFactory();
+        reader = new HitStreamReader(new ObjectMapper().registerModule(new JavaTimeModule()),
+                validatorFactory.getValidator());
+        ReflectionTestUtils.setField(reader, "batchSize", 2);
+        batches = new ArrayList<>();
+    }
+
+    @AfterEach
+    void tearDown() {
+        validatorFactory.close();
+    }
+
+    @Test
+    void readBinary_ShouldDecodeTheSameHitsAsJsonInBatches() throws Exception {
+        List<EndpointHit> hits = IntStream.range(0, 5)
+                .mapToObj(i -> new EndpointHit(null, "ewm-main-service", "/events/" + (i % 2), "10.0.0." + i,
+                        NOW.minusDays(i * 400L)))
+                .toList();
+        String json = "[" + String.join(",", hits.stream()
+                .map(hit -> String.format("{\"app\":\"%s\",\"uri\":\"%s\",\"ip\":\"%s\",\"timestamp\":\"%s\"}",
+                        hit.getApp(), hit.getUri(), hit.getIp(), hit.getTimestamp().format(FORMAT)))
+                .toList()) + "]";
+
+        long fromBinary = reader.readBinary(new ByteArrayInputStream(BinaryStatsCodec.encodeHits(hits)),
+                batches::add);
+        List<List<EndpointHit>> binaryBatches = new ArrayList<>(batches);
+        batches.clear();
+        reader.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), batches::add);
+
+        assertEquals(5, fromBinary);
+        assertEquals(List.of(2, 2, 1), binaryBatches.stream().map(List::size).toList());
+        assertEquals(hits, binaryBatches.stream().flatMap(List::stream).toList());
+        assertEquals(batches, binaryBatches);
+    }
+
+    @Test
+    void readBinary_ShouldRejectTruncatedAndInvalidHits() {
+        byte[] encoded = BinaryStatsCodec.encodeHits(List.of(
+                new EndpointHit(null, "ewm-main-service", "/events/1", "10.0.0.1", NOW),
+                new EndpointHit(null, "ewm-main-service", "/events/2", "10.0.0.2", NOW)));
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length - 3);
+        byte[] invalid = BinaryStatsCodec.encodeHits(List.of(
+                new EndpointHit(null, "ewm-main-service", "/events/1", "10.0.0.1", NOW),
+                new EndpointHit(null, "ewm-main-service", "", "10.0.0.2", NOW)));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> reader.readBinary(new ByteArrayInputStream(truncated), batches::add));
+        assertTrue(e.getMessage().contains("#1"), e.getMessage());
+        e = assertThrows(IllegalArgumentException.class,
+                () -> reader.readBinary(new ByteArrayInputStream(invalid), batches::add));
+        assertTrue(e.getMessage().contains("hit #1"), e.getMessage());
+    }
+
+    @Test
+    void read_WhenBadHitAfterFirstBatch_ShouldReportSavedHits() {
+        String body = "{\"app\":\"ewm\",\"uri\":\"/events/1\",\"ip\":\"10.0.0.1\",\"timestamp\":\"2024-05-01 12:00:00\"}\n"
+                .repeat(3) + "{\"app\":\"ewm\",\"uri\":\"\",\"ip\":\"10.0.0.1\",\"timestamp\":\"2024-05-01 12:00:00\"}\n";
+
+        InvalidHitException e = assertThrows(InvalidHitException.class,
+                () -> reader.read(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), batches::add));
+
+        assertTrue(e.getMessage().contains("hit #3"), e.getMessage());
+        assertEquals(2, e.getSavedHits());
+        assertEquals(List.of(2), batches.stream().map(List::size).toList());
+    }
+
+    @Test
+    void readBinary_WhenLaterBatchIsRejected_ShouldCountHitsOfEarlierBatches() {
+        List<EndpointHit> hits = IntStream.range(0, 5)
+                .mapToObj(i -> new EndpointHit(null, "ewm-main-service", "/events/1", "10.0.0." + i, NOW))
+                .toList();
+
+        TooManyHitsException e = assertThrows(TooManyHitsException.class,
+                () -> reader.readBinary(new ByteArrayInputStream(BinaryStatsCodec.encodeHits(hits)), batch -> {
+                    if (!batches.isEmpty()) {
+                        throw new TooManyHitsException("Hit ingest queue is full", null, 1L);
+                    }
+                    batches.add(batch);
+                }));
+
+        assertEquals(3, e.getSavedHits());
+    }
+}
@@ -0,0 +1,185 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.EndpointHit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class HitWalTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 0, 0, 500_000_000);
+
+    @TempDir
+    Path dir;
+
+    private HitWriter hitWriter;
+    private List<EndpointHit> replayed;
+    private HitWal wal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        hitWriter = mock(HitWriter.class);
+        replayed = new ArrayList<>();
+        doAnswer(inv -> replayed.addAll(inv.getArgument(0))).when(hitWriter).write(any());
+        wal = open(1 << 20);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        wal.stop();
+    }
+
+    @Test
+    void start_ShouldReplayOnlyHitsNotMarkedDone() throws Exception {
+        List<HitWal.Entry> entries = wal.append(List.of(hit("/events/1"), hit("/events/2"), hit("/events/3")));
+        wal.complete(entries.subList(0, 1));
+        wal.stop();
+
+        wal = open(1 << 20);
+
+        assertEquals(List.of(hit("/events/2"), hit("/events/3")), replayed);
+        assertEquals(1, logFiles().size());
+        wal.stop();
+        replayed.clear();
+        wal = open(1 << 20);
+        assertEquals(List.of(), replayed);
+    }
+
+    @Test
+    void complete_WhenRotatedFileIsDone_ShouldDeleteIt() throws Exception {
+        wal.stop();
+        wal = open(200);
+        List<HitWal.Entry> first = wal.append(List.of(hit("/events/1"), hit("/events/2")));
+        List<HitWal.Entry> second = wal.append(List.of(hit("/events/3"), hit("/events/4")));
+        assertEquals(2, logFiles().size());
+
+        wal.complete(first);
+
+        assertEquals(1, logFiles().size());
+        wal.complete(second);
+        wal.stop();
+        wal = open(200);
+        assertEquals(List.of(), replayed);
+    }
+
+    @Test
+    void complete_WhenRotatedFileIsDoneWhileOlderFileHasFailedHit_ShouldKeepItsDoneMarks() throws Exception {
+        wal.stop();
+        wal = open(200);
+        List<HitWal.Entry> first = wal.append(List.of(hit("/events/1"), hit("/events/2")));
+        List<HitWal.Entry> second = wal.append(List.of(hit("/events/3"), hit("/events/4")));
+        // Marks /events/1 done in the second file; /events/2 stays live, as after a failed flush.
+        wal.complete(first.subList(0, 1));
+        List<HitWal.Entry> third = wal.append(List.of(hit("/events/5"), hit("/events/6")));
+        assertEquals(3, logFiles().size());
+
+        wal.complete(second);
+        wal.complete(third);
+
+        assertEquals(3, logFiles().size());
+        wal.stop();
+        wal = open(200);
+        assertEquals(List.of(hit("/events/2")), replayed);
+    }
+
+    @Test
+    void start_WhenReplayedHitIsRejected_ShouldQuarantineItAndStart() throws Exception {
+        wal.append(List.of(hit("/events/1"), hit("/events/bad"), hit("/events/3")));
+        wal.stop();
+        doAnswer(inv -> {
+            List<EndpointHit> batch = inv.getArgument(0);
+            if (batch.contains(hit("/events/bad"))) {
+                throw new IllegalStateException("value too long");
+            }
+            return replayed.addAll(batch);
+        }).when(hitWriter).write(any());
+
+        wal = open(1 << 20);
+
+        assertEquals(List.of(hit("/events/1"), hit("/events/3")), replayed);
+        List<Path> quarantined = logFiles().stream()
+                .filter(file -> file.getFileName().toString().startsWith("quarantine-"))
+                .toList();
+        assertEquals(1, quarantined.size());
+        wal.stop();
+        replayed.clear();
+        doAnswer(inv -> replayed.addAll(inv.getArgument(0))).when(hitWriter).write(any());
+        Files.move(quarantined.get(0), dir.resolve("wal-000000000099.log"));
+        wal = open(1 << 20);
+        assertEquals(List.of(hit("/events/bad")), replayed);
+    }
+
+    @Test
+    void start_WhenTailIsTorn_ShouldReplayCompleteRecords() throws Exception {
+        wal.append(List.of(hit("/events/1")));
+        wal.append(List.of(hit("/events/2")));
+        wal.stop();
+        Path file = logFiles().get(0);
+        try (var channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        wal = open(1 << 20);
+
+        assertEquals(List.of(hit("/events/1")), replayed);
+    }
+
+    @Test
+    void append_AfterFailedWrite_ShouldReplayLaterRecords() throws Exception {
+        wal.append(List.of(hit("/events/1")));
+        Path file = logFiles().get(0);
+        try (var channel = Files.newByteChannel(file, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 40, 1, 2}));
+        }
+        Object active = ReflectionTestUtils.getField(wal, "active");
+        ((FileChannel) ReflectionTestUtils.getField(active, "channel")).close();
+
+        assertThrows(UncheckedIOException.class, () -> wal.append(List.of(hit("/events/2"))));
+        wal.append(List.of(hit("/events/3")));
+        wal.stop();
+
+        wal = open(1 << 20);
+
+        assertEquals(List.of(hit("/events/1"), hit("/events/3")), replayed);
+    }
+
+    private HitWal open(long segmentBytes) throws IOException {
+        HitWal opened = new HitWal(hitWriter, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(opened, "enabled", true);
+        ReflectionTestUtils.setField(opened, "dir", dir.toString());
+        ReflectionTestUtils.setField(opened, "fsync", true);
+        ReflectionTestUtils.setField(opened, "segmentBytes", segmentBytes);
+        ReflectionTestUtils.setField(opened, "replayBatchSize", 2);
+        opened.start();
+        return opened;
+    }
+
+    private List<Path> logFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().toList();
+        }
+    }
+
+    private static EndpointHit hit(String uri) {
+        return new EndpointHit(null, "app", uri, "192.168.1.1", NOW);
+    }
+}
@@ -0,0 +1,96 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.EndpointHit;
+import ru.practicum.exception.TooManyHitsException;
+import ru.practicum.model.enums.OverloadMode;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestOverloadGuardTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 0);
+    private static final long SLOW = Duration.ofMillis(500).toNanos();
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+
+    @Test
+    void evaluate_InSampleMode_ShouldStepRateWithPressureAndWeightKeptHits() {
+        IngestOverloadGuard guard = guard(OverloadMode.SAMPLE);
+        List<EndpointHit> hits = IntStream.range(0, 1000)
+                .mapToObj(i -> new EndpointHit(null, "app", "/events/" + (i % 10), "10.0." + i / 256 + "." + i % 256,
+                        NOW))
+                .toList();
+
+        assertSame(hits, guard.admit(hits));
+        guard.recordWrite(SLOW);
+        guard.evaluate();
+        guard.recordWrite(SLOW);
+        guard.evaluate();
+        assertEquals(4, guard.getSampleRate());
+
+        List<EndpointHit> kept = guard.admit(hits);
+        assertTrue(kept.size() > 150 && kept.size() < 350, "kept " + kept.size());
+        assertTrue(kept.stream().allMatch(hit -> SampledHit.weightOf(hit) == 4));
+
+        guard.recordWrite(FAST);
+        guard.evaluate();
+        assertEquals(2, guard.getSampleRate());
+        guard.evaluate();
+        assertEquals(1, guard.getSampleRate());
+        assertSame(hits, guard.admit(hits));
+    }
+
+    @Test
+    void admit_WhenSampling_ShouldEstimateHitsOfOneHeavyVisitor() {
+        IngestOverloadGuard guard = guard(OverloadMode.SAMPLE);
+        guard.recordWrite(SLOW);
+        guard.evaluate();
+        guard.recordWrite(SLOW);
+        guard.evaluate();
+        List<EndpointHit> hits = IntStream.range(0, 10_000)
+                .mapToObj(i -> new EndpointHit(null, "app", "/events/1", "10.0.0.1", NOW.plusSeconds(i)))
+                .toList();
+
+        long estimate = 0;
+        for (int from = 0; from < hits.size(); from += 100) {
+            estimate += guard.admit(hits.subList(from, from + 100)).stream().mapToLong(SampledHit::weightOf).sum();
+        }
+
+        assertEquals(10_000, estimate, 1_000);
+    }
+
+    @Test
+    void evaluate_InShedMode_ShouldRejectWhileQueueIsFull() {
+        IngestOverloadGuard guard = guard(OverloadMode.SHED);
+        List<EndpointHit> hits = List.of(new EndpointHit(null, "app", "/events/1", "10.0.0.1", NOW));
+
+        guard.recordQueueDepth(90, 100);
+        guard.evaluate();
+        TooManyHitsException e = assertThrows(TooManyHitsException.class, () -> guard.admit(hits));
+        assertEquals(Duration.ofSeconds(2), e.getRetryAfter());
+        assertEquals(1, guard.getSampleRate());
+
+        guard.recordQueueDepth(10, 100);
+        guard.evaluate();
+        assertFalse(guard.isShedding());
+        assertSame(hits, guard.admit(hits));
+    }
+
+    private static IngestOverloadGuard guard(OverloadMode mode) {
+        IngestOverloadGuard guard = new IngestOverloadGuard(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(guard, "mode", mode);
+        ReflectionTestUtils.setField(guard, "latencyThreshold", Duration.ofMillis(250));
+        ReflectionTestUtils.setField(guard, "queueThreshold", 0.5);
+        ReflectionTestUtils.setField(guard, "maxSampleRate", 4);
+        ReflectionTestUtils.setField(guard, "retryAfter", Duration.ofSeconds(2));
+        guard.init();
+        return guard;
+    }
+}
@@ -0,0 +1,57 @@
+package ru.practicum.model;
+
+import org.junit.jupiter.api.Test;
+import ru.practicum.model.enums.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollupQueryPlanTest {
+
+    @Test
+    void of_WhenRangeSpansDays_ShouldUseCoarsestBucketsAndRawEdges() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 22, 58, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 4, 1, 2, 10);
+
+        RollupQueryPlan plan = RollupQueryPlan.of(start, end);
+
+        assertEquals(List.of(
+                new RollupQueryPlan.Segment(RollupGranularity.MINUTE, at(1, 22, 59), at(1, 23, 0), false),
+                new RollupQueryPlan.Segment(RollupGranularity.HOUR, at(1, 23, 0), at(2, 0, 0), false),
+                new RollupQueryPlan.Segment(RollupGranularity.DAY, at(2, 0, 0), at(4, 0, 0), false),
+                new RollupQueryPlan.Segment(RollupGranularity.HOUR, at(4, 0, 0), at(4, 1, 0), false),
+                new RollupQueryPlan.Segment(RollupGranularity.MINUTE, at(4, 1, 0), at(4, 1, 2), false)
+        ), plan.getRollupSegments());
+        assertEquals(List.of(
+                new RollupQueryPlan.Segment(null, start, at(1, 22, 59), false),
+                new RollupQueryPlan.Segment(null, at(4, 1, 2), end, true)
+        ), plan.getRawSegments());
+    }
+
+    @Test
+    void of_WhenRangeIsAligned_ShouldOnlyScanEndBucketRaw() {
+        RollupQueryPlan plan = RollupQueryPlan.of(at(1, 0, 0), at(2, 0, 0));
+
+        assertEquals(List.of(new RollupQueryPlan.Segment(RollupGranularity.DAY, at(1, 0, 0), at(2, 0, 0), false)),
+                plan.getRollupSegments());
+        assertEquals(List.of(new RollupQueryPlan.Segment(null, at(2, 0, 0), at(2, 0, 0), true)),
+                plan.getRawSegments());
+    }
+
+    @Test
+    void of_WhenRangeIsInsideOneMinute_ShouldScanRawOnly() {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 0, 5);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 1, 10, 0, 50);
+
+        RollupQueryPlan plan = RollupQueryPlan.of(start, end);
+
+        assertTrue(plan.getRollupSegments().isEmpty());
+        assertEquals(List.of(new RollupQueryPlan.Segment(null, start, end, true)), plan.getRawSegments());
+    }
+
+    private static LocalDateTime at(int day, int hour, int minute) {
+        return LocalDateTime.of(2024, 1, day, hour, minute);
+    }
+}
@@ -0,0 +1,154 @@
+package ru.practicum.partition;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.EndpointHit;
+import ru.practicum.model.enums.PartitionInterval;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HitPartitionManagerTest {
+
+    private InMemoryPartitionDialect dialect;
+    private List<LocalDateTime> cuts;
+    private HitPartitionManager manager;
+
+    @BeforeEach
+    void setUp() {
+        dialect = new InMemoryPartitionDialect();
+        cuts = new ArrayList<>();
+        manager = new HitPartitionManager(dialect, List.of(cuts::add));
+        ReflectionTestUtils.setField(manager, "enabled", true);
+        ReflectionTestUtils.setField(manager, "interval", PartitionInterval.DAY);
+        ReflectionTestUtils.setField(manager, "premake", 2);
+        ReflectionTestUtils.setField(manager, "retentionDays", 0);
+        ReflectionTestUtils.setField(manager, "retentionMode", "drop");
+    }
+
+    @Test
+    void maintain_ShouldPremakeUpcomingPartitions() {
+        manager.maintain(LocalDateTime.of(2024, 1, 31, 12, 0));
+
+        assertEquals(Set.of("endpoint_hits_p20240131", "endpoint_hits_p20240201", "endpoint_hits_p20240202"),
+                dialect.partitions.keySet());
+        assertEquals(LocalDateTime.of(2024, 2, 1, 0, 0), dialect.partitions.get("endpoint_hits_p20240131")[1]);
+    }
+
+    @Test
+    void maintain_WhenRetentionSet_ShouldDropOnlyExpiredPartitions() {
+        manager.maintain(LocalDateTime.of(2024, 1, 1, 0, 0));
+        ReflectionTestUtils.setField(manager, "retentionDays", 2);
+
+        manager.maintain(LocalDateTime.of(2024, 1, 4, 1, 0));
+
+        assertEquals(Set.of("endpoint_hits_p20240102", "endpoint_hits_p20240103", "endpoint_hits_p20240104",
+                "endpoint_hits_p20240105", "endpoint_hits_p20240106"), dialect.partitions.keySet());
+        assertEquals(LocalDateTime.of(2024, 1, 2, 0, 0), dialect.purgedBefore);
+    }
+
+    @Test
+    void maintain_WhenRetentionSet_ShouldCutDerivedDataAtFirstKeptPartition() {
+        ReflectionTestUtils.setField(manager, "interval", PartitionInterval.MONTH);
+        ReflectionTestUtils.setField(manager, "retentionDays", 10);
+
+        manager.maintain(LocalDateTime.of(2024, 3, 5, 12, 0));
+
+        assertEquals(List.of(LocalDateTime.of(2024, 2, 1, 0, 0)), cuts);
+        assertEquals(LocalDateTime.of(2024, 2, 1, 0, 0), dialect.purgedBefore);
+    }
+
+    @Test
+    void maintain_WhenNoRetention_ShouldKeepDerivedData() {
+        manager.maintain(LocalDateTime.of(2024, 3, 5, 12, 0));
+
+        assertTrue(cuts.isEmpty());
+    }
+
+    @Test
+    void maintain_WhenDetachMode_ShouldArchiveExpiredPartitions() {
+        ReflectionTestUtils.setField(manager, "retentionDays", 1);
+        ReflectionTestUtils.setField(manager, "retentionMode", "detach");
+        manager.maintain(LocalDateTime.of(2024, 1, 1, 0, 0));
+
+        manager.maintain(LocalDateTime.of(2024, 1, 3, 0, 0));
+
+        assertEquals(Set.of("endpoint_hits_archive_p20240101"), dialect.archived);
+        assertTrue(dialect.partitions.containsKey("endpoint_hits_p20240102"));
+    }
+
+    @Test
+    void ensurePartitions_ShouldCreateMissingPartitionOnce() {
+        LocalDateTime timestamp = LocalDateTime.of(2023, 6, 15, 8, 30);
+
+        manager.ensurePartitions(List.of(hitAt(timestamp), hitAt(timestamp.plusHours(3))));
+        manager.ensurePartitions(List.of(hitAt(timestamp)));
+
+        assertEquals(Set.of("endpoint_hits_p20230615"), dialect.partitions.keySet());
+        assertEquals(1, dialect.created);
+    }
+
+    @Test
+    void ensurePartitions_WhenDisabled_ShouldDoNothing() {
+        ReflectionTestUtils.setField(manager, "enabled", false);
+
+        manager.ensurePartitions(List.of(hitAt(LocalDateTime.now())));
+
+        assertTrue(dialect.partitions.isEmpty());
+    }
+
+    private static EndpointHit hitAt(LocalDateTime timestamp) {
+        return new EndpointHit(null, "app", "/uri", "192.168.1.1", timestamp);
+    }
+
+    private static class InMemoryPartitionDialect implements PartitionDialect {
+        private final Map<String, LocalDateTime[]> partitions = new TreeMap<>();
+        private final Set<String> archived = new HashSet<>();
+        private LocalDateTime purgedBefore;
+        private int created;
+
+        @Override
+        public void ensurePartitionedTable(PartitionInterval interval) {
+        }
+
+        @Override
+        public Set<String> listPartitions() {
+            return Set.copyOf(partitions.keySet());
+        }
+
+        @Override
+        public void createPartition(String name, LocalDateTime from, LocalDateTime to) {
+            for (LocalDateTime[] range : partitions.values()) {
+                if (from.isBefore(range[1]) && range[0].isBefore(to)) {
+                    throw new IllegalStateException("Partition " + name + " overlaps an existing partition");
+                }
+            }
+            partitions.put(name, new LocalDateTime[]{from, to});
+            created++;
+        }
+
+        @Override
+        public void dropPartition(String name) {
+            partitions.remove(name);
+        }
+
+        @Override
+        public void detachPartition(String name, String archiveName) {
+            partitions.remove(name);
+            archived.add(archiveName);
+        }
+
+        @Override
+        public void purgeDefaultPartitionBefore(LocalDateTime horizon) {
+            purgedBefore = horizon;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package ru.practicum.repository;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.archive.HitArchive;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.model.HitKey;
+import ru.practicum.storage.HitStorage;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class FirstSeenRepositoryTest {
+
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 5, 1, 0, 0);
+
+    @TempDir
+    Path dir;
+
+    private HitStorage hitStorage;
+    private FirstSeenRepository firstSeen;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + dir.getFileName()
+                + ";MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE hit_first_seen (app_id INTEGER, uri_id BIGINT, ip VARBINARY(16)," +
+                " first_seen TIMESTAMP, PRIMARY KEY (uri_id, app_id, ip))");
+        jdbcTemplate.execute("CREATE TABLE hit_first_seen_day (app_id INTEGER, uri_id BIGINT, bucket TIMESTAMP," +
+                " visitors BIGINT, PRIMARY KEY (uri_id, bucket, app_id))");
+
+        HitDictionary hitDictionary = mock(HitDictionary.class);
+        when(hitDictionary.appId(anyString())).thenReturn(1);
+        when(hitDictionary.uriId(anyString())).thenAnswer(inv -> uriId(inv.getArgument(0)));
+        when(hitDictionary.findUriIds(any())).thenAnswer(inv -> inv.<Collection<String>>getArgument(0).stream()
+                .map(FirstSeenRepositoryTest::uriId).toList());
+        when(hitDictionary.key(anyLong(), anyLong()))
+                .thenAnswer(inv -> new HitKey("app", "/events/" + inv.<Long>getArgument(1)));
+        when(hitDictionary.decode(any())).thenAnswer(inv -> inv.<List<HitDictionary.IdCount>>getArgument(0).stream()
+                .map(row -> new ViewStats("app", "/events/" + row.uriId(), row.hits())).toList());
+        hitStorage = mock(HitStorage.class);
+        firstSeen = new FirstSeenRepository(jdbcTemplate, hitDictionary, mock(HitArchive.class));
+        ReflectionTestUtils.setField(firstSeen, "fetchSize", 100);
+        firstSeen.init();
+
+        firstSeen.record(List.of(
+                hit(1, "10.0.0.1", DAY.plusHours(1)),
+                hit(1, "10.0.0.2", DAY.plusHours(2)),
+                hit(2, "10.0.0.1", DAY.plusDays(2).plusHours(1)),
+                hit(2, "10.0.0.3", DAY.plusDays(3).plusHours(1))));
+    }
+
+    @Test
+    void streamUniqueStats_WhenEveryUriWasVisitedBeforeStartDay_ShouldOnlyReadRawHits() {
+        LocalDateTime start = DAY.plusDays(5);
+        LocalDateTime end = DAY.plusDays(6);
+        List<String> uris = List.of("/events/1", "/events/2");
+        Consumer<ViewStats> consumer = stat -> {
+        };
+
+        firstSeen.streamUniqueStats(start, end, uris, 10, hitStorage, consumer);
+        firstSeen.streamUniqueStats(start, end, null, 10, hitStorage, consumer);
+
+        verify(hitStorage).streamUniqueStats(start, end, uris, 10, consumer);
+        verify(hitStorage).streamUniqueStats(start, end, null, 10, consumer);
+        verifyNoMoreInteractions(hitStorage);
+    }
+
+    @Test
+    void streamUniqueStats_WhenStartIsBeforeEveryFirstVisit_ShouldCountFromFirstHits() {
+        List<ViewStats> stats = new ArrayList<>();
+
+        firstSeen.streamUniqueStats(DAY, DAY.plusDays(3).plusHours(2), null, null, hitStorage, stats::add);
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 2L), new ViewStats("app", "/events/2", 2L)), stats);
+        verifyNoInteractions(hitStorage);
+    }
+
+    @Test
+    void streamUniqueStats_WhenOnlySomeUrisWereVisitedBeforeStartDay_ShouldReadRawHitsOfThose() {
+        doAnswer(inv -> {
+            inv.<Consumer<ViewStats>>getArgument(4).accept(new ViewStats("app", "/events/1", 1L));
+            return null;
+        }).when(hitStorage).streamUniqueStats(any(), any(), eq(List.of("/events/1")), isNull(), any());
+        List<ViewStats> stats = new ArrayList<>();
+
+        firstSeen.streamUniqueStats(DAY.plusDays(1), DAY.plusDays(4), List.of("/events/1", "/events/2"), null,
+                hitStorage, stats::add);
+
+        assertEquals(List.of(new ViewStats("app", "/events/2", 2L), new ViewStats("app", "/events/1", 1L)), stats);
+    }
+
+    private static long uriId(String uri) {
+        return Long.parseLong(uri.substring("/events/".length()));
+    }
+
+    private static EndpointHit hit(int event, String ip, LocalDateTime timestamp) {
+        return new EndpointHit(null, "app", "/events/" + event, ip, timestamp);
+    }
+}
@@ -0,0 +1,87 @@
+package ru.practicum.repository;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.EndpointHit;
+import ru.practicum.archive.HitArchive;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.storage.HitStorage;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class HitRollupRepositoryTest {
+
+    @TempDir
+    Path dir;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactionTemplate;
+    private HitRollupRepository rollups;
+
+    @BeforeEach
+    void setUp() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + dir.getFileName() + ";DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            jdbcTemplate.execute("CREATE TABLE " + granularity.getTable() + " (app_id INTEGER, uri_id BIGINT," +
+                    " bucket TIMESTAMP, hits BIGINT, PRIMARY KEY (uri_id, bucket, app_id))");
+        }
+        transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        HitDictionary hitDictionary = mock(HitDictionary.class);
+        when(hitDictionary.appId(anyString())).thenReturn(1);
+        when(hitDictionary.uriId(anyString())).thenReturn(1L);
+        rollups = new HitRollupRepository(jdbcTemplate, hitDictionary, mock(HitArchive.class), mock(HitStorage.class));
+        ReflectionTestUtils.setField(rollups, "fetchSize", 100);
+        rollups.init();
+    }
+
+    @Test
+    void increment_WhenConcurrentWritersAddSameNewBucket_ShouldCountBoth() throws Exception {
+        List<EndpointHit> hits = List.of(new EndpointHit(null, "app", "/events/1", "10.0.0.1",
+                LocalDateTime.of(2024, 5, 1, 12, 0)));
+        CountDownLatch incremented = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(
+                status -> {
+                    rollups.increment(hits);
+                    incremented.countDown();
+                    await(commit);
+                }));
+        assertTrue(incremented.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> transactionTemplate.executeWithoutResult(
+                status -> rollups.increment(hits)));
+        Thread.sleep(200);
+        commit.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            assertEquals(2L, jdbcTemplate.queryForObject("SELECT hits FROM " + granularity.getTable(), Long.class));
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,38 +1,166 @@
 package ru.practicum.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
+import org.h2.jdbcx.JdbcDataSource;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
 import ru.practicum.EndpointHit;
+import ru.practicum.TimeSeries;
+import ru.practicum.archive.HitArchive;
+import ru.practicum.cache.StatsResultCache;
+import ru.practicum.datasource.ReplicaDataSource;
+import ru.practicum.dictionary.HitDictionary;
 import ru.practicum.ViewStats;
-import ru.practicum.model.EndpointHitEntity;
-import ru.practicum.repository.StatsRepository;
+import ru.practicum.exception.TooManyHitsException;
+import ru.practicum.ingest.HitIngestQueue;
+import ru.practicum.ingest.HitWriter;
+import ru.practicum.ingest.IngestOverloadGuard;
+import ru.practicum.ingest.SampledHit;
+import ru.practicum.model.HitKey;
+import ru.practicum.model.RollupQueryPlan;
+import ru.practicum.model.enums.RollupGranularity;
+import ru.practicum.repository.FirstSeenRepository;
+import ru.practicum.repository.HitRollupRepository;
+import ru.practicum.repository.HitSketchRepository;
+import ru.practicum.storage.HitStorage;
+import ru.practicum.storage.SegmentHitStorage;
+import ru.practicum.window.HotWindowCounters;
+import ru.practicum.window.TopUriTracker;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class StatsServiceImplTest {
 
     @Mock
-    private StatsRepository statsRepository;
+    private HitStorage hitStorage;
+
+    @Mock
+    private HitIngestQueue hitIngestQueue;
+
+    @Mock
+    private HitWriter hitWriter;
+
+    @Spy
+    private IngestOverloadGuard ingestOverloadGuard = new IngestOverloadGuard(new SimpleMeterRegistry());
+
+    @Mock
+    private HitRollupRepository hitRollupRepository;
+
+    @Mock
+    private HitSketchRepository hitSketchRepository;
+
+    @Mock
+    private FirstSeenRepository firstSeenRepository;
+
+    @Mock
+    private HotWindowCounters hotWindowCounters;
+
+    @Mock
+    private TopUriTracker topUriTracker;
+
+    @Mock
+    private HitDictionary hitDictionary;
+
+    @Mock
+    private StatsResultCache statsResultCache;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ObjectProvider<ReplicaDataSource> replicaDataSource;
 
     @InjectMocks
     private StatsServiceImpl statsService;
 
+    @TempDir
+    Path dir;
+
     @Test
     void saveHit_ShouldSaveEntity() {
         EndpointHit hit = new EndpointHit(null, "app", "/uri", "192.168.1.1", LocalDateTime.now());
 
         statsService.saveHit(hit);
 
-        verify(statsRepository, times(1)).save(any(EndpointHitEntity.class));
+        verify(hitWriter, times(1)).write(List.of(hit));
+    }
+
+    @Test
+    void saveHit_WhenAsyncEnabled_ShouldEnqueueWithoutSaving() {
+        EndpointHit hit = new EndpointHit(null, "app", "/uri", "192.168.1.1", LocalDateTime.now());
+        when(hitIngestQueue.isEnabled()).thenReturn(true);
+        when(hitIngestQueue.offer(hit)).thenReturn(true);
+
+        statsService.saveHit(hit);
+
+        verify(hitIngestQueue, times(1)).offer(hit);
+        verify(hitWriter, never()).write(any());
+    }
+
+    @Test
+    void saveHit_WhenAsyncQueueFull_ShouldThrowTooManyHits() {
+        EndpointHit hit = new EndpointHit(null, "app", "/uri", "192.168.1.1", LocalDateTime.now());
+        when(hitIngestQueue.isEnabled()).thenReturn(true);
+        when(hitIngestQueue.offer(hit)).thenReturn(false);
+
+        assertThrows(TooManyHitsException.class, () -> statsService.saveHit(hit));
+        verify(hitWriter, never()).write(any());
+    }
+
+    @Test
+    void saveHits_ShouldWriteWholeBatch() {
+        List<EndpointHit> hits = List.of(
+                new EndpointHit(null, "app", "/uri/1", "192.168.1.1", LocalDateTime.now()),
+                new EndpointHit(null, "app", "/uri/2", "192.168.1.2", LocalDateTime.now()));
+
+        statsService.saveHits(hits);
+
+        verify(hitWriter, times(1)).write(hits);
+    }
+
+    @Test
+    void saveHits_WhenQueueFillsAfterSampling_ShouldReportRequestPositionOfFirstRejectedHit() {
+        List<EndpointHit> hits = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            hits.add(new EndpointHit(null, "app", "/uri/" + i, "192.168.1.1", LocalDateTime.now()));
+        }
+        List<EndpointHit> admitted = List.of(new SampledHit(hits.get(1), 4), new SampledHit(hits.get(3), 4));
+        doReturn(admitted).when(ingestOverloadGuard).admit(hits);
+        when(hitIngestQueue.isEnabled()).thenReturn(true);
+        when(hitIngestQueue.offerAll(admitted)).thenReturn(1);
+
+        TooManyHitsException e = assertThrows(TooManyHitsException.class, () -> statsService.saveHits(hits));
+
+        assertEquals(3L, e.getSavedHits());
     }
 
     @Test
@@ -41,14 +169,96 @@ class StatsServiceImplTest {
         LocalDateTime end = LocalDateTime.now();
         List<String> uris = List.of("/events/1");
 
-        when(statsRepository.findStats(start, end, uris))
-                .thenReturn(List.of(new ViewStats("app", "/events/1", 5L)));
+        doAnswer(invocation -> {
+            invocation.<Consumer<ViewStats>>getArgument(4).accept(new ViewStats("app", "/events/1", 5L));
+            return null;
+        }).when(hitStorage).streamStats(eq(start), eq(end), eq(uris), isNull(), any());
 
         List<ViewStats> result = statsService.getStats(start, end, uris, false);
 
         assertEquals(1, result.size());
-        verify(statsRepository, times(1)).findStats(start, end, uris);
-        verify(statsRepository, never()).findUniqueStats(any(), any(), any());
+        verify(hitStorage, never()).streamUniqueStats(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void getStats_WhenRollupsEnabled_ShouldQueryRollupPlan() {
+        ReflectionTestUtils.setField(statsService, "rollupsEnabled", true);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 3, 8, 0, 0);
+        List<String> uris = List.of("/events/1");
+
+        doAnswer(invocation -> {
+            invocation.<Consumer<ViewStats>>getArgument(3).accept(new ViewStats("app", "/events/1", 5L));
+            return null;
+        }).when(hitRollupRepository).streamStats(eq(RollupQueryPlan.of(start, end)), eq(uris), eq(10), any());
+
+        List<ViewStats> result = new ArrayList<>();
+        statsService.streamStats(start, end, uris, null, false, 10, result::add);
+
+        assertEquals(5L, result.get(0).getHits());
+        verify(hitStorage, never()).streamStats(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void getStats_WhenSegmentEngineAndRollupsEnabled_ShouldCountRawEdgesFromSegments() throws IOException {
+        ReflectionTestUtils.setField(statsService, "rollupsEnabled", true);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 3, 8, 0, 0);
+        SegmentHitStorage segments = useSegmentEngine(
+                hit("10.0.0.1", start.minusSeconds(20)),
+                hit("10.0.0.1", start.plusSeconds(10)),
+                hit("10.0.0.2", LocalDateTime.of(2024, 1, 1, 12, 0)),
+                hit("10.0.0.3", LocalDateTime.of(2024, 1, 2, 5, 0)),
+                hit("10.0.0.4", end.minusSeconds(1)),
+                hit("10.0.0.5", end));
+        when(hitDictionary.decode(any())).thenAnswer(invocation -> invocation.<List<HitDictionary.IdCount>>getArgument(0)
+                .stream().map(row -> new ViewStats("app", "/events/1", row.hits())).toList());
+
+        try {
+            assertEquals(List.of(new ViewStats("app", "/events/1", 5L)),
+                    statsService.getStats(start, end, List.of("/events/1"), false));
+        } finally {
+            segments.close();
+        }
+    }
+
+    @Test
+    void getApproxUniqueStats_WhenSegmentEngine_ShouldReadPartialHoursFromSegments() throws IOException {
+        ReflectionTestUtils.setField(statsService, "sketchesEnabled", true);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 10, 15, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 1, 3, 8, 30, 0);
+        SegmentHitStorage segments = useSegmentEngine(
+                hit("10.0.0.1", start.plusMinutes(1)),
+                hit("10.0.0.2", start.plusMinutes(2)),
+                hit("10.0.0.2", LocalDateTime.of(2024, 1, 2, 5, 0)),
+                hit("10.0.0.3", LocalDateTime.of(2024, 1, 2, 5, 0)),
+                hit("10.0.0.4", end.minusMinutes(1)),
+                hit("10.0.0.5", end.plusMinutes(1)));
+        when(hitDictionary.key(1, 1)).thenReturn(new HitKey("app", "/events/1"));
+
+        try {
+            assertEquals(List.of(new ViewStats("app", "/events/1", 4L)),
+                    statsService.getApproxUniqueStats(start, end, List.of("/events/1"), null, null));
+        } finally {
+            segments.close();
+        }
+    }
+
+    @Test
+    void getStats_WhenHotWindowCoversRange_ShouldNotQueryDatabase() {
+        LocalDateTime start = LocalDateTime.now().minusHours(2);
+        LocalDateTime end = LocalDateTime.now();
+        List<String> uris = List.of("/events/1");
+
+        when(hotWindowCounters.findStats(start, end, uris)).thenReturn(Optional.of(List.of(
+                new ViewStats("app", "/events/1", 7L), new ViewStats("app", "/events/2", 3L))));
+
+        List<ViewStats> result = new ArrayList<>();
+        statsService.streamStats(start, end, uris, null, false, 1, result::add);
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 7L)), result);
+        verify(hitStorage, never()).streamStats(any(), any(), any(), any(), any());
+        verify(hitRollupRepository, never()).streamStats(any(), any(), any(), any());
     }
 
     @Test
@@ -57,14 +267,33 @@ class StatsServiceImplTest {
         LocalDateTime end = LocalDateTime.now();
         List<String> uris = List.of("/events/1");
 
-        when(statsRepository.findUniqueStats(start, end, uris))
-                .thenReturn(List.of(new ViewStats("app", "/events/1", 3L)));
+        doAnswer(invocation -> {
+            invocation.<Consumer<ViewStats>>getArgument(4).accept(new ViewStats("app", "/events/1", 3L));
+            return null;
+        }).when(hitStorage).streamUniqueStats(eq(start), eq(end), eq(uris), isNull(), any());
 
         List<ViewStats> result = statsService.getStats(start, end, uris, true);
 
         assertEquals(1, result.size());
-        verify(statsRepository, times(1)).findUniqueStats(start, end, uris);
-        verify(statsRepository, never()).findStats(any(), any(), any());
+        verify(hitStorage, never()).streamStats(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void getStats_WhenFirstSeenEnabled_ShouldCountUniqueFromFirstHits() {
+        LocalDateTime start = LocalDateTime.now().minusDays(1);
+        LocalDateTime end = LocalDateTime.now();
+        List<String> uris = List.of("/events/1");
+
+        when(firstSeenRepository.isEnabled()).thenReturn(true);
+        doAnswer(invocation -> {
+            invocation.<Consumer<ViewStats>>getArgument(5).accept(new ViewStats("app", "/events/1", 4L));
+            return null;
+        }).when(firstSeenRepository).streamUniqueStats(eq(start), eq(end), eq(uris), isNull(), same(hitStorage), any());
+
+        List<ViewStats> result = statsService.getStats(start, end, uris, true);
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 4L)), result);
+        verify(hitStorage, never()).streamUniqueStats(any(), any(), any(), any(), any());
     }
 
     @Test
@@ -75,4 +304,179 @@ class StatsServiceImplTest {
         assertThrows(IllegalArgumentException.class,
                 () -> statsService.getStats(start, end, null, false));
     }
-}
\ No newline at end of file
+
+    @Test
+    void streamStats_WhenLimitNotPositive_ShouldThrowException() {
+        LocalDateTime end = LocalDateTime.now();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> statsService.streamStats(end.minusDays(1), end, null, null, false, 0, stat -> { }));
+    }
+
+    @Test
+    void getTopStats_WhenKNotPositive_ShouldThrowException() {
+        when(topUriTracker.isEnabled()).thenReturn(true);
+
+        assertThrows(IllegalArgumentException.class, () -> statsService.getTopStats("app", Duration.ofHours(1), 0));
+        verify(topUriTracker, never()).findTop(any(), any(), anyInt());
+    }
+
+    @Test
+    void getPrefixStats_ShouldSumHitsPerAppAndPrefix() {
+        LocalDateTime start = LocalDateTime.now().minusDays(10);
+        LocalDateTime end = LocalDateTime.now().minusDays(5);
+        when(hitDictionary.findUrisByPrefix("/events/"))
+                .thenReturn(new TreeMap<>(Map.of("/events/1", 1L, "/events/2", 2L)));
+        when(hitDictionary.findUrisByPrefix("/compilations/")).thenReturn(new TreeMap<>());
+        when(hotWindowCounters.findStats(any(), any(), any())).thenReturn(Optional.empty());
+        doAnswer(invocation -> {
+            Consumer<ViewStats> consumer = invocation.getArgument(4);
+            consumer.accept(new ViewStats("app", "/events/1", 5L));
+            consumer.accept(new ViewStats("app", "/events/2", 2L));
+            consumer.accept(new ViewStats("other", "/events/2", 1L));
+            return null;
+        }).when(hitStorage).streamStats(eq(start), eq(end), eq(List.of("/events/1", "/events/2")), isNull(), any());
+
+        List<ViewStats> result = statsService.getPrefixStats(start, end, List.of("/events/", "/compilations/"), false,
+                null);
+
+        assertEquals(List.of(new ViewStats("app", "/events/", 7L), new ViewStats("other", "/events/", 1L)), result);
+    }
+
+    @Test
+    void streamStats_WhenResultCached_ShouldNotQueryDatabase() {
+        LocalDateTime start = LocalDateTime.now().minusDays(1);
+        LocalDateTime end = LocalDateTime.now();
+        List<String> uris = List.of("/events/1");
+        StatsResultCache.Key key = new StatsResultCache.Key(start, end, uris, false);
+        when(statsResultCache.isEnabled()).thenReturn(true);
+        when(statsResultCache.key(start, end, uris, false)).thenReturn(key);
+        when(statsResultCache.get(key)).thenReturn(Optional.of(List.of(new ViewStats("app", "/events/1", 4L))));
+
+        List<ViewStats> result = statsService.getStats(start, end, uris, false);
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 4L)), result);
+        verifyNoInteractions(hitStorage, hitRollupRepository, hotWindowCounters);
+    }
+
+    @Test
+    void streamStats_WhenResultCachedAfterMissWithReplica_ShouldLoadOnPrimary() {
+        LocalDateTime start = LocalDateTime.now().minusDays(1);
+        LocalDateTime end = LocalDateTime.now();
+        List<String> uris = List.of("/events/1");
+        StatsResultCache.Key key = new StatsResultCache.Key(start, end, uris, false);
+        StatsResultCache.Loading loading = new StatsResultCache.Loading(0);
+        when(statsResultCache.isEnabled()).thenReturn(true);
+        when(statsResultCache.key(start, end, uris, false)).thenReturn(key);
+        when(statsResultCache.get(key)).thenReturn(Optional.empty());
+        when(statsResultCache.startLoading()).thenReturn(loading);
+        when(statsResultCache.getMaxEntryRows()).thenReturn(100);
+        when(replicaDataSource.getIfAvailable()).thenReturn(mock(ReplicaDataSource.class));
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        doAnswer(invocation -> {
+            invocation.<Consumer<ViewStats>>getArgument(4).accept(new ViewStats("app", "/events/1", 4L));
+            return null;
+        }).when(hitStorage).streamStats(eq(start), eq(end), eq(uris), isNull(), any());
+        statsService.init();
+
+        List<ViewStats> result = statsService.getStats(start, end, uris, false);
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 4L)), result);
+        verify(transactionManager).getTransaction(argThat(definition -> !definition.isReadOnly()
+                && definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW));
+        verify(transactionManager).commit(any());
+        verify(statsResultCache).put(key, loading, result);
+    }
+
+    @Test
+    void getTimeSeries_ShouldReadWholeBucketsFromRollupsAndEdgesFromRawHits() {
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 10, 30);
+        LocalDateTime end = LocalDateTime.of(2024, 5, 1, 13, 15);
+        List<String> uris = List.of("/events/1");
+        ReflectionTestUtils.setField(statsService, "rollupsEnabled", true);
+        ReflectionTestUtils.setField(statsService, "maxSeriesBuckets", 100);
+        doAnswer(invocation -> {
+            invocation.<HitStorage.BucketVisitor>getArgument(4).visit(1, 10, LocalDateTime.of(2024, 5, 1, 10, 0), 2);
+            return null;
+        }).when(hitStorage).streamSeries(eq(start), eq(LocalDateTime.of(2024, 5, 1, 11, 0).minusNanos(1)), eq(uris),
+                eq(RollupGranularity.HOUR), any());
+        doAnswer(invocation -> {
+            HitStorage.BucketVisitor visitor = invocation.getArgument(4);
+            visitor.visit(1, 10, LocalDateTime.of(2024, 5, 1, 11, 0), 5);
+            visitor.visit(2, 10, LocalDateTime.of(2024, 5, 1, 12, 0), 1);
+            return null;
+        }).when(hitRollupRepository).streamSeries(eq(RollupGranularity.HOUR), eq(LocalDateTime.of(2024, 5, 1, 11, 0)),
+                eq(LocalDateTime.of(2024, 5, 1, 13, 0)), eq(uris), any());
+        doAnswer(invocation -> {
+            invocation.<HitStorage.BucketVisitor>getArgument(4).visit(1, 10, LocalDateTime.of(2024, 5, 1, 13, 0), 3);
+            return null;
+        }).when(hitStorage).streamSeries(eq(LocalDateTime.of(2024, 5, 1, 13, 0)), eq(end), eq(uris),
+                eq(RollupGranularity.HOUR), any());
+        when(hitDictionary.key(1, 10)).thenReturn(new HitKey("app", "/events/1"));
+        when(hitDictionary.key(2, 10)).thenReturn(new HitKey("other", "/events/1"));
+
+        List<TimeSeries> result = statsService.getTimeSeries(start, end, uris, RollupGranularity.HOUR);
+
+        LocalDateTime first = LocalDateTime.of(2024, 5, 1, 10, 0);
+        assertEquals(List.of(
+                new TimeSeries("app", "/events/1", first, "hour", List.of(2L, 5L, 0L, 3L), 10L),
+                new TimeSeries("other", "/events/1", first, "hour", List.of(0L, 0L, 1L, 0L), 1L)), result);
+    }
+
+    @Test
+    void getTimeSeries_WhenTooManyBuckets_ShouldThrow() {
+        ReflectionTestUtils.setField(statsService, "maxSeriesBuckets", 100);
+        LocalDateTime start = LocalDateTime.of(2024, 5, 1, 0, 0);
+
+        assertThrows(IllegalArgumentException.class, () -> statsService.getTimeSeries(start, start.plusHours(2),
+                List.of("/events/1"), RollupGranularity.MINUTE));
+        verifyNoInteractions(hitStorage, hitRollupRepository);
+    }
+
+    /**
+     * Stores {@code hits} in segment files and their rollups and sketches in an in-memory database, the way the
+     * writer does with {@code stats.storage.engine=segment}, and points the service at them.
+     */
+    private SegmentHitStorage useSegmentEngine(EndpointHit... hits) throws IOException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + dir.getFileName() + ";DB_CLOSE_DELAY=-1");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            jdbcTemplate.execute("CREATE TABLE " + granularity.getTable() + " (app_id INTEGER, uri_id BIGINT," +
+                    " bucket TIMESTAMP, hits BIGINT, PRIMARY KEY (uri_id, bucket, app_id))");
+            if (granularity.getSketchTable() != null) {
+                jdbcTemplate.execute("CREATE TABLE " + granularity.getSketchTable() + " (app_id INTEGER," +
+                        " uri_id BIGINT, bucket TIMESTAMP, registers VARBINARY, PRIMARY KEY (uri_id, bucket, app_id))");
+            }
+        }
+        lenient().when(hitDictionary.appId("app")).thenReturn(1);
+        lenient().when(hitDictionary.uriId("/events/1")).thenReturn(1L);
+        lenient().when(hitDictionary.findUriIds(List.of("/events/1"))).thenReturn(List.of(1L));
+
+        SegmentHitStorage segments = new SegmentHitStorage(hitDictionary);
+        ReflectionTestUtils.setField(segments, "dir", dir.toString());
+        ReflectionTestUtils.setField(segments, "segmentRows", 4);
+        segments.init();
+        HitArchive hitArchive = new HitArchive(jdbcTemplate, null, null);
+        HitRollupRepository rollups = new HitRollupRepository(jdbcTemplate, hitDictionary, hitArchive, segments);
+        ReflectionTestUtils.setField(rollups, "fetchSize", 100);
+        rollups.init();
+        HitSketchRepository sketches = new HitSketchRepository(jdbcTemplate,
+                new NamedParameterJdbcTemplate(jdbcTemplate), hitDictionary, segments);
+        ReflectionTestUtils.setField(sketches, "precision", 12);
+        sketches.init();
+
+        List<EndpointHit> batch = List.of(hits);
+        segments.insertBatch(batch);
+        rollups.increment(batch);
+        sketches.add(batch);
+        ReflectionTestUtils.setField(statsService, "hitStorage", segments);
+        ReflectionTestUtils.setField(statsService, "hitRollupRepository", rollups);
+        ReflectionTestUtils.setField(statsService, "hitSketchRepository", sketches);
+        return segments;
+    }
+
+    private static EndpointHit hit(String ip, LocalDateTime timestamp) {
+        return new EndpointHit(null, "app", "/events/1", ip, timestamp);
+    }
+}
@@ -0,0 +1,48 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    void estimate_ShouldStayWithinThreeStandardErrors() {
+        int precision = 12;
+        double bound = 3 * HyperLogLog.relativeStandardError(precision);
+
+        for (int distinct : new int[]{10, 1_000, 100_000, 1_000_000}) {
+            HyperLogLog sketch = new HyperLogLog(precision);
+            for (int i = 0; i < distinct; i++) {
+                String ip = "10." + (i >>> 16 & 0xff) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff) + "/" + (i >>> 24);
+                sketch.add(ip);
+                sketch.add(ip);
+            }
+
+            double error = Math.abs(sketch.estimate() - distinct) / (double) distinct;
+            assertTrue(error <= bound, "error " + error + " for " + distinct + " distinct values");
+        }
+    }
+
+    @Test
+    void merge_ShouldEqualSketchOfUnion() {
+        HyperLogLog left = new HyperLogLog(10);
+        HyperLogLog right = new HyperLogLog(10);
+        HyperLogLog union = new HyperLogLog(10);
+        for (int i = 0; i < 5_000; i++) {
+            String value = "192.168.0." + i;
+            (i % 2 == 0 ? left : right).add(value);
+            union.add(value);
+        }
+
+        left.merge(right);
+
+        assertEquals(union, left);
+        assertEquals(union, HyperLogLog.fromBytes(left.toBytes()));
+    }
+
+    @Test
+    void merge_WhenPrecisionDiffers_ShouldThrow() {
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(10).merge(new HyperLogLog(12)));
+    }
+}
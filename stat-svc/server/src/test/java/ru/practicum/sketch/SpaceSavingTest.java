@@ -0,0 +1,74 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpaceSavingTest {
+
+    @Test
+    void add_ShouldKeepEveryCountWithinItsErrorBound() {
+        SpaceSaving summary = new SpaceSaving(50);
+        Map<String, Long> exact = zipfStream(summary, 100_000, 7);
+
+        assertEquals(100_000, summary.total());
+        for (SpaceSaving.Estimate estimate : summary.estimates()) {
+            long actual = exact.get(estimate.item());
+            assertTrue(estimate.count() >= actual && estimate.count() - estimate.error() <= actual, estimate.toString());
+        }
+        exact.forEach((item, hits) -> {
+            if (summary.estimates().stream().noneMatch(e -> e.item().equals(item))) {
+                assertTrue(hits <= summary.minCount(), item);
+            }
+        });
+        assertTrue(summary.minCount() <= summary.total() / summary.getCapacity());
+    }
+
+    @Test
+    void add_WhenFewerItemsThanCapacity_ShouldCountExactly() {
+        SpaceSaving summary = new SpaceSaving(4);
+        summary.add("/events/1", 3);
+        summary.add("/events/2", 1);
+        summary.add("/events/1", 2);
+
+        assertEquals(0, summary.minCount());
+        assertEquals(List.of(new SpaceSaving.Estimate("/events/1", 5, 0), new SpaceSaving.Estimate("/events/2", 1, 0)),
+                SpaceSaving.merge(List.of(summary)).estimates());
+    }
+
+    @Test
+    void merge_ShouldBoundCountsOfItemsMissingFromSomeSummaries() {
+        SpaceSaving first = new SpaceSaving(30);
+        SpaceSaving second = new SpaceSaving(30);
+        Map<String, Long> exact = zipfStream(first, 20_000, 1);
+        zipfStream(second, 20_000, 2).forEach((item, hits) -> exact.merge(item, hits, Long::sum));
+
+        SpaceSaving.Merged merged = SpaceSaving.merge(List.of(first, second));
+
+        assertEquals(40_000, merged.total());
+        assertEquals(first.minCount() + second.minCount(), merged.missingBound());
+        for (SpaceSaving.Estimate estimate : merged.estimates()) {
+            long actual = exact.get(estimate.item());
+            assertTrue(estimate.count() >= actual && estimate.count() - estimate.error() <= actual, estimate.toString());
+        }
+        assertEquals("/events/0", merged.estimates().get(0).item());
+    }
+
+    private static Map<String, Long> zipfStream(SpaceSaving summary, int hits, long seed) {
+        Random random = new Random(seed);
+        Map<String, Long> exact = new HashMap<>();
+        for (int i = 0; i < hits; i++) {
+            // Roughly Zipf-distributed ranks over 2000 uris.
+            int rank = (int) Math.floor(Math.pow(2000, random.nextDouble())) - 1;
+            String uri = "/events/" + rank;
+            summary.add(uri, 1);
+            exact.merge(uri, 1L, Long::sum);
+        }
+        return exact;
+    }
+}
@@ -0,0 +1,196 @@
+package ru.practicum.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.dictionary.HitDictionary;
+import ru.practicum.ingest.SampledHit;
+import ru.practicum.model.enums.RollupGranularity;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class SegmentHitStorageTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 0);
+    private static final List<String> APPS = List.of("app", "other");
+    private static final List<String> URIS = List.of("/events/1", "/events/2", "/events/3");
+
+    @TempDir
+    Path dir;
+
+    private HitDictionary hitDictionary;
+    private SegmentHitStorage storage;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws IOException {
+        hitDictionary = mock(HitDictionary.class);
+        when(hitDictionary.appId(anyString())).thenAnswer(inv -> APPS.indexOf(inv.<String>getArgument(0)) + 1);
+        when(hitDictionary.uriId(anyString())).thenAnswer(inv -> URIS.indexOf(inv.<String>getArgument(0)) + 1L);
+        when(hitDictionary.appName(anyLong())).thenAnswer(inv -> APPS.get((int) inv.<Long>getArgument(0).longValue() - 1));
+        when(hitDictionary.findUriIds(any())).thenAnswer(inv -> inv.<Collection<String>>getArgument(0).stream()
+                .filter(URIS::contains).map(uri -> URIS.indexOf(uri) + 1L).toList());
+        doAnswer(inv -> {
+            Consumer<ViewStats> consumer = inv.getArgument(1);
+            inv.<Consumer<Consumer<HitDictionary.IdCount>>>getArgument(0).accept(row -> consumer.accept(
+                    new ViewStats(APPS.get((int) row.appId() - 1), URIS.get((int) row.uriId() - 1), row.hits())));
+            return null;
+        }).when(hitDictionary).decodeStream(any(), any());
+        storage = open(3);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    void streamStats_ShouldCountHitsInRangeOrderedByHits() {
+        storage.insertBatch(List.of(
+                hit("app", "/events/1", "10.0.0.1", NOW),
+                hit("app", "/events/2", "10.0.0.1", NOW.plusMinutes(1)),
+                hit("app", "/events/2", "10.0.0.1", NOW.plusMinutes(2)),
+                hit("other", "/events/2", "10.0.0.2", NOW.plusMinutes(2)),
+                hit("app", "/events/1", "10.0.0.3", NOW.minusDays(1)),
+                hit("app", "/events/3", "10.0.0.3", NOW.plusDays(1))));
+
+        assertEquals(List.of(new ViewStats("app", "/events/2", 2L), new ViewStats("app", "/events/1", 1L),
+                        new ViewStats("other", "/events/2", 1L)),
+                stats(NOW, NOW.plusHours(1), null, false, null));
+        assertEquals(List.of(new ViewStats("app", "/events/2", 2L)),
+                stats(NOW, NOW.plusHours(1), null, false, 1));
+        assertEquals(List.of(new ViewStats("app", "/events/1", 1L)),
+                stats(NOW, NOW.plusHours(1), List.of("/events/1", "/unknown"), false, null));
+        assertEquals(List.of(), stats(NOW, NOW.plusHours(1), List.of("/unknown"), false, null));
+    }
+
+    @Test
+    void streamUniqueStats_ShouldCountDistinctIps() {
+        storage.insertBatch(List.of(
+                hit("app", "/events/1", "10.0.0.1", NOW),
+                hit("app", "/events/1", "10.0.0.1", NOW.plusMinutes(1)),
+                hit("app", "/events/1", "10.0.0.2", NOW.plusMinutes(2)),
+                hit("app", "/events/2", "10.0.0.1", NOW.plusMinutes(3))));
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 2L), new ViewStats("app", "/events/2", 1L)),
+                stats(NOW, NOW.plusHours(1), null, true, null));
+        assertEquals(Map.of("app", 2L),
+                storage.countUniqueByApp(NOW, NOW.plusHours(1), List.of("/events/1", "/events/2")));
+    }
+
+    @Test
+    void streamStats_ShouldCountSampledHitsByWeight() {
+        storage.insertBatch(List.of(
+                new SampledHit(hit("app", "/events/1", "10.0.0.1", NOW), 4),
+                hit("app", "/events/1", "10.0.0.2", NOW.plusMinutes(1))));
+
+        assertEquals(List.of(new ViewStats("app", "/events/1", 5L)), stats(NOW, NOW.plusHours(1), null, false, null));
+        assertEquals(List.of(new ViewStats("app", "/events/1", 2L)), stats(NOW, NOW.plusHours(1), null, true, null));
+        List<Integer> weights = new ArrayList<>();
+        storage.forEachHit(NOW, (appId, uriId, timestamp, weight) -> weights.add(weight));
+        assertEquals(List.of(4, 1), weights);
+    }
+
+    @Test
+    void insertBatch_WhenSegmentsFill_ShouldRollOverAndSurviveReopen() throws IOException {
+        List<EndpointHit> hits = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            hits.add(hit("app", "/events/1", "10.0.0." + i, NOW.plusMinutes(i)));
+        }
+        storage.insertBatch(hits);
+        storage.close();
+
+        storage = open(3);
+        storage.insertBatch(List.of(hit("app", "/events/1", "10.0.0.9", NOW.plusMinutes(10))));
+
+        try (var files = Files.list(dir)) {
+            assertEquals(3, files.count());
+        }
+        assertEquals(List.of(new ViewStats("app", "/events/1", 8L)), stats(NOW, NOW.plusHours(1), null, false, null));
+        assertEquals(List.of(new ViewStats("app", "/events/1", 4L)),
+                stats(NOW.plusMinutes(3), NOW.plusMinutes(7), null, false, null));
+        List<LocalDateTime> visited = new ArrayList<>();
+        storage.forEachHit(NOW.plusMinutes(6), (appId, uriId, timestamp, weight) -> visited.add(timestamp));
+        assertEquals(List.of(NOW.plusMinutes(6), NOW.plusMinutes(10)), visited);
+    }
+
+    @Test
+    void streamSeries_ShouldCountHitsPerBucketInRange() {
+        storage.insertBatch(List.of(
+                hit("app", "/events/1", "10.0.0.1", NOW.plusMinutes(10)),
+                hit("app", "/events/1", "10.0.0.1", NOW.plusMinutes(20)),
+                hit("app", "/events/1", "10.0.0.1", NOW.plusHours(2)),
+                hit("app", "/events/2", "10.0.0.1", NOW.plusHours(2)),
+                hit("app", "/events/1", "10.0.0.1", NOW.plusHours(3))));
+
+        List<String> buckets = new ArrayList<>();
+        storage.streamSeries(NOW.plusMinutes(15), NOW.plusHours(2).plusMinutes(30), List.of("/events/1"),
+                RollupGranularity.HOUR, (appId, uriId, bucket, hits) -> buckets.add(uriId + "@" + bucket + "=" + hits));
+
+        assertEquals(List.of("1@" + NOW + "=1", "1@" + NOW.plusHours(2) + "=1"), buckets);
+    }
+
+    @Test
+    void deleteBefore_ShouldDeleteOlderSegmentsAndSkipOlderHitsOfTheRest() throws IOException {
+        LocalDateTime cut = NOW.toLocalDate().atStartOfDay();
+        storage.insertBatch(List.of(
+                hit("app", "/events/1", "10.0.0.1", cut.minusDays(2)),
+                hit("app", "/events/1", "10.0.0.2", cut.minusDays(2).plusMinutes(1)),
+                hit("app", "/events/1", "10.0.0.3", cut.minusDays(2).plusMinutes(2)),
+                hit("app", "/events/1", "10.0.0.4", cut.minusDays(1)),
+                hit("app", "/events/1", "10.0.0.5", NOW),
+                hit("app", "/events/1", "10.0.0.6", NOW.plusMinutes(1)),
+                hit("app", "/events/1", "10.0.0.7", NOW.plusMinutes(2))));
+
+        storage.deleteBefore(cut);
+
+        try (var files = Files.list(dir)) {
+            assertEquals(2, files.count());
+        }
+        assertEquals(List.of(new ViewStats("app", "/events/1", 3L)),
+                stats(cut.minusDays(3), NOW.plusHours(1), null, false, null));
+        assertEquals(List.of(new ViewStats("app", "/events/1", 3L)),
+                stats(cut.minusDays(3), NOW.plusHours(1), null, true, null));
+    }
+
+    private SegmentHitStorage open(int rows) throws IOException {
+        SegmentHitStorage opened = new SegmentHitStorage(hitDictionary);
+        ReflectionTestUtils.setField(opened, "dir", dir.toString());
+        ReflectionTestUtils.setField(opened, "segmentRows", rows);
+        opened.init();
+        return opened;
+    }
+
+    private List<ViewStats> stats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                  Integer limit) {
+        List<ViewStats> stats = new ArrayList<>();
+        if (unique) {
+            storage.streamUniqueStats(start, end, uris, limit, stats::add);
+        } else {
+            storage.streamStats(start, end, uris, limit, stats::add);
+        }
+        return stats;
+    }
+
+    private static EndpointHit hit(String app, String uri, String ip, LocalDateTime timestamp) {
+        return new EndpointHit(null, app, uri, ip, timestamp);
+    }
+}
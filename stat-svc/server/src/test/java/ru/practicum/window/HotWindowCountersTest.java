@@ -0,0 +1,88 @@
+package ru.practicum.window;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.EndpointHit;
+import ru.practicum.ViewStats;
+import ru.practicum.model.enums.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotWindowCountersTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).plusMinutes(30);
+
+    private HotWindowCounters counters;
+
+    @BeforeEach
+    void setUp() {
+        counters = new HotWindowCounters(null, new SimpleMeterRegistry(), null);
+        ReflectionTestUtils.setField(counters, "enabled", true);
+        ReflectionTestUtils.setField(counters, "granularity", RollupGranularity.HOUR);
+        ReflectionTestUtils.setField(counters, "slots", 24);
+        ReflectionTestUtils.setField(counters, "maxKeys", 2);
+        counters.prepare(NOW.minusHours(23).withMinute(0));
+    }
+
+    @Test
+    void findStats_WhenEdgesDoNotSplitBuckets_ShouldCountFromMemory() {
+        counters.record(List.of(
+                hit("/events/1", NOW.minusHours(3).withMinute(10)),
+                hit("/events/1", NOW.minusHours(1).withMinute(5)),
+                hit("/events/2", NOW.minusMinutes(10)),
+                hit("/events/1", NOW.minusMinutes(5))));
+
+        Optional<List<ViewStats>> stats = counters.findStats(NOW.minusHours(3).withMinute(0), NOW, null, NOW);
+
+        assertEquals(Optional.of(List.of(new ViewStats("app", "/events/1", 3L), new ViewStats("app", "/events/2", 1L))),
+                stats);
+        assertEquals(Optional.of(List.of(new ViewStats("app", "/events/1", 1L))),
+                counters.findStats(NOW.minusMinutes(20), NOW, List.of("/events/1"), NOW));
+    }
+
+    @Test
+    void findStats_WhenEdgeSplitsHitsOfBucket_ShouldFallBack() {
+        counters.record(List.of(hit("/events/1", NOW.minusMinutes(20)), hit("/events/1", NOW.minusMinutes(5))));
+
+        assertTrue(counters.findStats(NOW.minusMinutes(10), NOW, null, NOW).isEmpty());
+    }
+
+    @Test
+    void findStats_WhenRangeStartsBeforeWindow_ShouldFallBack() {
+        assertTrue(counters.findStats(NOW.minusDays(2), NOW, null, NOW).isEmpty());
+        assertTrue(counters.findStats(NOW.minusHours(2), NOW, null, NOW.plusDays(1)).isEmpty());
+    }
+
+    @Test
+    void findStats_WhenKeysOverflow_ShouldFallBackForUntrackedUris() {
+        counters.record(List.of(
+                hit("/events/1", NOW.minusMinutes(20)),
+                hit("/events/2", NOW.minusMinutes(20)),
+                hit("/events/3", NOW.minusMinutes(20))));
+
+        assertTrue(counters.findStats(NOW.minusHours(1), NOW, null, NOW).isEmpty());
+        assertTrue(counters.findStats(NOW.minusHours(1), NOW, List.of("/events/3"), NOW).isEmpty());
+        assertEquals(Optional.of(List.of(new ViewStats("app", "/events/1", 1L))),
+                counters.findStats(NOW.minusHours(1), NOW, List.of("/events/1"), NOW));
+    }
+
+    @Test
+    void findStats_WhenSlotReusedByLaterLap_ShouldFallBackForOldBucket() {
+        counters.record(List.of(hit("/events/1", NOW.minusMinutes(20)), hit("/events/1", NOW.plusHours(24))));
+
+        assertTrue(counters.findStats(NOW.minusHours(1), NOW, null, NOW).isEmpty());
+        assertEquals(Optional.of(List.of(new ViewStats("app", "/events/1", 1L))),
+                counters.findStats(NOW.plusHours(23), NOW.plusHours(25), null, NOW.plusHours(25)));
+    }
+
+    private static EndpointHit hit(String uri, LocalDateTime timestamp) {
+        return new EndpointHit(null, "app", uri, "192.168.1.1", timestamp);
+    }
+}
@@ -0,0 +1,94 @@
+package ru.practicum.window;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.practicum.EndpointHit;
+import ru.practicum.TopStats;
+import ru.practicum.TopStatsEntry;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TopUriTrackerTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 5, 1, 12, 30, 15);
+
+    private TopUriTracker tracker;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new TopUriTracker(null, null);
+        ReflectionTestUtils.setField(tracker, "enabled", true);
+        ReflectionTestUtils.setField(tracker, "capacity", 3);
+        ReflectionTestUtils.setField(tracker, "minuteSlots", 60);
+        ReflectionTestUtils.setField(tracker, "hourSlots", 24);
+        ReflectionTestUtils.setField(tracker, "maxApps", 2);
+    }
+
+    @Test
+    void findTop_ShouldRankUrisOfAppWithinWindow() {
+        List<EndpointHit> hits = new ArrayList<>();
+        hits.addAll(hits("app", "/events/1", NOW.minusMinutes(2), 5));
+        hits.addAll(hits("app", "/events/2", NOW.minusMinutes(1), 3));
+        hits.addAll(hits("app", "/events/3", NOW.minusMinutes(20), 9));
+        hits.addAll(hits("other", "/events/2", NOW, 7));
+        tracker.record(hits, NOW);
+
+        TopStats top = tracker.findTop("app", Duration.ofMinutes(5), 2, NOW);
+
+        assertEquals(List.of(new TopStatsEntry("/events/1", 5L, 0L, true), new TopStatsEntry("/events/2", 3L, 0L, true)),
+                top.getTop());
+        assertEquals(8L, top.getTotalHits());
+        assertEquals(0L, top.getMaxError());
+        assertEquals(LocalDateTime.of(2024, 5, 1, 12, 26), top.getStart());
+
+        assertEquals("/events/3", tracker.findTop("app", Duration.ofHours(2), 1, NOW).getTop().get(0).getUri());
+    }
+
+    @Test
+    void findTop_WhenSummaryOverflows_ShouldReportErrorBounds() {
+        List<EndpointHit> hits = new ArrayList<>();
+        hits.addAll(hits("app", "/events/1", NOW, 10));
+        for (int i = 2; i <= 6; i++) {
+            hits.addAll(hits("app", "/events/" + i, NOW, 1));
+        }
+        tracker.record(hits, NOW);
+
+        TopStats top = tracker.findTop("app", Duration.ofMinutes(1), 1, NOW);
+
+        assertEquals(new TopStatsEntry("/events/1", 10L, 0L, true), top.getTop().get(0));
+        assertEquals(15L, top.getTotalHits());
+        assertTrue(top.getMaxError() > 0);
+        TopStats all = tracker.findTop("app", Duration.ofMinutes(1), 3, NOW);
+        assertFalse(all.getTop().get(2).getGuaranteed());
+    }
+
+    @Test
+    void findTop_WhenBucketLeftTheWindow_ShouldNotCountIt() {
+        tracker.record(hits("app", "/events/1", NOW.minusHours(30), 4), NOW.minusHours(30));
+        tracker.record(hits("app", "/events/2", NOW.minusHours(6), 1), NOW);
+
+        assertEquals(List.of(new TopStatsEntry("/events/2", 1L, 0L, true)),
+                tracker.findTop("app", Duration.ofHours(24), 3, NOW).getTop());
+    }
+
+    @Test
+    void findTop_WhenArgumentsExceedLimits_ShouldThrowException() {
+        assertThrows(IllegalArgumentException.class, () -> tracker.findTop("app", Duration.ofHours(1), 4, NOW));
+        assertThrows(IllegalArgumentException.class, () -> tracker.findTop("app", Duration.ofHours(25), 1, NOW));
+        assertTrue(tracker.findTop("unknown", Duration.ofDays(1), 1, NOW).getTop().isEmpty());
+    }
+
+    private static List<EndpointHit> hits(String app, String uri, LocalDateTime timestamp, int count) {
+        List<EndpointHit> hits = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            hits.add(new EndpointHit(null, app, uri, "192.168.1.1", timestamp));
+        }
+        return hits;
+    }
+}